@@ -109,6 +109,24 @@ public class ClientConfiguration {
     public static final String PROPERTY_CLIENT_INITIALIZED = "client.initialized";
     public static final boolean PROPERTY_CLIENT_INITIALIZED_DEFAULT = false;
 
+    /**
+     * Number of chunks (of 'fetchSize' records) that the server is allowed to
+     * push to the client in advance while streaming the results of a scan. The
+     * client grants new credits while it consumes the data. Zero means that
+     * the client will ask for each chunk explicitly, paying one network round
+     * trip per chunk.
+     */
+    public static final String PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS = "client.scanner.streaming.credits";
+    public static final int PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS_DEFAULT = 0;
+
+    /**
+     * When enabled, the transactions of JDBC connections switched to read only
+     * mode read a snapshot of the data without locking records. Otherwise the
+     * read only flag is only a hint and transactions are not changed.
+     */
+    public static final String PROPERTY_CLIENT_READONLY_SNAPSHOT = "client.readonly.snapshot";
+    public static final boolean PROPERTY_CLIENT_READONLY_SNAPSHOT_DEFAULT = false;
+
 
     public ClientConfiguration(Properties properties) {
         this.properties = new Properties();
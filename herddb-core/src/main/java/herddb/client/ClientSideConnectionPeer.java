@@ -44,6 +44,12 @@ public interface ClientSideConnectionPeer {
 
     long beginTransaction(String tableSpace) throws HDBException, ClientSideMetadataProviderException;
 
+    /**
+     * Begins a read only transaction which reads a consistent snapshot of the
+     * data, without locking records
+     */
+    long beginSnapshotTransaction(String tableSpace) throws HDBException, ClientSideMetadataProviderException;
+
     void commitTransaction(String tableSpace, long tx) throws HDBException, ClientSideMetadataProviderException;
 
     void rollbackTransaction(String tableSpace, long tx) throws HDBException, ClientSideMetadataProviderException;
@@ -156,6 +156,23 @@ public class HDBConnection implements AutoCloseable {
         throw new HDBException("client is closed");
     }
 
+    /**
+     * Begins a read only transaction which reads a consistent snapshot of the
+     * data, without locking records
+     */
+    public long beginSnapshotTransaction(String tableSpace) throws ClientSideMetadataProviderException, HDBException {
+        int trialCount = 0;
+        while (!closed) {
+            try {
+                ClientSideConnectionPeer route = getRouteToTableSpace(tableSpace);
+                return route.beginSnapshotTransaction(tableSpace);
+            } catch (RetryRequestException retry) {
+                handleRetryError(retry, trialCount++);
+            }
+        }
+        throw new HDBException("client is closed");
+    }
+
     public void rollbackTransaction(String tableSpace, long tx) throws ClientSideMetadataProviderException, HDBException {
         int trialCount = 0;
         while (!closed) {
@@ -113,6 +113,13 @@ public class NonMarshallingClientSideConnectionPeer implements ClientSideConnect
         return serverSidePeer.beginTransaction(tableSpace);
     }
 
+    @Override
+    public long beginSnapshotTransaction(String tableSpace) throws HDBException, ClientSideMetadataProviderException {
+        LocalVMChannel channel = (LocalVMChannel) realConnection.ensureOpen();
+        ServerSideConnectionPeer serverSidePeer = (ServerSideConnectionPeer) channel.getServerSideChannel().getMessagesReceiver();
+        return serverSidePeer.beginTransaction(tableSpace, true);
+    }
+
     @Override
     public void commitTransaction(String tableSpace, long tx) throws HDBException, ClientSideMetadataProviderException {
         LocalVMChannel channel = (LocalVMChannel) realConnection.ensureOpen();
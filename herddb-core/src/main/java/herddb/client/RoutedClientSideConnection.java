@@ -84,6 +84,8 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
     private final ClientSideQueryCache preparedStatements = new ClientSideQueryCache();
 
     private final Map<String, TableSpaceDumpReceiver> dumpReceivers = new ConcurrentHashMap<>();
+    private final Map<Long, StreamingScanBuffer> streamingScanners = new ConcurrentHashMap<>();
+    private final int scannerStreamingCredits;
 
     public RoutedClientSideConnection(HDBConnection connection, String nodeId, ServerHostData server) {
         this.connection = connection;
@@ -92,6 +94,8 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
         this.timeout = connection.getClient().getConfiguration().getLong(ClientConfiguration.PROPERTY_TIMEOUT, ClientConfiguration.PROPERTY_TIMEOUT_DEFAULT);
         this.clientId = connection.getClient().getConfiguration().getString(ClientConfiguration.PROPERTY_CLIENTID, ClientConfiguration.PROPERTY_CLIENTID_DEFAULT);
+        this.scannerStreamingCredits = connection.getClient().getConfiguration().getInt(ClientConfiguration.PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS,
+                ClientConfiguration.PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS_DEFAULT);
     }
 
     @Override
@@ -162,8 +166,22 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
     @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT")
     @SuppressWarnings("empty-statement")
     public void requestReceived(Pdu message, Channel channel) {
+        boolean releaseMessage = true;
         try {
             switch (message.type) {
+                case Pdu.TYPE_SCANNER_DATA_PUSH: {
+                    long scannerId = PduCodec.ScannerDataPush.readScannerId(message);
+                    StreamingScanBuffer buffer = streamingScanners.get(scannerId);
+                    if (buffer != null) {
+                        // the buffer is now the owner of the message
+                        releaseMessage = false;
+                        buffer.chunkReceived(message);
+                    } else {
+                        // the ResultSet has been closed, this is a one-way message, no need to answer
+                        LOGGER.log(Level.FINEST, "discarding data for unknown scanner {0}", scannerId);
+                    }
+                }
+                break;
                 case Pdu.TYPE_TABLESPACE_DUMP_DATA: {
                     String dumpId = PduCodec.TablespaceDumpData.readDumpId(message);
                     TableSpaceDumpReceiver receiver = dumpReceivers.get(dumpId);
@@ -262,12 +280,16 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
             }
         } finally {
-            message.close();
+            if (releaseMessage) {
+                message.close();
+            }
         }
     }
 
     @Override
     public void channelClosed(Channel channel) {
+        // wake up consumers of streaming scanners, the server already released the scanners
+        streamingScanners.values().forEach(buffer -> buffer.fail("channel " + channel + " has been closed"));
         connectionLock.writeLock().lock();
         try {
             // clean up local cache, if the server restarted we would use old ids
@@ -627,10 +649,19 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
     @Override
     public long beginTransaction(String tableSpace) throws HDBException, ClientSideMetadataProviderException {
+        return beginTransaction(tableSpace, PduCodec.TxCommand.TX_COMMAND_BEGIN_TRANSACTION);
+    }
+
+    @Override
+    public long beginSnapshotTransaction(String tableSpace) throws HDBException, ClientSideMetadataProviderException {
+        return beginTransaction(tableSpace, PduCodec.TxCommand.TX_COMMAND_BEGIN_SNAPSHOT_TRANSACTION);
+    }
+
+    private long beginTransaction(String tableSpace, byte command) throws HDBException, ClientSideMetadataProviderException {
         Channel channel = ensureOpen();
         try {
             long requestId = channel.generateRequestId();
-            ByteBuf message = PduCodec.TxCommand.write(requestId, PduCodec.TxCommand.TX_COMMAND_BEGIN_TRANSACTION, 0, tableSpace);
+            ByteBuf message = PduCodec.TxCommand.write(requestId, command, 0, tableSpace);
             try (Pdu reply = channel.sendMessageWithPduReply(requestId, message, timeout)) {
                 if (reply.type == Pdu.TYPE_ERROR) {
                     handleGenericError(reply, 0);
@@ -728,13 +759,20 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
                               boolean keepReadLocks) throws HDBException, ClientSideMetadataProviderException {
         Channel channel = ensureOpen();
         Pdu reply = null;
+        long scannerId = scannerIdGenerator.incrementAndGet();
+        StreamingScanBuffer streamingBuffer = null;
+        boolean streaming = false;
         try {
-            long scannerId = scannerIdGenerator.incrementAndGet();
             long requestId = channel.generateRequestId();
             long statementId = usePreparedStatement ? prepareQuery(tableSpace, query) : 0;
             query = statementId > 0 ? "" : query;
+            if (scannerStreamingCredits > 0) {
+                // the server may push data before we receive the response to OPENSCANNER
+                streamingBuffer = new StreamingScanBuffer();
+                streamingScanners.put(scannerId, streamingBuffer);
+            }
             ByteBuf message = PduCodec.OpenScanner.write(requestId, tableSpace, query, scannerId, tx, params, statementId,
-                    fetchSize, maxRows, keepReadLocks);
+                    fetchSize, maxRows, keepReadLocks, scannerStreamingCredits);
             LOGGER.log(Level.FINEST, "open scanner {0} for query {1}, params {2}", new Object[]{scannerId, query, params});
             reply = channel.sendMessageWithPduReply(requestId, message, timeout);
 
@@ -749,9 +787,12 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
             boolean last = PduCodec.ResultSetChunk.readIsLast(reply);
             long transactionId = PduCodec.ResultSetChunk.readTx(reply);
+            // older servers do not support streaming
+            streaming = streamingBuffer != null && !last && PduCodec.ResultSetChunk.readIsStreaming(reply);
             RecordsBatch data = PduCodec.ResultSetChunk.startReadingData(reply);
             //LOGGER.log(Level.SEVERE, "received first " + initialFetchBuffer.size() + " records for query " + query);
-            ScanResultSetImpl impl = new ScanResultSetImpl(scannerId, data, fetchSize, last, transactionId, channel);
+            ScanResultSetImpl impl = new ScanResultSetImpl(scannerId, data, fetchSize, last, transactionId, channel,
+                    streaming ? streamingBuffer : null);
             return impl;
         } catch (InterruptedException err) {
             if (reply != null) {
@@ -764,6 +805,11 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
                 reply.close();
             }
             throw new HDBException(err);
+        } finally {
+            if (streamingBuffer != null && !streaming) {
+                streamingScanners.remove(scannerId);
+                streamingBuffer.close();
+            }
         }
     }
 
@@ -881,10 +927,63 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         }
     }
 
+    /**
+     * Holds the chunks pushed by the server for a streaming scanner, until the
+     * ResultSet consumes them.
+     */
+    private static final class StreamingScanBuffer {
+
+        private final Map<Long, Pdu> chunks = new HashMap<>();
+        private String failure;
+        private boolean closed;
+
+        synchronized void chunkReceived(Pdu chunk) {
+            if (closed) {
+                chunk.close();
+                return;
+            }
+            chunks.put(PduCodec.ScannerDataPush.readSequence(chunk), chunk);
+            notifyAll();
+        }
+
+        synchronized void fail(String error) {
+            failure = error;
+            notifyAll();
+        }
+
+        synchronized Pdu take(long sequence, long timeout) throws HDBException, InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (true) {
+                Pdu chunk = chunks.remove(sequence);
+                if (chunk != null) {
+                    return chunk;
+                }
+                if (failure != null) {
+                    throw new HDBException(failure);
+                }
+                long waitTime = deadline - System.currentTimeMillis();
+                if (waitTime <= 0) {
+                    throw new HDBException("timed out waiting for chunk #" + sequence + " from the server");
+                }
+                wait(waitTime);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            chunks.values().forEach(Pdu::close);
+            chunks.clear();
+        }
+    }
+
     private class ScanResultSetImpl extends ScanResultSet {
 
         private final long scannerId;
         private final ScanResultSetMetadata metadata;
+        // not null in streaming mode
+        private final StreamingScanBuffer streamingBuffer;
+        private long nextChunkSequence = 1;
+        private int consumedChunksSinceLastGrant;
 
         RecordsBatch fetchBuffer;
         DataAccessor next;
@@ -901,11 +1000,12 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
 
         private ScanResultSetImpl(
                 long scannerId, RecordsBatch firstFetchBuffer, int fetchSize, boolean onlyOneChunk, long tx,
-                Channel channel
+                Channel channel, StreamingScanBuffer streamingBuffer
         ) {
             super(tx);
             this.channel = channel;
             this.scannerId = scannerId;
+            this.streamingBuffer = streamingBuffer;
             this.metadata = new ScanResultSetMetadata(firstFetchBuffer.columnNames);
             this.fetchSize = fetchSize;
             this.fetchBuffer = firstFetchBuffer;
@@ -928,6 +1028,10 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
         public void close() {
             finished = true;
             releaseBuffer();
+            if (streamingBuffer != null) {
+                streamingScanners.remove(scannerId);
+                streamingBuffer.close();
+            }
 
             if (!noMoreData) {
                 // try to release resources on the server
@@ -964,6 +1068,10 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
                 noMoreData = true;
                 return;
             }
+            if (streamingBuffer != null) {
+                fillBufferFromStream();
+                return;
+            }
 
             Pdu result = null;
             try {
@@ -1007,6 +1115,49 @@ public class RoutedClientSideConnection implements ChannelEventListener, ClientS
             }
         }
 
+        private void fillBufferFromStream() throws HDBException {
+            Pdu result = null;
+            try {
+                result = streamingBuffer.take(nextChunkSequence++, timeout);
+                byte status = PduCodec.ScannerDataPush.readStatus(result);
+                if (status == PduCodec.ScannerDataPush.STATUS_ERROR) {
+                    // the server already released the scanner
+                    finished = true;
+                    noMoreData = true;
+                    try {
+                        throw new HDBException(PduCodec.ScannerDataPush.readError(result));
+                    } finally {
+                        result.close();
+                    }
+                }
+                lastChunk = status == PduCodec.ScannerDataPush.STATUS_LAST;
+                fetchBuffer = PduCodec.ScannerDataPush.startReadingData(result);
+                if (!fetchBuffer.hasNext()) {
+                    noMoreData = true;
+                }
+                if (!lastChunk) {
+                    replenishCredits();
+                }
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                throw new HDBException(err);
+            }
+        }
+
+        private void replenishCredits() {
+            consumedChunksSinceLastGrant++;
+            // do not send a message for each chunk, but let the server always have some credit
+            if (consumedChunksSinceLastGrant >= Math.max(1, scannerStreamingCredits / 2)) {
+                ByteBuf message = PduCodec.ScannerCredits.write(channel.generateRequestId(), scannerId, consumedChunksSinceLastGrant);
+                consumedChunksSinceLastGrant = 0;
+                channel.sendOneWayMessage(message, (Throwable error) -> {
+                    if (error != null) {
+                        LOGGER.log(Level.SEVERE, "Cannot grant credits to scanner " + scannerId + ", con " + RoutedClientSideConnection.this, error);
+                    }
+                });
+            }
+        }
+
         private boolean ensureNext() throws HDBException {
             if (next != null) {
                 return true;
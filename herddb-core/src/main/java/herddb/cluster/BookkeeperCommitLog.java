@@ -35,6 +35,7 @@ import io.netty.buffer.ByteBufInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -99,6 +100,8 @@ public class BookkeeperCommitLog extends CommitLog {
     private long ledgersRetentionPeriod = 1000 * 60 * 60 * 24;
     private long maxLedgerSizeBytes = 1024 * 1024 * 1024;
     private long maxIdleTime = 0;
+    private int maxBatchEntries = 1;
+    private int maxBatchBytes = 1024 * 1024;
     private boolean writeLedgerHeader = true;
     private boolean startWritingCalled = false;
     private volatile boolean closed = false;
@@ -138,15 +141,30 @@ public class BookkeeperCommitLog extends CommitLog {
         private volatile boolean errorOccurredDuringWrite;
         private final AtomicLong pendingAdds = new AtomicLong();
         private final AtomicReference<Throwable> writeError = new AtomicReference<>();
+        private final boolean batchFormat;
+        private final int maxEntriesPerBatch;
+        private final int maxBytesPerBatch;
+        // guards pendingBatch, inflightBatches and writerClosed
+        private final Object batchLock = new Object();
+        private PendingBatch pendingBatch;
+        private int inflightBatches;
+        private boolean writerClosed;
+        private volatile long pendingBatchBytes;
 
         private CommitFileWriter() throws LogNotAvailableException {
             try {
+                this.maxEntriesPerBatch = maxBatchEntries;
+                this.maxBytesPerBatch = maxBatchBytes;
+                this.batchFormat = maxEntriesPerBatch > 1;
                 Map<String, byte[]> metadata = new HashMap<>();
                 metadata.put("tablespaceuuid", tableSpaceUUID.getBytes(StandardCharsets.UTF_8));
                 metadata.put("tablespacename", tableSpaceName.getBytes(StandardCharsets.UTF_8));
                 metadata.put("leader", localNodeId.getBytes(StandardCharsets.UTF_8));
                 metadata.put("application", "herddb".getBytes(StandardCharsets.UTF_8));
                 metadata.put("component", "commitlog".getBytes(StandardCharsets.UTF_8));
+                if (batchFormat) {
+                    metadata.put(LogEntryBatch.FORMAT_METADATA_KEY, LogEntryBatch.FORMAT_BATCH_V1);
+                }
                 int actualEnsembleSize = Math.max(expectedReplicaCount, ensemble);
                 int actualWriteQuorumSize = Math.max(expectedReplicaCount, writeQuorumSize);
                 int actualAckQuorumSize = Math.max(expectedReplicaCount, ackQuorumSize);
@@ -205,6 +223,80 @@ public class BookkeeperCommitLog extends CommitLog {
         }
 
         public CompletableFuture<LogSequenceNumber> writeEntry(LogEntry edit) {
+            if (!batchFormat) {
+                return writeSingleEntry(edit);
+            }
+            byte[] serialized = edit.serialize();
+            CompletableFuture<LogSequenceNumber> res = new CompletableFuture<>();
+            pendingAdds.incrementAndGet();
+            synchronized (batchLock) {
+                if (writerClosed) {
+                    pendingAdds.decrementAndGet();
+                    res.completeExceptionally(new LogNotAvailableException(
+                            new Exception("ledger " + ledgerId + " has been closed, tablespace " + tableSpaceDescription())));
+                    return res;
+                }
+                if (pendingBatch != null && pendingBatch.size + serialized.length > maxBytesPerBatch) {
+                    appendPendingBatch();
+                }
+                if (pendingBatch == null) {
+                    pendingBatch = new PendingBatch();
+                }
+                pendingBatch.add(edit, serialized, res);
+                // group commit: if nothing is travelling to the bookies write immediately,
+                // otherwise keep collecting entries until the batch is full or
+                // the previous write is acknowledged
+                if (inflightBatches == 0
+                        || pendingBatch.entries.size() >= maxEntriesPerBatch
+                        || pendingBatch.size >= maxBytesPerBatch) {
+                    appendPendingBatch();
+                } else {
+                    pendingBatchBytes = pendingBatch.size;
+                }
+            }
+            return res;
+        }
+
+        private void appendPendingBatch() {
+            // the callback may be executed in this thread, so detach the batch first
+            PendingBatch batch = pendingBatch;
+            pendingBatch = null;
+            pendingBatchBytes = 0;
+            inflightBatches++;
+            // BK will release the buffer after handling the entry
+            ByteBuf serialize = LogEntryBatch.serialize(batch.serialized, batch.size);
+            this.out.appendAsync(serialize)
+                    .whenComplete((entryId, error) -> batchWritten(batch, entryId, error));
+        }
+
+        private void batchWritten(PendingBatch batch, Long entryId, Throwable error) {
+            synchronized (batchLock) {
+                inflightBatches--;
+                if (pendingBatch != null && !writerClosed) {
+                    appendPendingBatch();
+                }
+            }
+            int size = batch.entries.size();
+            pendingAdds.addAndGet(-size);
+            if (error == null) {
+                if (batch.containsApplicationWrites) {
+                    lastApplicationWriteTs = System.currentTimeMillis();
+                }
+                for (int i = 0; i < size; i++) {
+                    batch.results.get(i).complete(new LogSequenceNumber(ledgerId, LogEntryBatch.toOffset(entryId, i, size)));
+                }
+            } else {
+                writeError.set(error);
+                errorOccurredDuringWrite = true;
+                handleBookKeeperFailure(error, batch.entries.get(0));
+                LogNotAvailableException err = new LogNotAvailableException(error);
+                for (CompletableFuture<LogSequenceNumber> res : batch.results) {
+                    res.completeExceptionally(err);
+                }
+            }
+        }
+
+        private CompletableFuture<LogSequenceNumber> writeSingleEntry(LogEntry edit) {
             // BK will release the buffer after handling the entry
             ByteBuf serialize = edit.serializeAsByteBuf();
             pendingAdds.incrementAndGet();
@@ -246,6 +338,21 @@ public class BookkeeperCommitLog extends CommitLog {
         }
 
         public void close() throws LogNotAvailableException {
+            PendingBatch notWritten;
+            synchronized (batchLock) {
+                writerClosed = true;
+                notWritten = pendingBatch;
+                pendingBatch = null;
+                pendingBatchBytes = 0;
+            }
+            if (notWritten != null) {
+                pendingAdds.addAndGet(-notWritten.entries.size());
+                LogNotAvailableException err = new LogNotAvailableException(
+                        new Exception("ledger " + ledgerId + " has been closed, tablespace " + tableSpaceDescription()));
+                for (CompletableFuture<LogSequenceNumber> res : notWritten.results) {
+                    res.completeExceptionally(err);
+                }
+            }
             try {
                 LOGGER.log(Level.INFO, "{0} closing ledger {1}, with LastAddConfirmed={2}, LastAddPushed={3} length={4}, errorOccurred:{5}",
                         new Object[]{tableSpaceDescription(), out.getId(), out.getLastAddConfirmed(), out.getLastAddPushed(), out.getLength(), errorOccurredDuringWrite});
@@ -290,7 +397,7 @@ public class BookkeeperCommitLog extends CommitLog {
         private boolean isWritable() {
             return !errorOccurredDuringWrite
                     && !out.isClosed()
-                    && maxLedgerSizeBytes >= out.getLength();
+                    && maxLedgerSizeBytes >= out.getLength() + pendingBatchBytes;
         }
 
         @Override
@@ -300,6 +407,25 @@ public class BookkeeperCommitLog extends CommitLog {
 
     }
 
+    private static final class PendingBatch {
+
+        private final List<LogEntry> entries = new ArrayList<>();
+        private final List<byte[]> serialized = new ArrayList<>();
+        private final List<CompletableFuture<LogSequenceNumber>> results = new ArrayList<>();
+        private int size;
+        private boolean containsApplicationWrites;
+
+        private void add(LogEntry entry, byte[] data, CompletableFuture<LogSequenceNumber> result) {
+            entries.add(entry);
+            serialized.add(data);
+            results.add(result);
+            size += data.length;
+            if (entry.type != LogEntryType.NOOP) { // do not take into account NOOPs
+                containsApplicationWrites = true;
+            }
+        }
+    }
+
     public BookkeeperCommitLog(
             String tableSpaceUUID, String tableSpaceName, String localNodeId,
             ZookeeperMetadataStorageManager metadataStorageManager, BookKeeper bookkeeper,
@@ -365,6 +491,27 @@ public class BookkeeperCommitLog extends CommitLog {
         this.maxIdleTime = maxIdleTime;
     }
 
+    public int getMaxBatchEntries() {
+        return maxBatchEntries;
+    }
+
+    /**
+     * Max number of LogEntries packed into a single BookKeeper entry, a value
+     * of 1 writes ledgers with the legacy one-LogEntry-per-entry format.
+     * Changes take effect on the next ledger.
+     */
+    public void setMaxBatchEntries(int maxBatchEntries) {
+        this.maxBatchEntries = Math.max(1, Math.min(maxBatchEntries, LogEntryBatch.MAX_ENTRIES_PER_BATCH));
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
     public boolean isWriteLedgerHeader() {
         return writeLedgerHeader;
     }
@@ -619,9 +766,12 @@ public class BookkeeperCommitLog extends CommitLog {
                     throw new LogNotAvailableException("Cannot open ledger " + ledgerId + " (fencing " + fencing + "): " + errorDuringOpen, errorDuringOpen);
                 }
                 try {
+                    boolean batchFormat = LogEntryBatch.isBatchFormat(handle.getLedgerMetadata().getCustomMetadata());
                     long first;
                     if (ledgerId == snapshotSequenceNumber.ledgerId) {
-                        first = snapshotSequenceNumber.offset;
+                        first = batchFormat
+                                ? LogEntryBatch.entryIdFromOffset(snapshotSequenceNumber.offset)
+                                : snapshotSequenceNumber.offset;
                         if (first == -1) {
                             // this can happen if checkpoint  happened while starting to follow a new ledger but actually no entry was ever read
                             LOGGER.log(Level.INFO, "Tablespace " + tableSpaceDescription
@@ -667,21 +817,25 @@ public class BookkeeperCommitLog extends CommitLog {
                             try (LedgerEntries entries = handle.read(start, end);) {
                                 for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
                                     long entryId = entry.getEntryId();
-                                    LogSequenceNumber number = new LogSequenceNumber(ledgerId, entryId);
-                                    LogEntry statusEdit = readLogEntry(entry);
-                                    lastLedgerId = ledgerId;
-                                    currentLedgerId = ledgerId;
-                                    lastSequenceNumber.set(entryId);
-                                    if (number.after(snapshotSequenceNumber)) {
-                                        if (LOGGER.isLoggable(Level.FINEST)) {
-                                            LOGGER.log(Level.FINEST, "rec " + tableSpaceName + " #" + localEntryCount + " {0}, {1}",
-                                                    new Object[]{number, statusEdit});
-                                        }
-                                        consumer.accept(number, statusEdit);
-                                    } else {
-                                        if (LOGGER.isLoggable(Level.FINEST)) {
-                                            LOGGER.log(Level.FINEST, "skip " + tableSpaceName + " #" + localEntryCount + " {0}<{1}, {2}",
-                                                    new Object[]{number, snapshotSequenceNumber, statusEdit});
+                                    List<LogEntry> statusEdits = readLogEntries(entry, batchFormat);
+                                    int size = statusEdits.size();
+                                    for (int i = 0; i < size; i++) {
+                                        LogEntry statusEdit = statusEdits.get(i);
+                                        LogSequenceNumber number = new LogSequenceNumber(ledgerId, toOffset(entryId, i, size, batchFormat));
+                                        lastLedgerId = ledgerId;
+                                        currentLedgerId = ledgerId;
+                                        lastSequenceNumber.set(number.offset);
+                                        if (number.after(snapshotSequenceNumber)) {
+                                            if (LOGGER.isLoggable(Level.FINEST)) {
+                                                LOGGER.log(Level.FINEST, "rec " + tableSpaceName + " #" + localEntryCount + " {0}, {1}",
+                                                        new Object[]{number, statusEdit});
+                                            }
+                                            consumer.accept(number, statusEdit);
+                                        } else {
+                                            if (LOGGER.isLoggable(Level.FINEST)) {
+                                                LOGGER.log(Level.FINEST, "skip " + tableSpaceName + " #" + localEntryCount + " {0}<{1}, {2}",
+                                                        new Object[]{number, snapshotSequenceNumber, statusEdit});
+                                            }
                                         }
                                     }
                                     localEntryCount++;
@@ -694,8 +848,8 @@ public class BookkeeperCommitLog extends CommitLog {
                                 throw new LogNotAvailableException(tableSpaceDescription() + " Read " + localEntryCount + " entries, expected "
                                         + entriesToRead);
                             }
+                            // lastSequenceNumber already points to the last LogEntry of entry 'end'
                             lastLedgerId = ledgerId;
-                            lastSequenceNumber.set(end);
                             long _stop = System.currentTimeMillis();
                             LOGGER.log(Level.INFO, "{4} From entry {0}, to entry {1} ({2} %) read time {3}",
                                     new Object[]{start, end, percent, (_stop - _start) + " ms", tableSpaceDescription});
@@ -838,6 +992,7 @@ public class BookkeeperCommitLog extends CommitLog {
     private final class BKFollowerContext implements FollowerContext {
 
         volatile ReadHandle currentLedger;
+        volatile boolean currentLedgerBatchFormat;
         volatile long nextEntryToRead;
         volatile long ledgerToTail;
 
@@ -856,7 +1011,7 @@ public class BookkeeperCommitLog extends CommitLog {
             // we are alreading tailing the good ledger, but it may not be the same of "currentPosition"
             if (currentLedger != null && currentLedger.getId() == ledgerToTail) {
                 if (currentPosition.ledgerId == ledgerToTail) {
-                    nextEntryToRead = currentPosition.offset + 1;
+                    nextEntryToRead = nextEntryAfter(currentPosition);
                 } else {
                     // not the same ledger of currentPosition, need to read from 0
                     nextEntryToRead = 0;
@@ -903,11 +1058,12 @@ public class BookkeeperCommitLog extends CommitLog {
             if (currentLedger == null) {
                 currentLedger = bookKeeper.openLedgerNoRecovery(ledgerToTail,
                         BookKeeper.DigestType.CRC32C, SHARED_SECRET.getBytes(StandardCharsets.UTF_8));
+                currentLedgerBatchFormat = LogEntryBatch.isBatchFormat(currentLedger.getLedgerMetadata().getCustomMetadata());
                 String ledgerLeader = extractLeaderFromMetadata(currentLedger.getLedgerMetadata().getCustomMetadata());
                 if (LOGGER.isLoggable(Level.FINER)) {
                     LOGGER.log(Level.FINER, "{0} opened direct ledger {1} was created by {2}", new Object[]{tableSpaceDescription(), ledgerToTail, ledgerLeader});
                 }
-                nextEntryToRead = currentPosition.offset + 1;
+                nextEntryToRead = nextEntryAfter(currentPosition);
                 return;
             }
 
@@ -937,6 +1093,7 @@ public class BookkeeperCommitLog extends CommitLog {
             }
             currentLedger = bookKeeper.openLedgerNoRecovery(ledgerToTail,
                     BookKeeper.DigestType.CRC32C, SHARED_SECRET.getBytes(StandardCharsets.UTF_8));
+            currentLedgerBatchFormat = LogEntryBatch.isBatchFormat(currentLedger.getLedgerMetadata().getCustomMetadata());
 
             String ledgerLeader = extractLeaderFromMetadata(currentLedger.getLedgerMetadata().getCustomMetadata());
             LOGGER.log(Level.INFO, "{0} ledger {1} was created by {2}", new Object[]{tableSpaceDescription(), ledgerToTail, ledgerLeader});
@@ -944,6 +1101,15 @@ public class BookkeeperCommitLog extends CommitLog {
             nextEntryToRead = 0;
         }
 
+        private long nextEntryAfter(LogSequenceNumber position) {
+            if (currentLedgerBatchFormat) {
+                // if position is in the middle of a batch we are going to read again
+                // the same entry, acceptEntryForFollower will skip the LogEntries already seen
+                return LogEntryBatch.nextEntryIdFromOffset(position.offset);
+            }
+            return position.offset + 1;
+        }
+
         @Override
         public void close() {
             if (currentLedger != null) {
@@ -1005,7 +1171,7 @@ public class BookkeeperCommitLog extends CommitLog {
                     readLastAddConfirmedAndEntry(nextEntry, LONG_POLL_TIMEOUT, false)) {
                 if (entryAndLac.hasEntry()) {
                     org.apache.bookkeeper.client.api.LedgerEntry e = entryAndLac.getEntry();
-                    boolean canContinue = acceptEntryForFollower(e, consumer);
+                    boolean canContinue = acceptEntryForFollower(e, consumer, lastPosition, fContext.currentLedgerBatchFormat);
                     if (!canContinue) {
                         LOGGER.log(Level.INFO, "exit follower {0}", tableSpaceDescription());
                         return;
@@ -1023,7 +1189,7 @@ public class BookkeeperCommitLog extends CommitLog {
                     }
                     try (LedgerEntries entries = lh.read(startEntry, endEntry)) {
                         for (org.apache.bookkeeper.client.api.LedgerEntry ee : entries) {
-                            acceptEntryForFollower(ee, consumer);
+                            acceptEntryForFollower(ee, consumer, lastPosition, fContext.currentLedgerBatchFormat);
                         }
                     }
                 }
@@ -1050,27 +1216,48 @@ public class BookkeeperCommitLog extends CommitLog {
 
     private boolean acceptEntryForFollower(
             org.apache.bookkeeper.client.api.LedgerEntry e,
-            EntryAcceptor consumer
+            EntryAcceptor consumer,
+            LogSequenceNumber lastPosition,
+            boolean batchFormat
     ) throws Exception {
         long entryId = e.getEntryId();
-        LogEntry statusEdit = readLogEntry(e);
-
-        LogSequenceNumber number = new LogSequenceNumber(e.getLedgerId(), entryId);
-        if (LOGGER.isLoggable(Level.FINER)) {
-            LOGGER.log(Level.FINER, "{0} follow entry {1}", new Object[]{tableSpaceDescription(), number});
-        }
-        if (lastLedgerId == number.ledgerId) {
-            lastSequenceNumber.accumulateAndGet(number.offset, EnsureLongIncrementAccumulator.INSTANCE);
-        } else {
-            lastSequenceNumber.set(number.offset);
+        List<LogEntry> statusEdits = readLogEntries(e, batchFormat);
+        int size = statusEdits.size();
+        for (int i = 0; i < size; i++) {
+            LogSequenceNumber number = new LogSequenceNumber(e.getLedgerId(), toOffset(entryId, i, size, batchFormat));
+            if (!number.after(lastPosition)) {
+                // resuming from the middle of a batch
+                continue;
+            }
+            if (LOGGER.isLoggable(Level.FINER)) {
+                LOGGER.log(Level.FINER, "{0} follow entry {1}", new Object[]{tableSpaceDescription(), number});
+            }
+            if (lastLedgerId == number.ledgerId) {
+                lastSequenceNumber.accumulateAndGet(number.offset, EnsureLongIncrementAccumulator.INSTANCE);
+            } else {
+                lastSequenceNumber.set(number.offset);
+            }
+            lastLedgerId = number.ledgerId;
+            currentLedgerId = number.ledgerId;
+            if (!consumer.accept(number, statusEdits.get(i))) {
+                return false;
+            }
         }
-        lastLedgerId = number.ledgerId;
-        currentLedgerId = number.ledgerId;
-        return consumer.accept(number, statusEdit);
+        return true;
+    }
 
+    private static long toOffset(long entryId, int index, int size, boolean batchFormat) {
+        return batchFormat ? LogEntryBatch.toOffset(entryId, index, size) : entryId;
+    }
+
+    private static List<LogEntry> readLogEntries(org.apache.bookkeeper.client.api.LedgerEntry e, boolean batchFormat) throws IOException {
+        if (batchFormat) {
+            return LogEntryBatch.deserialize(e.getEntryBuffer());
+        }
+        return Collections.singletonList(readLogEntry(e));
     }
 
-    private LogEntry readLogEntry(org.apache.bookkeeper.client.api.LedgerEntry e) throws IOException {
+    private static LogEntry readLogEntry(org.apache.bookkeeper.client.api.LedgerEntry e) throws IOException {
         LogEntry statusEdit;
         try (InputStream entryData = new ByteBufInputStream(e.getEntryBuffer(), false /*
          * releaseOnClose
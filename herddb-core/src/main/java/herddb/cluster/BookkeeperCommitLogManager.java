@@ -28,6 +28,7 @@ import herddb.server.ServerConfiguration;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -63,6 +64,8 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
     private long maxLedgerSizeBytes = 100 * 1024 * 1024 * 1024;
     private long maxIdleTime = 0;
     private long bookkeeperClusterReadyWaitTime = 60_000;
+    private int maxBatchEntries = ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_ENTRIES_DEFAULT;
+    private int maxBatchBytes = ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_SIZE_DEFAULT;
 
     private ConcurrentHashMap<String, BookkeeperCommitLog> activeLogs = new ConcurrentHashMap<>();
 
@@ -207,6 +210,22 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
         this.maxIdleTime = maxIdleTime;
     }
 
+    public int getMaxBatchEntries() {
+        return maxBatchEntries;
+    }
+
+    public void setMaxBatchEntries(int maxBatchEntries) {
+        this.maxBatchEntries = maxBatchEntries;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
     public long getBookkeeperClusterReadyWaitTime() {
         return bookkeeperClusterReadyWaitTime;
     }
@@ -223,6 +242,8 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
         res.setMaxLedgerSizeBytes(maxLedgerSizeBytes);
         res.setLedgersRetentionPeriod(ledgersRetentionPeriod);
         res.setMaxIdleTime(maxIdleTime);
+        res.setMaxBatchEntries(maxBatchEntries);
+        res.setMaxBatchBytes(maxBatchBytes);
         res.setWriteQuorumSize(writeQuorumSize);
         activeLogs.put(tableSpaceUUID, res);
         return res;
@@ -250,6 +271,7 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
                     .withPassword(BookkeeperCommitLog.SHARED_SECRET.getBytes(StandardCharsets.UTF_8))
                     .execute()
                     .get()) {
+                boolean batchFormat = LogEntryBatch.isBatchFormat(lh.getLedgerMetadata().getCustomMetadata());
                 long lastAddConfirmed = lh.readLastAddConfirmed();
                 if (toId < 0) {
                     toId = lastAddConfirmed;
@@ -258,11 +280,21 @@ public class BookkeeperCommitLogManager extends CommitLogManager {
                 for (long id = fromId; id <= toId; id++) {
                     try (LedgerEntries entries = lh.readUnconfirmed(id, id);) {
                         LedgerEntry entry = entries.getEntry(id);
-                        LogEntry lEntry = LogEntry.deserialize(entry.getEntryBytes());
-                        LogEntryWithSequenceNumber e = new LogEntryWithSequenceNumber(
-                                new LogSequenceNumber(ledgerId, id),
-                                lEntry);
-                        consumer.accept(e);
+                        if (batchFormat) {
+                            List<LogEntry> lEntries = LogEntryBatch.deserialize(entry.getEntryBuffer());
+                            int size = lEntries.size();
+                            for (int i = 0; i < size; i++) {
+                                consumer.accept(new LogEntryWithSequenceNumber(
+                                        new LogSequenceNumber(ledgerId, LogEntryBatch.toOffset(id, i, size)),
+                                        lEntries.get(i)));
+                            }
+                        } else {
+                            LogEntry lEntry = LogEntry.deserialize(entry.getEntryBytes());
+                            LogEntryWithSequenceNumber e = new LogEntryWithSequenceNumber(
+                                    new LogSequenceNumber(ledgerId, id),
+                                    lEntry);
+                            consumer.accept(e);
+                        }
                     }
                 }
             }
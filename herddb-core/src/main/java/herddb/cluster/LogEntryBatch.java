@@ -0,0 +1,128 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.cluster;
+
+import herddb.log.LogEntry;
+import herddb.utils.ExtendedDataInputStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Format of ledgers which pack many {@link LogEntry} into a single BookKeeper
+ * entry.
+ * <p>
+ * Ledgers written with this format are marked with a custom metadata key, so
+ * that readers can tell them from ledgers written with one LogEntry per
+ * BookKeeper entry. On such ledgers the offset of a LogSequenceNumber is
+ * (entryId &lt;&lt; {@value #SUBINDEX_BITS}) | subIndex, where the sub index
+ * of the last LogEntry in a batch is always {@link #LAST_SUBINDEX}: this way
+ * offsets are strictly increasing and "offset + 1" of the last LogEntry of a
+ * batch points to the first LogEntry of the next BookKeeper entry.
+ */
+public final class LogEntryBatch {
+
+    static final String FORMAT_METADATA_KEY = "entryformat";
+    static final byte[] FORMAT_BATCH_V1 = "batch-v1".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte VERSION_1 = 1;
+    private static final int HEADER_SIZE = 1 + 4;
+
+    static final int SUBINDEX_BITS = 16;
+    static final int LAST_SUBINDEX = (1 << SUBINDEX_BITS) - 1;
+    public static final int MAX_ENTRIES_PER_BATCH = 1 << SUBINDEX_BITS;
+
+    private LogEntryBatch() {
+    }
+
+    static boolean isBatchFormat(Map<String, byte[]> customMetadata) {
+        return customMetadata != null
+                && Arrays.equals(FORMAT_BATCH_V1, customMetadata.get(FORMAT_METADATA_KEY));
+    }
+
+    /**
+     * Offset of a LogEntry inside a batched BookKeeper entry.
+     *
+     * @param entryId the id of the BookKeeper entry
+     * @param index position of the LogEntry inside the batch
+     * @param size number of LogEntries in the batch
+     * @return the offset to be used in the LogSequenceNumber
+     */
+    static long toOffset(long entryId, int index, int size) {
+        return (entryId << SUBINDEX_BITS) | (LAST_SUBINDEX - (size - 1 - index));
+    }
+
+    static long entryIdFromOffset(long offset) {
+        // arithmetic shift, -1 stays -1
+        return offset >> SUBINDEX_BITS;
+    }
+
+    /**
+     * First BookKeeper entry which may contain LogEntries after the given
+     * offset.
+     */
+    static long nextEntryIdFromOffset(long offset) {
+        return (offset + 1) >> SUBINDEX_BITS;
+    }
+
+    static int estimateSize(int entriesSize) {
+        return HEADER_SIZE + entriesSize;
+    }
+
+    static ByteBuf serialize(List<byte[]> entries, int entriesSize) {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(estimateSize(entriesSize));
+        buffer.writeByte(VERSION_1);
+        buffer.writeInt(entries.size());
+        for (byte[] entry : entries) {
+            // LogEntry is self delimited, no need to write the length
+            buffer.writeBytes(entry);
+        }
+        return buffer;
+    }
+
+    static List<LogEntry> deserialize(ByteBuf buffer) throws IOException {
+        try (InputStream entryData = new ByteBufInputStream(buffer, false /*
+         * releaseOnClose
+         */);
+             ExtendedDataInputStream in = new ExtendedDataInputStream(entryData)) {
+            byte version = in.readByte();
+            if (version != VERSION_1) {
+                throw new IOException("unsupported batch version " + version);
+            }
+            int size = in.readInt();
+            if (size <= 0 || size > MAX_ENTRIES_PER_BATCH) {
+                throw new IOException("bad batch size " + size);
+            }
+            List<LogEntry> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(LogEntry.deserialize(in));
+            }
+            return result;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
 import herddb.model.ColumnsList;
+import herddb.model.Index;
 import herddb.model.Record;
 import herddb.model.StatementExecutionException;
 import herddb.model.Table;
@@ -766,6 +767,63 @@ public final class RecordSerializer {
         return CompareResult.NULL;
     }
 
+    /**
+     * Reads INTEGER, LONG and TIMESTAMP columns from the value of a record in
+     * a single pass, values are not boxed.
+     *
+     * @param value the value of the record
+     * @param serialPositions serial positions of the columns, at most 64
+     * @param values receives the value of each column, in the same order of
+     * serialPositions
+     * @return a mask with the bit of each column which is not null
+     * @throws IOException
+     */
+    public static long readRawNumericValues(Bytes value, int[] serialPositions, long[] values) throws IOException {
+        long notNull = 0;
+        int remaining = serialPositions.length;
+        try (ByteArrayCursor din = value.newCursor()) {
+            while (remaining > 0 && !din.isEof()) {
+                int serialPosition = din.readVIntNoEOFException();
+                if (din.isEof()) {
+                    break;
+                }
+                int index = -1;
+                for (int i = 0; i < serialPositions.length; i++) {
+                    if (serialPositions[i] == serialPosition) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index < 0) {
+                    // we have to deserialize always the value, even the column is no more present
+                    skipTypeAndValue(din);
+                    continue;
+                }
+                remaining--;
+                int type = din.readVInt();
+                switch (type) {
+                    case ColumnTypes.INTEGER:
+                    case ColumnTypes.NOTNULL_INTEGER:
+                        values[index] = din.readInt();
+                        notNull |= 1L << index;
+                        break;
+                    case ColumnTypes.LONG:
+                    case ColumnTypes.NOTNULL_LONG:
+                    case ColumnTypes.TIMESTAMP:
+                    case ColumnTypes.NOTNULL_TIMESTAMP:
+                        values[index] = din.readLong();
+                        notNull |= 1L << index;
+                        break;
+                    case ColumnTypes.NULL:
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad column type " + type + ", not a numeric value");
+                }
+            }
+        }
+        return notNull;
+    }
+
     static Object accessRawDataFromPrimaryKey(String property, Bytes key, Table table) throws IOException {
         if (table.primaryKey.length == 1) {
             return deserialize(key, table.getColumn(property).type);
@@ -1036,6 +1094,60 @@ public final class RecordSerializer {
         return value.toByteArrayNoCopy();
     }
 
+    /**
+     * Builds the entry stored by a secondary index with INCLUDE columns: the
+     * primary key of the record followed by a value, in the format of the
+     * values of the table, which contains only the indexed and the included
+     * columns.
+     *
+     * @see #deserializeIndexEntryKey(herddb.utils.Bytes)
+     * @see #deserializeIndexEntry(herddb.utils.Bytes)
+     */
+    public static Bytes serializeIndexEntry(Bytes key, DataAccessor record, Table table, Index index) {
+        VisibleByteArrayOutputStream entry = new VisibleByteArrayOutputStream(Integer.BYTES + key.getLength() + 64);
+        try (ExtendedDataOutputStream doo = new ExtendedDataOutputStream(entry)) {
+            doo.writeInt(key.getLength());
+            doo.write(key.getBuffer(), key.getOffset(), key.getLength());
+            for (Column c : table.columns) {
+                if (!table.isPrimaryKeyColumn(c.name) && index.isColumnStoredInIndex(c.name)) {
+                    Object v = record.get(c.name);
+                    if (v != null) {
+                        doo.writeVInt(c.serialPosition);
+                        serializeTypeAndValue(v, c.type, doo);
+                    }
+                }
+            }
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+        return Bytes.from_array(entry.toByteArrayNoCopy());
+    }
+
+    /**
+     * Primary key of an entry built by
+     * {@link #serializeIndexEntry(herddb.utils.Bytes, herddb.utils.DataAccessor, herddb.model.Table, herddb.model.Index)},
+     * the buffer of the entry is shared
+     */
+    public static Bytes deserializeIndexEntryKey(Bytes entry) {
+        byte[] buffer = entry.getBuffer();
+        int offset = entry.getOffset();
+        return Bytes.from_array(buffer, offset + Integer.BYTES, Bytes.toInt(buffer, offset));
+    }
+
+    /**
+     * Rebuilds a record from an entry built by
+     * {@link #serializeIndexEntry(herddb.utils.Bytes, herddb.utils.DataAccessor, herddb.model.Table, herddb.model.Index)},
+     * every column which is not stored in the index is null
+     */
+    public static Record deserializeIndexEntry(Bytes entry) {
+        byte[] buffer = entry.getBuffer();
+        int offset = entry.getOffset();
+        int keyLength = Bytes.toInt(buffer, offset);
+        int valueOffset = offset + Integer.BYTES + keyLength;
+        return new Record(Bytes.from_array(buffer, offset + Integer.BYTES, keyLength),
+                Bytes.from_array(buffer, valueOffset, entry.getLength() - Integer.BYTES - keyLength));
+    }
+
     public static Record toRecord(Map<String, Object> record, Table table) {
         return new Record(serializePrimaryKey(record, table, table.primaryKey),
                 serializeValue(record, table), record);
@@ -19,11 +19,13 @@
  */
 package herddb.core;
 
+import herddb.codec.RecordSerializer;
 import herddb.index.IndexOperation;
 import herddb.index.KeyToPageIndex;
 import herddb.log.CommitLog;
 import herddb.log.LogSequenceNumber;
 import herddb.model.Index;
+import herddb.model.Record;
 import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.model.TableContext;
@@ -31,6 +33,7 @@ import herddb.model.Transaction;
 import herddb.storage.DataStorageManager;
 import herddb.storage.DataStorageManagerException;
 import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
 import herddb.utils.ILocalLockManager;
 import herddb.utils.LocalLockManager;
 import java.util.AbstractMap.SimpleImmutableEntry;
@@ -56,6 +59,7 @@ public abstract class AbstractIndexManager implements AutoCloseable {
     protected long createdInTransaction;
     private final boolean unique;
     private final ILocalLockManager lockManager;
+    private volatile OnlineIndexBuild onlineBuild;
 
     public AbstractIndexManager(Index index, AbstractTableManager tableManager,
                                              DataStorageManager dataStorageManager, String tableSpaceUUID,
@@ -187,12 +191,74 @@ public abstract class AbstractIndexManager implements AutoCloseable {
         }).filter(p -> p != null);
     }
 
+    /**
+     * Tells if the index is able to perform {@link #coveringScanner(herddb.index.IndexOperation, herddb.model.StatementEvaluationContext, herddb.model.TableContext)
+     * }, that is it stores the values of the INCLUDE columns of its definition next to the primary keys
+     *
+     * @return
+     */
+    public boolean isCoveringScanSupported() {
+        return false;
+    }
+
+    /**
+     * Like {@link #scanner(herddb.index.IndexOperation, herddb.model.StatementEvaluationContext, herddb.model.TableContext)
+     * } but the index returns records built from the values it stores, without accessing the table: only the primary key, the indexed
+     * columns and the INCLUDE columns of the index are set, every other column is null.
+     *
+     * @param operation
+     * @param context
+     * @param tableContext
+     * @return a stream on records of the table which match the index
+     * @throws StatementExecutionException
+     */
+    public Stream<Record> coveringScanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        throw new UnsupportedOperationException("index " + index.name + " does not support covering scans");
+    }
+
+    /**
+     * Entry to be stored by indexes supporting covering scans for a record: the primary key itself or, if the index has INCLUDE
+     * columns, the primary key followed by the values of the indexed and included columns
+     */
+    protected final Bytes indexEntry(Bytes key, DataAccessor values) {
+        if (!index.hasIncludedColumns()) {
+            return key;
+        }
+        return RecordSerializer.serializeIndexEntry(key, values, tableManager.getTable(), index);
+    }
+
+    /**
+     * Primary key of an entry built by {@link #indexEntry(herddb.utils.Bytes, herddb.utils.DataAccessor) }
+     */
+    protected final Bytes primaryKeyOfEntry(Bytes entry) {
+        if (!index.hasIncludedColumns()) {
+            return entry;
+        }
+        return RecordSerializer.deserializeIndexEntryKey(entry);
+    }
+
     public abstract void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded) throws DataStorageManagerException;
 
     public abstract void recordInserted(Bytes key, Bytes indexKey) throws DataStorageManagerException;
 
     public abstract void recordDeleted(Bytes key, Bytes indexKey) throws DataStorageManagerException;
 
+    /**
+     * Like {@link #recordUpdated(herddb.utils.Bytes, herddb.utils.Bytes, herddb.utils.Bytes) } but passing the whole record, indexes
+     * which store INCLUDE columns need to be notified even if the indexed columns did not change
+     */
+    public void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded, DataAccessor previousValues, DataAccessor newValues) throws DataStorageManagerException {
+        recordUpdated(key, indexKeyRemoved, indexKeyAdded);
+    }
+
+    public void recordInserted(Bytes key, Bytes indexKey, DataAccessor values) throws DataStorageManagerException {
+        recordInserted(key, indexKey);
+    }
+
+    public void recordDeleted(Bytes key, Bytes indexKey, DataAccessor values) throws DataStorageManagerException {
+        recordDeleted(key, indexKey);
+    }
+
     /**
      * Drop the index from persist storage
      *
@@ -240,7 +306,29 @@ public abstract class AbstractIndexManager implements AutoCloseable {
     }
 
     public final boolean isAvailable() {
-        return createdInTransaction == 0;
+        return createdInTransaction == 0 && onlineBuild == null;
+    }
+
+    /**
+     * The build of the index which is in progress, null if the index is complete
+     */
+    public final OnlineIndexBuild getOnlineBuild() {
+        return onlineBuild;
+    }
+
+    final void setOnlineBuild(OnlineIndexBuild onlineBuild) {
+        this.onlineBuild = onlineBuild;
+    }
+
+    /**
+     * Notifies the index that the record is going to be changed, this must be
+     * called while holding the write lock on the key
+     */
+    final void recordChanging(Bytes key) {
+        OnlineIndexBuild build = onlineBuild;
+        if (build != null) {
+            build.recordChanged(key);
+        }
     }
 
     /**
@@ -21,6 +21,7 @@
 package herddb.core;
 
 import herddb.core.stats.TableManagerStats;
+import herddb.data.consistency.TableDigest;
 import herddb.index.KeyToPageIndex;
 import herddb.log.CommitLogResult;
 import herddb.log.LogEntry;
@@ -41,6 +42,7 @@ import herddb.storage.FullTableScanConsumer;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -118,6 +120,13 @@ public interface AbstractTableManager extends AutoCloseable {
 
     void apply(CommitLogResult pos, LogEntry entry, boolean recovery) throws DataStorageManagerException;
 
+    /**
+     * Hint that the given entry is going to be applied soon, the
+     * implementation may load in memory the data it is going to touch.
+     */
+    default void prefetchForApply(LogEntry entry) throws DataStorageManagerException {
+    }
+
     default StatementExecutionResult executeStatement(Statement statement, Transaction transaction, StatementEvaluationContext context) throws StatementExecutionException {
         CompletableFuture<StatementExecutionResult> res = executeStatementAsync(statement, transaction, context);
         try {
@@ -147,6 +156,26 @@ public interface AbstractTableManager extends AutoCloseable {
 
     void scanForIndexRebuild(Consumer<Record> records) throws DataStorageManagerException;
 
+    /**
+     * Visits every record of the table, the consumer may be called
+     * concurrently from many threads and records are not visited in any
+     * particular order.
+     */
+    default void parallelScan(Consumer<Record> records, Executor executor) throws DataStorageManagerException {
+        scanForIndexRebuild(records);
+    }
+
+    /**
+     * Digest of the contents of the table, maintained incrementally. Parts of
+     * the digest which are not up to date are computed again, so this must not
+     * run concurrently with changes to the table.
+     *
+     * @return the digest, or null if the table does not maintain it
+     */
+    default TableDigest getTableDigest(Executor executor) throws DataStorageManagerException {
+        return null;
+    }
+
     default void rebuildForeignKeyReferences(Table table) {
     }
 
@@ -25,6 +25,8 @@ import com.google.common.util.concurrent.MoreExecutors;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import herddb.client.ClientConfiguration;
 import herddb.core.stats.ConnectionsInfoProvider;
+import herddb.core.stats.QueryStats;
+import herddb.core.stats.QueryStatsDataScanner;
 import herddb.file.FileMetadataStorageManager;
 import herddb.jmx.DBManagerStatsMXBean;
 import herddb.jmx.JMXUtils;
@@ -59,9 +61,15 @@ import herddb.model.TableSpaceDoesNotExistException;
 import herddb.model.TableSpaceReplicaState;
 import herddb.model.TransactionContext;
 import herddb.model.commands.AlterTableSpaceStatement;
+import herddb.model.commands.AlterTableStatement;
+import herddb.model.commands.CreateIndexStatement;
 import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.commands.CreateTableStatement;
+import herddb.model.commands.DropIndexStatement;
 import herddb.model.commands.DropTableSpaceStatement;
+import herddb.model.commands.DropTableStatement;
 import herddb.model.commands.GetStatement;
+import herddb.model.commands.ResetQueryStatsStatement;
 import herddb.model.commands.ScanStatement;
 import herddb.model.commands.TableConsistencyCheckStatement;
 import herddb.model.commands.TableSpaceConsistencyCheckStatement;
@@ -159,6 +167,7 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
     private double maxDataUsedMemoryPercentage = ServerConfiguration.PROPERTY_MAX_DATA_MEMORY_PERCENTAGE_DEFAULT;
     private double maxIndexUsedMemoryPercentage = ServerConfiguration.PROPERTY_MAX_INDEX_MEMORY_PERCENTAGE_DEFAULT;
     private double maxPKUsedMemoryPercentage = ServerConfiguration.PROPERTY_MAX_PK_MEMORY_PERCENTAGE_DEFAULT;
+    private final List<MemoryQuota> memoryQuotas;
 
     private boolean clearAtBoot = false;
     private boolean haltOnTableSpaceBootError = ServerConfiguration.PROPERTY_HALT_ON_TABLESPACE_BOOT_ERROR_DEAULT;
@@ -166,7 +175,11 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
     private final AtomicLong lastCheckPointTs = new AtomicLong(System.currentTimeMillis());
 
     private final RunningStatementsStats runningStatements;
+    private final QueryStats queryStats;
     private final ExecutorService followersThreadPool;
+    private final ExecutorService followerApplyThreadPool;
+    private final int followerApplyMaxPendingEntries;
+    private final ExecutorService tableScanThreadPool;
 
     public DBManager(
             String nodeId, MetadataStorageManager metadataStorageManager, DataStorageManager dataStorageManager,
@@ -205,6 +218,34 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         // todo: make it configurable, cached have some pitfalls under load
         this.followersThreadPool = Executors.newCachedThreadPool((Runnable r) -> new FastThreadLocalThread(
                 r, "herddb-worker-" + (hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort()) + "-" + r));
+        int followerApplyThreads = configuration.getInt(ServerConfiguration.PROPERTY_FOLLOWER_APPLY_THREADS,
+                ServerConfiguration.PROPERTY_FOLLOWER_APPLY_THREADS_DEFAULT);
+        if (followerApplyThreads <= 0) {
+            this.followerApplyThreadPool = null;
+        } else {
+            this.followerApplyThreadPool = Executors.newFixedThreadPool(followerApplyThreads, new ThreadFactory() {
+                private final AtomicLong count = new AtomicLong();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final String marker = hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort();
+                    return new FastThreadLocalThread(r, "herddb-follower-apply-" + marker + "-" + count.incrementAndGet());
+                }
+            });
+        }
+        this.followerApplyMaxPendingEntries = configuration.getInt(ServerConfiguration.PROPERTY_FOLLOWER_APPLY_MAX_PENDING_ENTRIES,
+                ServerConfiguration.PROPERTY_FOLLOWER_APPLY_MAX_PENDING_ENTRIES_DEFAULT);
+        int tableScanThreads = Math.max(1, configuration.getInt(ServerConfiguration.PROPERTY_TABLE_SCAN_THREADS,
+                ServerConfiguration.PROPERTY_TABLE_SCAN_THREADS_DEFAULT));
+        this.tableScanThreadPool = Executors.newFixedThreadPool(tableScanThreads, new ThreadFactory() {
+            private final AtomicLong count = new AtomicLong();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final String marker = hostData == null ? "local" : hostData.getHost() + ":" + hostData.getPort();
+                return new FastThreadLocalThread(r, "herddb-table-scan-" + marker + "-" + count.incrementAndGet());
+            }
+        });
         this.recordSetFactory = dataStorageManager.createRecordSetFactory();
         this.metadataStorageManager = metadataStorageManager;
         this.dataStorageManager = dataStorageManager;
@@ -215,6 +256,8 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             this.mainStatsLogger = statsLogger;
         }
         this.runningStatements = new RunningStatementsStats(this.mainStatsLogger);
+        this.queryStats = new QueryStats(configuration.getInt(ServerConfiguration.PROPERTY_QUERYSTATS_MAXENTRIES,
+                ServerConfiguration.PROPERTY_QUERYSTATS_MAXENTRIES_DEFAULT));
         this.nodeId = nodeId;
         this.virtualTableSpaceId = makeVirtualTableSpaceManagerId(nodeId);
         this.hostData = hostData != null ? hostData : new ServerHostData("localhost", 7000, "", false, new HashMap<>());
@@ -293,6 +336,10 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             maxPKUsedMemoryPercentage = ServerConfiguration.PROPERTY_MAX_PK_MEMORY_PERCENTAGE_DEFAULT;
         }
 
+        this.memoryQuotas = MemoryQuota.parse(configuration.getString(
+                ServerConfiguration.PROPERTY_MEMORY_QUOTAS,
+                ServerConfiguration.PROPERTY_MEMORY_QUOTAS_DEFAULT));
+
     }
 
     public boolean isHaltOnTableSpaceBootError() {
@@ -420,6 +467,26 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             return planner.getCacheMisses();
         }
 
+        @Override
+        public long getCachePlansEvictionsBySize() {
+            return planner.getCacheEvictions(PlansCache.EvictionCause.SIZE);
+        }
+
+        @Override
+        public long getCachePlansEvictionsByTableDDL() {
+            return planner.getCacheEvictions(PlansCache.EvictionCause.TABLE);
+        }
+
+        @Override
+        public long getCachePlansEvictionsByTableSpaceDDL() {
+            return planner.getCacheEvictions(PlansCache.EvictionCause.TABLESPACE);
+        }
+
+        @Override
+        public long getCachePlansEvictionsByClear() {
+            return planner.getCacheEvictions(PlansCache.EvictionCause.CLEAR);
+        }
+
     };
 
     /**
@@ -475,7 +542,7 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             maxPKUsedMemory = pk;
         }
 
-        memoryManager = new MemoryManager(maxDataUsedMemory, maxIndexUsedMemory, maxPKUsedMemory, maxLogicalPageSize);
+        memoryManager = new MemoryManager(maxDataUsedMemory, maxIndexUsedMemory, maxPKUsedMemory, maxLogicalPageSize, memoryQuotas);
 
         metadataStorageManager.start();
 
@@ -743,6 +810,10 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             }
             return CompletableFuture.completedFuture(dropTableSpace((DropTableSpaceStatement) statement));
         }
+        if (statement instanceof ResetQueryStatsStatement) {
+            queryStats.reset();
+            return CompletableFuture.completedFuture(new DDLStatementExecutionResult(transactionContext.transactionId));
+        }
         if (statement instanceof TableSpaceConsistencyCheckStatement) {
             if (transactionContext.transactionId > 0) {
                 return Futures.exception(new StatementExecutionException("TABLESPACECONSISTENCYCHECK cannot be issue inside a transaction"));
@@ -757,19 +828,57 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         if (errorIfNotLeader && !manager.isLeader()) {
             return Futures.exception(new NotLeaderException("node " + nodeId + " is not leader for tableSpace " + tableSpace));
         }
-        CompletableFuture<StatementExecutionResult> res = manager.executeStatementAsync(statement, context, transactionContext);
         if (statement instanceof DDLStatement) {
+            // the table of the index is not known after DROP INDEX
+            String table = dependentTableOfDDL((DDLStatement) statement, manager);
+            CompletableFuture<StatementExecutionResult> res = manager.executeStatementAsync(statement, context, transactionContext);
             res.whenComplete((s, err) -> {
-                planner.clearCache();
+                invalidatePlans((DDLStatement) statement, table);
             });
-            planner.clearCache();
+            invalidatePlans((DDLStatement) statement, table);
+            return res;
         }
+        CompletableFuture<StatementExecutionResult> res = manager.executeStatementAsync(statement, context, transactionContext);
 //        res.whenComplete((s, err) -> {
 //            LOGGER.log(Level.SEVERE, "completed " + statement + ": " + s, err);
 //        });
         return res;
     }
 
+    /**
+     * Table whose plans are affected by a DDL statement, null if it is not
+     * known
+     */
+    private static String dependentTableOfDDL(DDLStatement statement, TableSpaceManager manager) {
+        if (statement instanceof CreateTableStatement) {
+            return ((CreateTableStatement) statement).getTableDefinition().name;
+        } else if (statement instanceof DropTableStatement) {
+            return ((DropTableStatement) statement).getTable();
+        } else if (statement instanceof AlterTableStatement) {
+            return ((AlterTableStatement) statement).getTable();
+        } else if (statement instanceof CreateIndexStatement) {
+            return ((CreateIndexStatement) statement).getIndexDefinition().table;
+        } else if (statement instanceof DropIndexStatement) {
+            AbstractIndexManager index = manager.getIndexManager(((DropIndexStatement) statement).getIndexName());
+            return index != null ? index.getIndex().table : null;
+        }
+        return null;
+    }
+
+    private void invalidatePlans(DDLStatement statement, String table) {
+        if (table == null) {
+            planner.invalidateTableSpace(statement.getTableSpace());
+            return;
+        }
+        planner.invalidateTable(statement.getTableSpace(), table);
+        if (statement instanceof AlterTableStatement) {
+            String newTableName = ((AlterTableStatement) statement).getNewTableName();
+            if (newTableName != null) {
+                planner.invalidateTable(statement.getTableSpace(), newTableName);
+            }
+        }
+    }
+
     /**
      * Executes a single lookup
      *
@@ -803,6 +912,12 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
     }
 
     public CompletableFuture<StatementExecutionResult> executePlanAsync(ExecutionPlan plan, StatementEvaluationContext context, TransactionContext transactionContext) {
+        QueryStats.Entry stats = queryStats.getEntry(plan, context);
+        long startNanos = stats != null ? System.nanoTime() : 0;
+        // the context may be shared with the statement which needs this plan
+        long startRowsScanned = context.getRowsScanned();
+        long startPagesLoaded = context.getPagesLoaded();
+        long startLockWaits = context.getLockWaits();
         try {
             context.setManager(this);
             plan.validateContext(context);
@@ -810,21 +925,49 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
                 DataScanner result = scan((ScanStatement) plan.mainStatement, context, transactionContext);
                 // transction can be auto generated during the scan
                 transactionContext = new TransactionContext(result.getTransactionId());
+                if (stats != null) {
+                    result = new QueryStatsDataScanner(result, stats, context,
+                            startNanos, startRowsScanned, startPagesLoaded, startLockWaits);
+                }
                 return CompletableFuture
                         .completedFuture(new ScanResult(transactionContext.transactionId, result));
 
             } else {
-                return executeStatementAsync(plan.mainStatement, context, transactionContext);
+                CompletableFuture<StatementExecutionResult> res = executeStatementAsync(plan.mainStatement, context, transactionContext);
+                if (stats != null) {
+                    res.whenComplete((result, error) -> {
+                        long rows = 0;
+                        if (result instanceof DMLStatementExecutionResult) {
+                            rows = ((DMLStatementExecutionResult) result).getUpdateCount();
+                        } else if (result instanceof GetResult && ((GetResult) result).found()) {
+                            rows = 1;
+                        }
+                        stats.record(System.nanoTime() - startNanos, rows,
+                                context.getRowsScanned() - startRowsScanned,
+                                context.getPagesLoaded() - startPagesLoaded,
+                                context.getLockWaits() - startLockWaits,
+                                error != null);
+                    });
+                }
+                return res;
             }
         } catch (herddb.model.NotLeaderException err) {
             LOGGER.log(Level.INFO, "not-leader", err);
+            recordFailure(stats, startNanos);
             return Futures.exception(err);
         } catch (Throwable err) {
             LOGGER.log(Level.SEVERE, "uncaught error", err);
+            recordFailure(stats, startNanos);
             return Futures.exception(err);
         }
     }
 
+    private static void recordFailure(QueryStats.Entry stats, long startNanos) {
+        if (stats != null) {
+            stats.record(System.nanoTime() - startNanos, 0, 0, 0, 0, true);
+        }
+    }
+
     /**
      * Internal method used to execute simple data accesses, like foreign key checks.
      */
@@ -944,6 +1087,10 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
             ignore.printStackTrace();
         }
         followersThreadPool.shutdownNow();
+        if (followerApplyThreadPool != null) {
+            followerApplyThreadPool.shutdownNow();
+        }
+        tableScanThreadPool.shutdownNow();
 
         if (serverConfiguration.getBoolean(ServerConfiguration.PROPERTY_JMX_ENABLE, ServerConfiguration.PROPERTY_JMX_ENABLE_DEFAULT)) {
             JMXUtils.unregisterDBManagerStatsMXBean();
@@ -1504,10 +1651,33 @@ public class DBManager implements AutoCloseable, MetadataChangeListener {
         return runningStatements;
     }
 
+    public QueryStats getQueryStats() {
+        return queryStats;
+    }
+
     public ExecutorService getCallbacksExecutor() {
         return callbacksExecutor;
     }
 
+    /**
+     * Executor for the parallel apply of DML on followers, null if disabled
+     */
+    ExecutorService getFollowerApplyExecutor() {
+        return followerApplyThreadPool;
+    }
+
+    int getFollowerApplyMaxPendingEntries() {
+        return followerApplyMaxPendingEntries;
+    }
+
+    /**
+     * Executor for the tasks which read the pages of a table during
+     * background scans, they may block on page reads and on row locks
+     */
+    public ExecutorService getTableScanExecutor() {
+        return tableScanThreadPool;
+    }
+
     public ServerSidePreparedStatementCache getPreparedStatementsCache() {
         return preparedStatementsCache;
     }
@@ -58,6 +58,9 @@ public final class DataPage extends Page<TableManager> {
     public final long maxSize;
     public final boolean immutable;
 
+    /**
+     * Records of the page, immutable pages loaded from the storage use a {@link RecordSlab}
+     */
     private final Map<Bytes, Record> data;
 
     private final AtomicLong usedMemory;
@@ -94,6 +97,10 @@ public final class DataPage extends Page<TableManager> {
      * Checks on immutable pages are faster (they not have to check volatile writable flag and lock it
      * before checking).
      * </p>
+     * <p>
+     * The immutable version takes over the knowledge of the page replacement policy, so that hits and hotness
+     * are still tracked once the page has been replaced in memory.
+     * </p>
      *
      * @return immutable data page version
      */
@@ -107,7 +114,9 @@ public final class DataPage extends Page<TableManager> {
             throw new IllegalStateException("page " + pageId + " cannot be converted to immutable because still writable!");
         }
 
-        return new DataPage(owner, pageId, maxSize, usedMemory.get(), data, true);
+        final DataPage immutablePage = new DataPage(owner, pageId, maxSize, usedMemory.get(), data, true);
+        immutablePage.takeOverMetadata(this);
+        return immutablePage;
 
     }
 
@@ -248,6 +257,10 @@ public final class DataPage extends Page<TableManager> {
     }
 
     void flushRecordsCache() {
+        if (data instanceof RecordSlab) {
+            // records are not retained
+            return;
+        }
         data.values().forEach(r -> r.clearCache());
     }
 
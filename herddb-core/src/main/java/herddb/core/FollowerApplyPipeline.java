@@ -0,0 +1,306 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.log.CommitLogResult;
+import herddb.log.LogEntry;
+import herddb.log.LogEntryType;
+import herddb.log.LogSequenceNumber;
+import herddb.storage.DataStorageManagerException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+
+/**
+ * Applies on a follower the entries read from the log of the leader.
+ * <p>
+ * DML entries (INSERT, UPDATE and DELETE) are queued on a lane per table, and
+ * lanes of different tables are executed in parallel on the given executor.
+ * Every other entry (transaction boundaries, DDL, NOOP...) is a barrier: it
+ * waits for all the queued DML and then it is applied on the follower thread.
+ * This way entries of the same table are applied in log order, and
+ * transactions and DDLs see exactly the same state as with a serial apply.
+ * <p>
+ * DML inside a transaction only records the change in the {@link
+ * herddb.model.Transaction}, which is not thread safe: these entries are
+ * applied on the follower thread, as BEGIN and COMMIT, without waiting for the
+ * lanes.
+ * <p>
+ * While a lane has a backlog the data page touched by the next UPDATE/DELETE
+ * is loaded in advance, so that the lane does not have to wait for it.
+ */
+final class FollowerApplyPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(FollowerApplyPipeline.class.getName());
+
+    private final TableSpaceManager tableSpaceManager;
+    private final ExecutorService executor;
+    private final int maxPendingEntries;
+    private final OpStatsLogger applyLagStats;
+
+    // only accessed by the follower thread
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private LogSequenceNumber lastDispatched;
+    private int entriesInRound;
+
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private final Object pendingEntriesLock = new Object();
+    private volatile long lagMillis;
+
+    FollowerApplyPipeline(
+            TableSpaceManager tableSpaceManager, ExecutorService executor,
+            int maxPendingEntries, OpStatsLogger applyLagStats
+    ) {
+        this.tableSpaceManager = tableSpaceManager;
+        this.executor = executor;
+        this.maxPendingEntries = Math.max(1, maxPendingEntries);
+        this.applyLagStats = applyLagStats;
+    }
+
+    /**
+     * Number of entries received from the log and not applied yet
+     */
+    int getPendingEntries() {
+        return pendingEntries.get();
+    }
+
+    /**
+     * Time elapsed between the write on the leader and the apply on this node
+     * of the last applied entry, zero if the follower is not receiving entries
+     */
+    long getLagMillis() {
+        return lagMillis;
+    }
+
+    void accept(LogSequenceNumber num, LogEntry entry) throws Exception {
+        checkError();
+        entriesInRound++;
+        AbstractTableManager tableManager = null;
+        if (executor != null && isDML(entry)) {
+            tableManager = tableSpaceManager.getTableManager(entry.tableName);
+        }
+        if (tableManager == null) {
+            drain();
+            tableSpaceManager.apply(new CommitLogResult(num, false, true), entry, false);
+            entryApplied(entry);
+            return;
+        }
+        if (entry.transactionId > 0) {
+            tableSpaceManager.applyOnTable(tableManager, new CommitLogResult(num, false, true), entry, false);
+            lastDispatched = num;
+            entryApplied(entry);
+            return;
+        }
+        waitForCapacity();
+        Lane lane = lanes.get(entry.tableName);
+        if (lane == null || lane.tableManager != tableManager) {
+            // the table has been dropped and created again, the old lane is idle
+            // because DDLs are barriers
+            lane = new Lane(tableManager);
+            lanes.put(entry.tableName, lane);
+        }
+        pendingEntries.incrementAndGet();
+        lastDispatched = num;
+        lane.add(new CommitLogResult(num, false, true), entry);
+    }
+
+    /**
+     * Waits for all the entries dispatched during the last round of
+     * followTheLeader.
+     */
+    void roundFinished() throws Exception {
+        drain();
+        if (entriesInRound == 0) {
+            lagMillis = 0;
+        }
+        entriesInRound = 0;
+    }
+
+    /**
+     * Waits for pending entries, without reporting errors, this is to be
+     * called before releasing the tablespace lock on any exit path.
+     */
+    void close() {
+        try {
+            synchronized (pendingEntriesLock) {
+                while (pendingEntries.get() > 0) {
+                    pendingEntriesLock.wait();
+                }
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+        lanes.clear();
+    }
+
+    private void drain() throws Exception {
+        synchronized (pendingEntriesLock) {
+            while (pendingEntries.get() > 0) {
+                pendingEntriesLock.wait();
+            }
+        }
+        checkError();
+        if (lastDispatched != null) {
+            tableSpaceManager.followerEntriesApplied(lastDispatched);
+            lastDispatched = null;
+        }
+    }
+
+    private void waitForCapacity() throws InterruptedException {
+        synchronized (pendingEntriesLock) {
+            while (pendingEntries.get() >= maxPendingEntries) {
+                pendingEntriesLock.wait();
+            }
+        }
+    }
+
+    private void checkError() throws DataStorageManagerException {
+        Throwable err = error.get();
+        if (err != null) {
+            throw new DataStorageManagerException("follower apply failed on tablespace "
+                    + tableSpaceManager.getTableSpaceName(), err);
+        }
+    }
+
+    private void entryApplied(LogEntry entry) {
+        long lag = Math.max(0, System.currentTimeMillis() - entry.timestamp);
+        lagMillis = lag;
+        applyLagStats.registerSuccessfulEvent(lag, TimeUnit.MILLISECONDS);
+    }
+
+    private void entryDone() {
+        int remaining = pendingEntries.decrementAndGet();
+        if (remaining == 0 || remaining == maxPendingEntries - 1) {
+            synchronized (pendingEntriesLock) {
+                pendingEntriesLock.notifyAll();
+            }
+        }
+    }
+
+    private static boolean isDML(LogEntry entry) {
+        switch (entry.type) {
+            case LogEntryType.INSERT:
+            case LogEntryType.UPDATE:
+            case LogEntryType.DELETE:
+                return entry.tableName != null;
+            default:
+                return false;
+        }
+    }
+
+    private static final class PendingEntry {
+
+        private final CommitLogResult position;
+        private final LogEntry entry;
+
+        private PendingEntry(CommitLogResult position, LogEntry entry) {
+            this.position = position;
+            this.entry = entry;
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final AbstractTableManager tableManager;
+        // guarded by this
+        private final ArrayDeque<PendingEntry> queue = new ArrayDeque<>();
+        private boolean running;
+
+        private Lane(AbstractTableManager tableManager) {
+            this.tableManager = tableManager;
+        }
+
+        private void add(CommitLogResult position, LogEntry entry) {
+            boolean schedule;
+            synchronized (this) {
+                queue.add(new PendingEntry(position, entry));
+                schedule = !running;
+                running = true;
+            }
+            try {
+                if (schedule) {
+                    executor.execute(this);
+                } else if (entry.type != LogEntryType.INSERT) {
+                    // the lane is busy, load the page while it is working on previous entries
+                    executor.execute(() -> prefetch(entry));
+                }
+            } catch (RejectedExecutionException err) {
+                if (schedule) {
+                    // the server is shutting down, nobody will run this lane
+                    error.compareAndSet(null, err);
+                    int count;
+                    synchronized (this) {
+                        count = queue.size();
+                        queue.clear();
+                        running = false;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        entryDone();
+                    }
+                }
+            }
+        }
+
+        private void prefetch(LogEntry entry) {
+            try {
+                tableManager.prefetchForApply(entry);
+            } catch (Throwable t) {
+                // this is only an hint, the lane will load the page again
+                LOGGER.log(Level.FINE, "cannot prefetch page for " + entry, t);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PendingEntry next;
+                synchronized (this) {
+                    next = queue.poll();
+                    if (next == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    if (error.get() == null) {
+                        tableSpaceManager.applyOnTable(tableManager, next.position, next.entry, false);
+                        entryApplied(next.entry);
+                    }
+                } catch (Throwable t) {
+                    LOGGER.log(Level.SEVERE, "follower apply error on table " + tableManager.getTable().name
+                            + " at " + next.position, t);
+                    error.compareAndSet(null, t);
+                } finally {
+                    entryDone();
+                }
+            }
+        }
+    }
+}
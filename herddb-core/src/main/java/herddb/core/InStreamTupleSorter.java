@@ -31,58 +31,87 @@ import java.util.Comparator;
  * A configurable maximum number of tuples will be kept; when reached such limit exceeding tuples will be discarded
  * keeping only the lower ones as stated from given comparator.
  * </p>
+ * <p>
+ * Tuples are kept in a binary heap having the greatest tuple on top, so each tuple costs at most a logarithmic number
+ * of comparisons and tuples are sorted only once, when flushed.
+ * </p>
  *
  * @author diego.salvi
  */
 public final class InStreamTupleSorter {
 
+    private static final int INITIAL_CAPACITY = 16;
+
     private final int size;
     private final Comparator<DataAccessor> comparator;
 
-    private final DataAccessor[] tuples;
+    private DataAccessor[] tuples;
     private int count;
-    private DataAccessor reference;
 
     public InStreamTupleSorter(int size, Comparator<DataAccessor> comparator) {
         super();
         this.size = size;
         this.comparator = comparator;
-        this.tuples = new DataAccessor[size];
+        this.tuples = new DataAccessor[Math.max(0, Math.min(size, INITIAL_CAPACITY))];
     }
 
     public void collect(DataAccessor tuple) {
-        boolean full = (count >= size);
-
-        if (full) {
-            final int cmp = comparator.compare(reference, tuple);
-            if (cmp < 0) {
-                return;
+        if (count < size) {
+            if (count == tuples.length) {
+                tuples = Arrays.copyOf(tuples, (int) Math.min(size, count * 2L));
             }
+            tuples[count] = tuple;
+            siftUp(count++);
+        } else if (size > 0 && comparator.compare(tuples[0], tuple) > 0) {
+            // replace the greatest tuple
+            tuples[0] = tuple;
+            siftDown(0);
         }
+    }
 
-        int idx = Arrays.binarySearch(tuples, 0, count, tuple, comparator);
-        if (idx < 0) {
-            idx = -idx - 1;
-        }
-
-        if (!full) {
-            ++count;
+    private void siftUp(int idx) {
+        DataAccessor tuple = tuples[idx];
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (comparator.compare(tuples[parent], tuple) >= 0) {
+                break;
+            }
+            tuples[idx] = tuples[parent];
+            idx = parent;
         }
+        tuples[idx] = tuple;
+    }
 
-        System.arraycopy(tuples, idx, tuples, idx + 1, count - (idx + 1));
-
-        try {
-            tuples[idx] = tuple;
-        } catch (ArrayStoreException err) {
-            throw err;
+    private void siftDown(int idx) {
+        DataAccessor tuple = tuples[idx];
+        int half = count >>> 1;
+        while (idx < half) {
+            int child = 2 * idx + 1;
+            int right = child + 1;
+            if (right < count && comparator.compare(tuples[right], tuples[child]) > 0) {
+                child = right;
+            }
+            if (comparator.compare(tuple, tuples[child]) >= 0) {
+                break;
+            }
+            tuples[idx] = tuples[child];
+            idx = child;
         }
+        tuples[idx] = tuple;
+    }
 
-        reference = tuples[count - 1];
+    /**
+     * @return number of tuples currently kept
+     */
+    public int getCount() {
+        return count;
     }
 
     public void flushToRecordSet(MaterializedRecordSet rs) {
-        for (int i = 0; i < count; ++i) {
-            rs.add(tuples[i]);
+        DataAccessor[] sorted = Arrays.copyOf(tuples, count);
+        Arrays.sort(sorted, comparator);
+        for (DataAccessor tuple : sorted) {
+            rs.add(tuple);
         }
     }
 
@@ -76,6 +76,13 @@ public abstract class MaterializedRecordSet implements AutoCloseable, Iterable<D
         return expectedSize;
     }
 
+    /**
+     * @return bytes written to temporary files in order to hold the records
+     */
+    public long getSpilledBytes() {
+        return 0;
+    }
+
     public RecordSetFactory getFactory() {
         return factory;
     }
@@ -21,7 +21,13 @@
 package herddb.core;
 
 import herddb.utils.SystemProperties;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +43,17 @@ public class MemoryManager {
     private static final String PAGE_REPLACEMENT_POLICY = SystemProperties.getStringSystemProperty(
             MemoryManager.class.getName() + ".pageReplacementPolicy", "cp").toLowerCase(Locale.US);
 
+    /**
+     * Number of independent shards of every page replacement policy, each one with its own lock
+     */
+    private static final int PAGE_REPLACEMENT_POLICY_SHARDS = SystemProperties.getIntSystemProperty(
+            MemoryManager.class.getName() + ".pageReplacementPolicyShards", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Do not split small memory budgets, shards with few pages would evict too early
+     */
+    private static final int MIN_PAGES_PER_SHARD = 64;
+
     private final long maxDataUsedMemory;
     private final long maxIndexUsedMemory;
     private final long maxPKUsedMemory;
@@ -46,7 +63,18 @@ public class MemoryManager {
     private final PageReplacementPolicy indexPageReplacementPolicy;
     private final PageReplacementPolicy pkPageReplacementPolicy;
 
+    /**
+     * Quotas by group name, see {@link MemoryQuota#getGroupName()}
+     */
+    private final Map<String, MemoryQuota> quotas = new HashMap<>();
+    private final Map<String, String> tableSpaceNames = new ConcurrentHashMap<>();
+
     public MemoryManager(long maxDataUsedMemory, long maxIndexUsedMemory, long maxPKUsedMemory, long maxLogicalPageSize) {
+        this(maxDataUsedMemory, maxIndexUsedMemory, maxPKUsedMemory, maxLogicalPageSize, Collections.emptyList());
+    }
+
+    public MemoryManager(long maxDataUsedMemory, long maxIndexUsedMemory, long maxPKUsedMemory, long maxLogicalPageSize,
+                         List<MemoryQuota> quotas) {
 
         this.maxDataUsedMemory = maxDataUsedMemory;
         this.maxIndexUsedMemory = maxIndexUsedMemory;
@@ -86,26 +114,50 @@ public class MemoryManager {
                     new Object[]{(maxDataUsedMemory / (1024 * 1024)) + " MB", dataPages});
         }
 
+        final IntFunction<PageReplacementPolicy> factory;
         switch (PAGE_REPLACEMENT_POLICY) {
             case "random":
-                dataPageReplacementPolicy = new RandomPageReplacementPolicy(dataPages);
-                indexPageReplacementPolicy = indexPages > 0 ? new RandomPageReplacementPolicy(dataPages) : dataPageReplacementPolicy;
-                pkPageReplacementPolicy = new RandomPageReplacementPolicy(pkPages);
+                factory = RandomPageReplacementPolicy::new;
                 break;
 
             case "cp":
-                dataPageReplacementPolicy = new ClockProPolicy(dataPages);
-                indexPageReplacementPolicy = indexPages > 0 ? new ClockProPolicy(dataPages) : dataPageReplacementPolicy;
-                pkPageReplacementPolicy = new ClockProPolicy(pkPages);
+                factory = ClockProPolicy::new;
                 break;
 
             case "car":
             default:
-                dataPageReplacementPolicy = new ClockAdaptiveReplacement(dataPages);
-                indexPageReplacementPolicy = indexPages > 0 ? new ClockAdaptiveReplacement(dataPages) : dataPageReplacementPolicy;
-                pkPageReplacementPolicy = new ClockAdaptiveReplacement(pkPages);
+                factory = ClockAdaptiveReplacement::new;
+        }
+
+        double totalReserved = 0;
+        for (MemoryQuota quota : quotas) {
+            if (this.quotas.put(quota.getGroupName(), quota) != null) {
+                throw new IllegalArgumentException("Duplicate memory quota for " + quota.getGroupName());
+            }
+            totalReserved += quota.getReserved();
+            LOGGER.log(Level.INFO, "Memory quota {0}", quota);
+        }
+        if (totalReserved > 1) {
+            throw new IllegalArgumentException("Reserved memory fractions sum up to " + totalReserved + ", more than 1");
         }
 
+        dataPageReplacementPolicy = createPolicy(dataPages, factory);
+        indexPageReplacementPolicy = indexPages > 0 ? createPolicy(indexPages, factory) : dataPageReplacementPolicy;
+        pkPageReplacementPolicy = createPolicy(pkPages, factory);
+
+        LOGGER.log(Level.INFO, "Page replacement policy for data pages: {0}", dataPageReplacementPolicy);
+    }
+
+    private PageReplacementPolicy createPolicy(int pages, IntFunction<PageReplacementPolicy> factory) {
+        if (!quotas.isEmpty()) {
+            // groups are not sharded: a group must select at most one page to be unloaded for every added page
+            return new QuotaPageReplacementPolicy(pages, factory);
+        }
+        final int shards = Math.min(PAGE_REPLACEMENT_POLICY_SHARDS, pages / MIN_PAGES_PER_SHARD);
+        if (shards <= 1) {
+            return factory.apply(pages);
+        }
+        return new ShardedPageReplacementPolicy(pages, shards, factory);
     }
 
     public long getMaxDataUsedMemory() {
@@ -136,4 +188,66 @@ public class MemoryManager {
         return pkPageReplacementPolicy;
     }
 
+    /**
+     * Policy for data pages of the given table, subject to the memory quota
+     * of the table or of its tablespace
+     */
+    public PageReplacementPolicy getDataPageReplacementPolicy(String tableSpaceUUID, String table) {
+        return getGroupPolicy(dataPageReplacementPolicy, tableSpaceUUID, table);
+    }
+
+    /**
+     * Policy for secondary index pages of the given table, subject to the
+     * memory quota of the table or of its tablespace
+     */
+    public PageReplacementPolicy getIndexPageReplacementPolicy(String tableSpaceUUID, String table) {
+        return getGroupPolicy(indexPageReplacementPolicy, tableSpaceUUID, table);
+    }
+
+    /**
+     * Policy for primary key pages of the given tablespace, subject to the
+     * memory quota of the tablespace
+     */
+    public PageReplacementPolicy getPKPageReplacementPolicy(String tableSpaceUUID) {
+        return getGroupPolicy(pkPageReplacementPolicy, tableSpaceUUID, null);
+    }
+
+    /**
+     * Quotas are configured by tablespace name, while storage only knows the
+     * UUID of the tablespace
+     */
+    public void registerTableSpace(String tableSpaceUUID, String tableSpaceName) {
+        tableSpaceNames.put(tableSpaceUUID, tableSpaceName);
+    }
+
+    /**
+     * @return the quota of the tablespace, null if not configured
+     */
+    public MemoryQuota getMemoryQuota(String tableSpaceName) {
+        return quotas.get(MemoryQuota.groupName(tableSpaceName, null));
+    }
+
+    private PageReplacementPolicy getGroupPolicy(PageReplacementPolicy policy, String tableSpaceUUID, String table) {
+        if (!(policy instanceof QuotaPageReplacementPolicy)) {
+            return policy;
+        }
+        final QuotaPageReplacementPolicy quotaPolicy = (QuotaPageReplacementPolicy) policy;
+        final String tableSpace = tableSpaceNames.get(tableSpaceUUID);
+        if (tableSpace == null) {
+            return quotaPolicy.getDefaultGroup();
+        }
+        MemoryQuota quota = table != null ? quotas.get(MemoryQuota.groupName(tableSpace, table)) : null;
+        if (quota == null) {
+            quota = quotas.get(MemoryQuota.groupName(tableSpace, null));
+        }
+        if (quota == null) {
+            return quotaPolicy.getDefaultGroup();
+        }
+        final int pages = quotaPolicy.capacity();
+        return quotaPolicy.getGroup(quota.getGroupName(),
+                (int) (quota.getReserved() * pages),
+                (int) Math.ceil(quota.getMax() * pages),
+                quota.getPriority());
+    }
+
 }
@@ -0,0 +1,152 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Memory quota of a tablespace, or of a single table.
+ * <p>
+ * Reservation and cap are fractions of the memory available for every kind
+ * of page (data, index, primary key), the priority decides which pages are
+ * unloaded first when memory is exhausted (lower priority first).
+ * <p>
+ * Quotas are configured with a list of entries separated by semicolons, like
+ * {@code tblspace1:reserved=0.3,priority=10;tblspace2.mytable:max=0.1,priority=-1}
+ */
+public final class MemoryQuota {
+
+    private final String tableSpace;
+    private final String table;
+    private final double reserved;
+    private final double max;
+    private final int priority;
+
+    public MemoryQuota(String tableSpace, String table, double reserved, double max, int priority) {
+        if (reserved < 0 || reserved > 1) {
+            throw new IllegalArgumentException("invalid reserved memory fraction " + reserved + " for " + tableSpace);
+        }
+        if (max <= 0 || max > 1) {
+            throw new IllegalArgumentException("invalid max memory fraction " + max + " for " + tableSpace);
+        }
+        if (reserved > max) {
+            throw new IllegalArgumentException("reserved memory fraction " + reserved + " is greater than max "
+                    + max + " for " + tableSpace);
+        }
+        this.tableSpace = tableSpace;
+        this.table = table == null ? null : table.toLowerCase(Locale.US);
+        this.reserved = reserved;
+        this.max = max;
+        this.priority = priority;
+    }
+
+    public String getTableSpace() {
+        return tableSpace;
+    }
+
+    /**
+     * @return the table, null if the quota is for the whole tablespace
+     */
+    public String getTable() {
+        return table;
+    }
+
+    public double getReserved() {
+        return reserved;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Name of the group of pages subject to this quota
+     */
+    public String getGroupName() {
+        return groupName(tableSpace, table);
+    }
+
+    static String groupName(String tableSpace, String table) {
+        return table == null ? tableSpace : tableSpace + "." + table.toLowerCase(Locale.US);
+    }
+
+    public static List<MemoryQuota> parse(String configuration) {
+        if (configuration == null || configuration.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MemoryQuota> result = new ArrayList<>();
+        for (String entry : configuration.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("invalid memory quota '" + entry + "', expected <tablespace>[.<table>]:<key>=<value>,...");
+            }
+            String target = entry.substring(0, colon).trim();
+            String tableSpace = target;
+            String table = null;
+            int dot = target.indexOf('.');
+            if (dot > 0) {
+                tableSpace = target.substring(0, dot);
+                table = target.substring(dot + 1);
+            }
+            double reserved = 0;
+            double max = 1;
+            int priority = 0;
+            for (String option : entry.substring(colon + 1).split(",")) {
+                String[] keyValue = option.split("=");
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("invalid memory quota option '" + option + "' for " + target);
+                }
+                String value = keyValue[1].trim();
+                switch (keyValue[0].trim().toLowerCase(Locale.US)) {
+                    case "reserved":
+                        reserved = Double.parseDouble(value);
+                        break;
+                    case "max":
+                        max = Double.parseDouble(value);
+                        break;
+                    case "priority":
+                        priority = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown memory quota option '" + option + "' for " + target);
+                }
+            }
+            result.add(new MemoryQuota(tableSpace, table, reserved, max, priority));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryQuota{" + "group=" + getGroupName() + ", reserved=" + reserved + ", max=" + max + ", priority=" + priority + '}';
+    }
+}
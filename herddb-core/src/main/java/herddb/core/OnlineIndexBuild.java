@@ -0,0 +1,136 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.codec.RecordSerializer;
+import herddb.model.Index;
+import herddb.model.Table;
+import herddb.storage.DataStorageManagerException;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Build of a secondary index which does not block the table.
+ * <p>
+ * The index is registered (so it receives every change applied to the table)
+ * but it is not available for reads until the build completes. Records are
+ * loaded by a parallel scan of the table, every task reads the records of one
+ * data page; records changed by DML while the build is running are skipped by
+ * the scan because their current version has already been applied to the index.
+ * The row lock held by the scan while reading a record and by DML while applying
+ * a change make the two mutually exclusive on every key.
+ * </p>
+ */
+public final class OnlineIndexBuild {
+
+    public static final String STATE_SCANNING = "scanning";
+    public static final String STATE_PUBLISHING = "publishing";
+    public static final String STATE_REBUILDING = "rebuilding";
+
+    private final AbstractIndexManager indexManager;
+    private final AbstractTableManager tableManager;
+    private final Set<Bytes> changedKeys = ConcurrentHashMap.newKeySet();
+    private final LongAdder scannedRecords = new LongAdder();
+    private final LongAdder skippedRecords = new LongAdder();
+    private final long estimatedRecords;
+    private final long startTimestamp;
+    private volatile String state = STATE_SCANNING;
+
+    OnlineIndexBuild(AbstractIndexManager indexManager, AbstractTableManager tableManager) {
+        this.indexManager = indexManager;
+        this.tableManager = tableManager;
+        this.estimatedRecords = tableManager.getStats().getTablesize();
+        this.startTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Only non unique indexes can be built online: the check for duplicates
+     * of unique indexes cannot see records not yet scanned
+     */
+    static boolean isSupported(Index index) {
+        return !index.unique
+                && (Index.TYPE_HASH.equals(index.type) || Index.TYPE_BRIN.equals(index.type));
+    }
+
+    /**
+     * Called by DML while holding the write lock on the key, before applying
+     * the change to the index
+     */
+    void recordChanged(Bytes key) {
+        changedKeys.add(key);
+    }
+
+    void scan(Executor executor) throws DataStorageManagerException {
+        Table table = tableManager.getTable();
+        Index index = indexManager.getIndex();
+        tableManager.parallelScan(record -> {
+            if (changedKeys.contains(record.key)) {
+                skippedRecords.increment();
+                return;
+            }
+            DataAccessor values = record.getDataAccessor(table);
+            Bytes indexKey = RecordSerializer.serializeIndexKey(values, index, index.columnNames);
+            try {
+                indexManager.recordInserted(record.key, indexKey, values);
+            } catch (DataStorageManagerException err) {
+                throw new RuntimeException(err);
+            }
+            scannedRecords.increment();
+        }, executor);
+    }
+
+    void setState(String state) {
+        this.state = state;
+    }
+
+    public AbstractIndexManager getIndexManager() {
+        return indexManager;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public long getScannedRecords() {
+        return scannedRecords.sum();
+    }
+
+    public long getSkippedRecords() {
+        return skippedRecords.sum();
+    }
+
+    public long getEstimatedRecords() {
+        return estimatedRecords;
+    }
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public long getChangedRecords() {
+        return changedKeys.size();
+    }
+
+}
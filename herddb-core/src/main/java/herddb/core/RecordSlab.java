@@ -0,0 +1,266 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import herddb.utils.CompareBytesUtils;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Read only body of immutable {@link DataPage DataPages}: keys and values of
+ * every record are copied into a single byte array, records are sorted by key
+ * hash code and located with a binary search on the hash codes.
+ * <p>
+ * A record costs just the bytes of its key and value plus three ints, instead
+ * of a {@link Record}, two {@link Bytes}, two arrays and a map entry.
+ * {@link Record} objects are created on every access, their key and value share
+ * the slab: use {@link Record#nonShared()} in order to retain them.
+ * </p>
+ */
+final class RecordSlab extends AbstractMap<Bytes, Record> {
+
+    private static final Comparator<Record> BY_KEY_HASH = (a, b) -> Integer.compare(a.key.hashCode(), b.key.hashCode());
+
+    private final byte[] slab;
+    /**
+     * Hash codes of the keys, sorted
+     */
+    private final int[] hashes;
+    /**
+     * Start of every record in the slab, the key followed by the value, plus
+     * the end of the last record
+     */
+    private final int[] starts;
+    private final int[] keyLengths;
+
+    private RecordSlab(byte[] slab, int[] hashes, int[] starts, int[] keyLengths) {
+        this.slab = slab;
+        this.hashes = hashes;
+        this.starts = starts;
+        this.keyLengths = keyLengths;
+    }
+
+    static RecordSlab build(Collection<Record> records) {
+        final Record[] sorted = records.toArray(new Record[0]);
+        Arrays.sort(sorted, BY_KEY_HASH);
+        long total = 0;
+        for (Record record : sorted) {
+            total += record.key.getLength() + record.value.getLength();
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many data for a single slab: " + total + " bytes");
+        }
+        final byte[] slab = new byte[(int) total];
+        final int[] hashes = new int[sorted.length];
+        final int[] starts = new int[sorted.length + 1];
+        final int[] keyLengths = new int[sorted.length];
+        int position = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            final Bytes key = sorted[i].key;
+            final Bytes value = sorted[i].value;
+            hashes[i] = key.hashCode();
+            starts[i] = position;
+            keyLengths[i] = key.getLength();
+            System.arraycopy(key.getBuffer(), key.getOffset(), slab, position, key.getLength());
+            position += key.getLength();
+            System.arraycopy(value.getBuffer(), value.getOffset(), slab, position, value.getLength());
+            position += value.getLength();
+        }
+        starts[sorted.length] = position;
+        return new RecordSlab(slab, hashes, starts, keyLengths);
+    }
+
+    /**
+     * @return the position of the record, -1 if not found
+     */
+    private int indexOf(Bytes key) {
+        final int hash = key.hashCode();
+        /* Leftmost record with the same hash */
+        int low = 0;
+        int high = hashes.length - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midHash = hashes[mid];
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                found = mid;
+                high = mid - 1;
+            }
+        }
+        if (found < 0) {
+            return -1;
+        }
+        final int length = key.getLength();
+        for (int i = found; i < hashes.length && hashes[i] == hash; i++) {
+            if (keyLengths[i] == length
+                    && CompareBytesUtils.arraysEquals(slab, starts[i], starts[i] + length,
+                    key.getBuffer(), key.getOffset(), key.getOffset() + length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Bytes keyAt(int index) {
+        return Bytes.from_array(slab, starts[index], keyLengths[index]);
+    }
+
+    private Record recordAt(int index) {
+        final int start = starts[index];
+        final int keyLength = keyLengths[index];
+        final int valueStart = start + keyLength;
+        return new Record(Bytes.from_array(slab, start, keyLength),
+                Bytes.from_array(slab, valueStart, starts[index + 1] - valueStart));
+    }
+
+    @Override
+    public int size() {
+        return hashes.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return hashes.length == 0;
+    }
+
+    @Override
+    public Record get(Object key) {
+        final int index = indexOf((Bytes) key);
+        return index < 0 ? null : recordAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf((Bytes) key) >= 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Bytes, ? super Record> action) {
+        for (int i = 0; i < hashes.length; i++) {
+            final Record record = recordAt(i);
+            action.accept(record.key, record);
+        }
+    }
+
+    @Override
+    public Set<Entry<Bytes, Record>> entrySet() {
+        return new AbstractSet<Entry<Bytes, Record>>() {
+
+            @Override
+            public Iterator<Entry<Bytes, Record>> iterator() {
+                return new Iterator<Entry<Bytes, Record>>() {
+
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < hashes.length;
+                    }
+
+                    @Override
+                    public Entry<Bytes, Record> next() {
+                        if (next >= hashes.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final Record record = recordAt(next++);
+                        return new SimpleImmutableEntry<>(record.key, record);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return hashes.length;
+            }
+        };
+    }
+
+    @Override
+    public Set<Bytes> keySet() {
+        return new AbstractSet<Bytes>() {
+
+            @Override
+            public Iterator<Bytes> iterator() {
+                return new Iterator<Bytes>() {
+
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < hashes.length;
+                    }
+
+                    @Override
+                    public Bytes next() {
+                        if (next >= hashes.length) {
+                            throw new NoSuchElementException();
+                        }
+                        return keyAt(next++);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Bytes && containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return hashes.length;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof RecordSlab) {
+            /* Records with the same hash code could be stored in a different order, in such case compare them one by one */
+            final RecordSlab other = (RecordSlab) o;
+            if (Arrays.equals(hashes, other.hashes)
+                    && Arrays.equals(starts, other.starts)
+                    && Arrays.equals(keyLengths, other.keyLengths)
+                    && Arrays.equals(slab, other.slab)) {
+                return true;
+            }
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.utils.Bytes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Previous versions of the records of a table, retained while snapshot
+ * transactions are running.
+ * <p>
+ * Every change applied while a snapshot is open records the value of the
+ * record before the change, together with the data version of the change.
+ * Versions of a record are chained from the newest to the oldest: a snapshot
+ * taken at version {@code v} sees the value preceding the oldest change newer
+ * than {@code v}, or the current value if there is no such change.
+ * <p>
+ * The previous value must be retained <b>before</b> the change is applied to
+ * the table, this way a reader which sees the new value always finds the
+ * version too.
+ */
+final class SnapshotRecordVersions {
+
+    /**
+     * A change of a record
+     */
+    static final class Version {
+
+        final long version;
+        /**
+         * Value of the record before the change, null if the record did not
+         * exist
+         */
+        final Bytes previous;
+        volatile Version older;
+
+        private Version(long version, Bytes previous, Version older) {
+            this.version = version;
+            this.previous = previous;
+            this.older = older;
+        }
+    }
+
+    private final ConcurrentHashMap<Bytes, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Retains the value of a record before a change
+     *
+     * @param key the key of the record
+     * @param version data version of the change
+     * @param previous value of the record before the change, null for an
+     * insert
+     */
+    void retain(Bytes key, long version, Bytes previous) {
+        versions.compute(key, (k, newer) -> new Version(version, previous, newer));
+    }
+
+    /**
+     * Looks for the value of the record visible to a snapshot
+     *
+     * @return the oldest change newer than the snapshot, null if the current
+     * value of the record is visible to the snapshot
+     */
+    Version find(Bytes key, long snapshotVersion) {
+        Version result = null;
+        for (Version v = versions.get(key); v != null && v.version > snapshotVersion; v = v.older) {
+            result = v;
+        }
+        return result;
+    }
+
+    Set<Bytes> keys() {
+        return versions.keySet();
+    }
+
+    boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    int size() {
+        return versions.size();
+    }
+
+    /**
+     * Drops every version which is not needed by snapshots newer than the
+     * given version
+     */
+    void prune(long oldestSnapshotVersion) {
+        for (Bytes key : versions.keySet()) {
+            versions.computeIfPresent(key, (k, newest) -> {
+                if (newest.version <= oldestSnapshotVersion) {
+                    return null;
+                }
+                Version v = newest;
+                while (v.older != null && v.older.version > oldestSnapshotVersion) {
+                    v = v.older;
+                }
+                v.older = null;
+                return newest;
+            });
+        }
+    }
+
+    void clear() {
+        versions.clear();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.index.KeyToPageIndex;
+import herddb.utils.Bytes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A scan of a snapshot transaction which visits the primary key in the order
+ * of the bytes of the keys.
+ * <p>
+ * Records deleted after the snapshot are not visited by the scan, they are
+ * added at the end reading their previous versions. In order to tell whether
+ * a changed record has already been visited only the keys inserted or deleted
+ * while the scan is running are tracked: a deletion records the position of
+ * the scan, and keys before that position have already been visited. Every
+ * other key with a previous version has been visited if and only if it is
+ * still in the table.
+ * <p>
+ * Changes must be registered before they are visible in the primary key, and
+ * the scan must be started while no change is being applied.
+ */
+final class SnapshotScan {
+
+    private static final Bytes NOT_STARTED = Bytes.from_array(new byte[0]);
+    private static final Bytes DELETING = Bytes.from_array(new byte[0]);
+    private static final Bytes INSERTED = Bytes.from_array(new byte[0]);
+
+    private volatile Bytes position = NOT_STARTED;
+    /**
+     * Keys inserted or deleted while the scan is running, mapped to the
+     * position of the scan at the first deletion
+     */
+    private final ConcurrentHashMap<Bytes, Bytes> changedKeys = new ConcurrentHashMap<>();
+    /**
+     * Changed keys which have been visited by the scan, accessed only by the
+     * scanning thread
+     */
+    private final Set<Bytes> visitedChangedKeys = new HashSet<>();
+
+    void keyInserted(Bytes key) {
+        changedKeys.putIfAbsent(key, INSERTED);
+    }
+
+    void keyDeleted(Bytes key) {
+        // the key is published before reading the position, a scan which
+        // moves past the key after the read will find it as changed
+        if (changedKeys.putIfAbsent(key, DELETING) == null) {
+            changedKeys.replace(key, DELETING, position);
+        }
+    }
+
+    /**
+     * Moves the scan to the next key returned by the primary key
+     */
+    void advance(Bytes key) {
+        position = key;
+    }
+
+    /**
+     * Records that a key returned by the primary key has been processed
+     */
+    void visited(Bytes key) {
+        if (changedKeys.containsKey(key)) {
+            visitedChangedKeys.add(key);
+        }
+    }
+
+    /**
+     * Tells whether a key which has a previous version has been visited, it
+     * must be called after the end of the scan
+     */
+    boolean isVisited(Bytes key, KeyToPageIndex keyToPage) {
+        if (visitedChangedKeys.contains(key)) {
+            return true;
+        }
+        Bytes change = changedKeys.get(key);
+        if (change == null) {
+            // the key has been in the table for the whole scan, or never
+            return keyToPage.containsKey(key);
+        }
+        if (change == DELETING) {
+            // the deletion is being applied now, the key was in the table for the whole scan
+            return true;
+        }
+        if (change == INSERTED || change == NOT_STARTED) {
+            return false;
+        }
+        return key.compareTo(change) <= 0;
+    }
+}
@@ -25,9 +25,11 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import herddb.codec.RecordSerializer;
 import herddb.core.PageSet.DataPageMetaData;
 import herddb.core.stats.TableManagerStats;
+import herddb.data.consistency.TableDigest;
 import herddb.index.IndexOperation;
 import herddb.index.KeyToPageIndex;
 import herddb.index.PrimaryIndexSeek;
+import herddb.index.VectorIndexSearch;
 import herddb.log.CommitLog;
 import herddb.log.CommitLogResult;
 import herddb.log.LogEntry;
@@ -87,8 +89,10 @@ import herddb.utils.ILocalLockManager;
 import herddb.utils.LocalLockManager;
 import herddb.utils.LockHandle;
 import herddb.utils.NullLockManager;
+import herddb.utils.StripedReadWriteLock;
 import herddb.utils.SystemProperties;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -102,8 +106,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -112,7 +118,6 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.StampedLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -150,6 +155,26 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private static final boolean ENABLE_STREAMING_DATA_SCANNER = SystemProperties.
             getBooleanSystemProperty("herddb.tablemanager.enableStreamingDataScanner", true);
 
+    private static final int PARALLEL_SCAN_KEYS_PER_TASK = SystemProperties.
+            getIntSystemProperty("herddb.tablemanager.parallelScanKeysPerTask", 1000);
+
+    private static final int PARALLEL_SCAN_MAX_BUFFERED_KEYS = SystemProperties.
+            getIntSystemProperty("herddb.tablemanager.parallelScanMaxBufferedKeys", 100_000);
+
+    /**
+     * Pages loaded from the storage keep their records in a single {@link RecordSlab} instead of a map of
+     * {@link Record} objects
+     */
+    private static final boolean ENABLE_SLAB_DATA_PAGES = SystemProperties.
+            getBooleanSystemProperty("herddb.tablemanager.enableSlabDataPages", true);
+
+    /**
+     * Records in the table status the pages in memory at checkpoint time, hottest first, in order to load them
+     * back in background when the tablespace boots
+     */
+    private static final boolean ENABLE_PAGE_CACHE_WARMUP = SystemProperties.
+            getBooleanSystemProperty("herddb.tablemanager.enablePageCacheWarmup", true);
+
     /**
      * Ignores insert/update/delete failures due to missing transactions during recovery. The operation in
      * recovery will be ignored.
@@ -200,13 +225,36 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     /**
      * Allow checkpoint
      */
-    private final StampedLock checkpointLock = new StampedLock();
+    private final StripedReadWriteLock checkpointLock = new StripedReadWriteLock();
 
     /**
      * auto_increment support
      */
     private final AtomicLong nextPrimaryKeyValue = new AtomicLong(1);
 
+    /**
+     * Digest of the committed records, maintained on every change
+     */
+    private volatile TableDigest digest = TableDigest.unknown();
+
+    /**
+     * Records updated or deleted while their page was not in memory: their previous value is still part of the
+     * digest, it is removed when the page is read, at the latest during the next checkpoint. Page id -> keys
+     */
+    private final ConcurrentHashMap<Long, Set<Bytes>> digestReplacedRecords = new ConcurrentHashMap<>();
+
+    /**
+     * Previous versions of the records changed while snapshot transactions are
+     * running
+     */
+    private final SnapshotRecordVersions snapshotVersions = new SnapshotRecordVersions();
+
+    /**
+     * Scans of snapshot transactions running in primary key order, they are
+     * notified about the keys which are inserted or deleted
+     */
+    private final Set<SnapshotScan> runningSnapshotScans = ConcurrentHashMap.newKeySet();
+
     private final TableContext tableContext;
 
     /**
@@ -271,6 +319,11 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     private volatile boolean closed;
 
+    /**
+     * Pages which were hot at the checkpoint we booted from, to be loaded by the warm-up of the tablespace
+     */
+    private volatile long[] hotPagesAtBoot;
+
     private final ConcurrentHashMap<String, String> childForeignKeyQueries = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, String> parentForeignKeyQueries = new ConcurrentHashMap<>();
 
@@ -377,7 +430,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         this.maxLogicalPageSize = memoryManager.getMaxLogicalPageSize();
         this.keyToPage = dataStorageManager.createKeyToPageMap(tableSpaceUUID, table.uuid, memoryManager);
 
-        this.pageReplacementPolicy = memoryManager.getDataPageReplacementPolicy();
+        this.pageReplacementPolicy = memoryManager.getDataPageReplacementPolicy(tableSpaceUUID, table.name);
         this.pages = new ConcurrentHashMap<>();
         this.newPages = new ConcurrentHashMap<>();
 
@@ -521,6 +574,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 // this is a fresh new table, with in memory key-to-page
                 TableStatus tableStatus = TableStatus.buildTableStatusForNewCreatedTable(table.uuid);
                 nextPrimaryKeyValue.set(Bytes.toLong(tableStatus.nextPrimaryKeyValue, 0));
+                digest = TableDigest.deserialize(tableStatus.digest);
                 nextPageId = tableStatus.nextPageId;
                 bootSequenceNumber = tableStatus.sequenceNumber;
                 activePagesAtBoot.putAll(tableStatus.activePages);
@@ -534,9 +588,11 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     public void acceptTableStatus(TableStatus tableStatus) {
                         LOGGER.log(Level.INFO, "recovery table at {0}", tableStatus.sequenceNumber);
                         nextPrimaryKeyValue.set(Bytes.toLong(tableStatus.nextPrimaryKeyValue, 0));
+                        digest = TableDigest.deserialize(tableStatus.digest);
                         nextPageId = tableStatus.nextPageId;
                         bootSequenceNumber = tableStatus.sequenceNumber;
                         activePagesAtBoot.putAll(tableStatus.activePages);
+                        hotPagesAtBoot = tableStatus.hotPages;
                     }
 
                     @Override
@@ -562,6 +618,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             nextPageId = tableStatus.nextPageId;
             bootSequenceNumber = tableStatus.sequenceNumber;
             activePagesAtBoot.putAll(tableStatus.activePages);
+            hotPagesAtBoot = tableStatus.hotPages;
+            digest = TableDigest.deserialize(tableStatus.digest);
         }
         keyToPage.start(bootSequenceNumber, created);
 
@@ -1031,14 +1089,15 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
             if (keepPageInMemory) {
                 /* If we must keep the page in memory we "covert" the page to immutable */
-                pages.put(page.pageId, page.toImmutable());
+                final DataPage immutablePage = page.toImmutable();
+                pages.put(page.pageId, immutablePage);
 
                 /*
                  * And we load to page replacement policy. This is a critic point: after adding page to page
                  * replacement policy knowledge it can be unloaded from another thread, we should finished any work
                  * on the page before of that.
                  */
-                final Page.Metadata unload = pageReplacementPolicy.add(page);
+                final Page.Metadata unload = pageReplacementPolicy.add(immutablePage);
                 if (unload != null) {
                     unload.owner.unload(unload.pageId);
                 }
@@ -1207,7 +1266,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     // ERROR, INSERT on a INSERTED record inside this transaction
                     res = Futures.exception(new DuplicatePrimaryKeyException(key,
                             "key " + key + ", decoded as " + RecordSerializer.deserializePrimaryKey(key, table) + ", already exists in table " + table.name + " inside transaction " + transaction.transactionId));
-                } else if (keyToPage.containsKey(key)) {
+                } else if (keyToPage.mightContainKey(key) && keyToPage.containsKey(key)) {
                     if (insert.isUpsert()) {
                         fallbackToUpsert = true;
                     } else {
@@ -1215,7 +1274,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                                 "key " + key + ", decoded as " + RecordSerializer.deserializePrimaryKey(key, table) + ", already exists in table " + table.name + " during transaction " + transaction.transactionId));
                     }
                 }
-            } else if (keyToPage.containsKey(key)) {
+            } else if (keyToPage.mightContainKey(key) && keyToPage.containsKey(key)) {
                 if (insert.isUpsert()) {
                     fallbackToUpsert = true;
                 } else {
@@ -1234,7 +1293,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
             CommitLogResult pos = log.log(entry, entry.transactionId <= 0);
             res = pos.logSequenceNumber.thenApplyAsync((lsn) -> {
-                apply(pos, entry, false);
+                tableSpaceManager.applyOnTable(this, pos, entry, false);
                 return new DMLStatementExecutionResult(entry.transactionId, 1, key,
                         insert.isReturnValues() ? Bytes.from_array(value) : null);
             }, tableSpaceManager.getCallbacksExecutor());
@@ -1633,7 +1692,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                             // in case of any error (write to log + validations) we do not
                             // apply any of the DML operations
                             if (error == null) {
-                                apply(pending.pos, pending.entry, false);
+                                tableSpaceManager.applyOnTable(this, pending.pos, pending.entry, false);
                             }
                         } finally {
                             releaseMultiplePendingLogEntryWorks(writes);
@@ -1652,7 +1711,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                             // apply any of the DML operations
                             if (error == null) {
                                 for (PendingLogEntryWork pending : pendings) {
-                                    apply(pending.pos, pending.entry, false);
+                                    tableSpaceManager.applyOnTable(this, pending.pos, pending.entry, false);
                                 }
                             }
                         } finally {
@@ -1779,7 +1838,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                             // in case of any error (write to log + validations) we do not
                             // apply any of the DML operations
                             if (error == null) {
-                                apply(pending.pos, pending.entry, false);
+                                tableSpaceManager.applyOnTable(this, pending.pos, pending.entry, false);
                             }
                         } finally {
                             releaseMultiplePendingLogEntryWorks(writes);
@@ -1798,7 +1857,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                             // apply any of the DML operations
                             if (error == null) {
                                 for (PendingLogEntryWork pending : pendings) {
-                                    apply(pending.pos, pending.entry, false);
+                                    tableSpaceManager.applyOnTable(this, pending.pos, pending.entry, false);
                                 }
                             }
                         } finally {
@@ -1831,8 +1890,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             long estimatedSize = keyToPage.size();
             LOGGER.log(Level.INFO, "TRUNCATING TABLE {0} with approx {1} records", new Object[]{table.name, estimatedSize});
             LogEntry entry = LogEntryFactory.truncate(table, null);
-            CommitLogResult pos = log.log(entry, entry.transactionId <= 0);
-            apply(pos, entry, false);
+            tableSpaceManager.logAndApplyTruncate(this, entry);
             return new DMLStatementExecutionResult(0, estimatedSize > Integer.MAX_VALUE
                     ? Integer.MAX_VALUE : (int) estimatedSize, null, null);
         } catch (LogNotAvailableException | DataStorageManagerException error) {
@@ -1873,6 +1931,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         locksManager.clear();
         keyToPage.truncate();
+        digest.clear();
+        digestReplacedRecords.clear();
         if (indexes != null) {
             for (AbstractIndexManager index : indexes.values()) {
                 index.truncate();
@@ -1919,13 +1979,13 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
         }
 
-        boolean lockAcquired;
+        long lockStamp;
         try {
-            lockAcquired = checkpointLock.asReadLock().tryLock(CHECKPOINT_LOCK_READ_TIMEOUT, SECONDS);
+            lockStamp = checkpointLock.tryReadLock(CHECKPOINT_LOCK_READ_TIMEOUT, SECONDS);
         } catch (InterruptedException err) {
             throw new DataStorageManagerException("interrupted while acquiring checkpoint lock during a commit", err);
         }
-        if (!lockAcquired) {
+        if (lockStamp == 0) {
             throw new DataStorageManagerException("timed out while acquiring checkpoint lock during a commit");
         }
         try {
@@ -1949,7 +2009,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 }
             }
         } finally {
-            checkpointLock.asReadLock().unlock();
+            checkpointLock.unlockRead(lockStamp);
         }
         transaction.releaseLocksOnTable(table.name, locksManager);
         if (forceFlushTableData) {
@@ -2078,7 +2138,72 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     }
 
+    @Override
+    public void prefetchForApply(LogEntry entry) throws DataStorageManagerException {
+        if (entry.key == null) {
+            return;
+        }
+        Long pageId = lookupPageOfKey(entry.key);
+        if (pageId != null) {
+            loadPageToMemory(pageId, false);
+        }
+    }
+
+    /**
+     * Looks up the page of a key, missing keys are usually discarded by the
+     * bloom filter of the primary key index without searching the index.
+     */
+    private Long lookupPageOfKey(Bytes key) {
+        if (!keyToPage.mightContainKey(key)) {
+            return null;
+        }
+        return keyToPage.get(key);
+    }
+
+    /**
+     * Retains the current value of a record which is going to be changed, if
+     * snapshot transactions are running. It must be called before the change
+     * is visible in the table.
+     *
+     * @param key
+     * @param exists false if the record is being inserted
+     */
+    private void retainVersionForSnapshots(Bytes key, boolean exists) throws DataStorageManagerException {
+        long version = tableSpaceManager.nextSnapshotDataVersion();
+        if (version <= 0) {
+            return;
+        }
+        Bytes previous = null;
+        if (exists) {
+            Long pageId = keyToPage.get(key);
+            if (pageId != null) {
+                Record record = fetchRecord(key, pageId, null);
+                if (record != null) {
+                    previous = record.value.nonShared();
+                }
+            }
+        }
+        snapshotVersions.retain(key.nonShared(), version, previous);
+    }
+
+    /**
+     * Drops versions of records not needed anymore by the running snapshot
+     * transactions
+     *
+     * @param oldestSnapshotVersion data version of the oldest running snapshot
+     */
+    void pruneSnapshotVersions(long oldestSnapshotVersion) {
+        if (!snapshotVersions.isEmpty()) {
+            snapshotVersions.prune(oldestSnapshotVersion);
+        }
+    }
+
     private void applyDelete(Bytes key) throws DataStorageManagerException {
+        retainVersionForSnapshots(key, true);
+        for (SnapshotScan scan : runningSnapshotScans) {
+            scan.keyDeleted(key);
+        }
+
         /* This could be a normal or a temporary modifiable page */
         final Long pageId = keyToPage.remove(key);
         if (pageId == null) {
@@ -2130,6 +2255,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
         }
 
+        digestRecordReplaced(key, pageId, previous);
+
         if (page == null || page.immutable) {
             /* Unloaded or immutable, set it as dirty */
             pageSet.setPageDirty(pageId, previous);
@@ -2156,7 +2283,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             DataAccessor values = previous.getDataAccessor(table);
             for (AbstractIndexManager index : indexes.values()) {
                 Bytes indexKey = RecordSerializer.serializeIndexKey(values, index.getIndex(), index.getColumnNames());
-                index.recordDeleted(key, indexKey);
+                index.recordChanging(key);
+                index.recordDeleted(key, indexKey, values);
             }
         }
     }
@@ -2164,6 +2292,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private void applyUpdate(Bytes key, Bytes value) throws DataStorageManagerException {
         // do not want to retain shared buffers as keys
         key = key.nonShared();
+        retainVersionForSnapshots(key, true);
 
         /*
          * New record to be updated, it will always updated if there aren't errors thus is simpler to create
@@ -2218,6 +2347,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
         }
 
+        digestRecordReplaced(key, prevPageId, previous);
+        digest.recordInserted(key, value);
+
         if (prevPage == null || prevPage.immutable) {
             /* Unloaded or immutable, set it as dirty */
             pageSet.setPageDirty(prevPageId, previous);
@@ -2295,7 +2427,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 String[] indexColumnNames = index.getColumnNames();
                 Bytes indexKeyRemoved = RecordSerializer.serializeIndexKey(prevValues, indexDef, indexColumnNames);
                 Bytes indexKeyAdded = RecordSerializer.serializeIndexKey(newValues, indexDef, indexColumnNames);
-                index.recordUpdated(key, indexKeyRemoved, indexKeyAdded);
+                index.recordChanging(key);
+                index.recordUpdated(key, indexKeyRemoved, indexKeyAdded, prevValues, newValues);
             }
         }
     }
@@ -2342,6 +2475,166 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     }
 
+    /**
+     * Removes the previous value of an updated or deleted record from the digest. If the value is not in memory
+     * the key is remembered and the value is removed when its page is read.
+     */
+    private void digestRecordReplaced(Bytes key, Long pageId, Record previous) {
+        if (previous == null) {
+            DataPage loaded = pages.get(pageId);
+            if (loaded != null) {
+                previous = loaded.get(key);
+            }
+        }
+        if (previous != null) {
+            digest.recordDeleted(key, previous.value);
+        } else {
+            digestReplacedRecords.computeIfAbsent(pageId, p -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    /**
+     * Removes from the digest the previous values of the records of a page which have been replaced while the
+     * page was not in memory.
+     *
+     * @param records the records of the page, null in order to read them
+     */
+    private void removeReplacedRecordsFromDigest(Long pageId, Collection<Record> records) throws DataStorageManagerException {
+        Set<Bytes> keys = digestReplacedRecords.remove(pageId);
+        if (keys == null) {
+            return;
+        }
+        if (records == null) {
+            DataPage dataPage = pages.get(pageId);
+            records = dataPage != null ? dataPage.getRecordsForFlush()
+                    : dataStorageManager.readPage(tableSpaceUUID, table.uuid, pageId);
+        }
+        for (Record record : records) {
+            if (keys.contains(record.key)) {
+                digest.recordDeleted(record.key, record.value);
+            }
+        }
+    }
+
+    private void removeAllReplacedRecordsFromDigest() throws DataStorageManagerException {
+        for (Long pageId : new ArrayList<>(digestReplacedRecords.keySet())) {
+            removeReplacedRecordsFromDigest(pageId, null);
+        }
+    }
+
+    @Override
+    public TableDigest getTableDigest(Executor executor) throws DataStorageManagerException {
+        long lockStamp = checkpointLock.readLock();
+        try {
+            removeAllReplacedRecordsFromDigest();
+        } finally {
+            checkpointLock.unlockRead(lockStamp);
+        }
+        TableDigest current = digest;
+        if (!current.isComplete()) {
+            boolean[] invalidBuckets = current.getInvalidBuckets();
+            LOGGER.log(Level.INFO, "table {0}.{1}, computing digest of {2} buckets",
+                    new Object[]{table.tablespace, table.name, countTrue(invalidBuckets)});
+            TableDigest computed = TableDigest.empty();
+            parallelScan(key -> invalidBuckets[TableDigest.bucket(key)],
+                    record -> computed.recordInserted(record.key, record.value), executor);
+            current.replaceBuckets(invalidBuckets, computed);
+        }
+        return current;
+    }
+
+    private static int countTrue(boolean[] values) {
+        int res = 0;
+        for (boolean b : values) {
+            if (b) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void parallelScan(Consumer<Record> records, Executor executor) throws DataStorageManagerException {
+        parallelScan(null, records, executor);
+    }
+
+    private void parallelScan(java.util.function.Predicate<Bytes> keyFilter, Consumer<Record> records, Executor executor) throws DataStorageManagerException {
+        // keys are grouped by data page, every group is read by a task which loads the page only once
+        Map<Long, List<Bytes>> keysByPage = new HashMap<>();
+        ArrayDeque<CompletableFuture<?>> running = new ArrayDeque<>();
+        int maxRunningTasks = Runtime.getRuntime().availableProcessors() * 4;
+        int buffered = 0;
+        try {
+            Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(null, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), tableContext, null);
+            Iterator<Map.Entry<Bytes, Long>> it = scanner.iterator();
+            while (it.hasNext()) {
+                Map.Entry<Bytes, Long> entry = it.next();
+                Long pageId = entry.getValue();
+                if (pageId == null || (keyFilter != null && !keyFilter.test(entry.getKey()))) {
+                    continue;
+                }
+                List<Bytes> keys = keysByPage.computeIfAbsent(pageId, p -> new ArrayList<>());
+                keys.add(entry.getKey());
+                buffered++;
+                if (keys.size() >= PARALLEL_SCAN_KEYS_PER_TASK) {
+                    keysByPage.remove(pageId);
+                    buffered -= keys.size();
+                    submitParallelScanTask(pageId, keys, records, executor, running, maxRunningTasks);
+                } else if (buffered >= PARALLEL_SCAN_MAX_BUFFERED_KEYS) {
+                    for (Map.Entry<Long, List<Bytes>> group : keysByPage.entrySet()) {
+                        submitParallelScanTask(group.getKey(), group.getValue(), records, executor, running, maxRunningTasks);
+                    }
+                    keysByPage.clear();
+                    buffered = 0;
+                }
+            }
+            for (Map.Entry<Long, List<Bytes>> group : keysByPage.entrySet()) {
+                submitParallelScanTask(group.getKey(), group.getValue(), records, executor, running, maxRunningTasks);
+            }
+            for (CompletableFuture<?> task : running) {
+                task.join();
+            }
+        } catch (StatementExecutionException impossible) {
+            throw new DataStorageManagerException(impossible);
+        } catch (CompletionException error) {
+            Throwable cause = error.getCause();
+            if (cause instanceof RuntimeException && cause.getCause() instanceof DataStorageManagerException) {
+                throw (DataStorageManagerException) cause.getCause();
+            }
+            throw new DataStorageManagerException(cause);
+        } finally {
+            // do not leave tasks running after an error
+            for (CompletableFuture<?> task : running) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void submitParallelScanTask(
+            Long pageId, List<Bytes> keys, Consumer<Record> records, Executor executor,
+            ArrayDeque<CompletableFuture<?>> running, int maxRunningTasks
+    ) {
+        running.add(CompletableFuture.runAsync(() -> {
+            LocalScanPageCache localPageCache = new LocalScanPageCache();
+            for (Bytes key : keys) {
+                LockHandle lock = lockForRead(key, null);
+                try {
+                    Record record = fetchRecord(key, pageId, localPageCache);
+                    if (record != null) {
+                        records.accept(record);
+                    }
+                } catch (DataStorageManagerException | StatementExecutionException error) {
+                    throw new RuntimeException(error);
+                } finally {
+                    locksManager.releaseReadLock(lock);
+                }
+            }
+        }, executor));
+        while (running.size() > maxRunningTasks) {
+            running.poll().join();
+        }
+    }
+
     @Override
     public void dump(LogSequenceNumber sequenceNumber, FullTableScanConsumer receiver) throws DataStorageManagerException {
         dataStorageManager.fullTableScan(tableSpaceUUID, table.uuid, sequenceNumber, receiver);
@@ -2349,13 +2642,13 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
     public void writeFromDump(List<Record> record) throws DataStorageManagerException {
         LOGGER.log(Level.INFO, "{0} received {1} records", new Object[]{table.name, record.size()});
-        checkpointLock.asReadLock().lock();
+        long lockStamp = checkpointLock.readLock();
         try {
             for (Record r : record) {
                 applyInsert(r.key, r.value, false);
             }
         } finally {
-            checkpointLock.asReadLock().unlock();
+            checkpointLock.unlockRead(lockStamp);
         }
     }
 
@@ -2385,6 +2678,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     private void applyInsert(Bytes key, Bytes value, boolean onTransaction) throws DataStorageManagerException {
         // don't want to keep strong references to shared buffers in the keyToPages
         key = key.nonShared();
+        retainVersionForSnapshots(key, false);
+        for (SnapshotScan scan : runningSnapshotScans) {
+            scan.keyInserted(key);
+        }
 
         if (table.auto_increment) {
             // the next auto_increment value MUST be greater than every other explict value
@@ -2440,6 +2737,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             throw new IllegalStateException("corrupted transaction log: key " + key + " is already present in table "
                             + table.tablespace + "." + table.name);
         }
+        digest.recordInserted(key, value);
 
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST, "Inserted key " + key + " into page " + insertionPageId + " into table "
@@ -2452,7 +2750,8 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             DataAccessor values = record.getDataAccessor(table);
             for (AbstractIndexManager index : indexes.values()) {
                 Bytes indexKey = RecordSerializer.serializeIndexKey(values, index.getIndex(), index.getColumnNames());
-                index.recordInserted(key, indexKey);
+                index.recordChanging(key);
+                index.recordInserted(key, indexKey, values);
             }
         }
 
@@ -2497,7 +2796,14 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         boolean requireLock = get.isRequireLock();
         boolean useWriteLock = requireLock && context.isForceAcquireWriteLock();
         long transactionId = transaction != null ? transaction.transactionId : 0;
-        LockHandle lock = (transaction != null || requireLock) ? (useWriteLock ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+        boolean snapshot = transaction != null && transaction.isSnapshot() && !useWriteLock;
+        LockHandle lock = !snapshot && (transaction != null || requireLock) ? (useWriteLock ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+        if (lock != null) {
+            context.recordLockAcquisition();
+            if (lock.waited) {
+                context.recordLockWait();
+            }
+        }
         CompletableFuture<StatementExecutionResult> res = null;
         try {
             if (transaction != null) {
@@ -2524,16 +2830,18 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 }
             }
             if (res == null) {
-                Long pageId = keyToPage.get(key);
-                if (pageId == null) {
+                Long pageId = lookupPageOfKey(key);
+                Record loaded;
+                context.recordRowScanned();
+                if (snapshot) {
+                    loaded = fetchRecordForSnapshot(key, pageId, transaction.getSnapshotVersion(), null, context);
+                } else {
+                    loaded = pageId != null ? fetchRecord(key, pageId, null, context) : null;
+                }
+                if (loaded == null || (predicate != null && !predicate.evaluate(loaded, context))) {
                     res = CompletableFuture.completedFuture(GetResult.NOT_FOUND(transactionId));
                 } else {
-                    Record loaded = fetchRecord(key, pageId, null);
-                    if (loaded == null || (predicate != null && !predicate.evaluate(loaded, context))) {
-                        res = CompletableFuture.completedFuture(GetResult.NOT_FOUND(transactionId));
-                    } else {
-                        res = CompletableFuture.completedFuture(new GetResult(transactionId, loaded, table));
-                    }
+                    res = CompletableFuture.completedFuture(new GetResult(transactionId, loaded, table));
                 }
             }
             if (lock != null) {
@@ -2558,7 +2866,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
      * @return loaded page
      * @throws DataStorageManagerException if requested page cannot be read
      */
-    private DataPage temporaryLoadPageToMemory(Long pageId) throws DataStorageManagerException {
+    private DataPage temporaryLoadPageToMemory(Long pageId, StatementEvaluationContext context) throws DataStorageManagerException {
 
         long start = System.currentTimeMillis();
 
@@ -2574,6 +2882,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         } finally {
             maxCurrentPagesLoads.release();
         }
+        if (context != null) {
+            context.recordPageLoaded();
+        }
 
         long ioStop = System.currentTimeMillis();
 
@@ -2590,9 +2901,80 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private DataPage loadPageToMemory(Long pageId, boolean recovery) throws DataStorageManagerException {
+        return loadPageToMemory(pageId, recovery, null);
+    }
+
+    /**
+     * Immutable pages currently in memory ordered by their hotness for the page replacement policy, hottest
+     * first.
+     *
+     * @return the page ids or null if the warm-up of the page cache is disabled
+     */
+    private long[] collectHotPages(Map<Long, DataPageMetaData> activePages) {
+        if (!ENABLE_PAGE_CACHE_WARMUP) {
+            return null;
+        }
+        List<long[]> hotPages = new ArrayList<>();
+        for (DataPage page : pages.values()) {
+            if (page.immutable && activePages.containsKey(page.pageId)) {
+                int hotness = pageReplacementPolicy.hotness(page);
+                if (hotness >= 0) {
+                    hotPages.add(new long[]{page.pageId, hotness});
+                }
+            }
+        }
+        hotPages.sort((a, b) -> Long.compare(b[1], a[1]));
+        long[] result = new long[hotPages.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = hotPages.get(i)[0];
+        }
+        return result;
+    }
+
+    /**
+     * Returns and forgets the pages which were hot at the checkpoint this table booted from, see
+     * {@link TableStatus#hotPages}.
+     *
+     * @return the page ids, hottest first, or null if there is nothing to warm up
+     */
+    long[] takeHotPagesAtBoot() {
+        long[] result = hotPagesAtBoot;
+        hotPagesAtBoot = null;
+        return result;
+    }
+
+    /**
+     * Loads in memory a page which was hot at the last checkpoint, unless it is not in use anymore.
+     *
+     * @return false if the table has been closed or the memory reserved for data pages is full, so that the
+     * warm-up must stop
+     */
+    boolean warmUpPage(long pageId) throws DataStorageManagerException {
+        if (closed || pageReplacementPolicy.size() >= pageReplacementPolicy.capacity()) {
+            return false;
+        }
+        long lockStamp = checkpointLock.readLock();
+        try {
+            if (pageSet.isActive(pageId)) {
+                loadPageToMemory(pageId, false);
+            }
+        } finally {
+            checkpointLock.unlockRead(lockStamp);
+        }
+        return true;
+    }
+
+    /**
+     * @param context the statement which needs the page, if any, it is
+     * notified when the page is read from the storage
+     */
+    private DataPage loadPageToMemory(Long pageId, boolean recovery, StatementEvaluationContext context) throws DataStorageManagerException {
         DataPage result = pages.get(pageId);
         if (result != null) {
             pageReplacementPolicy.pageHit(result);
+            if (context != null) {
+                context.recordPageHit();
+            }
             return result;
         }
 
@@ -2621,6 +3003,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             });
             if (computed.value) {
                 _ioAndLock = System.currentTimeMillis();
+                if (context != null) {
+                    context.recordPageLoaded();
+                }
 
                 final Page.Metadata unload = pageReplacementPolicy.add(result);
                 if (unload != null) {
@@ -2651,12 +3036,18 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     }
 
     private DataPage buildImmutableDataPage(long pageId, List<Record> page) {
-        Map<Bytes, Record> newPageMap = new HashMap<>(page.size());
         long estimatedPageSize = 0;
         for (Record r : page) {
-            newPageMap.put(r.key, r);
             estimatedPageSize += DataPage.estimateEntrySize(r);
         }
+        /* Estimated size is the logical size of the page, the same it had when it was written */
+        if (ENABLE_SLAB_DATA_PAGES) {
+            return new DataPage(this, pageId, maxLogicalPageSize, estimatedPageSize, RecordSlab.build(page), true);
+        }
+        Map<Bytes, Record> newPageMap = new HashMap<>(page.size());
+        for (Record r : page) {
+            newPageMap.put(r.key, r);
+        }
         return new DataPage(this, pageId, maxLogicalPageSize, estimatedPageSize, newPageMap, true);
     }
 
@@ -2823,6 +3214,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     currentPageWasInMemory = true;
                 }
 
+                /* The page is going to be dropped, records replaced on it are still part of the digest */
+                removeReplacedRecordsFromDigest(page.pageId, records);
+
                 for (Record record : records) {
 
                     /* Flush the page if it would exceed max page size */
@@ -3026,14 +3420,14 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         TableCheckpoint result;
 
-        boolean lockAcquired;
+        long lockStamp;
         try {
-            lockAcquired = checkpointLock.asWriteLock().tryLock(CHECKPOINT_LOCK_WRITE_TIMEOUT, TimeUnit.SECONDS);
+            lockStamp = checkpointLock.tryWriteLock(CHECKPOINT_LOCK_WRITE_TIMEOUT, TimeUnit.SECONDS);
         } catch (InterruptedException err) {
             throw new DataStorageManagerException("interrupted while waiting for checkpoint lock", err);
         }
-        if (!lockAcquired) {
-            throw new DataStorageManagerException("timed out while waiting for checkpoint lock, write lock " + checkpointLock.writeLock());
+        if (lockStamp == 0) {
+            throw new DataStorageManagerException("timed out while waiting for checkpoint lock " + checkpointLock);
         }
         try {
 
@@ -3249,6 +3643,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             final Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(table.name);
             if (indexes != null) {
                 for (AbstractIndexManager indexManager : indexes.values()) {
+                    if (indexManager.getOnlineBuild() != null) {
+                        // not complete yet, at restart it will not find the checkpoint and it will be rebuilt
+                        continue;
+                    }
                     // Checkpoint at the same position of current TableManager
                     actions.addAll(indexManager.checkpoint(sequenceNumber, pin));
                 }
@@ -3258,9 +3656,13 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
             pageSet.checkpointDone(flushedPages);
 
+            /* The digest is saved with the checkpoint, it must not depend on records replaced on pages not flushed yet */
+            removeAllReplacedRecordsFromDigest();
+
+            Map<Long, DataPageMetaData> activePagesAfterCheckpoint = pageSet.getActivePages();
             TableStatus tableStatus = new TableStatus(table.name, sequenceNumber,
                     Bytes.longToByteArray(nextPrimaryKeyValue.get()), nextPageId,
-                    pageSet.getActivePages());
+                    activePagesAfterCheckpoint, digest.serialize(), collectHotPages(activePagesAfterCheckpoint));
 
             actions.addAll(dataStorageManager.tableCheckpoint(tableSpaceUUID, table.uuid, tableStatus, pin));
             tablecheckpoint = System.currentTimeMillis();
@@ -3292,7 +3694,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             }
 
         } finally {
-            checkpointLock.asWriteLock().unlock();
+            checkpointLock.unlockWrite(lockStamp);
         }
 
         long delta = end - start;
@@ -3331,6 +3733,11 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
         forWrite = forWrite || context.isForceAcquireWriteLock();
 
+        if (transaction != null && transaction.isSnapshot() && !forWrite) {
+            // records deleted after the snapshot are appended at the end of the scan
+            return scanNoStream(statement, context, transaction, lockRequired, forWrite);
+        }
+
         TupleComparator comparator = statement.getComparator();
         if (!ENABLE_STREAMING_DATA_SCANNER || (comparator != null
                 && this.stats.getTablesize() > HUGE_TABLE_SIZE_FORCE_MATERIALIZED_RESULTSET)) {
@@ -3484,6 +3891,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
             if (!applyProjectionDuringScan) {
                 recordSet.applyProjection(statement.getProjection(), context);
             }
+            context.recordSpilledBytes(recordSet.getSpilledBytes());
             return new SimpleDataScanner(transaction, recordSet);
         } finally {
             if (transaction != null) {
@@ -3492,6 +3900,57 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
+    /**
+     * Passes the records which match a scan to a consumer while the table is
+     * being read. Tuples are not built and the projection of the statement is
+     * not applied, this is used in order to compute aggregations during the
+     * scan.
+     */
+    public void scanRecords(
+            ScanStatement statement, StatementEvaluationContext context,
+            Transaction transaction, Consumer<Record> consumer
+    ) throws StatementExecutionException {
+        if (transaction != null) {
+            transaction.increaseRefcount();
+        }
+        try {
+            accessTableData(statement, context, new ScanResultOperation() {
+                @Override
+                public void accept(Record record, LockHandle lockHandle) throws StatementExecutionException {
+                    try {
+                        consumer.accept(record);
+                    } finally {
+                        locksManager.releaseLock(lockHandle);
+                    }
+                }
+            }, transaction, false, false);
+        } finally {
+            if (transaction != null) {
+                transaction.decreaseRefCount();
+            }
+        }
+    }
+
+    /**
+     * Counts the records of the table using the size of the primary key
+     * index, without scanning the table.
+     *
+     * @param transaction the transaction of the caller, if any
+     * @return the number of records, -1 if a transaction is using the table
+     * or the caller reads a snapshot, in this case the table has to be
+     * scanned
+     */
+    public long countRecordsWithoutScan(Transaction transaction) {
+        if (transaction != null && transaction.isSnapshot()) {
+            // the primary key index holds the current records, not the ones of the snapshot
+            return -1;
+        }
+        if (tableSpaceManager.isTransactionRunningOnTable(table.name)) {
+            return -1;
+        }
+        return keyToPage.size();
+    }
+
     private DataScanner scanWithStream(
             ScanStatement statement, StatementEvaluationContext context,
             Transaction transaction, boolean lockRequired, boolean forWrite
@@ -3634,14 +4093,33 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         statement.validateContext(context);
         Predicate predicate = statement.getPredicate();
         long _start = System.currentTimeMillis();
-        boolean acquireLock = transaction != null || forWrite || lockRequired;
+        // snapshot transactions read previous versions of changed records and do not need locks
+        boolean snapshot = transaction != null && transaction.isSnapshot() && !forWrite;
+        long snapshotVersion = snapshot ? transaction.getSnapshotVersion() : -1;
+        boolean acquireLock = !snapshot && (transaction != null || forWrite || lockRequired);
         LocalScanPageCache lastPageRead = acquireLock ? null : new LocalScanPageCache();
         AtomicInteger count = new AtomicInteger();
+        SnapshotScan registeredSnapshotScan = null;
         try {
 
             IndexOperation indexOperation = predicate != null ? predicate.getIndexOperation() : null;
             boolean primaryIndexSeek = indexOperation instanceof PrimaryIndexSeek;
             AbstractIndexManager useIndex = getIndexForTbleAccess(indexOperation);
+            if (useIndex == null && indexOperation instanceof VectorIndexSearch) {
+                // the vector index is not available, the sort on top of the scan does not need it
+                indexOperation = null;
+            }
+            // the other records deleted after the snapshot have to be added at the end of a snapshot scan:
+            // scans in primary key order track only inserted and deleted keys, index scans and in memory
+            // primary keys, which are not sorted, track every visited key
+            boolean trackSnapshotScan = snapshot && !primaryIndexSeek;
+            SnapshotScan snapshotScan = trackSnapshotScan && useIndex == null && keyToPage.isScannedInBytesOrder()
+                    ? new SnapshotScan() : null;
+            Set<Bytes> snapshotVisitedKeys = trackSnapshotScan && snapshotScan == null ? new HashSet<>() : null;
+            // the index stores every column needed by the statement, data pages are not accessed;
+            // values are read from the index before locking the record, so only when locks are not needed
+            boolean coveringIndexScan = useIndex != null && !snapshot && !acquireLock
+                    && predicate.isCoveringIndexScan() && useIndex.isCoveringScanSupported();
 
             class RecordProcessor implements BatchOrderedExecutor.Executor<Entry<Bytes, Long>>,
                     Consumer<Map.Entry<Bytes, Long>> {
@@ -3655,13 +4133,35 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
 
                 @Override
                 public void accept(Entry<Bytes, Long> entry) throws DataStorageManagerException, StatementExecutionException, LogNotAvailableException {
+                    process(entry.getKey(), entry.getValue(), null);
+                }
+
+                /**
+                 * Processes a record built by a covering index scan
+                 */
+                public void acceptFromIndex(Record record) throws DataStorageManagerException, StatementExecutionException, LogNotAvailableException {
+                    process(record.key, null, record);
+                }
+
+                private void process(Bytes key, Long pageId, Record fromIndex) throws DataStorageManagerException, StatementExecutionException, LogNotAvailableException {
                     if (transaction != null && count.incrementAndGet() % 1000 == 0) {
                         transaction.touch();
                     }
-                    Bytes key = entry.getKey();
+                    if (snapshotScan != null) {
+                        snapshotScan.visited(key);
+                    } else if (snapshotVisitedKeys != null) {
+                        snapshotVisitedKeys.add(key);
+                    }
+                    context.recordRowScanned();
                     boolean already_locked = transaction != null && transaction.lookupLock(table.name, key) != null;
                     boolean record_discarded = !already_locked;
                     LockHandle lock = acquireLock ? (forWrite ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+                    if (lock != null && !already_locked) {
+                        context.recordLockAcquisition();
+                        if (lock.waited) {
+                            context.recordLockWait();
+                        }
+                    }
 //                    LOGGER.log(Level.SEVERE, "CREATED LOCK " + lock + " for " + key);
                     try {
                         if (transaction != null) {
@@ -3681,8 +4181,13 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                                 return;
                             }
                         }
-                        Long pageId = entry.getValue();
-                        if (pageId != null) {
+                        if (fromIndex != null) {
+                            if (predicate.evaluate(fromIndex, context)) {
+                                // now the consumer is the owner of the lock on the record
+                                record_discarded = false;
+                                consumer.accept(fromIndex, transaction == null ? lock : null);
+                            }
+                        } else if (pageId != null || snapshot) {
                             boolean pkFilterCompleteMatch = false;
                             if (!primaryIndexSeek && predicate != null) {
                                 Predicate.PrimaryKeyMatchOutcome outcome =
@@ -3693,7 +4198,9 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                                     pkFilterCompleteMatch = true;
                                 }
                             }
-                            Record record = fetchRecord(key, pageId, lastPageRead);
+                            Record record = snapshot
+                                    ? fetchRecordForSnapshot(key, pageId, snapshotVersion, lastPageRead, context)
+                                    : fetchRecord(key, pageId, lastPageRead, context);
                             if (record != null && (pkFilterCompleteMatch || predicate == null || predicate.evaluate(record, context))) {
                                 // now the consumer is the owner of the lock on the record
                                 record_discarded = false;
@@ -3705,7 +4212,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                         if (record_discarded) {
                             if (transaction == null) {
                                 locksManager.releaseLock(lock);
-                            } else if (!already_locked) {
+                            } else if (!already_locked && lock != null) {
                                 transaction.releaseLockOnKey(table.name, key, locksManager);
                             }
                         }
@@ -3722,12 +4229,27 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                     // no need to craete and use Streams
                     PrimaryIndexSeek seek = (PrimaryIndexSeek) indexOperation;
                     Bytes value = Bytes.from_array(seek.value.computeNewValue(null, context, tableContext));
-                    Long page = keyToPage.get(value);
-                    if (page != null) {
+                    Long page = lookupPageOfKey(value);
+                    if (page != null || snapshot) {
+                        // the record may have been deleted after the snapshot
                         Map.Entry<Bytes, Long> singleEntry =
                                 new AbstractMap.SimpleImmutableEntry<>(value, page);
                         scanExecutor.accept(singleEntry);
                     }
+                } else if (coveringIndexScan) {
+                    Stream<Record> scanner = useIndex.coveringScanner(indexOperation, context, tableContext);
+                    scanner.forEach(scanExecutor::acceptFromIndex);
+                } else if (snapshotScan != null) {
+                    tableSpaceManager.runWithoutChanges(() -> runningSnapshotScans.add(snapshotScan));
+                    registeredSnapshotScan = snapshotScan;
+                    Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(indexOperation, context, tableContext, useIndex);
+                    BatchOrderedExecutor<Map.Entry<Bytes, Long>> executor = new BatchOrderedExecutor<>(SORTED_PAGE_ACCESS_WINDOW_SIZE,
+                            scanExecutor, SORTED_PAGE_ACCESS_COMPARATOR);
+                    scanner.forEach(entry -> {
+                        snapshotScan.advance(entry.getKey());
+                        executor.accept(entry);
+                    });
+                    executor.finish();
                 } else {
                     Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(indexOperation, context, tableContext, useIndex);
                     BatchOrderedExecutor<Map.Entry<Bytes, Long>> executor = new BatchOrderedExecutor<>(SORTED_PAGE_ACCESS_WINDOW_SIZE,
@@ -3755,6 +4277,20 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 }
             }
 
+            if (!exit && trackSnapshotScan) {
+                consumer.beginNewRecordsInTransactionBlock();
+                for (Bytes key : snapshotVersions.keys()) {
+                    SnapshotRecordVersions.Version version = snapshotVersions.find(key, snapshotVersion);
+                    if (version != null && version.previous != null
+                            && !(snapshotScan != null ? snapshotScan.isVisited(key, keyToPage) : snapshotVisitedKeys.contains(key))) {
+                        Record record = new Record(key, version.previous);
+                        if (predicate == null || predicate.evaluate(record, context)) {
+                            consumer.accept(record, null);
+                        }
+                    }
+                }
+            }
+
             if (!exit && transaction != null) {
                 consumer.beginNewRecordsInTransactionBlock();
                 Collection<Record> newRecordsForTable = transaction.getNewRecordsForTable(table.name);
@@ -3778,6 +4314,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         } catch (HerdDBInternalException err) {
             LOGGER.log(Level.SEVERE, "error during scan {0}, started at {1}: {2}", new Object[]{statement, new java.sql.Timestamp(_start), err.toString()});
             throw new StatementExecutionException(err);
+        } finally {
+            if (registeredSnapshotScan != null) {
+                runningSnapshotScans.remove(registeredSnapshotScan);
+            }
         }
     }
 
@@ -3793,6 +4333,10 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         IndexOperation indexOperation = predicate != null ? predicate.getIndexOperation() : null;
         boolean primaryIndexSeek = indexOperation instanceof PrimaryIndexSeek;
         AbstractIndexManager useIndex = getIndexForTbleAccess(indexOperation);
+        if (useIndex == null && indexOperation instanceof VectorIndexSearch) {
+            // the vector index is not available, the sort on top of the scan does not need it
+            indexOperation = null;
+        }
         Stream<Map.Entry<Bytes, Long>> scanner = keyToPage.scanner(indexOperation, context, tableContext, useIndex);
 
         Stream<Record> resultFromTable = scanner.map(entry -> {
@@ -3841,9 +4385,16 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
     ) throws DataStorageManagerException {
 
         Bytes key = entry.getKey();
+        context.recordRowScanned();
         boolean keep_lock = false;
         boolean already_locked = transaction != null && transaction.lookupLock(table.name, key) != null;
         LockHandle lock = acquireLock ? (forWrite ? lockForWrite(key, transaction) : lockForRead(key, transaction)) : null;
+        if (lock != null && !already_locked) {
+            context.recordLockAcquisition();
+            if (lock.waited) {
+                context.recordLockWait();
+            }
+        }
         try {
             if (transaction != null) {
                 transaction.touch();
@@ -3873,7 +4424,7 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                         pkFilterCompleteMatch = true;
                     }
                 }
-                Record record = fetchRecord(key, pageId, lastPageRead);
+                Record record = fetchRecord(key, pageId, lastPageRead, context);
                 if (record != null && (pkFilterCompleteMatch || predicate == null || predicate.evaluate(record, context))) {
 
                     keep_lock = context.isForceRetainReadLock() || (lock != null && lock.write);
@@ -3922,11 +4473,36 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         return keyToPage;
     }
 
+    /**
+     * Reads the version of a record visible to a snapshot transaction
+     *
+     * @param pageId current page of the record, null if the record does not
+     * exist anymore
+     * @return the record, null if it did not exist when the snapshot started
+     */
+    private Record fetchRecordForSnapshot(Bytes key, Long pageId, long snapshotVersion, LocalScanPageCache localScanPageCache,
+            StatementEvaluationContext context) throws StatementExecutionException, DataStorageManagerException {
+        // read the current value before looking for versions, changes retain the previous value before being applied
+        Record current = pageId != null ? fetchRecord(key, pageId, localScanPageCache, context) : null;
+        if (snapshotVersions.isEmpty()) {
+            return current;
+        }
+        SnapshotRecordVersions.Version version = snapshotVersions.find(key, snapshotVersion);
+        if (version == null) {
+            return current;
+        }
+        return version.previous != null ? new Record(key, version.previous) : null;
+    }
+
     private Record fetchRecord(Bytes key, Long pageId, LocalScanPageCache localScanPageCache) throws StatementExecutionException, DataStorageManagerException {
+        return fetchRecord(key, pageId, localScanPageCache, null);
+    }
+
+    private Record fetchRecord(Bytes key, Long pageId, LocalScanPageCache localScanPageCache, StatementEvaluationContext context) throws StatementExecutionException, DataStorageManagerException {
         int maxTrials = 3;
         long[] trialPages = null;
         while (true) {
-            DataPage dataPage = fetchDataPage(pageId, localScanPageCache);
+            DataPage dataPage = fetchDataPage(pageId, localScanPageCache, context);
             if (dataPage != null) {
                 Record record = dataPage.get(key);
                 if (record != null) {
@@ -3994,16 +4570,19 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
         }
     }
 
-    private DataPage fetchDataPage(Long pageId, LocalScanPageCache localScanPageCache) throws DataStorageManagerException {
+    private DataPage fetchDataPage(Long pageId, LocalScanPageCache localScanPageCache, StatementEvaluationContext context) throws DataStorageManagerException {
         DataPage dataPage;
         if (localScanPageCache == null
                 || !ENABLE_LOCAL_SCAN_PAGE_CACHE
                 || pages.containsKey(pageId)) {
-            dataPage = loadPageToMemory(pageId, false);
+            dataPage = loadPageToMemory(pageId, false, context);
         } else {
             if (pageId.equals(localScanPageCache.pageId)) {
                 // same page needed twice
                 dataPage = localScanPageCache.value;
+                if (context != null) {
+                    context.recordPageHit();
+                }
             } else {
                 // TODO: add good heuristics and choose whether to load
                 // the page in the main buffer
@@ -4011,15 +4590,18 @@ public final class TableManager implements AbstractTableManager, Page.Owner {
                 if (dataPage == null) {
                     if (ThreadLocalRandom.current().nextInt(10) < 4) {
                         // 25% of pages will be loaded to main buffer
-                        dataPage = loadPageToMemory(pageId, false);
+                        dataPage = loadPageToMemory(pageId, false, context);
                     } else {
                         // 75% of pages will be loaded only to current scan buffer
-                        dataPage = temporaryLoadPageToMemory(pageId);
+                        dataPage = temporaryLoadPageToMemory(pageId, context);
                         localScanPageCache.value = dataPage;
                         localScanPageCache.pageId = pageId;
                     }
                 } else {
                     pageReplacementPolicy.pageHit(dataPage);
+                    if (context != null) {
+                        context.recordPageHit();
+                    }
                 }
             }
         }
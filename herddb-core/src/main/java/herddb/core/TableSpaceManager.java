@@ -38,11 +38,14 @@ import herddb.core.system.SysconfigTableManager;
 import herddb.core.system.SysdualTableManager;
 import herddb.core.system.SysforeignkeysTableManager;
 import herddb.core.system.SysindexcolumnsTableManager;
+import herddb.core.system.SysindexbuildsTableManager;
 import herddb.core.system.SysindexesTableManager;
 import herddb.core.system.SyslogstatusManager;
 import herddb.core.system.SysnodesTableManager;
+import herddb.core.system.SysquerystatsTableManager;
 import herddb.core.system.SysstatementsTableManager;
 import herddb.core.system.SystablesTableManager;
+import herddb.core.system.SystablespacememoryTableManager;
 import herddb.core.system.SystablespacereplicastateTableManager;
 import herddb.core.system.SystablespacesTableManager;
 import herddb.core.system.SystablestatsTableManager;
@@ -51,6 +54,7 @@ import herddb.data.consistency.TableChecksum;
 import herddb.data.consistency.TableDataChecksum;
 import herddb.index.MemoryHashIndexManager;
 import herddb.index.brin.BRINIndexManager;
+import herddb.index.hnsw.HNSWIndexManager;
 import herddb.jmx.JMXUtils;
 import herddb.log.CommitLog;
 import herddb.log.CommitLogListener;
@@ -66,7 +70,9 @@ import herddb.metadata.MetadataStorageManagerException;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
 import herddb.model.DDLException;
+import herddb.model.DDLStatement;
 import herddb.model.DDLStatementExecutionResult;
+import herddb.model.DMLStatement;
 import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
 import herddb.model.ForeignKeyDef;
@@ -97,6 +103,7 @@ import herddb.model.commands.DropTableStatement;
 import herddb.model.commands.RollbackTransactionStatement;
 import herddb.model.commands.SQLPlannedOperationStatement;
 import herddb.model.commands.ScanStatement;
+import herddb.model.commands.TruncateTableStatement;
 import herddb.network.Channel;
 import herddb.network.ServerHostData;
 import herddb.proto.Pdu;
@@ -109,6 +116,7 @@ import herddb.storage.FullTableScanConsumer;
 import herddb.utils.Bytes;
 import herddb.utils.Futures;
 import herddb.utils.KeyValue;
+import herddb.utils.StripedReadWriteLock;
 import herddb.utils.SystemProperties;
 import java.io.EOFException;
 import java.io.IOException;
@@ -135,12 +143,12 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 
@@ -157,6 +165,7 @@ public class TableSpaceManager {
 
     final StatsLogger tablespaceStasLogger;
     final OpStatsLogger checkpointTimeStats;
+    final OpStatsLogger followerApplyLagStats;
 
     private final MetadataStorageManager metadataStorageManager;
     private final DataStorageManager dataStorageManager;
@@ -168,7 +177,8 @@ public class TableSpaceManager {
     private final ConcurrentHashMap<String, AbstractTableManager> tables = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, AbstractIndexManager> indexes = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Map<String, AbstractIndexManager>> indexesByTable = new ConcurrentHashMap<>();
-    private final StampedLock generalLock = new StampedLock();
+    private final ConcurrentHashMap<String, OnlineIndexBuild> onlineIndexBuilds = new ConcurrentHashMap<>();
+    private final StripedReadWriteLock generalLock = new StripedReadWriteLock();
     private final AtomicLong newTransactionId = new AtomicLong();
     private final DBManager dbmanager;
     private volatile FollowerThread followerThread;
@@ -217,7 +227,33 @@ public class TableSpaceManager {
         this.virtual = virtual;
         this.tablespaceStasLogger = this.dbmanager.getStatsLogger().scope(this.tableSpaceName);
         this.checkpointTimeStats = this.tablespaceStasLogger.getOpStatsLogger("checkpointTime");
+        this.followerApplyLagStats = this.tablespaceStasLogger.getOpStatsLogger("followerApplyLag");
+        this.tablespaceStasLogger.registerGauge("followerLagEntries", new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                FollowerThread follower = followerThread;
+                return follower == null ? 0 : follower.pipeline.getPendingEntries();
+            }
+        });
+        this.tablespaceStasLogger.registerGauge("followerLagMillis", new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                FollowerThread follower = followerThread;
+                return follower == null ? 0L : follower.pipeline.getLagMillis();
+            }
+        });
         this.dataStorageManager.tableSpaceMetadataUpdated(tableSpaceUUID, expectedReplicaCount);
+        this.dbmanager.getMemoryManager().registerTableSpace(tableSpaceUUID, tableSpaceName);
     }
 
     private void bootSystemTables() {
@@ -227,8 +263,10 @@ public class TableSpaceManager {
         } else {
             registerSystemTableManager(new SystablesTableManager(this));
             registerSystemTableManager(new SystablestatsTableManager(this));
+            registerSystemTableManager(new SystablespacememoryTableManager(this));
             registerSystemTableManager(new SysindexesTableManager(this));
             registerSystemTableManager(new SysindexcolumnsTableManager(this));
+            registerSystemTableManager(new SysindexbuildsTableManager(this));
             registerSystemTableManager(new SyscolumnsTableManager(this));
             registerSystemTableManager(new SystransactionsTableManager(this));
             registerSystemTableManager(new SyslogstatusManager(this));
@@ -239,6 +277,7 @@ public class TableSpaceManager {
         registerSystemTableManager(new SystablespacereplicastateTableManager(this));
         registerSystemTableManager(new SysnodesTableManager(this));
         registerSystemTableManager(new SysstatementsTableManager(this));
+        registerSystemTableManager(new SysquerystatsTableManager(this));
 
     }
 
@@ -357,7 +396,23 @@ public class TableSpaceManager {
         recoveryInProgress = false;
     }
 
+    /**
+     * Called by the follower after the parallel apply of a sequence of DML entries
+     */
+    void followerEntriesApplied(LogSequenceNumber position) {
+        this.actualLogSequenceNumber = position;
+    }
+
     void apply(CommitLogResult position, LogEntry entry, boolean recovery) throws DataStorageManagerException, DDLException {
+        apply(position, entry, recovery, false);
+    }
+
+    /**
+     * @param buildIndexOnline CREATE_INDEX has been issued by a statement on the leader, which will complete the
+     * build of the index without holding the lock on the tablespace, see {@link #createIndex}. Recovery and followers
+     * build the index synchronously
+     */
+    private void apply(CommitLogResult position, LogEntry entry, boolean recovery, boolean buildIndexOnline) throws DataStorageManagerException, DDLException {
         if (!position.deferred || position.sync) {
             // this will wait for the write to be acknowledged by the log
             // it can throw LogNotAvailableException
@@ -412,6 +467,9 @@ public class TableSpaceManager {
                     }
                 }
                 transactions.remove(transaction.transactionId);
+                if (transaction.isSnapshot()) {
+                    closeSnapshot(transaction);
+                }
             }
             break;
             case LogEntryType.COMMITTRANSACTION: {
@@ -423,17 +481,24 @@ public class TableSpaceManager {
                 LogSequenceNumber commit = position.getLogSequenceNumber();
                 transaction.sync(commit);
                 List<AbstractTableManager> managers = new ArrayList<>(tables.values());
-                for (AbstractTableManager manager : managers) {
-                    if (manager.getCreatedInTransaction() == 0 || manager.getCreatedInTransaction() == id) {
-                        manager.onTransactionCommit(transaction, recovery);
-                    }
-                }
                 List<AbstractIndexManager> indexManagers = new ArrayList<>(indexes.values());
-                for (AbstractIndexManager indexManager : indexManagers) {
-                    if (indexManager.getCreatedInTransaction() == 0 || indexManager.getCreatedInTransaction() == id) {
-                        indexManager.onTransactionCommit(transaction, recovery);
+                // snapshots see the whole transaction or nothing
+                long snapshotStamp = snapshotLock.readLock();
+                try {
+                    for (AbstractTableManager manager : managers) {
+                        if (manager.getCreatedInTransaction() == 0 || manager.getCreatedInTransaction() == id) {
+                            manager.onTransactionCommit(transaction, recovery);
+                        }
+                    }
+                    for (AbstractIndexManager indexManager : indexManagers) {
+                        if (indexManager.getCreatedInTransaction() == 0 || indexManager.getCreatedInTransaction() == id) {
+                            indexManager.onTransactionCommit(transaction, recovery);
+                        }
                     }
+                } finally {
+                    snapshotLock.unlockRead(snapshotStamp);
                 }
+                Set<String> tablesWithChangedSchema = tablesWithChangedSchema(transaction, indexManagers);
                 if ((transaction.droppedTables != null && !transaction.droppedTables.isEmpty()) || (transaction.droppedIndexes != null && !transaction.droppedIndexes.isEmpty())) {
 
                     if (transaction.droppedTables != null) {
@@ -461,9 +526,14 @@ public class TableSpaceManager {
                         || (transaction.newIndexes != null && !transaction.newIndexes.isEmpty())
                         || (transaction.droppedIndexes != null && !transaction.droppedIndexes.isEmpty())) {
                     writeTablesOnDataStorageManager(position, false);
-                    dbmanager.getPlanner().clearCache();
+                    for (String table : tablesWithChangedSchema) {
+                        dbmanager.getPlanner().invalidateTable(tableSpaceName, table);
+                    }
                 }
                 transactions.remove(transaction.transactionId);
+                if (transaction.isSnapshot()) {
+                    closeSnapshot(transaction);
+                }
             }
             break;
             case LogEntryType.CREATE_TABLE: {
@@ -491,7 +561,16 @@ public class TableSpaceManager {
                 if (tableManager == null) {
                     throw new RuntimeException("table " + index.table + " does not exists");
                 }
-                bootIndex(index, tableManager, true, entry.transactionId, true, false);
+                // indexes created by a statement on a table with data are built later, without blocking the table
+                boolean online = buildIndexOnline && entry.transactionId <= 0
+                        && OnlineIndexBuild.isSupported(index)
+                        && tableManager.getStats().getTablesize() > 0;
+                AbstractIndexManager indexManager = bootIndex(index, tableManager, true, entry.transactionId, !online, false);
+                if (online) {
+                    OnlineIndexBuild build = new OnlineIndexBuild(indexManager, tableManager);
+                    indexManager.setOnlineBuild(build);
+                    onlineIndexBuilds.put(index.name, build);
+                }
                 if (entry.transactionId <= 0) {
                     writeTablesOnDataStorageManager(position, false);
                 }
@@ -529,12 +608,12 @@ public class TableSpaceManager {
                     AbstractIndexManager manager = indexes.get(indexName);
                     if (manager != null) {
                         disposeIndexManager(manager);
+                        dbmanager.getPlanner().invalidateTable(tableSpaceName, manager.getIndex().table);
                     }
                 }
 
                 if (entry.transactionId <= 0) {
                     writeTablesOnDataStorageManager(position, false);
-                    dbmanager.getPlanner().clearCache();
                 }
             }
             break;
@@ -572,7 +651,11 @@ public class TableSpaceManager {
                             returnValues = false
                             maxRows = -1
                         */
-                        TranslatedQuery translated = manager.getPlanner().translate(tableSpace, query, Collections.emptyList(), true, false, false, -1);
+                        TranslatedQuery translated = null;
+                        if (TableDataChecksum.HASH_TYPE.equals(check.getDigestType())) {
+                            // check written by an older leader, the digest depends on the order of the scan
+                            translated = manager.getPlanner().translate(tableSpace, query, Collections.emptyList(), true, false, false, -1);
+                        }
                         TableChecksum scanResult = TableDataChecksum.createChecksum(manager, translated, this, tableSpace, tableName);
                         long followerDigest = scanResult.getDigest();
                         long leaderDigest = check.getDigest();
@@ -583,6 +666,7 @@ public class TableSpaceManager {
                             LOGGER.log(Level.INFO, "Data consistency check PASS for table {0}  tablespace {1} with  Checksum {2}", new Object[]{tableName, tableSpace, followerDigest});
                         } else {
                             LOGGER.log(Level.SEVERE, "Data consistency check FAILED for table {0} in tablespace {1} with Checksum {2}", new Object[]{tableName, tableSpace, followerDigest});
+                            logDifferentBuckets(tableName, tableSpace, check.getBucketDigests(), scanResult.getBucketDigests());
                         }
                     } else {
                         long digest = check.getDigest();
@@ -605,9 +689,154 @@ public class TableSpaceManager {
                 && entry.type != LogEntryType.DROP_TABLE
                 && entry.type != LogEntryType.TABLE_CONSISTENCY_CHECK) {
             AbstractTableManager tableManager = tables.get(entry.tableName);
+            applyOnTable(tableManager, position, entry, recovery);
+        }
+
+    }
+
+    /**
+     * Applies a change to the data of a table holding the snapshot lock, as
+     * required by {@link #nextSnapshotDataVersion()}. Table managers use it
+     * for the changes they apply directly, followers in order to apply DML on
+     * different tables in parallel, without changing the position of the
+     * tablespace.
+     */
+    void applyOnTable(AbstractTableManager tableManager, CommitLogResult position, LogEntry entry, boolean recovery)
+            throws DataStorageManagerException {
+        long snapshotStamp = snapshotLock.readLock();
+        try {
             tableManager.apply(position, entry, recovery);
+        } finally {
+            snapshotLock.unlockRead(snapshotStamp);
+        }
+    }
+
+    /**
+     * Runs an action while no change is being applied to the tables, changes
+     * which follow see its effects
+     */
+    void runWithoutChanges(Runnable action) {
+        long stamp = snapshotLock.writeLock();
+        try {
+            action.run();
+        } finally {
+            snapshotLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Writes and applies a TRUNCATE TABLE. Truncation drops the records
+     * without retaining their previous versions, so it is refused while
+     * snapshot transactions are running; the snapshot lock prevents new
+     * snapshots from starting in the meantime.
+     */
+    void logAndApplyTruncate(AbstractTableManager tableManager, LogEntry entry)
+            throws StatementExecutionException, DataStorageManagerException, LogNotAvailableException {
+        long snapshotStamp = snapshotLock.readLock();
+        try {
+            if (!activeSnapshots.isEmpty()) {
+                throw new StatementExecutionException("TRUNCATE TABLE cannot be executed on table "
+                        + tableManager.getTable().tablespace + "." + tableManager.getTable().name
+                        + ": " + activeSnapshots.size() + " snapshot transactions are running");
+            }
+            CommitLogResult pos = log.log(entry, true);
+            tableManager.apply(pos, entry, false);
+        } finally {
+            snapshotLock.unlockRead(snapshotStamp);
+        }
+    }
+
+    /**
+     * Starts a snapshot for the given transaction. Waiting for the changes
+     * which are being applied ensures that every change which follows has a
+     * greater data version.
+     */
+    private void openSnapshot(Transaction transaction) {
+        long stamp = snapshotLock.writeLock();
+        try {
+            long version = dataVersion.get();
+            transaction.setSnapshotVersion(version);
+            activeSnapshots.put(transaction.transactionId, version);
+        } finally {
+            snapshotLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Closes the snapshot of the given transaction, and drops the versions of
+     * the records which are no more needed by the oldest active snapshot
+     */
+    private void closeSnapshot(Transaction transaction) {
+        long oldestVersion;
+        long stamp = snapshotLock.writeLock();
+        try {
+            activeSnapshots.remove(transaction.transactionId);
+            // with no active snapshot every version retained up to now can be dropped
+            oldestVersion = activeSnapshots.isEmpty()
+                    ? dataVersion.get() : Collections.min(activeSnapshots.values());
+        } finally {
+            snapshotLock.unlockWrite(stamp);
+        }
+        for (AbstractTableManager manager : tables.values()) {
+            if (manager instanceof TableManager) {
+                ((TableManager) manager).pruneSnapshotVersions(oldestVersion);
+            }
+        }
+    }
+
+    /**
+     * Assigns the data version to a change which is being applied, the caller
+     * must be applying changes with the snapshot lock held.
+     *
+     * @return the data version of the change, 0 if no snapshot is active and
+     * so previous versions of records need not to be retained
+     */
+    long nextSnapshotDataVersion() {
+        if (activeSnapshots.isEmpty()) {
+            return 0;
+        }
+        return dataVersion.incrementAndGet();
+    }
+
+    public int getActiveSnapshotsCount() {
+        return activeSnapshots.size();
+    }
+
+    private static void logDifferentBuckets(String tableName, String tableSpace, long[] leaderBuckets, long[] followerBuckets) {
+        if (leaderBuckets == null || followerBuckets == null || leaderBuckets.length != followerBuckets.length) {
+            return;
         }
+        List<Integer> different = new ArrayList<>();
+        for (int i = 0; i < leaderBuckets.length; i++) {
+            if (leaderBuckets[i] != followerBuckets[i]) {
+                different.add(i);
+            }
+        }
+        LOGGER.log(Level.SEVERE, "Data consistency check for table {0} in tablespace {1}, {2} buckets out of {3} are different: {4}",
+                new Object[]{tableName, tableSpace, different.size(), leaderBuckets.length, different});
+    }
 
+    private static Set<String> tablesWithChangedSchema(Transaction transaction, List<AbstractIndexManager> indexManagers) {
+        Set<String> res = new HashSet<>();
+        if (transaction.newTables != null) {
+            res.addAll(transaction.newTables.keySet());
+        }
+        if (transaction.droppedTables != null) {
+            res.addAll(transaction.droppedTables);
+        }
+        if (transaction.newIndexes != null) {
+            for (Index index : transaction.newIndexes.values()) {
+                res.add(index.table);
+            }
+        }
+        if (transaction.droppedIndexes != null) {
+            for (AbstractIndexManager indexManager : indexManagers) {
+                if (transaction.droppedIndexes.contains(indexManager.getIndex().name)) {
+                    res.add(indexManager.getIndex().table);
+                }
+            }
+        }
+        return res;
     }
 
     private void disposeTable(AbstractTableManager manager) throws DataStorageManagerException {
@@ -652,7 +881,7 @@ public class TableSpaceManager {
                 && (lockRequired || forWrite || context.isForceAcquireWriteLock() || context.isForceRetainReadLock())) {
             try {
                 // sync on beginTransaction
-                StatementExecutionResult newTransaction = Futures.result(beginTransactionAsync(context, true));
+                StatementExecutionResult newTransaction = Futures.result(beginTransactionAsync(context, true, false));
                 transactionContext = new TransactionContext(newTransaction.transactionId);
                 rollbackOnError = true;
             } catch (Exception err) {
@@ -806,6 +1035,10 @@ public class TableSpaceManager {
 //        LOGGER.log(Level.SEVERE, "RELEASE TS WRITELOCK for " + description + " -> " + lockStamp + " " + generalLock);
     }
 
+    AbstractIndexManager getIndexManager(String indexName) {
+        return indexes.get(indexName);
+    }
+
     public Map<String, AbstractIndexManager> getIndexesOnTable(String name) {
         Map<String, AbstractIndexManager> result = indexesByTable.get(name);
         if (result == null || result.isEmpty()) {
@@ -814,6 +1047,13 @@ public class TableSpaceManager {
         return result;
     }
 
+    /**
+     * Indexes which are being built online, they are not available yet
+     */
+    public List<OnlineIndexBuild> getOnlineIndexBuilds() {
+        return new ArrayList<>(onlineIndexBuilds.values());
+    }
+
     boolean isTransactionRunningOnTable(String name) {
         return transactions
                 .values()
@@ -1180,6 +1420,9 @@ public class TableSpaceManager {
     private class FollowerThread implements Runnable {
 
         private volatile CountDownLatch running = new CountDownLatch(1);
+        private final FollowerApplyPipeline pipeline = new FollowerApplyPipeline(TableSpaceManager.this,
+                dbmanager.getFollowerApplyExecutor(), dbmanager.getFollowerApplyMaxPendingEntries(),
+                followerApplyLagStats);
 
         @Override
         public String toString() {
@@ -1194,13 +1437,16 @@ public class TableSpaceManager {
                     try {
                         log.followTheLeader(actualLogSequenceNumber, (LogSequenceNumber num, LogEntry u) -> {
                             try {
-                                apply(new CommitLogResult(num, false, true), u, false);
+                                pipeline.accept(num, u);
                             } catch (Throwable t) {
                                 throw new RuntimeException(t);
                             }
                             return !isLeader() && !closed;
                         }, context);
+                        // DML may be still running on other threads
+                        pipeline.roundFinished();
                     } finally {
+                        pipeline.close();
                         releaseReadLock(readLock, "follow");
                     }
                 }
@@ -1256,6 +1502,80 @@ public class TableSpaceManager {
             }
         }
         leader = true;
+        if (!virtual) {
+            startPageCacheWarmUp();
+        }
+    }
+
+    private void startPageCacheWarmUp() {
+        List<TableManager> tablesToWarmUp = new ArrayList<>();
+        List<long[]> hotPages = new ArrayList<>();
+        for (AbstractTableManager manager : tables.values()) {
+            if (manager instanceof TableManager && !manager.isSystemTable()) {
+                long[] pages = ((TableManager) manager).takeHotPagesAtBoot();
+                if (pages != null && pages.length > 0) {
+                    tablesToWarmUp.add((TableManager) manager);
+                    hotPages.add(pages);
+                }
+            }
+        }
+        if (!tablesToWarmUp.isEmpty()) {
+            dbmanager.submit(new PageCacheWarmUp(tablesToWarmUp, hotPages));
+        }
+    }
+
+    /**
+     * Loads back in memory the pages which were hot at the last checkpoint, hottest first, taking one page
+     * from each table in turn, until every page has been loaded or the memory for data pages is full.
+     */
+    private class PageCacheWarmUp implements Runnable {
+
+        private final List<TableManager> tablesToWarmUp;
+        private final List<long[]> hotPages;
+
+        PageCacheWarmUp(List<TableManager> tablesToWarmUp, List<long[]> hotPages) {
+            this.tablesToWarmUp = tablesToWarmUp;
+            this.hotPages = hotPages;
+        }
+
+        @Override
+        public String toString() {
+            return "PageCacheWarmUp{" + tableSpaceName + '}';
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            int loaded = 0;
+            int[] positions = new int[tablesToWarmUp.size()];
+            boolean pending = true;
+            while (pending && !closed) {
+                pending = false;
+                for (int i = 0; i < positions.length; i++) {
+                    long[] pages = hotPages.get(i);
+                    if (positions[i] >= pages.length) {
+                        continue;
+                    }
+                    TableManager tableManager = tablesToWarmUp.get(i);
+                    try {
+                        if (!tableManager.warmUpPage(pages[positions[i]])) {
+                            positions[i] = pages.length;
+                            continue;
+                        }
+                        loaded++;
+                        positions[i]++;
+                    } catch (DataStorageManagerException err) {
+                        LOGGER.log(Level.SEVERE, "page cache warm-up of table " + tableManager.getTable().name
+                                + " failed", err);
+                        positions[i] = pages.length;
+                        continue;
+                    }
+                    pending |= positions[i] < pages.length;
+                }
+            }
+            LOGGER.log(Level.INFO, "page cache warm-up of tablespace {0}: {1} pages loaded in {2} ms",
+                    new Object[]{tableSpaceName, loaded, System.currentTimeMillis() - start});
+        }
     }
 
     private void forceTransactionRollback(long tx) throws LogNotAvailableException, DataStorageManagerException, DDLException {
@@ -1267,6 +1587,14 @@ public class TableSpaceManager {
     }
 
     private final ConcurrentHashMap<Long, Transaction> transactions = new ConcurrentHashMap<>();
+    /**
+     * Changes to table data are applied holding the read lock, snapshots are
+     * opened and closed holding the write lock
+     */
+    private final StripedReadWriteLock snapshotLock = new StripedReadWriteLock();
+    private final AtomicLong dataVersion = new AtomicLong();
+    // transaction id -> data version
+    private final ConcurrentHashMap<Long, Long> activeSnapshots = new ConcurrentHashMap<>();
 
     public StatementExecutionResult executeStatement(Statement statement, StatementEvaluationContext context, TransactionContext transactionContext) throws StatementExecutionException {
         CompletableFuture<StatementExecutionResult> res = executeStatementAsync(statement, context, transactionContext);
@@ -1297,7 +1625,7 @@ public class TableSpaceManager {
         ) {
             AtomicLong capturedTx = new AtomicLong();
             boolean wasHoldingTableSpaceLock = context.getTableSpaceLock() != 0;
-            CompletableFuture<StatementExecutionResult> newTransaction = beginTransactionAsync(context, false);
+            CompletableFuture<StatementExecutionResult> newTransaction = beginTransactionAsync(context, false, false);
             CompletableFuture<StatementExecutionResult> finalResult = newTransaction
                     .thenCompose((StatementExecutionResult begineTransactionResult) -> {
                         TransactionContext newtransactionContext = new TransactionContext(begineTransactionResult.transactionId);
@@ -1359,6 +1687,12 @@ public class TableSpaceManager {
         }
         CompletableFuture<StatementExecutionResult> res;
         try {
+            if (transaction != null && transaction.isSnapshot()
+                    && (statement instanceof DMLStatement
+                    || statement instanceof DDLStatement
+                    || statement instanceof TruncateTableStatement)) {
+                throw new StatementExecutionException("transaction " + transaction.transactionId + " is a read only snapshot transaction, cannot execute " + statement.getClass().getSimpleName());
+            }
             if (statement instanceof TableAwareStatement) {
                 res = executeTableAwareStatement(statement, transaction, context);
             } else if (statement instanceof SQLPlannedOperationStatement) {
@@ -1367,7 +1701,7 @@ public class TableSpaceManager {
                 if (transaction != null) {
                     res = Futures.exception(new StatementExecutionException("transaction already started"));
                 } else {
-                    res = beginTransactionAsync(context, true);
+                    res = beginTransactionAsync(context, true, ((BeginTransactionStatement) statement).isSnapshot());
                 }
             } else if (statement instanceof CommitTransactionStatement) {
                 res = commitTransaction((CommitTransactionStatement) statement, context);
@@ -1653,6 +1987,7 @@ public class TableSpaceManager {
     }
 
     private StatementExecutionResult createIndex(CreateIndexStatement statement, Transaction transaction, StatementEvaluationContext context) throws StatementExecutionException {
+        OnlineIndexBuild build;
         boolean lockAcquired = false;
         if (context.getTableSpaceLock() == 0) {
             long lockStamp = acquireWriteLock(statement);
@@ -1674,9 +2009,17 @@ public class TableSpaceManager {
                 throw new StatementExecutionException(ex);
             }
 
-            apply(pos, entry, false);
+            apply(pos, entry, false, true);
 
-            return new DDLStatementExecutionResult(entry.transactionId);
+            build = onlineIndexBuilds.get(statement.getIndexDefinition().name);
+            if (build != null && !lockAcquired) {
+                // the caller is holding the lock, nobody can change the table in the meantime
+                completeOnlineIndexBuild(build, false);
+                build = null;
+            }
+            if (build == null) {
+                return new DDLStatementExecutionResult(entry.transactionId);
+            }
         } catch (DataStorageManagerException err) {
             throw new StatementExecutionException(err);
         } finally {
@@ -1685,6 +2028,57 @@ public class TableSpaceManager {
                 context.setTableSpaceLock(0);
             }
         }
+        // the table is scanned without holding the lock on the tablespace, reads and writes go on
+        completeOnlineIndexBuild(build, true);
+        return new DDLStatementExecutionResult(0);
+    }
+
+    /**
+     * Loads the records of the table into an index being built online and makes
+     * it available
+     *
+     * @param lockRequired the lock on the tablespace must be acquired in order
+     * to publish the index
+     */
+    private void completeOnlineIndexBuild(OnlineIndexBuild build, boolean lockRequired) throws StatementExecutionException {
+        AbstractIndexManager indexManager = build.getIndexManager();
+        Index index = indexManager.getIndex();
+        long _start = System.currentTimeMillis();
+        try {
+            boolean scanned;
+            try {
+                // the pages are read by the bounded pool dedicated to table scans
+                build.scan(dbmanager.getTableScanExecutor());
+                scanned = true;
+            } catch (DataStorageManagerException err) {
+                LOGGER.log(Level.SEVERE, "online build of index " + index.name + " on table " + index.table + " failed, rebuilding it", err);
+                scanned = false;
+            }
+            build.setState(scanned ? OnlineIndexBuild.STATE_PUBLISHING : OnlineIndexBuild.STATE_REBUILDING);
+            String description = "publish index " + index.name;
+            long lockStamp = lockRequired ? acquireWriteLock(description) : 0;
+            try {
+                if (indexes.get(index.name) != indexManager) {
+                    // dropped in the meantime
+                    return;
+                }
+                if (!scanned) {
+                    indexManager.rebuild();
+                }
+                indexManager.setOnlineBuild(null);
+                dbmanager.getPlanner().invalidateTable(tableSpaceName, index.table);
+            } catch (DataStorageManagerException err) {
+                throw new StatementExecutionException(err);
+            } finally {
+                if (lockRequired) {
+                    releaseWriteLock(lockStamp, description);
+                }
+            }
+            LOGGER.log(Level.INFO, "online build of index {0} on table {1} took {2} ms, {3} records, {4} records changed during the build",
+                    new Object[]{index.name, index.table, System.currentTimeMillis() - _start, build.getScannedRecords(), build.getChangedRecords()});
+        } finally {
+            onlineIndexBuilds.remove(index.name, build);
+        }
     }
 
     private StatementExecutionResult dropTable(DropTableStatement statement, Transaction transaction, StatementEvaluationContext context) throws StatementExecutionException {
@@ -1818,7 +2212,7 @@ public class TableSpaceManager {
         if (!freshNew) {
             LOGGER.log(Level.INFO, "bootTable {0} {1}.{2} time {3} ms", new Object[]{nodeId, tableSpaceName, table.name, (System.currentTimeMillis() - _start) + ""});
         }
-        dbmanager.getPlanner().clearCache();
+        dbmanager.getPlanner().invalidateTable(tableSpaceName, table.name);
         return tableManager;
     }
 
@@ -1863,6 +2257,10 @@ public class TableSpaceManager {
                 indexManager = new BRINIndexManager(index, dbmanager.getMemoryManager(), tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
                         writeLockTimeout, readLockTimeout);
                 break;
+            case Index.TYPE_HNSW:
+                indexManager = new HNSWIndexManager(index, tableManager, log, dataStorageManager, this, tableSpaceUUID, transaction,
+                        writeLockTimeout, readLockTimeout);
+                break;
             default:
                 throw new DataStorageManagerException("invalid NON-UNIQUE index type " + index.type);
         }
@@ -1876,7 +2274,8 @@ public class TableSpaceManager {
             map.putAll(b);
             return map;
         });
-        indexManager.start(tableManager.getBootSequenceNumber());
+        // a new index has no data to load
+        indexManager.start(created ? LogSequenceNumber.START_OF_TIME : tableManager.getBootSequenceNumber());
         if (!created) {
             long _stop = System.currentTimeMillis();
             LOGGER.log(Level.INFO, "bootIndex {0} {1}.{2} time {3} ms", new Object[]{nodeId, tableSpaceName, index.name, (_stop - _start) + ""});
@@ -1884,7 +2283,7 @@ public class TableSpaceManager {
         if (rebuild) {
             indexManager.rebuild();
         }
-        dbmanager.getPlanner().clearCache();
+        dbmanager.getPlanner().invalidateTable(tableSpaceName, index.table);
         return indexManager;
     }
 
@@ -2117,7 +2516,7 @@ public class TableSpaceManager {
         }
     }
 
-    private CompletableFuture<StatementExecutionResult> beginTransactionAsync(StatementEvaluationContext context, boolean releaseLock) throws StatementExecutionException {
+    private CompletableFuture<StatementExecutionResult> beginTransactionAsync(StatementEvaluationContext context, boolean releaseLock, boolean snapshot) throws StatementExecutionException {
 
         long id = newTransactionId.incrementAndGet();
 
@@ -2133,6 +2532,9 @@ public class TableSpaceManager {
         pos = log.log(entry, false);
         CompletableFuture<StatementExecutionResult> res = pos.logSequenceNumber.thenApplyAsync((lsn) -> {
             apply(pos, entry, false);
+            if (snapshot) {
+                openSnapshot(transactions.get(id));
+            }
             return new TransactionResult(id, TransactionResult.OutcomeType.BEGIN);
         }, callbacksExecutor);
         if (lockAcquired && releaseLock) {
@@ -2392,6 +2794,11 @@ public class TableSpaceManager {
                     .mapToLong(TableManagerStats::getKeysUsedMemory)
                     .sum();
         }
+
+        @Override
+        public long getResidentUsedMemory() {
+            return handleLocalMemoryUsage();
+        }
     };
 
     public TableSpaceManagerStats getStats() {
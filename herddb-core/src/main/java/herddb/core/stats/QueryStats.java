@@ -0,0 +1,254 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import herddb.model.ExecutionPlan;
+import herddb.model.StatementEvaluationContext;
+import herddb.sql.SQLStatementEvaluationContext;
+import herddb.utils.LatencyHistogram;
+import herddb.utils.SQLUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution statistics aggregated by query fingerprint (see
+ * {@link SQLUtils#fingerprint(java.lang.String)}).
+ * <p>
+ * The entry of a query is looked up only the first time an
+ * {@link ExecutionPlan} is executed, then it is bound to the plan: plans are
+ * shared by the plans cache and by prepared statements, so usually recording
+ * an execution does not need any lookup. A new plan for a query means that
+ * the query has been translated again, this is counted as a miss of the
+ * plans cache.
+ * <p>
+ * The number of entries is bounded, when the limit is reached the executions
+ * of new queries are aggregated in a single entry.
+ */
+public final class QueryStats {
+
+    public static final String OTHER_QUERIES = "<other queries>";
+
+    private final int maxEntries;
+    private final AtomicLong idGenerator = new AtomicLong();
+    private volatile Generation generation = new Generation();
+
+    /**
+     * Entries collected since the last reset
+     */
+    private final class Generation {
+
+        private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+        private final Entry other = new Entry(this, "", OTHER_QUERIES);
+
+        private Entry lookup(String tableSpace, String fingerprint) {
+            String key = tableSpace + "#" + fingerprint;
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            if (entries.size() >= maxEntries) {
+                return other;
+            }
+            return entries.computeIfAbsent(key, k -> new Entry(this, tableSpace, fingerprint));
+        }
+    }
+
+    /**
+     * Statistics of a query
+     */
+    public final class Entry {
+
+        private final long id = idGenerator.incrementAndGet();
+        private final Generation generation;
+        private final String tableSpace;
+        private final String query;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder planCacheMisses = new LongAdder();
+        private final LongAdder totalTime = new LongAdder();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+        private final LongAdder pagesLoaded = new LongAdder();
+        private final LongAdder lockWaits = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Entry(Generation generation, String tableSpace, String query) {
+            this.generation = generation;
+            this.tableSpace = tableSpace;
+            this.query = query;
+        }
+
+        /**
+         * Records an execution
+         *
+         * @param elapsedNanos time spent from the beginning of the execution
+         * @param rows records returned, or modified by a DML statement
+         * @param rowsScanned records read from the table
+         * @param pagesLoaded data pages loaded from the storage
+         * @param lockWaits record locks which were not immediately available
+         * @param error the execution failed
+         */
+        public void record(long elapsedNanos, long rows, long rowsScanned, long pagesLoaded, long lockWaits, boolean error) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+            executions.increment();
+            totalTime.add(micros);
+            latency.record(micros);
+            if (error) {
+                errors.increment();
+            }
+            if (rows > 0) {
+                rowsReturned.add(rows);
+            }
+            if (rowsScanned > 0) {
+                this.rowsScanned.add(rowsScanned);
+            }
+            if (pagesLoaded > 0) {
+                this.pagesLoaded.add(pagesLoaded);
+            }
+            if (lockWaits > 0) {
+                this.lockWaits.add(lockWaits);
+            }
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTableSpace() {
+            return tableSpace;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getPlanCacheMisses() {
+            return planCacheMisses.sum();
+        }
+
+        /**
+         * @return total execution time, in microseconds
+         */
+        public long getTotalTime() {
+            return totalTime.sum();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return execution time, in microseconds
+         */
+        public long getTimeAtPercentile(double percentile) {
+            return latency.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * @return max execution time, in microseconds
+         */
+        public long getMaxTime() {
+            return latency.getMax();
+        }
+
+        public long getRowsScanned() {
+            return rowsScanned.sum();
+        }
+
+        public long getRowsReturned() {
+            return rowsReturned.sum();
+        }
+
+        public long getPagesLoaded() {
+            return pagesLoaded.sum();
+        }
+
+        public long getLockWaits() {
+            return lockWaits.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + "id=" + id + ", tableSpace=" + tableSpace + ", query=" + query + ", executions=" + executions + '}';
+        }
+    }
+
+    /**
+     * @param maxEntries max number of queries, zero disables the statistics
+     */
+    public QueryStats(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Finds the entry where executions of a plan are recorded
+     *
+     * @return the entry, null if statistics are not collected for the plan
+     */
+    public Entry getEntry(ExecutionPlan plan, StatementEvaluationContext context) {
+        if (maxEntries <= 0 || !(context instanceof SQLStatementEvaluationContext)) {
+            return null;
+        }
+        Generation current = generation;
+        Entry entry = plan.getQueryStatsEntry();
+        if (entry != null && entry.generation == current) {
+            return entry;
+        }
+        String query = ((SQLStatementEvaluationContext) context).query;
+        String tableSpace = plan.mainStatement.getTableSpace();
+        Entry bound = current.lookup(tableSpace != null ? tableSpace : "", SQLUtils.fingerprint(query));
+        if (entry == null) {
+            // the plan has never been executed, so the query has just been translated
+            bound.planCacheMisses.increment();
+        }
+        plan.setQueryStatsEntry(bound);
+        return bound;
+    }
+
+    /**
+     * @return the entries, the entry of {@link #OTHER_QUERIES} is returned only
+     * if it is not empty
+     */
+    public List<Entry> getEntries() {
+        Generation current = generation;
+        List<Entry> result = new ArrayList<>(current.entries.values());
+        if (current.other.getExecutions() > 0) {
+            result.add(current.other);
+        }
+        return result;
+    }
+
+    /**
+     * Drops every entry
+     */
+    public void reset() {
+        generation = new Generation();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.stats;
+
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.model.StatementEvaluationContext;
+import herddb.utils.DataAccessor;
+
+/**
+ * Records the execution of a query in {@link QueryStats} when the scanner is
+ * closed, records are usually read lazily so the execution lasts until the
+ * client has read all of the results.
+ */
+public class QueryStatsDataScanner extends DataScanner {
+
+    private final DataScanner wrapped;
+    private final QueryStats.Entry entry;
+    private final StatementEvaluationContext context;
+    private final long startNanos;
+    private final long startRowsScanned;
+    private final long startPagesLoaded;
+    private final long startLockWaits;
+    private long rows;
+    private boolean error;
+    private boolean recorded;
+
+    public QueryStatsDataScanner(DataScanner wrapped, QueryStats.Entry entry, StatementEvaluationContext context,
+            long startNanos, long startRowsScanned, long startPagesLoaded, long startLockWaits) {
+        super(wrapped.getTransaction(), wrapped.getFieldNames(), wrapped.getSchema());
+        this.wrapped = wrapped;
+        this.entry = entry;
+        this.context = context;
+        this.startNanos = startNanos;
+        this.startRowsScanned = startRowsScanned;
+        this.startPagesLoaded = startPagesLoaded;
+        this.startLockWaits = startLockWaits;
+    }
+
+    @Override
+    public boolean hasNext() throws DataScannerException {
+        try {
+            return wrapped.hasNext();
+        } catch (DataScannerException | RuntimeException err) {
+            error = true;
+            throw err;
+        }
+    }
+
+    @Override
+    public DataAccessor next() throws DataScannerException {
+        try {
+            DataAccessor result = wrapped.next();
+            rows++;
+            return result;
+        } catch (DataScannerException | RuntimeException err) {
+            error = true;
+            throw err;
+        }
+    }
+
+    @Override
+    public boolean isRewindSupported() {
+        return wrapped.isRewindSupported();
+    }
+
+    @Override
+    public void rewind() throws DataScannerException {
+        wrapped.rewind();
+    }
+
+    @Override
+    public void close() throws DataScannerException {
+        try {
+            wrapped.close();
+        } finally {
+            if (!recorded) {
+                recorded = true;
+                entry.record(System.nanoTime() - startNanos, rows,
+                        context.getRowsScanned() - startRowsScanned,
+                        context.getPagesLoaded() - startPagesLoaded,
+                        context.getLockWaits() - startLockWaits,
+                        error);
+            }
+            super.close();
+        }
+    }
+}
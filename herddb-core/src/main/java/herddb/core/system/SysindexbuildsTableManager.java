@@ -0,0 +1,81 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.system;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.OnlineIndexBuild;
+import herddb.core.TableSpaceManager;
+import herddb.model.ColumnTypes;
+import herddb.model.Index;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table Manager for the SYSINDEXBUILDS virtual table, it shows the progress of
+ * the indexes which are being built online
+ */
+public class SysindexbuildsTableManager extends AbstractSystemTableManager {
+
+    private static final Table TABLE = Table
+            .builder()
+            .name("sysindexbuilds")
+            .column("tablespace", ColumnTypes.STRING)
+            .column("table_name", ColumnTypes.STRING)
+            .column("index_name", ColumnTypes.STRING)
+            .column("index_type", ColumnTypes.STRING)
+            .column("state", ColumnTypes.STRING)
+            .column("scanned_records", ColumnTypes.LONG)
+            .column("skipped_records", ColumnTypes.LONG)
+            .column("estimated_records", ColumnTypes.LONG)
+            .column("start_ts", ColumnTypes.TIMESTAMP)
+            .primaryKey("index_name", false)
+            .build();
+
+    public SysindexbuildsTableManager(TableSpaceManager parent) {
+        super(parent, TABLE);
+    }
+
+    @Override
+    protected Iterable<Record> buildVirtualRecordList(Transaction transaction) {
+        List<OnlineIndexBuild> builds = tableSpaceManager.getOnlineIndexBuilds();
+        List<Record> result = new ArrayList<>();
+        for (OnlineIndexBuild build : builds) {
+            Index index = build.getIndexManager().getIndex();
+            result.add(RecordSerializer.makeRecord(
+                    table,
+                    "tablespace", tableSpaceManager.getTableSpaceName(),
+                    "table_name", index.table,
+                    "index_name", index.name,
+                    "index_type", index.type,
+                    "state", build.getState(),
+                    "scanned_records", build.getScannedRecords(),
+                    "skipped_records", build.getSkippedRecords(),
+                    "estimated_records", build.getEstimatedRecords(),
+                    "start_ts", new java.sql.Timestamp(build.getStartTimestamp())
+            ));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.system;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.TableSpaceManager;
+import herddb.core.stats.QueryStats;
+import herddb.model.ColumnTypes;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table Manager for the SYSQUERYSTATS virtual table, statistics about the
+ * queries executed on the local node, grouped by normalized query. Times are
+ * in microseconds. Statistics are dropped with EXECUTE RESETQUERYSTATS.
+ */
+public class SysquerystatsTableManager extends AbstractSystemTableManager {
+
+    private static final Table TABLE = Table
+            .builder()
+            .name("sysquerystats")
+            .column("id", ColumnTypes.LONG)
+            .column("tablespace", ColumnTypes.STRING)
+            .column("query", ColumnTypes.STRING)
+            .column("executions", ColumnTypes.LONG)
+            .column("errors", ColumnTypes.LONG)
+            .column("plancachemisses", ColumnTypes.LONG)
+            .column("totaltime", ColumnTypes.LONG)
+            .column("avgtime", ColumnTypes.LONG)
+            .column("p50time", ColumnTypes.LONG)
+            .column("p95time", ColumnTypes.LONG)
+            .column("p99time", ColumnTypes.LONG)
+            .column("maxtime", ColumnTypes.LONG)
+            .column("rowsscanned", ColumnTypes.LONG)
+            .column("rowsreturned", ColumnTypes.LONG)
+            .column("pagesloaded", ColumnTypes.LONG)
+            .column("lockwaits", ColumnTypes.LONG)
+            .primaryKey("id", false)
+            .build();
+
+    public SysquerystatsTableManager(TableSpaceManager parent) {
+        super(parent, TABLE);
+    }
+
+    @Override
+    protected Iterable<Record> buildVirtualRecordList(Transaction transaction) {
+        List<QueryStats.Entry> entries = tableSpaceManager.getDbmanager().getQueryStats().getEntries();
+        List<Record> result = new ArrayList<>(entries.size());
+        for (QueryStats.Entry entry : entries) {
+            long executions = entry.getExecutions();
+            long totalTime = entry.getTotalTime();
+            result.add(RecordSerializer.makeRecord(
+                    table,
+                    "id", entry.getId(),
+                    "tablespace", entry.getTableSpace(),
+                    "query", entry.getQuery(),
+                    "executions", executions,
+                    "errors", entry.getErrors(),
+                    "plancachemisses", entry.getPlanCacheMisses(),
+                    "totaltime", totalTime,
+                    "avgtime", executions > 0 ? totalTime / executions : 0L,
+                    "p50time", entry.getTimeAtPercentile(50),
+                    "p95time", entry.getTimeAtPercentile(95),
+                    "p99time", entry.getTimeAtPercentile(99),
+                    "maxtime", entry.getMaxTime(),
+                    "rowsscanned", entry.getRowsScanned(),
+                    "rowsreturned", entry.getRowsReturned(),
+                    "pagesloaded", entry.getPagesLoaded(),
+                    "lockwaits", entry.getLockWaits()
+            ));
+        }
+        return result;
+    }
+
+}
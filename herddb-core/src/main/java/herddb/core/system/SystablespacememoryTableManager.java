@@ -0,0 +1,81 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.system;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.MemoryQuota;
+import herddb.core.TableSpaceManager;
+import herddb.core.stats.TableSpaceManagerStats;
+import herddb.model.ColumnTypes;
+import herddb.model.Record;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import java.util.Collections;
+
+/**
+ * Table Manager for the SYSTABLESPACEMEMORY virtual table, memory used by
+ * the tablespace on the local node and its memory quota
+ */
+public class SystablespacememoryTableManager extends AbstractSystemTableManager {
+
+    private static final Table TABLE = Table
+            .builder()
+            .name("systablespacememory")
+            .column("tablespace", ColumnTypes.STRING)
+            .column("nodeid", ColumnTypes.STRING)
+            .column("loadedpages", ColumnTypes.INTEGER)
+            .column("dirtypages", ColumnTypes.INTEGER)
+            .column("residentmemory", ColumnTypes.LONG)
+            .column("keysmemory", ColumnTypes.LONG)
+            .column("buffersmemory", ColumnTypes.LONG)
+            .column("dirtymemory", ColumnTypes.LONG)
+            .column("quotareserved", ColumnTypes.DOUBLE)
+            .column("quotamax", ColumnTypes.DOUBLE)
+            .column("quotapriority", ColumnTypes.INTEGER)
+            .primaryKey("tablespace", false)
+            .build();
+
+    public SystablespacememoryTableManager(TableSpaceManager parent) {
+        super(parent, TABLE);
+    }
+
+    @Override
+    protected Iterable<Record> buildVirtualRecordList(Transaction transaction) {
+        TableSpaceManagerStats stats = tableSpaceManager.getStats();
+        MemoryQuota quota = tableSpaceManager.getDbmanager().getMemoryManager()
+                .getMemoryQuota(tableSpaceManager.getTableSpaceName());
+        return Collections.singletonList(RecordSerializer.makeRecord(
+                table,
+                "tablespace", tableSpaceManager.getTableSpaceName(),
+                "nodeid", tableSpaceManager.getDbmanager().getNodeId(),
+                "loadedpages", stats.getLoadedpages(),
+                "dirtypages", stats.getDirtypages(),
+                "residentmemory", stats.getResidentUsedMemory(),
+                "keysmemory", stats.getKeysUsedMemory(),
+                "buffersmemory", stats.getBuffersUsedMemory(),
+                "dirtymemory", stats.getDirtyUsedMemory(),
+                "quotareserved", quota != null ? quota.getReserved() : 0D,
+                "quotamax", quota != null ? quota.getMax() : 1D,
+                "quotapriority", quota != null ? quota.getPriority() : 0
+        ));
+    }
+
+}
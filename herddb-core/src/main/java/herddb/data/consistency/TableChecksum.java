@@ -34,6 +34,7 @@ public final class TableChecksum {
     private long nextAutoIncrementValue;
     private String query;
     private long scanDuration;
+    private long[] bucketDigests;
 
     //This is for JSON deserialization
     public TableChecksum() {
@@ -113,4 +114,16 @@ public final class TableChecksum {
     public void setQuery(String query) {
         this.query = query;
     }
+
+    /**
+     * Digests of the buckets of the {@link TableDigest}, null for digests
+     * computed by scanning the table with a query
+     */
+    public long[] getBucketDigests() {
+        return bucketDigests;
+    }
+
+    public void setBucketDigests(long[] bucketDigests) {
+        this.bucketDigests = bucketDigests;
+    }
 }
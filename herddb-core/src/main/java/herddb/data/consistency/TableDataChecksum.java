@@ -23,21 +23,18 @@ import herddb.codec.RecordSerializer;
 import herddb.core.AbstractTableManager;
 import herddb.core.DBManager;
 import herddb.core.TableSpaceManager;
-import herddb.model.Column;
 import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
+import herddb.model.Record;
 import herddb.model.Table;
 import herddb.model.TransactionContext;
 import herddb.model.commands.ScanStatement;
 import herddb.sql.TranslatedQuery;
+import herddb.storage.DataStorageManagerException;
 import herddb.utils.DataAccessor;
 import herddb.utils.SystemInstrumentation;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import net.jpountz.xxhash.StreamingXXHash64;
 import net.jpountz.xxhash.XXHashFactory;
 
@@ -45,6 +42,14 @@ import net.jpountz.xxhash.XXHashFactory;
 
 /**
  * digest creation by scanning the table
+ * <p>
+ * The default digest ({@link #COMMUTATIVE_HASH_TYPE}) is a {@link TableDigest}:
+ * it hashes the raw bytes of key and value of every record and combines the
+ * hashes with commutative operations, so it is maintained by the table while
+ * records change and only the parts which are not up to date are computed
+ * by scanning the table. The
+ * {@link #HASH_TYPE} digest, computed by an ordered SQL scan, is still
+ * supported in order to verify checks written by older leaders.
  *
  * @author Hamado.Dene
  */
@@ -54,8 +59,52 @@ public abstract class TableDataChecksum {
     private static final XXHashFactory FACTORY = XXHashFactory.fastestInstance();
     private static final int SEED = 0;
     public static final String HASH_TYPE = "StreamingXXHash64";
+    public static final String COMMUTATIVE_HASH_TYPE = "XXHash64Buckets";
 
+    /**
+     * Computes the checksum of a table.
+     *
+     * @param query the ordered scan for a {@link #HASH_TYPE} digest, null in
+     * order to compute a {@link #COMMUTATIVE_HASH_TYPE} digest
+     */
     public static TableChecksum createChecksum(DBManager manager, TranslatedQuery query, TableSpaceManager tableSpaceManager, String tableSpace, String tableName) throws DataScannerException {
+        if (query != null) {
+            return createChecksumWithQuery(manager, query, tableSpaceManager, tableSpace, tableName);
+        }
+        AbstractTableManager tablemanager = tableSpaceManager.getTableManager(tableName);
+        String nodeID = tableSpaceManager.getDbmanager().getNodeId();
+        LOGGER.log(Level.INFO, "creating checksum for table {0}.{1} on node {2}", new Object[]{tableSpace, tableName, nodeID});
+        long _start = System.currentTimeMillis();
+        TableDigest digest;
+        try {
+            // the digest is maintained by the table, only the parts which are not up to date are computed now
+            digest = tablemanager.getTableDigest(manager.getTableScanExecutor());
+            if (digest == null) {
+                TableDigest computed = TableDigest.empty();
+                tablemanager.parallelScan((Record record) -> {
+                    computed.recordInserted(record.key, record.value);
+                }, manager.getTableScanExecutor());
+                digest = computed;
+            }
+        } catch (DataStorageManagerException ex) {
+            LOGGER.log(Level.SEVERE, "Scan failled", ex);
+            throw new DataScannerException(ex);
+        }
+        long _stop = System.currentTimeMillis();
+        long scanduration = (_stop - _start);
+        long numRecords = digest.getNumRecords();
+        LOGGER.log(Level.INFO, "Number of processed records for table {0}.{1} on node {2} = {3} ", new Object[]{tableSpace, tableName, nodeID, numRecords});
+        LOGGER.log(Level.INFO, "Creating checksum for table {0}.{1} on node {2} finished in {3} ms", new Object[]{tableSpace, tableName, nodeID, scanduration});
+        long nextAutoIncrementValue = tablemanager.getNextPrimaryKeyValue();
+
+        SystemInstrumentation.instrumentationPoint("createChecksum", tableSpace, tableName);
+
+        TableChecksum result = new TableChecksum(tableSpace, tableName, digest.getDigest(), COMMUTATIVE_HASH_TYPE, numRecords, nextAutoIncrementValue, null, scanduration);
+        result.setBucketDigests(digest.getBucketDigests());
+        return result;
+    }
+
+    private static TableChecksum createChecksumWithQuery(DBManager manager, TranslatedQuery query, TableSpaceManager tableSpaceManager, String tableSpace, String tableName) throws DataScannerException {
 
         AbstractTableManager tablemanager = tableSpaceManager.getTableManager(tableName);
         String nodeID = tableSpaceManager.getDbmanager().getNodeId();
@@ -63,22 +112,6 @@ public abstract class TableDataChecksum {
         final Table table = manager.getTableSpaceManager(tableSpace).getTableManager(tableName).getTable();
         //Number of records
         long nrecords = 0;
-        //If null value is passed as a query
-        //For example, in leader node we may not know the query
-        if (translated == null) {
-            String columns = formatColumns(table);
-            /*
-                scan = true
-                allowCache = false
-                returnValues = false
-                maxRows = -1
-            */
-            translated = manager.getPlanner().translate(tableSpace, "SELECT  "
-                    + columns
-                    + " FROM " + tableName
-                    + " order by "
-                    + formatPrimaryKeys(table), Collections.emptyList(), true, false, false, -1);
-        }
         ScanStatement statement = translated.plan.mainStatement.unwrap(ScanStatement.class);
         statement.setAllowExecutionFromFollower(true);
         LOGGER.log(Level.INFO, "creating checksum for table {0}.{1} on node {2}", new Object[]{ tableSpace, tableName, nodeID});
@@ -115,14 +148,6 @@ public abstract class TableDataChecksum {
         } catch (DataScannerException ex) {
             LOGGER.log(Level.SEVERE, "Scan failled", ex);
             throw new DataScannerException(ex);
-    }
-    }
-
-    private static String formatPrimaryKeys(Table table) {
-        return Arrays.asList(table.getPrimaryKey()).stream().collect(Collectors.joining(","));
-    }
-
-    private static String formatColumns(Table table) {
-        return Stream.of(table.getColumns()).map(Column::getName).collect(Collectors.joining(","));
+        }
     }
 }
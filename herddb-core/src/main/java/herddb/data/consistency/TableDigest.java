@@ -0,0 +1,270 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.data.consistency;
+
+import herddb.storage.DataStorageManagerException;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.SimpleByteArrayInputStream;
+import herddb.utils.VisibleByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Digest of the contents of a table, maintained while records are modified.
+ * <p>
+ * Records are spread in {@link #NUM_BUCKETS} buckets by the hash of the key.
+ * Every bucket keeps sum, xor and count of the hashes of its records: these
+ * are commutative and they can be updated without looking at the other
+ * records. The digest of the table is the hash of the bucket digests, so
+ * two replicas can be compared with a single value and, if they differ, the
+ * bucket digests tell which part of the key space is different.
+ * <p>
+ * An update is a delete of the previous value followed by an insert, so when
+ * the previous value is not in memory the table can remove it later, when it
+ * reads the page which holds it. Buckets are invalid only when the digest is
+ * not known, like for tables written by older versions, and invalid buckets
+ * are computed again by scanning only their records.
+ */
+public final class TableDigest {
+
+    public static final int NUM_BUCKETS = 128;
+
+    private static final XXHash64 HASH64 = XXHashFactory.fastestInstance().hash64();
+    private static final long SEED = 0;
+    private static final int VERSION = 1;
+
+    private final AtomicLongArray sums = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLongArray xors = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    // 1 means that the bucket is valid
+    private final AtomicIntegerArray valid = new AtomicIntegerArray(NUM_BUCKETS);
+
+    private TableDigest() {
+    }
+
+    /**
+     * Digest of an empty table
+     */
+    public static TableDigest empty() {
+        TableDigest res = new TableDigest();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            res.valid.set(i, 1);
+        }
+        return res;
+    }
+
+    /**
+     * Digest of a table whose contents are not known, every bucket is
+     * invalid
+     */
+    public static TableDigest unknown() {
+        return new TableDigest();
+    }
+
+    public static int bucket(Bytes key) {
+        return bucket(hashKey(key));
+    }
+
+    private static int bucket(long keyHash) {
+        return (int) (keyHash & (NUM_BUCKETS - 1));
+    }
+
+    private static long hashKey(Bytes key) {
+        return HASH64.hash(key.getBuffer(), key.getOffset(), key.getLength(), SEED);
+    }
+
+    private static long hashValue(long keyHash, Bytes value) {
+        // the hash of the key is the seed for the value, this way key and value are not interchangeable
+        return HASH64.hash(value.getBuffer(), value.getOffset(), value.getLength(), keyHash);
+    }
+
+    public void recordInserted(Bytes key, Bytes value) {
+        long keyHash = hashKey(key);
+        add(bucket(keyHash), hashValue(keyHash, value), 1);
+    }
+
+    /**
+     * @param previousValue the value of the deleted record
+     */
+    public void recordDeleted(Bytes key, Bytes previousValue) {
+        long keyHash = hashKey(key);
+        add(bucket(keyHash), hashValue(keyHash, previousValue), -1);
+    }
+
+    public void recordUpdated(Bytes key, Bytes previousValue, Bytes newValue) {
+        long keyHash = hashKey(key);
+        int bucket = bucket(keyHash);
+        long previousHash = hashValue(keyHash, previousValue);
+        long newHash = hashValue(keyHash, newValue);
+        sums.addAndGet(bucket, newHash - previousHash);
+        xorAndGet(bucket, previousHash ^ newHash);
+    }
+
+    private void add(int bucket, long hash, int count) {
+        sums.addAndGet(bucket, count > 0 ? hash : -hash);
+        // the inverse of xor is xor itself
+        xorAndGet(bucket, hash);
+        counts.addAndGet(bucket, count);
+    }
+
+    private void xorAndGet(int bucket, long value) {
+        long current;
+        do {
+            current = xors.get(bucket);
+        } while (!xors.compareAndSet(bucket, current, current ^ value));
+    }
+
+    /**
+     * Forget every record, like after a TRUNCATE
+     */
+    public void clear() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            sums.set(i, 0);
+            xors.set(i, 0);
+            counts.set(i, 0);
+            valid.set(i, 1);
+        }
+    }
+
+    public boolean isComplete() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (valid.get(i) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean[] getInvalidBuckets() {
+        boolean[] res = new boolean[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            res[i] = valid.get(i) == 0;
+        }
+        return res;
+    }
+
+    /**
+     * Copies the selected buckets from a digest computed by scanning the
+     * records of such buckets. This must not run concurrently with changes
+     * to the table.
+     */
+    public void replaceBuckets(boolean[] buckets, TableDigest computed) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (buckets[i]) {
+                sums.set(i, computed.sums.get(i));
+                xors.set(i, computed.xors.get(i));
+                counts.set(i, computed.counts.get(i));
+                valid.set(i, 1);
+            }
+        }
+    }
+
+    public long getNumRecords() {
+        long res = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            res += counts.get(i);
+        }
+        return res;
+    }
+
+    public long getBucketDigest(int bucket) {
+        byte[] buffer = new byte[24];
+        Bytes.putLong(buffer, 0, sums.get(bucket));
+        Bytes.putLong(buffer, 8, xors.get(bucket));
+        Bytes.putLong(buffer, 16, counts.get(bucket));
+        return HASH64.hash(buffer, 0, buffer.length, SEED);
+    }
+
+    public long[] getBucketDigests() {
+        long[] res = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            res[i] = getBucketDigest(i);
+        }
+        return res;
+    }
+
+    /**
+     * The digest of the whole table, it is meaningful only if every bucket
+     * is valid
+     */
+    public long getDigest() {
+        byte[] buffer = new byte[NUM_BUCKETS * 8];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            Bytes.putLong(buffer, i * 8, getBucketDigest(i));
+        }
+        return HASH64.hash(buffer, 0, buffer.length, SEED);
+    }
+
+    public byte[] serialize() {
+        VisibleByteArrayOutputStream oo = new VisibleByteArrayOutputStream(NUM_BUCKETS * 20);
+        try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(oo)) {
+            out.writeVInt(VERSION);
+            out.writeVInt(NUM_BUCKETS);
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                boolean isValid = valid.get(i) == 1;
+                out.writeBoolean(isValid);
+                if (isValid) {
+                    out.writeLong(sums.get(i));
+                    out.writeLong(xors.get(i));
+                    out.writeVLong(counts.get(i));
+                }
+            }
+        } catch (IOException impossible) {
+            throw new RuntimeException(impossible);
+        }
+        return oo.toByteArray();
+    }
+
+    /**
+     * Reads a digest written by {@link #serialize() }, a null value results
+     * in an {@link #unknown() } digest
+     */
+    public static TableDigest deserialize(byte[] data) throws DataStorageManagerException {
+        TableDigest res = new TableDigest();
+        if (data == null) {
+            return res;
+        }
+        try (ExtendedDataInputStream in = new ExtendedDataInputStream(new SimpleByteArrayInputStream(data))) {
+            int version = in.readVInt();
+            int numBuckets = in.readVInt();
+            if (version != VERSION || numBuckets != NUM_BUCKETS) {
+                // written by a different version, it will be computed again
+                return res;
+            }
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                if (in.readBoolean()) {
+                    res.sums.set(i, in.readLong());
+                    res.xors.set(i, in.readLong());
+                    res.counts.set(i, in.readVLong());
+                    res.valid.set(i, 1);
+                }
+            }
+        } catch (IOException err) {
+            throw new DataStorageManagerException(err);
+        }
+        return res;
+    }
+}
@@ -76,6 +76,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -105,6 +106,14 @@ public class FileDataStorageManager extends DataStorageManager {
     private final OpStatsLogger dataPageWrites;
     private final OpStatsLogger indexPageReads;
     private final OpStatsLogger indexPageWrites;
+    private final boolean segmentedPages;
+    private final long segmentSize;
+    /**
+     * Segments of every table and index directory, pages in segments are
+     * always readable, new pages are appended to segments only with
+     * {@link #segmentedPages}
+     */
+    private final Map<Path, SegmentedPageStore> pageStores = new ConcurrentHashMap<>();
 
     public static final String FILEEXTENSION_PAGE = ".page";
 
@@ -120,6 +129,13 @@ public class FileDataStorageManager extends DataStorageManager {
     public static final int O_DIRECT_BLOCK_BATCH =
             SystemProperties.getIntSystemProperty("herddb.file.odirectblockbatch", 16);
 
+    /**
+     * Percentage of live bytes under which the pages of a segment are moved to
+     * the current segment at checkpoint
+     */
+    public static final int SEGMENT_COMPACTION_THRESHOLD =
+            SystemProperties.getIntSystemProperty("herddb.file.segmentcompactionthreshold", 50);
+
     // With XXHash64 hashing disabled the stored value is empty.
     private static final long NO_HASH_PRESENT = 0L;
 
@@ -138,6 +154,17 @@ public class FileDataStorageManager extends DataStorageManager {
             Path baseDirectory, Path tmpDirectory, int swapThreshold,
             boolean requirefsync, boolean pageodirect, boolean indexodirect,
             boolean hashChecksEnabled, boolean hashWritesEnabled, StatsLogger logger
+    ) {
+        this(baseDirectory, tmpDirectory, swapThreshold, requirefsync, pageodirect, indexodirect,
+                hashChecksEnabled, hashWritesEnabled, false,
+                ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT, logger);
+    }
+
+    public FileDataStorageManager(
+            Path baseDirectory, Path tmpDirectory, int swapThreshold,
+            boolean requirefsync, boolean pageodirect, boolean indexodirect,
+            boolean hashChecksEnabled, boolean hashWritesEnabled,
+            boolean segmentedPages, long segmentSize, StatsLogger logger
     ) {
         this.baseDirectory = baseDirectory;
         this.tmpDirectory = tmpDirectory;
@@ -148,6 +175,8 @@ public class FileDataStorageManager extends DataStorageManager {
         this.indexodirect = indexodirect && OpenFileUtils.isO_DIRECT_Supported();
         this.hashChecksEnabled = hashChecksEnabled;
         this.hashWritesEnabled = hashWritesEnabled;
+        this.segmentedPages = segmentedPages;
+        this.segmentSize = segmentSize;
         StatsLogger scope = logger.scope("filedatastore");
         this.dataPageReads = scope.getOpStatsLogger("data_pagereads");
         this.dataPageWrites = scope.getOpStatsLogger("data_pagewrites");
@@ -170,6 +199,8 @@ public class FileDataStorageManager extends DataStorageManager {
 
     @Override
     public void close() throws DataStorageManagerException {
+        pageStores.values().forEach(SegmentedPageStore::close);
+        pageStores.clear();
         LOGGER.log(Level.FINE, "cleaning tmp directory {0}", tmpDirectory.toAbsolutePath().toString());
         try {
             FileUtils.cleanDirectory(tmpDirectory);
@@ -183,6 +214,13 @@ public class FileDataStorageManager extends DataStorageManager {
         SystemInstrumentation.instrumentationPoint("eraseTablespaceData", tableSpace);
         Path tablespaceDirectory = getTablespaceDirectory(tableSpace);
         LOGGER.log(Level.INFO, "erasing tablespace " + tableSpace + " directory {0}", tablespaceDirectory.toAbsolutePath().toString());
+        pageStores.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(tablespaceDirectory)) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
         try {
             FileUtils.cleanDirectory(tablespaceDirectory);
         } catch (IOException err) {
@@ -264,6 +302,28 @@ public class FileDataStorageManager extends DataStorageManager {
         return filename != null && filename.toString().endsWith(EXTENSION_TABLEORINDExCHECKPOINTINFOFILE);
     }
 
+    private SegmentedPageStore getPageStore(Path directory) throws IOException {
+        SegmentedPageStore store = pageStores.get(directory);
+        if (store != null) {
+            return store;
+        }
+        synchronized (pageStores) {
+            store = pageStores.get(directory);
+            if (store == null) {
+                store = SegmentedPageStore.open(directory, segmentSize, SEGMENT_COMPACTION_THRESHOLD);
+                pageStores.put(directory, store);
+            }
+            return store;
+        }
+    }
+
+    private void closePageStore(Path directory) {
+        SegmentedPageStore store = pageStores.remove(directory);
+        if (store != null) {
+            store.close();
+        }
+    }
+
     @Override
     public void initIndex(String tableSpace, String uuid) throws DataStorageManagerException {
         Path indexDir = getIndexDirectory(tableSpace, uuid);
@@ -305,7 +365,10 @@ public class FileDataStorageManager extends DataStorageManager {
         Path pageFile = getPageFile(tableDir, pageId);
         List<Record> result;
         try {
-            if (pageodirect) {
+            byte[] segmentPage = getPageStore(tableDir).read(pageId);
+            if (segmentPage != null) {
+                result = rawReadDataPage(segmentPage, "page " + pageId + " in segments of " + tableDir.toAbsolutePath());
+            } else if (pageodirect) {
                 try (ODirectFileInputStream odirect = new ODirectFileInputStream(pageFile, O_DIRECT_BLOCK_BATCH)) {
                     result = rawReadDataPage(pageFile, odirect);
                 }
@@ -334,11 +397,15 @@ public class FileDataStorageManager extends DataStorageManager {
         if (read != size) {
             throw new IOException("short read, read " + read + " instead of " + size + " bytes from " + pageFile);
         }
+        return rawReadDataPage(dataPage, pageFile.toAbsolutePath().toString());
+    }
+
+    private List<Record> rawReadDataPage(byte[] dataPage, String source) throws IOException, DataStorageManagerException {
         try (ByteArrayCursor dataIn = ByteArrayCursor.wrap(dataPage)) {
             long version = dataIn.readVLong(); // version
             long flags = dataIn.readVLong(); // flags for future implementations
             if (version != 1 || flags != 0) {
-                throw new DataStorageManagerException("corrupted data file " + pageFile.toAbsolutePath());
+                throw new DataStorageManagerException("corrupted data file " + source);
             }
             int numRecords = dataIn.readInt();
             List<Record> result = new ArrayList<>(numRecords);
@@ -354,7 +421,7 @@ public class FileDataStorageManager extends DataStorageManager {
                 // the hash is not at the end of file, but after data
                 long hashFromDigest = XXHash64Utils.hash(dataPage, 0, pos);
                 if (hashFromDigest != hashFromFile) {
-                    throw new DataStorageManagerException("Corrupted datafile " + pageFile + ". Bad hash " + hashFromFile + " <> " + hashFromDigest);
+                    throw new DataStorageManagerException("Corrupted datafile " + source + ". Bad hash " + hashFromFile + " <> " + hashFromDigest);
                 }
             }
             return result;
@@ -397,6 +464,10 @@ public class FileDataStorageManager extends DataStorageManager {
         if (read != size) {
             throw new IOException("short read, read " + read + " instead of " + size + " bytes from " + pageFile);
         }
+        return readIndexPage(reader, dataPage, pageFile.toAbsolutePath().toString());
+    }
+
+    private <X> X readIndexPage(DataReader<X> reader, byte[] dataPage, String source) throws IOException, DataStorageManagerException {
         try (ByteArrayCursor dataIn = ByteArrayCursor.wrap(dataPage)) {
             /*
              * When writing with O_DIRECT this stream will be zero padded at the end. It isn't a problem: reader
@@ -406,7 +477,7 @@ public class FileDataStorageManager extends DataStorageManager {
             long version = dataIn.readVLong(); // version
             long flags = dataIn.readVLong(); // flags for future implementations
             if (version != 1 || flags != 0) {
-                throw new DataStorageManagerException("corrupted data file " + pageFile.toAbsolutePath());
+                throw new DataStorageManagerException("corrupted data file " + source);
             }
             X result = reader.read(dataIn);
             int pos = dataIn.getPosition();
@@ -416,7 +487,7 @@ public class FileDataStorageManager extends DataStorageManager {
                 // the hash is not at the end of file, but after data
                 long hashFromDigest = XXHash64Utils.hash(dataPage, 0, pos);
                 if (hashFromDigest != hashFromFile) {
-                    throw new DataStorageManagerException("Corrupted datafile " + pageFile + ". Bad hash " + hashFromFile + " <> " + hashFromDigest);
+                    throw new DataStorageManagerException("Corrupted datafile " + source + ". Bad hash " + hashFromFile + " <> " + hashFromDigest);
                 }
             }
             return result;
@@ -430,7 +501,10 @@ public class FileDataStorageManager extends DataStorageManager {
         long _start = System.currentTimeMillis();
         X result;
         try {
-            if (indexodirect) {
+            byte[] segmentPage = getPageStore(tableDir).read(pageId);
+            if (segmentPage != null) {
+                result = readIndexPage(reader, segmentPage, "page " + pageId + " in segments of " + tableDir.toAbsolutePath());
+            } else if (indexodirect) {
                 try (ODirectFileInputStream odirect = new ODirectFileInputStream(pageFile, O_DIRECT_BLOCK_BATCH)) {
                     result = readIndexPage(reader, pageFile, odirect);
                 }
@@ -617,6 +691,9 @@ public class FileDataStorageManager extends DataStorageManager {
             throw new DataStorageManagerException(err);
         }
 
+        SegmentedPageStore pageStore = checkpointPageStore(dir, logPosition, tableStatus.activePages.keySet(),
+                pinTableAndGetPages(tableSpace, tableName, tableStatus, false).isEmpty());
+
         Path parent = getParent(checkpointFile);
         Path checkpointFileTemp = parent.resolve(checkpointFile.getFileName() + ".tmp");
         LOGGER.log(Level.FINE, "tableCheckpoint " + tableSpace + ", " + tableName + ": " + tableStatus + " (pin:" + pin + ") to file " + checkpointFile);
@@ -672,11 +749,14 @@ public class FileDataStorageManager extends DataStorageManager {
                         LOGGER.log(Level.FINEST, "checkpoint metadata file " + p.toAbsolutePath() + ". will be deleted after checkpoint end");
                         result.add(new DeleteFileAction(tableSpace, tableName, "delete checkpoint metadata file " + p.toAbsolutePath(), p));
                     }
+                } else {
+                    addDeletePageLocationsAction(tableSpace, tableName, p, logPosition, checkpoints, result);
                 }
             }
         } catch (IOException err) {
             LOGGER.log(Level.SEVERE, "Could not list table dir " + dir, err);
         }
+        addReleasePagesAction(tableSpace, tableName, pageStore, pins, tableStatus.activePages.keySet(), maxPageId, result);
         return result;
     }
 
@@ -697,6 +777,9 @@ public class FileDataStorageManager extends DataStorageManager {
             }
         }
 
+        SegmentedPageStore pageStore = checkpointPageStore(dir, logPosition, indexStatus.activePages,
+                pinIndexAndGetPages(tableSpace, indexName, indexStatus, false).isEmpty());
+
         LOGGER.log(Level.FINE, "indexCheckpoint " + tableSpace + ", " + indexName + ": " + indexStatus + " to file " + checkpointFile);
 
         try (ManagedFile file = ManagedFile.open(checkpointFileTemp, requirefsync);
@@ -750,15 +833,75 @@ public class FileDataStorageManager extends DataStorageManager {
                         LOGGER.log(Level.FINEST, "checkpoint metadata file " + p.toAbsolutePath() + ". will be deleted after checkpoint end");
                         result.add(new DeleteFileAction(tableSpace, indexName, "delete checkpoint metadata file " + p.toAbsolutePath(), p));
                     }
+                } else {
+                    addDeletePageLocationsAction(tableSpace, indexName, p, logPosition, checkpoints, result);
                 }
             }
         } catch (IOException err) {
             LOGGER.log(Level.SEVERE, "Could not list indexName dir " + dir, err);
         }
+        addReleasePagesAction(tableSpace, indexName, pageStore, pins, indexStatus.activePages, maxPageId, result);
 
         return result;
     }
 
+    /**
+     * Makes durable the pages appended to the segments of a table or of an
+     * index and saves their locations. To be called before writing the
+     * checkpoint file.
+     *
+     * @param compact move the pages of sparse segments, only when no older
+     *                checkpoint is pinned
+     */
+    private SegmentedPageStore checkpointPageStore(Path dir, LogSequenceNumber logPosition, Set<Long> activePages, boolean compact)
+            throws DataStorageManagerException {
+        try {
+            SegmentedPageStore store = getPageStore(dir);
+            if (segmentedPages && compact) {
+                store.compact(activePages);
+            }
+            store.sync();
+            store.writeLocations(SegmentedPageStore.getPageLocationsFile(dir, logPosition), activePages, requirefsync);
+            return store;
+        } catch (IOException err) {
+            throw new DataStorageManagerException(err);
+        }
+    }
+
+    private static void addDeletePageLocationsAction(
+            String tableSpace, String name, Path p, LogSequenceNumber logPosition,
+            Set<LogSequenceNumber> checkpoints, List<PostCheckpointAction> result
+    ) {
+        LogSequenceNumber sequenceNumber = SegmentedPageStore.getPageLocationsSequenceNumber(p);
+        if (sequenceNumber != null && logPosition.after(sequenceNumber) && !checkpoints.contains(sequenceNumber)) {
+            LOGGER.log(Level.FINEST, "page locations file " + p.toAbsolutePath() + ". will be deleted after checkpoint end");
+            result.add(new DeleteFileAction(tableSpace, name, "delete page locations file " + p.toAbsolutePath(), p));
+        }
+    }
+
+    /**
+     * Pages in segments are released after the locations files of older
+     * checkpoints have been deleted, empty segments are deleted too
+     */
+    private static void addReleasePagesAction(
+            String tableSpace, String name, SegmentedPageStore store, Map<Long, Integer> pins,
+            Set<Long> activePages, long maxPageId, List<PostCheckpointAction> result
+    ) {
+        if (store.isEmpty()) {
+            return;
+        }
+        List<Long> unusedPages = new ArrayList<>();
+        for (Long pageId : store.getPageIds()) {
+            if (pageId > 0
+                    && !pins.containsKey(pageId)
+                    && !activePages.contains(pageId)
+                    && pageId < maxPageId) {
+                unusedPages.add(pageId);
+            }
+        }
+        result.add(new ReleasePagesAction(tableSpace, name, "release " + unusedPages.size() + " pages in segments", store, unusedPages));
+    }
+
     /**
      * Returns a {@link Path} parent
      *
@@ -859,6 +1002,18 @@ public class FileDataStorageManager extends DataStorageManager {
                 }
             }
         }
+        // pages in segments are only forgotten, segments are reclaimed at the next checkpoint
+        try {
+            SegmentedPageStore store = getPageStore(getTableDirectory(tableSpace, tableName));
+            for (Long pageId : new ArrayList<>(store.getPageIds())) {
+                if (pageId > 0 && !activePagesAtBoot.contains(pageId)) {
+                    LOGGER.log(Level.FINE, "cleanupAfterBoot pageId {0} in segments will be released", pageId);
+                    store.release(pageId);
+                }
+            }
+        } catch (IOException err) {
+            throw new DataStorageManagerException(err);
+        }
     }
 
     /**
@@ -876,17 +1031,7 @@ public class FileDataStorageManager extends DataStorageManager {
         try (RecyclableByteArrayOutputStream oo = getWriteBuffer();
              ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
 
-            dataOutput.writeVLong(1); // version
-            dataOutput.writeVLong(0); // flags for future implementations
-            dataOutput.writeInt(newPage.size());
-            for (Record record : newPage) {
-                dataOutput.writeArray(record.key);
-                dataOutput.writeArray(record.value);
-            }
-            dataOutput.flush();
-            long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
-            dataOutput.writeLong(hash);
-            dataOutput.flush();
+            serializePage(newPage, oo, dataOutput);
             stream.write(oo.getBuffer(), 0, oo.size());
             if (file != null) { // O_DIRECT does not need fsync
                 file.sync();
@@ -896,6 +1041,33 @@ public class FileDataStorageManager extends DataStorageManager {
 
     }
 
+    /**
+     * Append a record page to the segments of the table, segments are synched
+     * at checkpoint
+     */
+    private long writePage(Collection<Record> newPage, SegmentedPageStore store, long pageId) throws IOException {
+        try (RecyclableByteArrayOutputStream oo = getWriteBuffer();
+             ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
+            serializePage(newPage, oo, dataOutput);
+            store.write(pageId, oo.getBuffer(), oo.size());
+            return oo.size();
+        }
+    }
+
+    private void serializePage(Collection<Record> newPage, RecyclableByteArrayOutputStream oo, ExtendedDataOutputStream dataOutput) throws IOException {
+        dataOutput.writeVLong(1); // version
+        dataOutput.writeVLong(0); // flags for future implementations
+        dataOutput.writeInt(newPage.size());
+        for (Record record : newPage) {
+            dataOutput.writeArray(record.key);
+            dataOutput.writeArray(record.value);
+        }
+        dataOutput.flush();
+        long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
+        dataOutput.writeLong(hash);
+        dataOutput.flush();
+    }
+
     @Override
     public void writePage(String tableSpace, String tableName, long pageId, Collection<Record> newPage) throws DataStorageManagerException {
         // synch on table is done by the TableManager
@@ -905,7 +1077,9 @@ public class FileDataStorageManager extends DataStorageManager {
         long size;
 
         try {
-            if (pageodirect) {
+            if (segmentedPages) {
+                size = writePage(newPage, getPageStore(tableDir), pageId);
+            } else if (pageodirect) {
                 try (ODirectFileOutputStream odirect = new ODirectFileOutputStream(pageFile, O_DIRECT_BLOCK_BATCH,
                         StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
                     size = writePage(newPage, null, odirect);
@@ -936,13 +1110,7 @@ public class FileDataStorageManager extends DataStorageManager {
     private long writeIndexPage(DataWriter writer, ManagedFile file, OutputStream stream) throws IOException {
         try (RecyclableByteArrayOutputStream oo = getWriteBuffer();
              ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
-            dataOutput.writeVLong(1); // version
-            dataOutput.writeVLong(0); // flags for future implementations
-            writer.write(dataOutput);
-            dataOutput.flush();
-            long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
-            dataOutput.writeLong(hash);
-            dataOutput.flush();
+            serializeIndexPage(writer, oo, dataOutput);
             stream.write(oo.getBuffer(), 0, oo.size());
             if (file != null) { // O_DIRECT does not need fsync
                 file.sync();
@@ -951,6 +1119,25 @@ public class FileDataStorageManager extends DataStorageManager {
         }
     }
 
+    private long writeIndexPage(DataWriter writer, SegmentedPageStore store, long pageId) throws IOException {
+        try (RecyclableByteArrayOutputStream oo = getWriteBuffer();
+             ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
+            serializeIndexPage(writer, oo, dataOutput);
+            store.write(pageId, oo.getBuffer(), oo.size());
+            return oo.size();
+        }
+    }
+
+    private void serializeIndexPage(DataWriter writer, RecyclableByteArrayOutputStream oo, ExtendedDataOutputStream dataOutput) throws IOException {
+        dataOutput.writeVLong(1); // version
+        dataOutput.writeVLong(0); // flags for future implementations
+        writer.write(dataOutput);
+        dataOutput.flush();
+        long hash = hashWritesEnabled ? XXHash64Utils.hash(oo.getBuffer(), 0, oo.size()) : NO_HASH_PRESENT;
+        dataOutput.writeLong(hash);
+        dataOutput.flush();
+    }
+
     @Override
     public void writeIndexPage(
             String tableSpace, String indexName,
@@ -962,7 +1149,9 @@ public class FileDataStorageManager extends DataStorageManager {
         Path pageFile = getPageFile(tableDir, pageId);
         long size;
         try {
-            if (indexodirect) {
+            if (segmentedPages) {
+                size = writeIndexPage(writer, getPageStore(tableDir), pageId);
+            } else if (indexodirect) {
                 try (ODirectFileOutputStream odirect = new ODirectFileOutputStream(pageFile, O_DIRECT_BLOCK_BATCH,
                         StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
                     size = writeIndexPage(writer, null, odirect);
@@ -1307,6 +1496,7 @@ public class FileDataStorageManager extends DataStorageManager {
     public void dropTable(String tablespace, String tableName) throws DataStorageManagerException {
         Path tableDir = getTableDirectory(tablespace, tableName);
         LOGGER.log(Level.INFO, "dropTable {0}.{1} in {2}", new Object[]{tablespace, tableName, tableDir});
+        closePageStore(tableDir);
         try {
             deleteDirectory(tableDir);
         } catch (IOException ex) {
@@ -1318,6 +1508,7 @@ public class FileDataStorageManager extends DataStorageManager {
     public void truncateIndex(String tablespace, String name) throws DataStorageManagerException {
         Path tableDir = getIndexDirectory(tablespace, name);
         LOGGER.log(Level.INFO, "truncateIndex {0}.{1} in {2}", new Object[]{tablespace, name, tableDir});
+        closePageStore(tableDir);
         try {
             cleanDirectory(tableDir);
         } catch (IOException ex) {
@@ -1329,6 +1520,7 @@ public class FileDataStorageManager extends DataStorageManager {
     public void dropIndex(String tablespace, String name) throws DataStorageManagerException {
         Path tableDir = getIndexDirectory(tablespace, name);
         LOGGER.log(Level.INFO, "dropIndex {0}.{1} in {2}", new Object[]{tablespace, name, tableDir});
+        closePageStore(tableDir);
         try {
             deleteDirectory(tableDir);
         } catch (IOException ex) {
@@ -1563,6 +1755,27 @@ public class FileDataStorageManager extends DataStorageManager {
         }
     }
 
+    private static class ReleasePagesAction extends PostCheckpointAction {
+
+        private final SegmentedPageStore store;
+        private final List<Long> pageIds;
+
+        public ReleasePagesAction(String tableSpace, String tableName, String description, SegmentedPageStore store, List<Long> pageIds) {
+            super(tableSpace, tableName, description);
+            this.store = store;
+            this.pageIds = pageIds;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.log(Level.FINE, description);
+            for (Long pageId : pageIds) {
+                store.release(pageId);
+            }
+            store.deleteEmptySegments();
+        }
+    }
+
     private static final Recycler<RecyclableByteArrayOutputStream> WRITE_BUFFERS_RECYCLER = new Recycler<RecyclableByteArrayOutputStream>() {
 
         @Override
@@ -104,6 +104,11 @@ class FileRecordSet extends MaterializedRecordSet {
         buffer.finish();
     }
 
+    @Override
+    public long getSpilledBytes() {
+        return buffer.getSwappedBytes();
+    }
+
     @Override
     public void sort(TupleComparator comparator) {
 
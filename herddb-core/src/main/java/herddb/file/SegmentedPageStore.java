@@ -0,0 +1,498 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+import herddb.log.LogSequenceNumber;
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.FileUtils;
+import herddb.utils.ManagedFile;
+import herddb.utils.SimpleBufferedOutputStream;
+import herddb.utils.SimpleByteArrayInputStream;
+import herddb.utils.XXHash64Utils;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pages of a table or of an index appended into large segment files.
+ * <p>
+ * The location of every page (segment, offset and length) is kept in memory
+ * and it is saved at every checkpoint on a {@link #FILEEXTENSION_PAGELOCATIONS}
+ * file next to the checkpoint file. Segments are only appended: a page which is
+ * not used anymore only decrements the live bytes of its segment, empty
+ * segments are deleted and the live pages of sparse segments are moved to the
+ * current segment by {@link #compact(Set)}.
+ * </p>
+ * <p>
+ * Every instance starts a new segment at the first write, segments written by
+ * a previous run of the process are never appended again.
+ * </p>
+ */
+final class SegmentedPageStore implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentedPageStore.class.getName());
+
+    static final String FILEEXTENSION_SEGMENT = ".segment";
+    static final String FILEEXTENSION_PAGELOCATIONS = ".pages";
+
+    private static final class PageLocation {
+
+        private final long segment;
+        private final long offset;
+        private final int length;
+
+        private PageLocation(long segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final AtomicLong liveBytes = new AtomicLong();
+        /**
+         * Next write position, only for the current segment, guarded by the
+         * store
+         */
+        private long writePosition;
+        private volatile boolean dirty;
+
+        private Segment(long id, Path file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int compactionThreshold;
+    private final Map<Long, PageLocation> locations = new ConcurrentHashMap<>();
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+    private Segment current;
+    private long nextSegmentId;
+
+    private SegmentedPageStore(Path directory, long segmentSize, int compactionThreshold) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Opens the store of a directory, loading the locations saved by every
+     * checkpoint which is still on disk. Segments without any page are
+     * leftovers of a checkpoint which did not complete and they are deleted.
+     *
+     * @param directory           directory of the table or of the index
+     * @param segmentSize         size of new segments
+     * @param compactionThreshold percentage of live bytes under which a
+     *                            segment is compacted
+     * @return the store
+     * @throws IOException
+     */
+    static SegmentedPageStore open(Path directory, long segmentSize, int compactionThreshold) throws IOException {
+        SegmentedPageStore store = new SegmentedPageStore(directory, segmentSize, compactionThreshold);
+        if (!Files.isDirectory(directory)) {
+            return store;
+        }
+        TreeMap<LogSequenceNumber, Path> locationFiles = new TreeMap<>();
+        List<Path> segmentFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path p : stream) {
+                LogSequenceNumber sequenceNumber = getPageLocationsSequenceNumber(p);
+                if (sequenceNumber != null) {
+                    locationFiles.put(sequenceNumber, p);
+                } else if (getSegmentId(p) >= 0) {
+                    segmentFiles.add(p);
+                }
+            }
+        }
+        /* Newer checkpoints win, a page is moved only by compaction */
+        for (Path p : locationFiles.values()) {
+            store.readLocations(p);
+        }
+        for (Path p : segmentFiles) {
+            long segmentId = getSegmentId(p);
+            store.nextSegmentId = Math.max(store.nextSegmentId, segmentId + 1);
+            store.segments.put(segmentId, new Segment(segmentId, p, FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)));
+        }
+        store.locations.entrySet().removeIf(entry -> {
+            Segment segment = store.segments.get(entry.getValue().segment);
+            if (segment == null) {
+                LOGGER.log(Level.WARNING, "page {0} of {1} is in a missing segment {2}", new Object[]{entry.getKey(), directory, entry.getValue().segment});
+                return true;
+            }
+            segment.liveBytes.addAndGet(entry.getValue().length);
+            return false;
+        });
+        for (Segment segment : new ArrayList<>(store.segments.values())) {
+            if (segment.liveBytes.get() == 0) {
+                LOGGER.log(Level.INFO, "deleting unused segment {0}", segment.file.toAbsolutePath());
+                store.deleteSegment(segment);
+            }
+        }
+        return store;
+    }
+
+    private void readLocations(Path file) throws IOException {
+        byte[] fileContent = FileUtils.fastReadFile(file);
+        XXHash64Utils.verifyBlockWithFooter(fileContent, 0, fileContent.length);
+        try (InputStream input = new SimpleByteArrayInputStream(fileContent);
+             ExtendedDataInputStream dataIn = new ExtendedDataInputStream(input)) {
+            long version = dataIn.readVLong(); // version
+            long flags = dataIn.readVLong(); // flags for future implementations
+            if (version != 1 || flags != 0) {
+                throw new IOException("corrupted page locations file " + file.toAbsolutePath());
+            }
+            int count = dataIn.readVInt();
+            for (int i = 0; i < count; i++) {
+                long pageId = dataIn.readVLong();
+                long segment = dataIn.readVLong();
+                long offset = dataIn.readVLong();
+                int length = dataIn.readVInt();
+                locations.put(pageId, new PageLocation(segment, offset, length));
+            }
+        }
+    }
+
+    /**
+     * Saves the location of the given pages, pages which are not stored in
+     * this store are skipped. The file is written only if at least one of the
+     * pages is in this store.
+     *
+     * @param file         destination file
+     * @param pageIds      pages referenced by the checkpoint
+     * @param requirefsync
+     * @return true if the file has been written
+     * @throws IOException
+     */
+    boolean writeLocations(Path file, Collection<Long> pageIds, boolean requirefsync) throws IOException {
+        Map<Long, PageLocation> toWrite = new TreeMap<>();
+        for (Long pageId : pageIds) {
+            PageLocation location = locations.get(pageId);
+            if (location != null) {
+                toWrite.put(pageId, location);
+            }
+        }
+        if (toWrite.isEmpty()) {
+            return false;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (ManagedFile managedFile = ManagedFile.open(temp, requirefsync);
+             SimpleBufferedOutputStream buffer = new SimpleBufferedOutputStream(managedFile.getOutputStream(), FileDataStorageManager.COPY_BUFFERS_SIZE);
+             XXHash64Utils.HashingOutputStream oo = new XXHash64Utils.HashingOutputStream(buffer);
+             ExtendedDataOutputStream dataOutput = new ExtendedDataOutputStream(oo)) {
+            dataOutput.writeVLong(1); // version
+            dataOutput.writeVLong(0); // flags for future implementations
+            dataOutput.writeVInt(toWrite.size());
+            for (Map.Entry<Long, PageLocation> entry : toWrite.entrySet()) {
+                PageLocation location = entry.getValue();
+                dataOutput.writeVLong(entry.getKey());
+                dataOutput.writeVLong(location.segment);
+                dataOutput.writeVLong(location.offset);
+                dataOutput.writeVInt(location.length);
+            }
+            dataOutput.writeLong(oo.hash());
+            dataOutput.flush();
+            managedFile.sync();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    boolean contains(long pageId) {
+        return locations.containsKey(pageId);
+    }
+
+    Set<Long> getPageIds() {
+        return locations.keySet();
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * Reads a page
+     *
+     * @param pageId
+     * @return the content of the page, null if the page is not in this store
+     * @throws IOException
+     */
+    byte[] read(long pageId) throws IOException {
+        PageLocation location = locations.get(pageId);
+        if (location == null) {
+            return null;
+        }
+        Segment segment = segments.get(location.segment);
+        if (segment == null) {
+            throw new IOException("segment " + location.segment + " of page " + pageId + " does not exist in " + directory);
+        }
+        byte[] result = new byte[location.length];
+        ByteBuffer buffer = ByteBuffer.wrap(result);
+        long position = location.offset;
+        while (buffer.hasRemaining()) {
+            int read = segment.channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("short read of page " + pageId + " from " + segment.file);
+            }
+            position += read;
+        }
+        return result;
+    }
+
+    /**
+     * Appends a page to the current segment. Writes are not synched, see
+     * {@link #sync()}.
+     *
+     * @param pageId
+     * @param data
+     * @param length
+     * @throws IOException
+     */
+    void write(long pageId, byte[] data, int length) throws IOException {
+        Segment segment;
+        long position;
+        synchronized (this) {
+            if (current == null
+                    || (current.writePosition > 0 && current.writePosition + length > segmentSize)) {
+                rollSegment(length);
+            }
+            segment = current;
+            position = segment.writePosition;
+            segment.writePosition += length;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += segment.channel.write(buffer, writePosition);
+        }
+        segment.dirty = true;
+        segment.liveBytes.addAndGet(length);
+        PageLocation previous = locations.put(pageId, new PageLocation(segment.id, position, length));
+        if (previous != null) {
+            Segment previousSegment = segments.get(previous.segment);
+            if (previousSegment != null) {
+                previousSegment.liveBytes.addAndGet(-previous.length);
+            }
+        }
+    }
+
+    private void rollSegment(int length) throws IOException {
+        if (current != null) {
+            /* give back the preallocated space which has not been used */
+            current.channel.truncate(current.writePosition);
+        }
+        long segmentId = nextSegmentId++;
+        Path file = directory.resolve(segmentId + FILEEXTENSION_SEGMENT);
+        RandomAccessFile preallocated = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            preallocated.setLength(Math.max(segmentSize, length));
+        } catch (IOException err) {
+            preallocated.close();
+            throw err;
+        }
+        Segment segment = new Segment(segmentId, file, preallocated.getChannel());
+        segments.put(segmentId, segment);
+        current = segment;
+        LOGGER.log(Level.FINE, "new segment {0}", file.toAbsolutePath());
+    }
+
+    /**
+     * Makes durable every page written since the last sync
+     *
+     * @throws IOException
+     */
+    void sync() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment.dirty) {
+                segment.dirty = false;
+                segment.channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Moves the given pages stored in sparse segments to the current segment,
+     * up to a segment worth of data. Sparse segments are deleted by
+     * {@link #deleteEmptySegments()} once no other page lives in them.
+     *
+     * @param activePages pages which are still in use
+     * @return number of moved pages
+     * @throws IOException
+     */
+    int compact(Set<Long> activePages) throws IOException {
+        Set<Long> sparse = new HashSet<>();
+        Segment writing;
+        synchronized (this) {
+            writing = current;
+        }
+        for (Segment segment : segments.values()) {
+            if (segment != writing
+                    && segment.liveBytes.get() * 100 < segmentSize * compactionThreshold) {
+                sparse.add(segment.id);
+            }
+        }
+        if (sparse.isEmpty()) {
+            return 0;
+        }
+        int moved = 0;
+        long movedBytes = 0;
+        for (Long pageId : activePages) {
+            PageLocation location = locations.get(pageId);
+            if (location == null || !sparse.contains(location.segment)) {
+                continue;
+            }
+            byte[] data = read(pageId);
+            write(pageId, data, data.length);
+            moved++;
+            movedBytes += data.length;
+            if (movedBytes >= segmentSize) {
+                break;
+            }
+        }
+        if (moved > 0) {
+            LOGGER.log(Level.INFO, "compacted {0} pages ({1} bytes) from {2} segments of {3}",
+                    new Object[]{moved, movedBytes, sparse.size(), directory});
+        }
+        return moved;
+    }
+
+    /**
+     * Forgets a page, its space is reclaimed when the whole segment is empty
+     *
+     * @param pageId
+     */
+    void release(long pageId) {
+        PageLocation location = locations.remove(pageId);
+        if (location != null) {
+            Segment segment = segments.get(location.segment);
+            if (segment != null) {
+                segment.liveBytes.addAndGet(-location.length);
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments which do not contain any page, apart from the
+     * current one. To be called only when no checkpoint on disk references
+     * pages in such segments.
+     */
+    void deleteEmptySegments() {
+        Segment writing;
+        synchronized (this) {
+            writing = current;
+        }
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment != writing && segment.liveBytes.get() <= 0) {
+                LOGGER.log(Level.FINE, "deleting empty segment {0}", segment.file.toAbsolutePath());
+                try {
+                    deleteSegment(segment);
+                } catch (IOException err) {
+                    LOGGER.log(Level.SEVERE, "Could not delete segment " + segment.file.toAbsolutePath() + ":" + err, err);
+                }
+            }
+        }
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException err) {
+                LOGGER.log(Level.SEVERE, "Could not close segment " + segment.file.toAbsolutePath() + ":" + err, err);
+            }
+        }
+        segments.clear();
+        locations.clear();
+        current = null;
+    }
+
+    static Path getPageLocationsFile(Path directory, LogSequenceNumber sequenceNumber) {
+        return directory.resolve(sequenceNumber.ledgerId + "." + sequenceNumber.offset + FILEEXTENSION_PAGELOCATIONS);
+    }
+
+    /**
+     * @param path
+     * @return the sequence number of the checkpoint, null if the file is not
+     * a page locations file
+     */
+    static LogSequenceNumber getPageLocationsSequenceNumber(Path path) {
+        String filename = path.getFileName() + "";
+        if (!filename.endsWith(FILEEXTENSION_PAGELOCATIONS)) {
+            return null;
+        }
+        String[] parts = filename.substring(0, filename.length() - FILEEXTENSION_PAGELOCATIONS.length()).split("\\.");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new LogSequenceNumber(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (NumberFormatException no) {
+            return null;
+        }
+    }
+
+    private static long getSegmentId(Path p) {
+        String filename = p.getFileName() + "";
+        if (filename.endsWith(FILEEXTENSION_SEGMENT)) {
+            try {
+                return Long.parseLong(filename.substring(0, filename.length() - FILEEXTENSION_SEGMENT.length()));
+            } catch (NumberFormatException no) {
+                return -1;
+            }
+        } else {
+            return -1;
+        }
+    }
+
+}
@@ -95,10 +95,28 @@ public interface KeyToPageIndex extends AutoCloseable {
 
     boolean containsKey(Bytes key);
 
+    /**
+     * Fast membership test, to be used before {@link #get(Bytes)} or {@link #containsKey(Bytes)} in order to skip
+     * the lookup of keys which are surely not in the index.
+     *
+     * @return {@code false} if the key is surely not mapped, {@code true} if it could be mapped
+     */
+    default boolean mightContainKey(Bytes key) {
+        return true;
+    }
+
     Long get(Bytes key);
 
     Long remove(Bytes key);
 
     boolean isSortedAscending(int[] pkTypes);
 
+    /**
+     * Tells whether full scans and scans on ranges of the primary key return
+     * the keys ordered by their bytes, see {@link Bytes#compareTo(Bytes)}
+     */
+    default boolean isScannedInBytesOrder() {
+        return false;
+    }
+
 }
@@ -28,6 +28,8 @@ import herddb.core.TableSpaceManager;
 import herddb.log.CommitLog;
 import herddb.log.LogSequenceNumber;
 import herddb.model.Index;
+import herddb.model.Record;
+import herddb.model.RecordFunction;
 import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.model.Table;
@@ -40,12 +42,15 @@ import herddb.utils.Bytes;
 import herddb.utils.DataAccessor;
 import herddb.utils.Holder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -53,8 +58,14 @@ import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 /**
- * HASH index. The index resides entirely in memory. It is serialized fully on
- * the IndexStatus structure
+ * HASH index. The index resides entirely in memory. Keys are partitioned in
+ * a fixed number of hash buckets, every bucket is stored in its own index page
+ * and a checkpoint rewrites only the buckets changed since the previous one.
+ * <p>
+ * When the index has INCLUDE columns every indexed value maps to entries
+ * built by {@link AbstractIndexManager#indexEntry(Bytes, DataAccessor)},
+ * which hold the values of the included columns next to the primary key, and
+ * the index can answer covering scans.
  *
  * @author enrico.olivelli
  */
@@ -62,7 +73,35 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
 
     private static final Logger LOGGER = Logger.getLogger(MemoryHashIndexManager.class.getName());
 
-    private final ConcurrentHashMap<Bytes, List<Bytes>> data = new ConcurrentHashMap<>();
+    /**
+     * Number of hash buckets (a power of two)
+     */
+    static final int BUCKETS = 256;
+
+    /**
+     * Page holding the whole index, written by older versions
+     */
+    private static final long PAGE_VERSION_FULL = 1;
+
+    /**
+     * Page holding a single bucket
+     */
+    private static final long PAGE_VERSION_BUCKET = 2;
+
+    private static final long NO_PAGE = -1;
+
+    private final ConcurrentHashMap<Bytes, List<Bytes>>[] buckets;
+
+    /**
+     * Buckets changed since last checkpoint (1 dirty, 0 clean)
+     */
+    private final AtomicIntegerArray dirtyBuckets = new AtomicIntegerArray(BUCKETS);
+
+    /**
+     * Page of each bucket in the last checkpoint, accessed only during start and checkpoint
+     */
+    private final long[] bucketPages = new long[BUCKETS];
+
     private final AtomicLong newPageId = new AtomicLong(1);
 
     public MemoryHashIndexManager(Index index, AbstractTableManager tableManager, CommitLog log, DataStorageManager dataStorageManager, TableSpaceManager tableSpaceManager, String tableSpaceUUID,
@@ -70,6 +109,33 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                                   int writeLockTimeout, int readLockTimeout) {
         super(index, tableManager, dataStorageManager, tableSpaceManager.getTableSpaceUUID(), log, transaction,
                 writeLockTimeout, readLockTimeout);
+        @SuppressWarnings("unchecked")
+        ConcurrentHashMap<Bytes, List<Bytes>>[] newBuckets = new ConcurrentHashMap[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            newBuckets[i] = new ConcurrentHashMap<>();
+        }
+        this.buckets = newBuckets;
+        Arrays.fill(bucketPages, NO_PAGE);
+    }
+
+    private static int bucketOf(Bytes indexKey) {
+        int hash = indexKey.hashCode();
+        return (hash ^ (hash >>> 16)) & (BUCKETS - 1);
+    }
+
+    private ConcurrentHashMap<Bytes, List<Bytes>> bucketFor(Bytes indexKey) {
+        return buckets[bucketOf(indexKey)];
+    }
+
+    private Stream<Map.Entry<Bytes, List<Bytes>>> entries() {
+        return Arrays.stream(buckets).flatMap(bucket -> bucket.entrySet().stream());
+    }
+
+    private void clearBuckets() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i].clear();
+            dirtyBuckets.set(i, 1);
+        }
     }
 
     LogSequenceNumber bootSequenceNumber;
@@ -95,17 +161,27 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                 return false;
             }
 
-            for (long pageId : status.activePages) {
-                LOGGER.log(Level.INFO, "recovery index {0}, load {1}", new Object[]{index.name, pageId});
-
-                Map<Bytes, List<Bytes>> read = dataStorageManager.readIndexPage(tableSpaceUUID, index.uuid, pageId, in -> {
-                    Map<Bytes, List<Bytes>> deserialized = new HashMap<>();
+            /* Every page holds distinct keys, they can be loaded in parallel */
+            status.activePages.parallelStream().forEach(pageId -> {
+                LOGGER.log(Level.FINE, "recovery index {0}, load {1}", new Object[]{index.name, pageId});
 
+                int bucket = dataStorageManager.readIndexPage(tableSpaceUUID, index.uuid, pageId, in -> {
                     long version = in.readVLong(); // version
                     long flags = in.readVLong(); // flags for future implementations
-                    if (version != 1 || flags != 0) {
+                    if ((version != PAGE_VERSION_FULL && version != PAGE_VERSION_BUCKET) || flags != 0) {
                         throw new DataStorageManagerException("corrupted index page");
                     }
+
+                    /* Pages written with another number of buckets must be split again */
+                    int pageBucket = -1;
+                    if (version == PAGE_VERSION_BUCKET) {
+                        int pageBuckets = in.readVInt();
+                        pageBucket = in.readVInt();
+                        if (pageBuckets != BUCKETS) {
+                            pageBucket = -1;
+                        }
+                    }
+
                     int size = in.readVInt();
                     for (int i = 0; i < size; i++) {
                         Bytes indexKey = in.readBytesNoCopy();
@@ -115,17 +191,25 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                             Bytes tableKey = in.readBytesNoCopy();
                             value.add(tableKey);
                         }
-                        deserialized.put(indexKey, value);
+                        int keyBucket = bucketOf(indexKey);
+                        buckets[keyBucket].put(indexKey, value);
+                        if (pageBucket < 0) {
+                            /* Not stored in its own bucket page yet */
+                            dirtyBuckets.set(keyBucket, 1);
+                        }
                     }
 
-                    return deserialized;
+                    return pageBucket;
                 });
 
-                data.putAll(read);
-            }
+                if (bucket >= 0) {
+                    bucketPages[bucket] = pageId;
+                }
+            });
 
             newPageId.set(status.newPageId);
-            LOGGER.log(Level.INFO, "loaded {0} keys for index {1}", new Object[]{data.size(), index.name});
+            LOGGER.log(Level.INFO, "loaded {0} keys from {1} pages for index {2}",
+                    new Object[]{Arrays.stream(buckets).mapToLong(Map::size).sum(), status.activePages.size(), index.name});
             return true;
         }
     }
@@ -135,14 +219,14 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
         long _start = System.currentTimeMillis();
         LOGGER.log(Level.INFO, "building index {0}", index.name);
         dataStorageManager.initIndex(tableSpaceUUID, index.uuid);
-        data.clear();
+        clearBuckets();
         Table table = tableManager.getTable();
         tableManager.scanForIndexRebuild(r -> {
             DataAccessor values = r.getDataAccessor(table);
             Bytes key = RecordSerializer.serializeIndexKey(values, table, table.primaryKey);
             Bytes indexKey = RecordSerializer.serializeIndexKey(values, index, index.columnNames);
 //            LOGGER.log(Level.SEVERE, "adding " + key + " -> " + values);
-            recordInserted(key, indexKey);
+            recordInserted(key, indexKey, values);
         });
         long _stop = System.currentTimeMillis();
         LOGGER.log(Level.INFO, "building index {0} took {1}", new Object[]{index.name, (_stop - _start) + " ms"});
@@ -150,11 +234,33 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
 
     @Override
     public Stream<Bytes> scanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        Stream<Bytes> entries = scanEntries(operation, context, tableContext);
+        if (index.hasIncludedColumns()) {
+            return entries.map(this::primaryKeyOfEntry);
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean isCoveringScanSupported() {
+        return index.hasIncludedColumns();
+    }
+
+    @Override
+    public Stream<Record> coveringScanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        if (!index.hasIncludedColumns()) {
+            return super.coveringScanner(operation, context, tableContext);
+        }
+        return scanEntries(operation, context, tableContext).map(RecordSerializer::deserializeIndexEntry);
+    }
+
+    private Stream<Bytes> scanEntries(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
         if (operation instanceof SecondaryIndexSeek) {
             SecondaryIndexSeek sis = (SecondaryIndexSeek) operation;
-            SQLRecordKeyFunction value = sis.value;
+            RecordFunction value = sis.value;
             byte[] refvalue = value.computeNewValue(null, context, tableContext);
-            List<Bytes> result = data.get(Bytes.from_array(refvalue));
+            Bytes indexKey = Bytes.from_array(refvalue);
+            List<Bytes> result = bucketFor(indexKey).get(indexKey);
             if (result != null) {
                 return result.stream();
             } else {
@@ -168,9 +274,7 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                 Bytes recordValue = entry.getKey();
                 return recordValue.startsWith(refvalue.length, refvalue);
             };
-            return data
-                    .entrySet()
-                    .stream()
+            return entries()
                     .filter(predicate)
                     .map(entry -> entry.getValue())
                     .flatMap(l -> l.stream());
@@ -215,9 +319,7 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
                     return true;
                 };
             }
-            return data
-                    .entrySet()
-                    .stream()
+            return entries()
                     .filter(predicate)
                     .map(entry -> entry.getValue())
                     .flatMap(l -> l.stream());
@@ -237,34 +339,64 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
 
         LOGGER.log(Level.INFO, "flush index {0}", new Object[]{index.name});
 
-        long pageId = newPageId.getAndIncrement();
-        Holder<Long> count = new Holder<>();
-
-        dataStorageManager.writeIndexPage(tableSpaceUUID, index.uuid, pageId, (out) -> {
-
-            long entries = 0;
-            out.writeVLong(1); // version
-            out.writeVLong(0); // flags for future implementations
-            out.writeVInt(data.size());
-            for (Map.Entry<Bytes, List<Bytes>> entry : data.entrySet()) {
-                out.writeArray(entry.getKey());
-                List<Bytes> entrydata = entry.getValue();
-                out.writeVInt(entrydata.size());
-                for (Bytes v : entrydata) {
-                    out.writeArray(v);
-                    ++entries;
-                }
+        Holder<Long> count = new Holder<>(0L);
+        int written = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            /* Reset before writing, changes done while writing will be written on next checkpoint */
+            if (dirtyBuckets.getAndSet(bucket, 0) == 0) {
+                continue;
+            }
+
+            List<Map.Entry<Bytes, List<Bytes>>> bucketData = new ArrayList<>(buckets[bucket].entrySet());
+            if (bucketData.isEmpty()) {
+                bucketPages[bucket] = NO_PAGE;
+                continue;
             }
 
-            count.value = entries;
+            long pageId = newPageId.getAndIncrement();
+            final int currentBucket = bucket;
+            try {
+                dataStorageManager.writeIndexPage(tableSpaceUUID, index.uuid, pageId, (out) -> {
+
+                    long entries = 0;
+                    out.writeVLong(PAGE_VERSION_BUCKET); // version
+                    out.writeVLong(0); // flags for future implementations
+                    out.writeVInt(BUCKETS);
+                    out.writeVInt(currentBucket);
+                    out.writeVInt(bucketData.size());
+                    for (Map.Entry<Bytes, List<Bytes>> entry : bucketData) {
+                        out.writeArray(entry.getKey());
+                        List<Bytes> entrydata = entry.getValue();
+                        out.writeVInt(entrydata.size());
+                        for (Bytes v : entrydata) {
+                            out.writeArray(v);
+                            ++entries;
+                        }
+                    }
 
-        });
+                    count.value += entries;
 
-        IndexStatus indexStatus = new IndexStatus(index.name, sequenceNumber, newPageId.get(), Collections.singleton(pageId), null);
+                });
+            } catch (RuntimeException err) {
+                dirtyBuckets.set(bucket, 1);
+                throw err;
+            }
+            bucketPages[bucket] = pageId;
+            written++;
+        }
+
+        Set<Long> activePages = new HashSet<>();
+        for (long pageId : bucketPages) {
+            if (pageId != NO_PAGE) {
+                activePages.add(pageId);
+            }
+        }
+
+        IndexStatus indexStatus = new IndexStatus(index.name, sequenceNumber, newPageId.get(), activePages, null);
         result.addAll(dataStorageManager.indexCheckpoint(tableSpaceUUID, index.uuid, indexStatus, pin));
 
-        LOGGER.log(Level.INFO, "checkpoint index {0} finished: logpos {1}, {2} entries, page {3}",
-                new Object[]{index.name, sequenceNumber, Long.toString(count.value), Long.toString(pageId)});
+        LOGGER.log(Level.INFO, "checkpoint index {0} finished: logpos {1}, {2} entries in {3} rewritten buckets, {4} pages",
+                new Object[]{index.name, sequenceNumber, Long.toString(count.value), written, activePages.size()});
 
         return result;
     }
@@ -282,15 +414,32 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
         removeValueFromIndex(indexKey, key);
     }
 
+    @Override
+    public void recordDeleted(Bytes key, Bytes indexKey, DataAccessor values) {
+        recordDeleted(key, indexKey);
+    }
+
     private void removeValueFromIndex(Bytes indexKey, Bytes key) {
-        data.merge(indexKey, Collections.singletonList(key), (actual, newList) -> {
-            if (actual.size() == 1) {
+        int bucket = bucketOf(indexKey);
+        buckets[bucket].merge(indexKey, Collections.singletonList(key), (actual, newList) -> {
+            if (index.hasIncludedColumns()) {
+                // entries are matched on the primary key, included values could be different
+                List<Bytes> result = new ArrayList<>(actual.size());
+                for (Bytes entry : actual) {
+                    if (!key.equals(primaryKeyOfEntry(entry))) {
+                        result.add(entry);
+                    }
+                }
+                return result.isEmpty() ? null : result;
+            } else if (actual.size() == 1) {
                 return null;
             } else {
                 actual.removeAll(newList);
                 return actual;
             }
         });
+        /* Marked after the change, a concurrent checkpoint resets the flag before reading the bucket */
+        dirtyBuckets.set(bucket, 1);
     }
 
     @Override
@@ -301,13 +450,23 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
         addValueToIndex(indexKey, key);
     }
 
-    private void addValueToIndex(Bytes indexKey, Bytes key) {
-        data.merge(indexKey, Collections.singletonList(key), (actual, newList) -> {
+    @Override
+    public void recordInserted(Bytes key, Bytes indexKey, DataAccessor values) {
+        if (indexKey == null) {
+            return;
+        }
+        addValueToIndex(indexKey, indexEntry(key, values));
+    }
+
+    private void addValueToIndex(Bytes indexKey, Bytes entry) {
+        int bucket = bucketOf(indexKey);
+        buckets[bucket].merge(indexKey, Collections.singletonList(entry), (actual, newList) -> {
             List<Bytes> result = new ArrayList<>(actual.size() + 1);
             result.addAll(actual);
             result.addAll(newList);
             return result;
         });
+        dirtyBuckets.set(bucket, 1);
     }
 
     @Override
@@ -324,24 +483,69 @@ public class MemoryHashIndexManager extends AbstractIndexManager {
         }
     }
 
+    @Override
+    public void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded, DataAccessor previousValues, DataAccessor newValues) {
+        if (!index.hasIncludedColumns()) {
+            recordUpdated(key, indexKeyRemoved, indexKeyAdded);
+            return;
+        }
+        if (Objects.equals(indexKeyRemoved, indexKeyAdded)) {
+            if (indexKeyAdded != null) {
+                // included values may have been changed
+                Bytes entry = indexEntry(key, newValues);
+                if (!entry.equals(indexEntry(key, previousValues))) {
+                    replaceValueInIndex(indexKeyAdded, key, entry);
+                }
+            }
+            return;
+        }
+        // BEWARE that this operation is not atomic
+        if (indexKeyAdded != null) {
+            addValueToIndex(indexKeyAdded, indexEntry(key, newValues));
+        }
+        if (indexKeyRemoved != null) {
+            removeValueFromIndex(indexKeyRemoved, key);
+        }
+    }
+
+    private void replaceValueInIndex(Bytes indexKey, Bytes key, Bytes entry) {
+        int bucket = bucketOf(indexKey);
+        buckets[bucket].merge(indexKey, Collections.singletonList(entry), (actual, newList) -> {
+            List<Bytes> result = new ArrayList<>(actual.size());
+            for (Bytes current : actual) {
+                if (!key.equals(primaryKeyOfEntry(current))) {
+                    result.add(current);
+                }
+            }
+            result.add(entry);
+            return result;
+        });
+        dirtyBuckets.set(bucket, 1);
+    }
+
     @Override
     public void close() {
-        data.clear();
+        for (ConcurrentHashMap<Bytes, List<Bytes>> bucket : buckets) {
+            bucket.clear();
+        }
     }
 
     @Override
     public void truncate() throws DataStorageManagerException {
-        data.clear();
+        clearBuckets();
     }
 
     @Override
     public boolean valueAlreadyMapped(Bytes key, Bytes primaryKey) throws DataStorageManagerException {
         if (primaryKey == null) {
             // new record, error if there is any mapping
-            return data.containsKey(key);
+            return bucketFor(key).containsKey(key);
         } else {
             // updating a record, error if there is a mapping to another record
-            List<Bytes> current = data.getOrDefault(key, Collections.emptyList());
+            List<Bytes> current = bucketFor(key).getOrDefault(key, Collections.emptyList());
+            if (index.hasIncludedColumns()) {
+                return current.stream().anyMatch(entry -> !primaryKey.equals(primaryKeyOfEntry(entry)));
+            }
             return !current.isEmpty()
                     && !current.contains(primaryKey);
         }
@@ -0,0 +1,62 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import herddb.model.ScanLimits;
+import herddb.sql.expressions.CompiledSQLExpression;
+
+/**
+ * Nearest neighbours search on a vector index, used for ORDER BY
+ * similarity(column, vector) LIMIT k. The index returns a superset of the
+ * first k records, which are then sorted using the exact similarity.
+ *
+ * @see herddb.index.hnsw.HNSWIndexManager
+ */
+@SuppressFBWarnings("EI_EXPOSE_REP2")
+public class VectorIndexSearch implements IndexOperation {
+
+    public final String indexName;
+    /**
+     * One of the vector functions defined in {@link herddb.sql.functions.BuiltinFunctions}
+     */
+    public final String function;
+    public final CompiledSQLExpression vector;
+    public final ScanLimits limits;
+
+    public VectorIndexSearch(String indexName, String function, CompiledSQLExpression vector, ScanLimits limits) {
+        this.indexName = indexName;
+        this.function = function;
+        this.vector = vector;
+        this.limits = limits;
+    }
+
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public String toString() {
+        return "VectorIndexSearch{" + "indexName=" + indexName + ", function=" + function + ", vector=" + vector + '}';
+    }
+
+}
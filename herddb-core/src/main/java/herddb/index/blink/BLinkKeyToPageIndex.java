@@ -20,7 +20,6 @@
 
 package herddb.index.blink;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import herddb.core.AbstractIndexManager;
 import herddb.core.HerdDBInternalException;
 import herddb.core.MemoryManager;
@@ -46,6 +45,7 @@ import herddb.storage.IndexStatus;
 import herddb.utils.ByteArrayCursor;
 import herddb.utils.Bytes;
 import herddb.utils.ExtendedDataOutputStream;
+import herddb.utils.Holder;
 import herddb.utils.VisibleByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -76,6 +76,7 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
     public static final byte METADATA_PAGE = 0;
     public static final byte INNER_NODE_PAGE = 1;
     public static final byte LEAF_NODE_PAGE = 2;
+    public static final byte BLOOM_FILTER_PAGE = 3;
 
     private static final byte NODE_PAGE_END_BLOCK = 0;
     private static final byte NODE_PAGE_KEY_VALUE_BLOCK = 1;
@@ -84,6 +85,8 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
     private static final int METADATA_PAGE_END_BLOCK = 0;
     private static final int METADATA_PAGE_NODE_BLOCK = 1;
 
+    private static final long NO_BLOOM_FILTER_PAGE = -1L;
+
     private final String tableSpace;
     private final String indexName;
 
@@ -96,6 +99,22 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
     private volatile BLink<Bytes, Long> tree;
 
+    /**
+     * Filter of the keys in the tree, used to answer lookups of missing keys without visiting the tree. It is
+     * {@code null} if the index was persisted without a filter, in that case it will be built at next checkpoint.
+     */
+    private volatile KeyBloomFilter bloomFilter;
+
+    /**
+     * Filter being built by a checkpoint, it receives the keys inserted during the scan of the tree
+     */
+    private volatile KeyBloomFilter rebuildingBloomFilter;
+
+    /* Last persisted filter, accessed only by checkpoints (which are never concurrent) */
+    private KeyBloomFilter persistedBloomFilter;
+    private long persistedBloomFilterInsertions;
+    private long persistedBloomFilterPageId = NO_BLOOM_FILTER_PAGE;
+
     private final AtomicBoolean closed;
 
     public static String deriveIndexName(String tableName) {
@@ -123,20 +142,65 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
     @Override
     public void put(Bytes key, Long currentPage) {
+        /* Key must be in the filter before it becomes visible in the tree */
+        final KeyBloomFilter filter = addToBloomFilter(key);
         try {
             getTree().insert(key, currentPage);
         } catch (UncheckedIOException err) {
             throw new HerdDBInternalException(err);
         }
+        afterInsert(key, filter);
     }
 
     @Override
     public boolean put(Bytes key, Long newPage, Long expectedPage) {
+        if (expectedPage != null) {
+            /* The key is already mapped, hence already in the filter */
+            try {
+                return getTree().insert(key, newPage, expectedPage);
+            } catch (UncheckedIOException err) {
+                throw new HerdDBInternalException(err);
+            }
+        }
+        final KeyBloomFilter filter = addToBloomFilter(key);
+        final boolean result;
         try {
-            return getTree().insert(key, newPage, expectedPage);
+            result = getTree().insert(key, newPage, expectedPage);
         } catch (UncheckedIOException err) {
             throw new HerdDBInternalException(err);
         }
+        afterInsert(key, filter);
+        return result;
+    }
+
+    private KeyBloomFilter addToBloomFilter(Bytes key) {
+        final KeyBloomFilter filter = bloomFilter;
+        if (filter != null) {
+            filter.add(key);
+        }
+        return filter;
+    }
+
+    /**
+     * Adds a key just inserted into the tree to the filters installed or being built by a concurrent checkpoint
+     * after the key was added to the given one: the scan of the tree done by the rebuild could have missed it.
+     */
+    private void afterInsert(Bytes key, KeyBloomFilter filter) {
+        /* Check the rebuilding filter first: it is cleared only after the rebuilt filter has been installed */
+        final KeyBloomFilter rebuilding = rebuildingBloomFilter;
+        if (rebuilding != null) {
+            rebuilding.add(key);
+        }
+        final KeyBloomFilter current = bloomFilter;
+        if (current != filter && current != rebuilding && current != null) {
+            current.add(key);
+        }
+    }
+
+    @Override
+    public boolean mightContainKey(Bytes key) {
+        final KeyBloomFilter filter = bloomFilter;
+        return filter == null || filter.mightContain(key);
     }
 
     @Override
@@ -182,6 +246,11 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         }
     }
 
+    @Override
+    public boolean isScannedInBytesOrder() {
+        return true;
+    }
+
     @Override
     public Stream<Entry<Bytes, Long>> scanner(
             IndexOperation operation, StatementEvaluationContext context,
@@ -275,6 +344,7 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
     @Override
     public void truncate() {
         getTree().truncate();
+        bloomFilter = new KeyBloomFilter(KeyBloomFilter.MIN_CAPACITY);
     }
 
     @Override
@@ -283,9 +353,27 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         dataStorageManager.dropIndex(tableSpace, indexName);
     }
 
+    /**
+     * Memory used by the pages of the tree loaded in memory and by the filter
+     * of the keys, which takes 10 bits per key up to 64 MB. Like the root of
+     * the tree, the filter of an empty index is not accounted
+     */
     @Override
     public long getUsedMemory() {
-        return getTree().getUsedMemory();
+        final BLink<Bytes, Long> tree = getTree();
+        long result = tree.getUsedMemory();
+        if (tree.size() == 0) {
+            return result;
+        }
+        final KeyBloomFilter filter = bloomFilter;
+        if (filter != null) {
+            result += filter.getUsedMemory();
+        }
+        final KeyBloomFilter rebuilding = rebuildingBloomFilter;
+        if (rebuilding != null) {
+            result += rebuilding.getUsedMemory();
+        }
+        return result;
     }
 
     @Override
@@ -310,18 +398,33 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         if (LogSequenceNumber.START_OF_TIME.equals(sequenceNumber)) {
             /* Empty index (booting from the start) */
             tree = new BLink<>(pageSize, SizeEvaluatorImpl.INSTANCE,
-                    memoryManager.getPKPageReplacementPolicy(), indexDataStorage);
+                    memoryManager.getPKPageReplacementPolicy(tableSpace), indexDataStorage);
+            bloomFilter = new KeyBloomFilter(KeyBloomFilter.MIN_CAPACITY);
             if (!created) {
                 LOGGER.log(Level.INFO, "loaded empty index {0}", new Object[]{indexName});
             }
         } else {
             IndexStatus status = dataStorageManager.getIndexStatus(tableSpace, indexName, sequenceNumber);
             try {
-                BLinkMetadata<Bytes> metadata = MetadataSerializer.INSTANCE.read(status.indexData);
+                Holder<Long> bloomFilterPageId = new Holder<>();
+                BLinkMetadata<Bytes> metadata = MetadataSerializer.INSTANCE.read(status.indexData, bloomFilterPageId);
 
                 tree = new BLink<>(pageSize, SizeEvaluatorImpl.INSTANCE,
-                        memoryManager.getPKPageReplacementPolicy(), indexDataStorage,
+                        memoryManager.getPKPageReplacementPolicy(tableSpace), indexDataStorage,
                         metadata);
+
+                if (bloomFilterPageId.value != null) {
+                    bloomFilter = readBloomFilter(bloomFilterPageId.value);
+                    persistedBloomFilter = bloomFilter;
+                    persistedBloomFilterInsertions = bloomFilter.getInsertions();
+                    persistedBloomFilterPageId = bloomFilterPageId.value;
+                } else {
+                    bloomFilter = null;
+                }
+                if (bloomFilter == null || bloomFilter.getCapacity() < tree.size()) {
+                    /* Index written without filter or with a filter too small for its keys */
+                    rebuildBloomFilter(tree);
+                }
             } catch (IOException e) {
                 throw new DataStorageManagerException(e);
             }
@@ -344,10 +447,14 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
             BLinkMetadata<Bytes> metadata = getTree().checkpoint();
 
-            byte[] metaPage = MetadataSerializer.INSTANCE.write(metadata);
+            /* Filter must be written after tree checkpoint: it must contain every key of the checkpointed tree */
+            long bloomFilterPageId = checkpointBloomFilter(tree);
+
+            byte[] metaPage = MetadataSerializer.INSTANCE.write(metadata, bloomFilterPageId);
 
             Set<Long> activePages = new HashSet<>();
             metadata.nodes.forEach(node -> activePages.add(node.storeId));
+            activePages.add(bloomFilterPageId);
 
             IndexStatus indexStatus = new IndexStatus(indexName, sequenceNumber, newPageId.get(), activePages, metaPage);
             List<PostCheckpointAction> result = new ArrayList<>();
@@ -365,6 +472,87 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
         }
     }
 
+    /**
+     * Writes the filter of the keys if changed since last checkpoint, rebuilding it from the tree if missing or
+     * saturated.
+     *
+     * @return the id of the page holding the filter
+     */
+    private long checkpointBloomFilter(BLink<Bytes, Long> tree) throws IOException {
+        KeyBloomFilter filter = bloomFilter;
+        if (filter == null || filter.isSaturated()) {
+            filter = rebuildBloomFilter(tree);
+        }
+
+        /* Read before writing: keys added during the write will be persisted by next checkpoint */
+        final long insertions = filter.getInsertions();
+        if (filter == persistedBloomFilter && insertions == persistedBloomFilterInsertions) {
+            return persistedBloomFilterPageId;
+        }
+
+        final KeyBloomFilter toWrite = filter;
+        final long pageId = newPageId.getAndIncrement();
+        dataStorageManager.writeIndexPage(tableSpace, indexName, pageId, out -> {
+
+            /* Data version */
+            out.writeVLong(1);
+
+            /* flags for future implementations, actually unused */
+            out.writeVLong(0);
+
+            out.writeByte(BLOOM_FILTER_PAGE);
+
+            toWrite.write(out);
+        });
+
+        persistedBloomFilter = filter;
+        persistedBloomFilterInsertions = insertions;
+        persistedBloomFilterPageId = pageId;
+
+        return pageId;
+    }
+
+    /**
+     * Builds a new filter sized for twice the keys in the tree (to avoid rebuilding it too frequently), at boot and
+     * at checkpoint. Keys inserted while scanning the tree are added by {@link #afterInsert(Bytes, KeyBloomFilter)}.
+     */
+    private KeyBloomFilter rebuildBloomFilter(BLink<Bytes, Long> tree) {
+        final long start = System.currentTimeMillis();
+        final KeyBloomFilter rebuilt = new KeyBloomFilter(tree.size() * 2);
+        rebuildingBloomFilter = rebuilt;
+        try (Stream<Entry<Bytes, Long>> keys = tree.scan(null, null)) {
+            keys.forEach(entry -> rebuilt.add(entry.getKey()));
+            bloomFilter = rebuilt;
+        } finally {
+            rebuildingBloomFilter = null;
+        }
+        LOGGER.log(Level.INFO, "rebuilt bloom filter of index {0} in {1} ms: {2}",
+                new Object[]{indexName, System.currentTimeMillis() - start, rebuilt});
+        return rebuilt;
+    }
+
+    private KeyBloomFilter readBloomFilter(long pageId) {
+        return dataStorageManager.readIndexPage(tableSpace, indexName, pageId, in -> {
+
+            long version = in.readVLong();
+
+            /* flags for future implementations, actually unused */
+            long flags = in.readVLong();
+
+            if (version != 1 || flags != 0) {
+                throw new IOException("Corrupted index page " + pageId);
+            }
+
+            byte rtype = in.readByte();
+
+            if (rtype != BLOOM_FILTER_PAGE) {
+                throw new IOException("Wrong page type " + rtype + " expected " + BLOOM_FILTER_PAGE);
+            }
+
+            return KeyBloomFilter.read(in);
+        });
+    }
+
     @Override
     public void unpinCheckpoint(LogSequenceNumber sequenceNumber) throws DataStorageManagerException {
         dataStorageManager.unPinIndexCheckpoint(tableSpace, indexName, sequenceNumber);
@@ -469,11 +657,30 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
          */
         private static final long VERSION_2 = 2L;
 
-        public static final long CURRENT_VERSION = VERSION_2;
+        /**
+         * Same format of version 2, forced byte size recalculation due to the compact BLink node layout (smaller
+         * per entry overhead)
+         *
+         * @since 0.30.0
+         */
+        private static final long VERSION_3 = 3L;
+
+        public static final long CURRENT_VERSION = VERSION_3;
 
         private static final long NO_FLAGS = 0L;
 
+        /**
+         * The id of the page holding the bloom filter of the keys follows the end block
+         *
+         * @since 0.30.0
+         */
+        private static final long FLAG_BLOOM_FILTER = 1L;
+
         public byte[] write(BLinkMetadata<Bytes> metadata) throws IOException {
+            return write(metadata, NO_BLOOM_FILTER_PAGE);
+        }
+
+        public byte[] write(BLinkMetadata<Bytes> metadata, long bloomFilterPageId) throws IOException {
 
             final VisibleByteArrayOutputStream bos = new VisibleByteArrayOutputStream();
             try (ExtendedDataOutputStream edos = new ExtendedDataOutputStream(bos)) {
@@ -481,8 +688,8 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
                 /* data version */
                 edos.writeVLong(CURRENT_VERSION);
 
-                /* flags for future implementations, actually unused */
-                edos.writeVLong(NO_FLAGS);
+                boolean hasBloomFilter = bloomFilterPageId != NO_BLOOM_FILTER_PAGE;
+                edos.writeVLong(hasBloomFilter ? FLAG_BLOOM_FILTER : NO_FLAGS);
                 edos.writeByte(METADATA_PAGE);
 
                 edos.writeVLong(metadata.nextID);
@@ -522,14 +729,26 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
                 edos.writeVInt(METADATA_PAGE_END_BLOCK);
 
+                if (hasBloomFilter) {
+                    edos.writeVLong(bloomFilterPageId);
+                }
             }
 
             return bos.toByteArray();
 
         }
 
-        @SuppressFBWarnings(value = "DLS_DEAD_LOCAL_STORE", justification = "flags still not used but it must be forcefully read")
         public BLinkMetadata<Bytes> read(byte[] data) throws IOException {
+            return read(data, null);
+        }
+
+        /**
+         * Reads index metadata
+         *
+         * @param bloomFilterPageId if not null receives the id of the page holding the bloom filter of the keys,
+         *                          left untouched if the metadata has no bloom filter
+         */
+        public BLinkMetadata<Bytes> read(byte[] data, Holder<Long> bloomFilterPageId) throws IOException {
 
             try (ByteArrayCursor edis = ByteArrayCursor.wrap(data)) {
 
@@ -537,12 +756,12 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
                 /*
                  * Check if byte size needs to be recalculated (between v.0 and v.1 was changed size evaluation
-                 * algorithm so v.0 stored size is meaningless)
+                 * algorithm so v.0 stored size is meaningless, between v.2 and v.3 was changed node entry
+                 * overhead)
                  */
-                boolean recalculateSize = version == VERSION_0;
+                boolean recalculateSize = version < VERSION_3;
 
-                /* flags for future implementations, actually unused (exists from version 1) */
-                @SuppressWarnings("unused")
+                /* flags exists from version 1 */
                 long flags = version > VERSION_0 ? edis.readVLong() : NO_FLAGS;
 
                 byte rtype = edis.readByte();
@@ -574,7 +793,7 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
 
                     BLinkNodeMetadata<Bytes> node;
 
-                    if (version == VERSION_2) {
+                    if (version == VERSION_3 || version == VERSION_2) {
                         node = readV2(edis, recalculateSize);
 
                     } else if (version == VERSION_1) {
@@ -590,6 +809,13 @@ public class BLinkKeyToPageIndex implements KeyToPageIndex {
                     nodes.add(node);
                 }
 
+                if ((flags & FLAG_BLOOM_FILTER) != 0) {
+                    long pageId = edis.readVLong();
+                    if (bloomFilterPageId != null) {
+                        bloomFilterPageId.value = pageId;
+                    }
+                }
+
                 return new BLinkMetadata<>(nextID, fast, fastheight, top, topheight, first, values, nodes);
             }
 
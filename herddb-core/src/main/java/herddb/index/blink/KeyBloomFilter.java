@@ -0,0 +1,216 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+import herddb.utils.ByteArrayCursor;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Partitioned (blocked) bloom filter of the keys of a {@link BLinkKeyToPageIndex}.
+ * <p>
+ * The bit set is split in blocks of 512 bits (a cache line): the hash of a key selects a block and all the
+ * bits of the key are taken from that block, so every lookup touches a single cache line. With at least 10 bits per key
+ * the false positive rate is below 1%.
+ * </p>
+ * <p>
+ * Bits are never cleared: removed keys keep answering {@code true} until the filter is rebuilt. Adding keys is
+ * thread safe and never blocks lookups.
+ * </p>
+ */
+final class KeyBloomFilter {
+
+    /**
+     * Minimum number of keys a filter is sized for
+     */
+    static final long MIN_CAPACITY = 1024;
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_FUNCTIONS = 7;
+
+    private static final int BLOCK_BITS = 512;
+    private static final int LONGS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+
+    /**
+     * 1M blocks, 64 MB of bits, enough for about 50M keys with the nominal false positive rate
+     */
+    private static final int MAX_BLOCKS = 1 << 20;
+
+    private final long capacity;
+    private final int blockMask;
+    private final AtomicLongArray bits;
+
+    /**
+     * Number of added keys which changed at least a bit, an estimate of the distinct keys in the filter
+     */
+    private final LongAdder insertions;
+
+    KeyBloomFilter(long capacity) {
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        long requiredBlocks = (this.capacity * BITS_PER_KEY + BLOCK_BITS - 1) / BLOCK_BITS;
+        int blocks = 1;
+        while (blocks < requiredBlocks && blocks < MAX_BLOCKS) {
+            blocks <<= 1;
+        }
+        this.blockMask = blocks - 1;
+        this.bits = new AtomicLongArray(blocks * LONGS_PER_BLOCK);
+        this.insertions = new LongAdder();
+    }
+
+    private KeyBloomFilter(long capacity, long insertions, long[] bits) {
+        this.capacity = capacity;
+        this.blockMask = bits.length / LONGS_PER_BLOCK - 1;
+        this.bits = new AtomicLongArray(bits);
+        this.insertions = new LongAdder();
+        this.insertions.add(insertions);
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @return {@code true} if the filter changed (the key was surely not contained before)
+     */
+    boolean add(Bytes key) {
+        final long hash = hash(key);
+        final int base = ((int) (hash >>> 32) & blockMask) * LONGS_PER_BLOCK;
+        final int h1 = (int) hash;
+        final int h2 = (int) mix(hash) | 1;
+
+        boolean changed = false;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            final int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            final int index = base + (bit >>> 6);
+            final long mask = 1L << bit;
+            long current = bits.get(index);
+            while ((current & mask) == 0) {
+                if (bits.compareAndSet(index, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+                current = bits.get(index);
+            }
+        }
+
+        if (changed) {
+            insertions.increment();
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if a key could be contained in the filter.
+     *
+     * @return {@code false} if the key was never added, {@code true} if it was added or on a false positive
+     */
+    boolean mightContain(Bytes key) {
+        final long hash = hash(key);
+        final int base = ((int) (hash >>> 32) & blockMask) * LONGS_PER_BLOCK;
+        final int h1 = (int) hash;
+        final int h2 = (int) mix(hash) | 1;
+
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            final int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if ((bits.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    long getInsertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * A filter is saturated when it received more keys than it was sized for, its false positive rate then
+     * grows quickly and it should be rebuilt.
+     */
+    boolean isSaturated() {
+        return insertions.sum() > capacity;
+    }
+
+    long getUsedMemory() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    void write(ExtendedDataOutputStream out) throws IOException {
+        out.writeVLong(capacity);
+        out.writeVLong(insertions.sum());
+        final int size = bits.length();
+        out.writeVInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    static KeyBloomFilter read(ByteArrayCursor in) throws IOException {
+        long capacity = in.readVLong();
+        long insertions = in.readVLong();
+        int size = in.readVInt();
+        if (size < LONGS_PER_BLOCK || Integer.bitCount(size / LONGS_PER_BLOCK) != 1 || size % LONGS_PER_BLOCK != 0) {
+            throw new IOException("Wrong bloom filter size " + size);
+        }
+        long[] bits = new long[size];
+        for (int i = 0; i < size; i++) {
+            bits[i] = in.readLong();
+        }
+        return new KeyBloomFilter(capacity, insertions, bits);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key, finalized with {@link #mix(long)} to spread the bits
+     */
+    private static long hash(Bytes key) {
+        final byte[] buffer = key.getBuffer();
+        final int end = key.getOffset() + key.getLength();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = key.getOffset(); i < end; i++) {
+            hash ^= buffer[i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * MurmurHash3 64 bit finalizer
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyBloomFilter{" + "capacity=" + capacity + ", insertions=" + insertions.sum()
+                + ", bits=" + (bits.length() * (long) Long.SIZE) + '}';
+    }
+}
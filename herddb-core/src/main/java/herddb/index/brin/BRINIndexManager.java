@@ -36,6 +36,8 @@ import herddb.index.brin.BlockRangeIndexMetadata.BlockMetadata;
 import herddb.log.CommitLog;
 import herddb.log.LogSequenceNumber;
 import herddb.model.Index;
+import herddb.model.Record;
+import herddb.model.RecordFunction;
 import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.model.Table;
@@ -65,6 +67,11 @@ import java.util.stream.Stream;
 
 /**
  * Block-range like index with pagination managed by a {@link PageReplacementPolicy}
+ * <p>
+ * When the index has INCLUDE columns the values of the blocks are entries built
+ * by {@link AbstractIndexManager#indexEntry(Bytes, DataAccessor)}, with the
+ * values of the included columns next to the primary key.
+ * </p>
  *
  * @author enrico.olivelli
  * @author diego.salvi
@@ -88,7 +95,7 @@ public class BRINIndexManager extends AbstractIndexManager {
                                              writeLockTimeout, readLockTimeout);
         this.data = new BlockRangeIndex<>(
                 memoryManager.getMaxLogicalPageSize(),
-                memoryManager.getIndexPageReplacementPolicy(),
+                memoryManager.getIndexPageReplacementPolicy(tableSpaceManager.getTableSpaceUUID(), index.table),
                 storageLayer);
     }
 
@@ -302,7 +309,7 @@ public class BRINIndexManager extends AbstractIndexManager {
             Bytes key = RecordSerializer.serializeIndexKey(values, table, table.primaryKey);
             Bytes indexKey = RecordSerializer.serializeIndexKey(values, index, index.columnNames);
 //            LOGGER.log(Level.SEVERE, "adding " + key + " -> " + values);
-            recordInserted(key, indexKey);
+            recordInserted(key, indexKey, values);
             count.incrementAndGet();
         });
         long _stop = System.currentTimeMillis();
@@ -384,9 +391,30 @@ public class BRINIndexManager extends AbstractIndexManager {
 
     @Override
     protected Stream<Bytes> scanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        Stream<Bytes> entries = scanEntries(operation, context, tableContext);
+        if (index.hasIncludedColumns()) {
+            return entries.map(this::primaryKeyOfEntry);
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean isCoveringScanSupported() {
+        return index.hasIncludedColumns();
+    }
+
+    @Override
+    public Stream<Record> coveringScanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        if (!index.hasIncludedColumns()) {
+            return super.coveringScanner(operation, context, tableContext);
+        }
+        return scanEntries(operation, context, tableContext).map(RecordSerializer::deserializeIndexEntry);
+    }
+
+    private Stream<Bytes> scanEntries(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
         if (operation instanceof SecondaryIndexSeek) {
             SecondaryIndexSeek sis = (SecondaryIndexSeek) operation;
-            SQLRecordKeyFunction value = sis.value;
+            RecordFunction value = sis.value;
             byte[] refvalue = value.computeNewValue(null, context, tableContext);
             return data.query(Bytes.from_array(refvalue));
 
@@ -453,6 +481,43 @@ public class BRINIndexManager extends AbstractIndexManager {
         }
     }
 
+    @Override
+    public void recordDeleted(Bytes key, Bytes indexKey, DataAccessor values) {
+        if (indexKey == null) {
+            return;
+        }
+        // entries are rebuilt from the values of the record, the same values used when inserting
+        data.delete(indexKey, indexEntry(key, values));
+    }
+
+    @Override
+    public void recordInserted(Bytes key, Bytes indexKey, DataAccessor values) {
+        if (indexKey == null) {
+            return;
+        }
+        data.put(indexKey, indexEntry(key, values));
+    }
+
+    @Override
+    public void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded, DataAccessor previousValues, DataAccessor newValues) {
+        if (!index.hasIncludedColumns()) {
+            recordUpdated(key, indexKeyRemoved, indexKeyAdded);
+            return;
+        }
+        Bytes entryRemoved = indexEntry(key, previousValues);
+        Bytes entryAdded = indexEntry(key, newValues);
+        if (Objects.equals(indexKeyRemoved, indexKeyAdded) && entryRemoved.equals(entryAdded)) {
+            return;
+        }
+        // BEWARE that this operation is not atomic
+        if (indexKeyAdded != null) {
+            data.put(indexKeyAdded, entryAdded);
+        }
+        if (indexKeyRemoved != null) {
+            data.delete(indexKeyRemoved, entryRemoved);
+        }
+    }
+
     private class IndexDataStorageImpl implements IndexDataStorage<Bytes, Bytes> {
 
         @Override
@@ -502,6 +567,9 @@ public class BRINIndexManager extends AbstractIndexManager {
         } else {
             // updating a record, error if there is a mapping to another record
             List<Bytes> current = data.search(key);
+            if (index.hasIncludedColumns()) {
+                return current.stream().anyMatch(entry -> !primaryKey.equals(primaryKeyOfEntry(entry)));
+            }
             return !current.isEmpty()
                     && !current.contains(primaryKey);
         }
@@ -0,0 +1,507 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.hnsw;
+
+import herddb.utils.ByteArrayCursor;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin), an
+ * approximate nearest neighbours structure.
+ * <p>
+ * Every vector is a node of the graph, identified by the primary key of its
+ * record. Each node is linked to its nearest neighbours on level 0 and on a
+ * random number of upper levels, which contain exponentially fewer nodes: a
+ * search starts from the entry point on the top level and greedily moves
+ * towards the query vector, level by level.
+ * <p>
+ * The graph is built using the cosine distance, so only searches with
+ * {@link Metric#COSINE} follow the links the graph was built for. Removed
+ * nodes are only marked as deleted, they are still traversed by searches,
+ * and the graph is rebuilt by {@link #rebuildIfNeeded()} when they are the
+ * majority.
+ */
+final class HNSWGraph {
+
+    /**
+     * Distance used to navigate the graph, lower values are nearer.
+     */
+    enum Metric {
+        COSINE,
+        DOT_PRODUCT,
+        EUCLIDEAN
+    }
+
+    private static final int MIN_DELETED_NODES_FOR_REBUILD = 1000;
+
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Bytes, Integer> nodeByKey = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedNodes;
+
+    private static final class Node {
+
+        final Bytes key;
+        final float[] vector;
+        final float norm;
+        /**
+         * Ids of the linked nodes, for each level of the node
+         */
+        final int[][] neighbours;
+        boolean deleted;
+
+        Node(Bytes key, float[] vector, int level) {
+            this.key = key;
+            this.vector = vector;
+            this.norm = (float) Math.sqrt(dotProduct(vector, vector));
+            this.neighbours = new int[level + 1][];
+            Arrays.fill(neighbours, new int[0]);
+        }
+
+        int level() {
+            return neighbours.length - 1;
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+
+        final int id;
+        final float distance;
+
+        Candidate(int id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int diff = Float.compare(distance, o.distance);
+            return diff != 0 ? diff : Integer.compare(id, o.id);
+        }
+    }
+
+    HNSWGraph(int maxConnections, int efConstruction) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLevel0 = maxConnections * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+    }
+
+    /**
+     * Number of vectors in the graph, without the deleted nodes
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return nodeByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(Bytes key, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = nodeByKey.get(key);
+            addNode(new Node(key, vector, randomLevel()));
+            if (previous != null) {
+                markDeleted(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Bytes key) {
+        lock.writeLock().lock();
+        try {
+            Integer id = nodeByKey.remove(key);
+            if (id != null) {
+                markDeleted(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDeleted(int id) {
+        nodes.get(id).deleted = true;
+        deletedNodes++;
+    }
+
+    /**
+     * Number of nodes marked as deleted and still linked in the graph
+     */
+    int deletedNodes() {
+        lock.readLock().lock();
+        try {
+            return deletedNodes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Links again the live nodes if most of the nodes are deleted. The whole
+     * graph is rebuilt, so this is not meant to be called while applying
+     * changes to the data.
+     *
+     * @return true if the graph has been rebuilt
+     */
+    boolean rebuildIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            if (deletedNodes < MIN_DELETED_NODES_FOR_REBUILD || deletedNodes <= nodeByKey.size()) {
+                return false;
+            }
+            rebuild();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            nodes.clear();
+            nodeByKey.clear();
+            entryPoint = -1;
+            maxLevel = -1;
+            deletedNodes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate search of the nearest vectors.
+     *
+     * @param query
+     * @param metric
+     * @param ef number of candidates to explore, the size of the result
+     * @return the keys of at most ef nearest vectors, nearest first
+     */
+    List<Bytes> search(float[] query, Metric metric, int ef) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return Collections.emptyList();
+            }
+            float queryNorm = (float) Math.sqrt(dotProduct(query, query));
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedySearch(metric, query, queryNorm, current, level);
+            }
+            List<Candidate> found = searchLevel(metric, query, queryNorm, current, ef, 0);
+            List<Bytes> result = new ArrayList<>(found.size());
+            for (Candidate candidate : found) {
+                result.add(nodes.get(candidate.id).key);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addNode(Node node) {
+        int id = nodes.size();
+        nodes.add(node);
+        nodeByKey.put(node.key, id);
+        int level = node.level();
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedySearch(Metric.COSINE, node.vector, node.norm, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLevel(Metric.COSINE, node.vector, node.norm, current, efConstruction, l);
+            node.neighbours[l] = selectNeighbours(candidates, maxConnections);
+            int max = l == 0 ? maxConnectionsLevel0 : maxConnections;
+            for (int neighbour : node.neighbours[l]) {
+                link(neighbour, id, l, max);
+            }
+            if (!candidates.isEmpty()) {
+                current = candidates.get(0).id;
+            }
+        }
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+    }
+
+    private void link(int from, int to, int level, int max) {
+        Node node = nodes.get(from);
+        int[] current = node.neighbours[level];
+        int[] links = Arrays.copyOf(current, current.length + 1);
+        links[current.length] = to;
+        if (links.length > max) {
+            List<Candidate> candidates = new ArrayList<>(links.length);
+            for (int link : links) {
+                candidates.add(new Candidate(link, distance(Metric.COSINE, node.vector, node.norm, nodes.get(link))));
+            }
+            Collections.sort(candidates);
+            links = selectNeighbours(candidates, max);
+        }
+        node.neighbours[level] = links;
+    }
+
+    /**
+     * Neighbour selection heuristic: a candidate is discarded if it is nearer
+     * to an already selected neighbour than to the node, this way links reach
+     * different regions of the graph. Slots left free are filled with the
+     * nearest discarded candidates.
+     *
+     * @param candidates sorted by distance from the node
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        boolean[] taken = new boolean[candidates.size()];
+        int count = 0;
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            Candidate candidate = candidates.get(i);
+            Node node = nodes.get(candidate.id);
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(Metric.COSINE, node.vector, node.norm, nodes.get(selected[j])) < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate.id;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = candidates.get(i).id;
+            }
+        }
+        return selected;
+    }
+
+    private int greedySearch(Metric metric, float[] query, float queryNorm, int entry, int level) {
+        int current = entry;
+        float currentDistance = distance(metric, query, queryNorm, nodes.get(current));
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbour : nodes.get(current).neighbours[level]) {
+                float distance = distance(metric, query, queryNorm, nodes.get(neighbour));
+                if (distance < currentDistance) {
+                    currentDistance = distance;
+                    current = neighbour;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best first search on one level, deleted nodes are traversed but they
+     * are not returned.
+     *
+     * @return at most ef nodes, nearest first
+     */
+    private List<Candidate> searchLevel(Metric metric, float[] query, float queryNorm, int entry, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        // the farthest result is on the head
+        PriorityQueue<Candidate> results = new PriorityQueue<>(ef + 1, Comparator.reverseOrder());
+        Node entryNode = nodes.get(entry);
+        Candidate start = new Candidate(entry, distance(metric, query, queryNorm, entryNode));
+        visited.set(entry);
+        candidates.add(start);
+        if (!entryNode.deleted) {
+            results.add(start);
+        }
+        while (!candidates.isEmpty()) {
+            Candidate nearest = candidates.poll();
+            if (results.size() >= ef && nearest.distance > results.peek().distance) {
+                break;
+            }
+            for (int id : nodes.get(nearest.id).neighbours[level]) {
+                if (visited.get(id)) {
+                    continue;
+                }
+                visited.set(id);
+                Node node = nodes.get(id);
+                float distance = distance(metric, query, queryNorm, node);
+                if (results.size() < ef || distance < results.peek().distance) {
+                    Candidate candidate = new Candidate(id, distance);
+                    candidates.add(candidate);
+                    if (!node.deleted) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private int randomLevel() {
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(random) * levelMultiplier);
+    }
+
+    /**
+     * Links again the live nodes, dropping the deleted ones
+     */
+    private void rebuild() {
+        List<Node> live = new ArrayList<>(nodeByKey.size());
+        for (Node node : nodes) {
+            if (!node.deleted) {
+                live.add(new Node(node.key, node.vector, node.level()));
+            }
+        }
+        nodes.clear();
+        nodeByKey.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        deletedNodes = 0;
+        for (Node node : live) {
+            addNode(node);
+        }
+    }
+
+    private static float distance(Metric metric, float[] query, float queryNorm, Node node) {
+        switch (metric) {
+            case COSINE:
+                if (queryNorm == 0 || node.norm == 0) {
+                    return 1;
+                }
+                return 1 - dotProduct(query, node.vector) / (queryNorm * node.norm);
+            case DOT_PRODUCT:
+                return -dotProduct(query, node.vector);
+            case EUCLIDEAN:
+                return squaredEuclideanDistance(query, node.vector);
+            default:
+                throw new IllegalArgumentException("unsupported metric " + metric);
+        }
+    }
+
+    private static float dotProduct(float[] a, float[] b) {
+        // vectors are expected to have the same dimension
+        int length = Math.min(a.length, b.length);
+        float result = 0;
+        for (int i = 0; i < length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    private static float squaredEuclideanDistance(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        float result = 0;
+        for (int i = 0; i < length; i++) {
+            float diff = a[i] - b[i];
+            result += diff * diff;
+        }
+        return result;
+    }
+
+    void serialize(ExtendedDataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeVInt(nodes.size());
+            out.writeVInt(entryPoint + 1);
+            for (Node node : nodes) {
+                out.writeArray(node.key);
+                out.writeVInt(node.deleted ? 1 : 0);
+                out.writeFloatArray(node.vector);
+                out.writeVInt(node.neighbours.length);
+                for (int[] links : node.neighbours) {
+                    out.writeVInt(links.length);
+                    for (int link : links) {
+                        out.writeVInt(link);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void deserialize(ByteArrayCursor in) throws IOException {
+        lock.writeLock().lock();
+        try {
+            clear();
+            int size = in.readVInt();
+            entryPoint = in.readVInt() - 1;
+            for (int i = 0; i < size; i++) {
+                Bytes key = in.readBytesNoCopy();
+                boolean deleted = in.readVInt() != 0;
+                float[] vector = in.readFloatArray();
+                int levels = in.readVInt();
+                Node node = new Node(key, vector, levels - 1);
+                for (int level = 0; level < levels; level++) {
+                    int[] links = new int[in.readVInt()];
+                    for (int j = 0; j < links.length; j++) {
+                        links[j] = in.readVInt();
+                    }
+                    node.neighbours[level] = links;
+                }
+                node.deleted = deleted;
+                nodes.add(node);
+                if (deleted) {
+                    deletedNodes++;
+                } else {
+                    nodeByKey.put(key, i);
+                }
+            }
+            maxLevel = entryPoint < 0 ? -1 : nodes.get(entryPoint).level();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
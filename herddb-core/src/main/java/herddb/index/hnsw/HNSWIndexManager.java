@@ -0,0 +1,250 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.hnsw;
+
+import herddb.codec.RecordSerializer;
+import herddb.core.AbstractIndexManager;
+import herddb.core.AbstractTableManager;
+import herddb.core.PostCheckpointAction;
+import herddb.core.TableSpaceManager;
+import herddb.index.IndexOperation;
+import herddb.index.VectorIndexSearch;
+import herddb.log.CommitLog;
+import herddb.log.LogSequenceNumber;
+import herddb.model.ColumnTypes;
+import herddb.model.Index;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.Table;
+import herddb.model.TableContext;
+import herddb.sql.functions.BuiltinFunctions;
+import herddb.storage.DataStorageManager;
+import herddb.storage.DataStorageManagerException;
+import herddb.storage.IndexStatus;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import herddb.utils.SystemProperties;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * HNSW index, approximate nearest neighbours search over a FLOATARRAY column.
+ * The graph resides entirely in memory and it is written fully on a single
+ * page at every checkpoint
+ *
+ * @see HNSWGraph
+ */
+public class HNSWIndexManager extends AbstractIndexManager {
+
+    private static final Logger LOGGER = Logger.getLogger(HNSWIndexManager.class.getName());
+
+    /**
+     * Maximum number of links of a node on the upper levels, level 0 allows twice as many links
+     */
+    static final int MAX_CONNECTIONS = SystemProperties.getIntSystemProperty("herddb.index.hnsw.maxconnections", 16);
+    /**
+     * Number of candidate neighbours explored while inserting a vector
+     */
+    static final int EF_CONSTRUCTION = SystemProperties.getIntSystemProperty("herddb.index.hnsw.efconstruction", 100);
+    /**
+     * Minimum number of candidates explored by a search, the search always returns at least offset + limit records
+     */
+    static final int EF_SEARCH = SystemProperties.getIntSystemProperty("herddb.index.hnsw.efsearch", 64);
+
+    private final HNSWGraph graph = new HNSWGraph(MAX_CONNECTIONS, EF_CONSTRUCTION);
+    private final AtomicLong newPageId = new AtomicLong(1);
+
+    public HNSWIndexManager(Index index, AbstractTableManager tableManager, CommitLog log, DataStorageManager dataStorageManager, TableSpaceManager tableSpaceManager, String tableSpaceUUID,
+                            long transaction,
+                            int writeLockTimeout, int readLockTimeout) {
+        super(index, tableManager, dataStorageManager, tableSpaceManager.getTableSpaceUUID(), log, transaction,
+                writeLockTimeout, readLockTimeout);
+    }
+
+    @Override
+    protected boolean doStart(LogSequenceNumber sequenceNumber) throws DataStorageManagerException {
+        LOGGER.log(Level.INFO, "loading in memory the graph for hnsw index {0}", new Object[]{index.name});
+
+        dataStorageManager.initIndex(tableSpaceUUID, index.uuid);
+
+        if (LogSequenceNumber.START_OF_TIME.equals(sequenceNumber)) {
+            /* Empty index (booting from the start) */
+            LOGGER.log(Level.INFO, "loaded empty index {0}", new Object[]{index.name});
+            return true;
+        }
+
+        IndexStatus status;
+        try {
+            status = dataStorageManager.getIndexStatus(tableSpaceUUID, index.uuid, sequenceNumber);
+        } catch (DataStorageManagerException e) {
+            LOGGER.log(Level.SEVERE, "cannot load index {0} due to {1}, it will be rebuilt", new Object[]{index.name, e});
+            return false;
+        }
+
+        for (long pageId : status.activePages) {
+            LOGGER.log(Level.INFO, "recovery index {0}, load {1}", new Object[]{index.name, pageId});
+            dataStorageManager.readIndexPage(tableSpaceUUID, index.uuid, pageId, in -> {
+                long version = in.readVLong(); // version
+                long flags = in.readVLong(); // flags for future implementations
+                if (version != 1 || flags != 0) {
+                    throw new DataStorageManagerException("corrupted index page");
+                }
+                graph.deserialize(in);
+                return null;
+            });
+        }
+
+        newPageId.set(status.newPageId);
+        LOGGER.log(Level.INFO, "loaded {0} vectors for index {1}", new Object[]{graph.size(), index.name});
+        return true;
+    }
+
+    @Override
+    public void rebuild() throws DataStorageManagerException {
+        long _start = System.currentTimeMillis();
+        LOGGER.log(Level.INFO, "building index {0}", index.name);
+        dataStorageManager.initIndex(tableSpaceUUID, index.uuid);
+        graph.clear();
+        Table table = tableManager.getTable();
+        tableManager.scanForIndexRebuild(r -> {
+            DataAccessor values = r.getDataAccessor(table);
+            Bytes key = RecordSerializer.serializeIndexKey(values, table, table.primaryKey);
+            Bytes indexKey = RecordSerializer.serializeIndexKey(values, index, index.columnNames);
+            recordInserted(key, indexKey);
+        });
+        long _stop = System.currentTimeMillis();
+        LOGGER.log(Level.INFO, "building index {0} took {1}", new Object[]{index.name, (_stop - _start) + " ms"});
+    }
+
+    @Override
+    public Stream<Bytes> scanner(IndexOperation operation, StatementEvaluationContext context, TableContext tableContext) throws StatementExecutionException {
+        if (operation instanceof VectorIndexSearch) {
+            VectorIndexSearch search = (VectorIndexSearch) operation;
+            float[] vector = (float[]) RecordSerializer.convert(ColumnTypes.FLOATARRAY, search.vector.evaluate(DataAccessor.NULL, context));
+            if (vector == null) {
+                return Stream.empty();
+            }
+            int maxRows = search.limits.computeMaxRows(context);
+            int offset = search.limits.computeOffset(context);
+            int ef = Math.max(EF_SEARCH, maxRows + offset);
+            return graph.search(vector, metric(search.function), ef).stream();
+        } else {
+            throw new UnsupportedOperationException("unsuppported index access type " + operation);
+        }
+    }
+
+    private static HNSWGraph.Metric metric(String function) {
+        // the graph is built with the cosine distance, the planner uses the index only for cosine_similarity
+        if (BuiltinFunctions.COSINE_SIMILARITY.equals(function)) {
+            return HNSWGraph.Metric.COSINE;
+        }
+        throw new UnsupportedOperationException("unsupported vector function " + function);
+    }
+
+    @Override
+    public List<PostCheckpointAction> checkpoint(LogSequenceNumber sequenceNumber, boolean pin) throws DataStorageManagerException {
+        if (createdInTransaction > 0) {
+            LOGGER.log(Level.INFO, "checkpoint for index " + index.name + " skipped, this index is created on transaction " + createdInTransaction + " which is not committed");
+            return Collections.emptyList();
+        }
+        List<PostCheckpointAction> result = new ArrayList<>();
+
+        LOGGER.log(Level.INFO, "flush index {0}", new Object[]{index.name});
+
+        // deleted nodes are dropped here and not while applying deletes and updates
+        if (graph.rebuildIfNeeded()) {
+            LOGGER.log(Level.INFO, "rebuilt graph of index {0} with {1} vectors", new Object[]{index.name, graph.size()});
+        }
+
+        long pageId = newPageId.getAndIncrement();
+
+        dataStorageManager.writeIndexPage(tableSpaceUUID, index.uuid, pageId, (out) -> {
+            out.writeVLong(1); // version
+            out.writeVLong(0); // flags for future implementations
+            graph.serialize(out);
+        });
+
+        IndexStatus indexStatus = new IndexStatus(index.name, sequenceNumber, newPageId.get(), Collections.singleton(pageId), null);
+        result.addAll(dataStorageManager.indexCheckpoint(tableSpaceUUID, index.uuid, indexStatus, pin));
+
+        LOGGER.log(Level.INFO, "checkpoint index {0} finished: logpos {1}, {2} vectors, page {3}",
+                new Object[]{index.name, sequenceNumber, Integer.toString(graph.size()), Long.toString(pageId)});
+
+        return result;
+    }
+
+    @Override
+    public void unpinCheckpoint(LogSequenceNumber sequenceNumber) throws DataStorageManagerException {
+        dataStorageManager.unPinIndexCheckpoint(tableSpaceUUID, index.uuid, sequenceNumber);
+    }
+
+    @Override
+    public void recordDeleted(Bytes key, Bytes indexKey) {
+        if (indexKey == null) {
+            return;
+        }
+        graph.remove(key);
+    }
+
+    @Override
+    public void recordInserted(Bytes key, Bytes indexKey) {
+        if (indexKey == null) {
+            return;
+        }
+        graph.add(key, indexKey.to_float_array());
+    }
+
+    @Override
+    public void recordUpdated(Bytes key, Bytes indexKeyRemoved, Bytes indexKeyAdded) {
+        if (Objects.equals(indexKeyRemoved, indexKeyAdded)) {
+            return;
+        }
+        if (indexKeyAdded != null) {
+            // replaces the previous vector of the record
+            graph.add(key, indexKeyAdded.to_float_array());
+        } else {
+            graph.remove(key);
+        }
+    }
+
+    @Override
+    public void close() {
+        graph.clear();
+    }
+
+    @Override
+    public void truncate() throws DataStorageManagerException {
+        graph.clear();
+    }
+
+    @Override
+    public boolean valueAlreadyMapped(Bytes key, Bytes primaryKey) throws DataStorageManagerException {
+        // HNSW indexes cannot be unique
+        return false;
+    }
+
+}
@@ -36,4 +36,12 @@ public interface DBManagerStatsMXBean {
 
     long getCachePlansMisses();
 
+    long getCachePlansEvictionsBySize();
+
+    long getCachePlansEvictionsByTableDDL();
+
+    long getCachePlansEvictionsByTableSpaceDDL();
+
+    long getCachePlansEvictionsByClear();
+
 }
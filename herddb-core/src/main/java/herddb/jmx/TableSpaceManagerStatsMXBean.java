@@ -47,4 +47,10 @@ public interface TableSpaceManagerStatsMXBean {
 
     long getKeysUsedMemory();
 
+    /**
+     * Memory used by pages in memory (data pages, primary key pages and
+     * dirty records)
+     */
+    long getResidentUsedMemory();
+
 }
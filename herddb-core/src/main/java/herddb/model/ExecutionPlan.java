@@ -20,6 +20,7 @@
 
 package herddb.model;
 
+import herddb.core.stats.QueryStats;
 import herddb.model.planner.PlannerOp;
 import herddb.utils.ObjectSizeUtils;
 import java.util.concurrent.atomic.AtomicLong;
@@ -36,6 +37,8 @@ public final class ExecutionPlan {
     public final Statement mainStatement;
     // this is actually only for tests and debug
     public final PlannerOp originalRoot;
+    // where executions of this plan are recorded, see QueryStats
+    private volatile QueryStats.Entry queryStatsEntry;
 
     private ExecutionPlan(
             Statement mainStatement,
@@ -58,6 +61,14 @@ public final class ExecutionPlan {
         mainStatement.validateContext(context);
     }
 
+    public QueryStats.Entry getQueryStatsEntry() {
+        return queryStatsEntry;
+    }
+
+    public void setQueryStatsEntry(QueryStats.Entry queryStatsEntry) {
+        this.queryStatsEntry = queryStatsEntry;
+    }
+
     @Override
     public String toString() {
         return "Plan" + id;
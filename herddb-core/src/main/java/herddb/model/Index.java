@@ -44,9 +44,20 @@ public class Index implements ColumnsList {
 
     public static final String TYPE_HASH = "hash";
     public static final String TYPE_BRIN = "brin";
+    /**
+     * Approximate nearest neighbour index over a single FLOATARRAY column
+     */
+    public static final String TYPE_HNSW = "hnsw";
 
     private static final int PROPERTY_UNIQUE = 0x01;
 
+    /**
+     * The serialized definition contains the list of INCLUDE columns
+     */
+    private static final long FLAG_INCLUDED_COLUMNS = 0x01;
+
+    private static final Column[] NO_COLUMNS = new Column[0];
+
     public final String name;
     public final String uuid;
     public final String table;
@@ -55,6 +66,14 @@ public class Index implements ColumnsList {
     public final Column[] columns;
     public final String[] columnNames;
     public final Map<String, Column> columnByName = new HashMap<>();
+    /**
+     * Non indexed columns whose values are stored in the index next to the
+     * primary key (CREATE INDEX ... INCLUDE (...)), queries which need only
+     * the indexed, the included and the primary key columns are answered
+     * without reading the records of the table
+     */
+    public final Column[] includedColumns;
+    public final String[] includedColumnNames;
     public final boolean unique;
 
     @Override
@@ -69,7 +88,8 @@ public class Index implements ColumnsList {
 
     private Index(
             String uuid,
-            String name, String table, String tablespace, String type, Column[] columns, boolean unique
+            String name, String table, String tablespace, String type, Column[] columns, Column[] includedColumns,
+            boolean unique
     ) {
         this.name = name;
         this.unique = unique;
@@ -84,6 +104,32 @@ public class Index implements ColumnsList {
             this.columnNames[i++] = c.name;
             columnByName.put(c.name, c);
         }
+        this.includedColumns = includedColumns;
+        this.includedColumnNames = new String[includedColumns.length];
+        i = 0;
+        for (Column c : includedColumns) {
+            this.includedColumnNames[i++] = c.name;
+        }
+    }
+
+    public boolean hasIncludedColumns() {
+        return includedColumns.length > 0;
+    }
+
+    /**
+     * Checks if the value of a column is stored in the index, as an indexed
+     * column or as an INCLUDE column
+     */
+    public boolean isColumnStoredInIndex(String columnName) {
+        if (columnByName.containsKey(columnName)) {
+            return true;
+        }
+        for (String includedColumnName : includedColumnNames) {
+            if (includedColumnName.equals(columnName)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -107,7 +153,7 @@ public class Index implements ColumnsList {
             ExtendedDataInputStream dii = new ExtendedDataInputStream(ii);
             long iversion = dii.readVLong(); // version
             long iflags = dii.readVLong(); // flags for future implementations
-            if (iversion != 1 || iflags != 0) {
+            if (iversion != 1 || (iflags & ~FLAG_INCLUDED_COLUMNS) != 0) {
                 throw new IOException("corrupted index file");
             }
             String tablespace = dii.readUTF();
@@ -120,31 +166,53 @@ public class Index implements ColumnsList {
                 unique = true;
             }
             String type = dii.readUTF();
-            int ncols = dii.readVInt();
-            Column[] columns = new Column[ncols];
-            for (int i = 0; i < ncols; i++) {
-                long cversion = dii.readVLong(); // version
-                long cflags = dii.readVLong(); // flags for future implementations
-                if (cversion != 1 || cflags != 0) {
-                    throw new IOException("corrupted index file");
-                }
-                String cname = dii.readUTF();
-                int ctype = dii.readVInt();
-                int serialPosition = dii.readVInt();
-                dii.readVInt(); // for future implementations
-                columns[i] = Column.column(cname, ctype, serialPosition);
+            Column[] columns = deserializeColumns(dii);
+            Column[] includedColumns = NO_COLUMNS;
+            if ((iflags & FLAG_INCLUDED_COLUMNS) == FLAG_INCLUDED_COLUMNS) {
+                includedColumns = deserializeColumns(dii);
             }
-            return new Index(uuid, name, table, tablespace, type, columns, unique);
+            return new Index(uuid, name, table, tablespace, type, columns, includedColumns, unique);
         } catch (IOException err) {
             throw new IllegalArgumentException(err);
         }
     }
 
+    private static Column[] deserializeColumns(ExtendedDataInputStream dii) throws IOException {
+        int ncols = dii.readVInt();
+        Column[] columns = new Column[ncols];
+        for (int i = 0; i < ncols; i++) {
+            long cversion = dii.readVLong(); // version
+            long cflags = dii.readVLong(); // flags for future implementations
+            if (cversion != 1 || cflags != 0) {
+                throw new IOException("corrupted index file");
+            }
+            String cname = dii.readUTF();
+            int ctype = dii.readVInt();
+            int serialPosition = dii.readVInt();
+            dii.readVInt(); // for future implementations
+            columns[i] = Column.column(cname, ctype, serialPosition);
+        }
+        return columns;
+    }
+
+    private static void serializeColumns(Column[] columns, ExtendedDataOutputStream doo) throws IOException {
+        doo.writeVInt(columns.length);
+        for (Column c : columns) {
+            doo.writeVLong(1); // version
+            doo.writeVLong(0); // flags for future implementations
+            doo.writeUTF(c.name);
+            doo.writeVInt(c.type);
+            doo.writeVInt(c.serialPosition);
+            doo.writeVInt(0); // flags for future implementations
+        }
+    }
+
     public byte[] serialize() {
         ByteArrayOutputStream oo = new ByteArrayOutputStream();
         try (ExtendedDataOutputStream doo = new ExtendedDataOutputStream(oo)) {
             doo.writeVLong(1); // version
-            doo.writeVLong(0); // flags for future implementations
+            // without INCLUDE columns the definition can still be read by older versions
+            doo.writeVLong(hasIncludedColumns() ? FLAG_INCLUDED_COLUMNS : 0);
             doo.writeUTF(tablespace);
             doo.writeUTF(name);
             doo.writeUTF(uuid);
@@ -155,14 +223,9 @@ public class Index implements ColumnsList {
             }
             doo.writeVInt(properties); // exensible for future implementation
             doo.writeUTF(type);
-            doo.writeVInt(columns.length);
-            for (Column c : columns) {
-                doo.writeVLong(1); // version
-                doo.writeVLong(0); // flags for future implementations
-                doo.writeUTF(c.name);
-                doo.writeVInt(c.type);
-                doo.writeVInt(c.serialPosition);
-                doo.writeVInt(0); // flags for future implementations
+            serializeColumns(columns, doo);
+            if (hasIncludedColumns()) {
+                serializeColumns(includedColumns, doo);
             }
         } catch (IOException ee) {
             throw new RuntimeException(ee);
@@ -173,6 +236,7 @@ public class Index implements ColumnsList {
     public static class Builder {
 
         private final List<Column> columns = new ArrayList<>();
+        private final List<Column> includedColumns = new ArrayList<>();
         private String name;
         private String uuid;
         private String table;
@@ -230,30 +294,64 @@ public class Index implements ColumnsList {
             return this;
         }
 
+        /**
+         * Adds a column whose value is stored in the index without being
+         * indexed
+         */
+        public Builder includedColumn(String name, int type) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+            if (this.includedColumns.stream().filter(c -> (c.name.equals(name))).findAny().isPresent()) {
+                throw new IllegalArgumentException("included column " + name + " already exists");
+            }
+            this.includedColumns.add(Column.column(name, type, 0));
+            return this;
+        }
+
         public Index build() {
             if (table == null || table.isEmpty()) {
                 throw new IllegalArgumentException("table is not defined");
             }
-            if (!TYPE_HASH.equals(type) && !TYPE_BRIN.equals(type)) {
-                throw new IllegalArgumentException("only index type " + TYPE_HASH + "," + TYPE_BRIN + " are supported");
+            if (!TYPE_HASH.equals(type) && !TYPE_BRIN.equals(type) && !TYPE_HNSW.equals(type)) {
+                throw new IllegalArgumentException("only index type " + TYPE_HASH + "," + TYPE_BRIN + "," + TYPE_HNSW + " are supported");
             }
             if (columns.isEmpty()) {
                 throw new IllegalArgumentException("specify at least one column to index");
             }
+            for (Column included : includedColumns) {
+                if (columns.stream().anyMatch(c -> c.name.equals(included.name))) {
+                    throw new IllegalArgumentException("column " + included.name + " is already indexed, it cannot be included");
+                }
+            }
+            if (TYPE_HNSW.equals(type)) {
+                if (!includedColumns.isEmpty()) {
+                    throw new IllegalArgumentException("index type " + TYPE_HNSW + " does not support included columns");
+                }
+                if (unique) {
+                    throw new IllegalArgumentException("index type " + TYPE_HNSW + " cannot be unique");
+                }
+                if (columns.size() != 1
+                        || (columns.get(0).type != ColumnTypes.FLOATARRAY && columns.get(0).type != ColumnTypes.NOTNULL_FLOATARRAY)) {
+                    throw new IllegalArgumentException("index type " + TYPE_HNSW + " supports only one column of type " + ColumnTypes.typeToString(ColumnTypes.FLOATARRAY));
+                }
+            }
             if (name == null || name.isEmpty()) {
                 name = table + "_" + columns.stream().map(s -> s.name.toLowerCase()).collect(Collectors.joining("_"));
             }
             if (uuid == null || uuid.isEmpty()) {
                 uuid = UUID.randomUUID().toString();
             }
-            return new Index(uuid, name, table, tablespace, type, columns.toArray(new Column[columns.size()]), unique);
+            return new Index(uuid, name, table, tablespace, type, columns.toArray(new Column[columns.size()]),
+                    includedColumns.toArray(new Column[includedColumns.size()]), unique);
         }
 
     }
 
     @Override
     public String toString() {
-        return type + "INDEX{" + "name=" + table + '.' + name + " (" + Arrays.toString(columnNames) + ")";
+        return type + "INDEX{" + "name=" + table + '.' + name + " (" + Arrays.toString(columnNames) + ")"
+                + (hasIncludedColumns() ? " INCLUDE (" + Arrays.toString(includedColumnNames) + ")" : "");
     }
 
 }
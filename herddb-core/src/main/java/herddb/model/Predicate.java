@@ -44,6 +44,7 @@ public abstract class Predicate implements Wrapper {
     }
 
     private IndexOperation indexOperation;
+    private boolean coveringIndexScan;
 
     public IndexOperation getIndexOperation() {
         return indexOperation;
@@ -51,6 +52,22 @@ public abstract class Predicate implements Wrapper {
 
     public void setIndexOperation(IndexOperation indexOperation) {
         this.indexOperation = indexOperation;
+        this.coveringIndexScan = false;
+    }
+
+    /**
+     * Every column needed by the statement is stored in the index used by the
+     * index operation, so the records can be read from the index without
+     * accessing the table
+     *
+     * @see herddb.core.AbstractIndexManager#coveringScanner(herddb.index.IndexOperation, herddb.model.StatementEvaluationContext, herddb.model.TableContext)
+     */
+    public boolean isCoveringIndexScan() {
+        return coveringIndexScan;
+    }
+
+    public void setCoveringIndexScan(boolean coveringIndexScan) {
+        this.coveringIndexScan = coveringIndexScan;
     }
 
     public PrimaryKeyMatchOutcome matchesRawPrimaryKey(Bytes key, StatementEvaluationContext context) throws StatementExecutionException {
@@ -46,6 +46,13 @@ public class StatementEvaluationContext {
     private boolean forceRetainReadLock;
     // SELECT ... FOR UPDATE
     private final boolean forceAcquireWriteLock;
+    // work done by the statement, see QueryStats
+    private long rowsScanned;
+    private long pagesLoaded;
+    private long pagesHit;
+    private long lockAcquisitions;
+    private long lockWaits;
+    private long spilledBytes;
 
     // CHECKSTYLE.OFF: MethodName
     public static StatementEvaluationContext DEFAULT_EVALUATION_CONTEXT() {
@@ -131,4 +138,58 @@ public class StatementEvaluationContext {
         this.forceRetainReadLock = forceRetainReadLock;
     }
 
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    public void recordRowScanned() {
+        rowsScanned++;
+    }
+
+    public long getPagesLoaded() {
+        return pagesLoaded;
+    }
+
+    public void recordPageLoaded() {
+        pagesLoaded++;
+    }
+
+    public long getPagesHit() {
+        return pagesHit;
+    }
+
+    /**
+     * A data page needed by the statement was already in memory
+     */
+    public void recordPageHit() {
+        pagesHit++;
+    }
+
+    public long getLockAcquisitions() {
+        return lockAcquisitions;
+    }
+
+    public void recordLockAcquisition() {
+        lockAcquisitions++;
+    }
+
+    public long getLockWaits() {
+        return lockWaits;
+    }
+
+    public void recordLockWait() {
+        lockWaits++;
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Records data swapped to temporary files by the statement
+     */
+    public void recordSpilledBytes(long bytes) {
+        spilledBytes += bytes;
+    }
+
 }
@@ -67,6 +67,10 @@ public class Transaction {
     public final long localCreationTimestamp;
     private final List<CommitLogResult> deferredWrites = new ArrayList<>();
     public volatile long lastActivityTs = System.currentTimeMillis();
+    /**
+     * Data version read by a snapshot transaction, -1 for normal transactions
+     */
+    private volatile long snapshotVersion = -1;
 
     private final AtomicInteger refCount = new AtomicInteger();
 
@@ -550,6 +554,22 @@ public class Transaction {
         }
     }
 
+    /**
+     * A snapshot transaction is read only and it reads the data as it was
+     * when the transaction started, without acquiring locks on records
+     */
+    public boolean isSnapshot() {
+        return snapshotVersion >= 0;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+
     public boolean isNewTable(String name) {
         return newTables != null && newTables.containsKey(name);
     }
@@ -29,8 +29,24 @@ import herddb.model.Statement;
  */
 public class BeginTransactionStatement extends Statement {
 
+    private final boolean snapshot;
+
     public BeginTransactionStatement(String tableSpace) {
+        this(tableSpace, false);
+    }
+
+    /**
+     * @param tableSpace
+     * @param snapshot start a read only transaction, which reads a consistent
+     * snapshot of the data without acquiring locks on records
+     */
+    public BeginTransactionStatement(String tableSpace, boolean snapshot) {
         super(tableSpace);
+        this.snapshot = snapshot;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
     }
 
 }
@@ -44,6 +44,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * Generic aggregation
@@ -292,6 +293,23 @@ public class AggregateOp implements PlannerOp {
                 + ", groupedFiledsIndexes=" + groupedFiledsIndexes + ", argLists=" + argLists + "\ninput=" + input + '}';
     }
 
+    @Override
+    public PlannerOp optimize() {
+        if (input instanceof SimpleScanOp) {
+            AggregatedTableScanOp pushedDown = AggregatedTableScanOp.create(this, (SimpleScanOp) input,
+                    fieldnames, columns, aggtypes, argLists, groupedFiledsIndexes);
+            if (pushedDown != null) {
+                return pushedDown;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new AggregateOp(transformation.apply(input), fieldnames, columns, aggtypes, argLists, groupedFiledsIndexes);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return columns;
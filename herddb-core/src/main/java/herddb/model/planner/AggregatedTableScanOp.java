@@ -0,0 +1,378 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import herddb.codec.RecordSerializer;
+import herddb.core.AbstractTableManager;
+import herddb.core.MaterializedRecordSet;
+import herddb.core.SimpleDataScanner;
+import herddb.core.TableManager;
+import herddb.core.TableSpaceManager;
+import herddb.model.Column;
+import herddb.model.ColumnTypes;
+import herddb.model.Projection;
+import herddb.model.Record;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import herddb.model.TransactionContext;
+import herddb.model.Tuple;
+import herddb.model.commands.ScanStatement;
+import herddb.sql.functions.BuiltinFunctions;
+import herddb.utils.DataAccessor;
+import herddb.utils.Wrapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation computed while scanning a table: COUNT(*) and SUM, MIN, MAX
+ * of INTEGER and LONG columns, with an optional GROUP BY on columns of the
+ * table.
+ * <p>
+ * Numeric values are read directly from the value of the records, without
+ * building tuples. COUNT(*) without a predicate is the size of the primary
+ * key index, if no transaction is using the table.
+ * <p>
+ * When the table cannot be read this way (locks are required, the table
+ * definition changed...) the aggregation is executed by the
+ * {@link AggregateOp}.
+ */
+@SuppressFBWarnings(value = {"EI_EXPOSE_REP2", "EI_EXPOSE_REP"})
+public class AggregatedTableScanOp implements PlannerOp {
+
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+
+    private final AggregateOp aggregate;
+    private final ScanStatement statement;
+    private final Table table;
+    private final String[] fieldnames;
+    private final Column[] columns;
+    // columns of the table in the GROUP BY clause
+    private final int[] groupColumns;
+    private final int[] functions;
+    // column of the table, for each aggregation function but COUNT
+    private final int[] argColumns;
+    // position in numericSerialPositions, -1 for columns of the primary key
+    private final int[] argSlots;
+    private final int[] numericSerialPositions;
+    private final boolean countOnly;
+
+    private AggregatedTableScanOp(
+            AggregateOp aggregate, ScanStatement statement, Table table,
+            String[] fieldnames, Column[] columns, int[] groupColumns,
+            int[] functions, int[] argColumns, int[] argSlots, int[] numericSerialPositions
+    ) {
+        this.aggregate = aggregate;
+        this.statement = statement;
+        this.table = table;
+        this.fieldnames = fieldnames;
+        this.columns = columns;
+        this.groupColumns = groupColumns;
+        this.functions = functions;
+        this.argColumns = argColumns;
+        this.argSlots = argSlots;
+        this.numericSerialPositions = numericSerialPositions;
+        boolean onlyCount = groupColumns.length == 0;
+        for (int function : functions) {
+            onlyCount = onlyCount && function == COUNT;
+        }
+        this.countOnly = onlyCount;
+    }
+
+    /**
+     * Pushes an aggregation down to the scan of the table
+     *
+     * @return null if the aggregation cannot be computed during the scan
+     */
+    static AggregatedTableScanOp create(
+            AggregateOp aggregate, SimpleScanOp scan,
+            String[] fieldnames, Column[] columns, String[] aggtypes,
+            List<List<Integer>> argLists, List<Integer> groupedFieldsIndexes
+    ) {
+        if (!(scan instanceof BindableTableScanOp) && !(scan instanceof TableScanOp)) {
+            return null;
+        }
+        ScanStatement statement = scan.getStatement();
+        Table table = statement.getTableDef();
+        if (table == null || statement.getComparator() != null || statement.getLimits() != null) {
+            return null;
+        }
+        Projection projection = statement.getProjection();
+        if (projection != null
+                && !(projection instanceof ProjectOp.IdentityProjection)
+                && !(projection instanceof ProjectOp.ZeroCopyProjection)) {
+            return null;
+        }
+
+        int[] groupColumns = new int[groupedFieldsIndexes.size()];
+        for (int i = 0; i < groupColumns.length; i++) {
+            int column = mapPosition(projection, groupedFieldsIndexes.get(i));
+            int type = table.getColumn(column).type;
+            if (type == ColumnTypes.BYTEARRAY || type == ColumnTypes.NOTNULL_BYTEARRAY
+                    || type == ColumnTypes.FLOATARRAY || type == ColumnTypes.NOTNULL_FLOATARRAY) {
+                // arrays cannot be used as keys of a Map
+                return null;
+            }
+            groupColumns[i] = column;
+        }
+
+        int[] functions = new int[aggtypes.length];
+        int[] argColumns = new int[aggtypes.length];
+        int[] argSlots = new int[aggtypes.length];
+        List<Integer> numericSerialPositions = new ArrayList<>();
+        for (int i = 0; i < aggtypes.length; i++) {
+            List<Integer> argList = argLists.get(i);
+            argColumns[i] = -1;
+            argSlots[i] = -1;
+            switch (aggtypes[i].toLowerCase()) {
+                case BuiltinFunctions.COUNT:
+                    if (!argList.isEmpty()) {
+                        return null;
+                    }
+                    functions[i] = COUNT;
+                    continue;
+                case BuiltinFunctions.SUM:
+                case BuiltinFunctions.SUM0:
+                    functions[i] = SUM;
+                    break;
+                case BuiltinFunctions.MIN:
+                    functions[i] = MIN;
+                    break;
+                case BuiltinFunctions.MAX:
+                    functions[i] = MAX;
+                    break;
+                default:
+                    return null;
+            }
+            if (argList.size() != 1) {
+                return null;
+            }
+            int column = mapPosition(projection, argList.get(0));
+            Column col = table.getColumn(column);
+            if (col.type != ColumnTypes.INTEGER && col.type != ColumnTypes.NOTNULL_INTEGER
+                    && col.type != ColumnTypes.LONG && col.type != ColumnTypes.NOTNULL_LONG) {
+                return null;
+            }
+            argColumns[i] = column;
+            if (!table.isPrimaryKeyColumn(column)) {
+                int slot = numericSerialPositions.indexOf(col.serialPosition);
+                if (slot < 0) {
+                    slot = numericSerialPositions.size();
+                    numericSerialPositions.add(col.serialPosition);
+                }
+                argSlots[i] = slot;
+            }
+        }
+        if (numericSerialPositions.size() > Long.SIZE) {
+            return null;
+        }
+        return new AggregatedTableScanOp(aggregate, statement, table, fieldnames, columns,
+                groupColumns, functions, argColumns, argSlots,
+                numericSerialPositions.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static int mapPosition(Projection projection, int position) {
+        if (projection instanceof ProjectOp.ZeroCopyProjection) {
+            return ((ProjectOp.ZeroCopyProjection) projection).mapPosition(position);
+        }
+        return position;
+    }
+
+    public ScanStatement getStatement() {
+        return statement;
+    }
+
+    @Override
+    public String getTablespace() {
+        return statement.getTableSpace();
+    }
+
+    @Override
+    public StatementExecutionResult execute(
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context,
+            boolean lockRequired, boolean forWrite
+    ) throws StatementExecutionException {
+        AbstractTableManager tableManager = tableSpaceManager.getTableManager(statement.getTable());
+        Transaction transaction = transactionContext.transactionId > 0
+                ? tableSpaceManager.getTransaction(transactionContext.transactionId) : null;
+        if (lockRequired || forWrite || context.isForceAcquireWriteLock() || context.isForceRetainReadLock()
+                || !(tableManager instanceof TableManager)
+                || tableManager.getTable() != table
+                || tableManager.getCreatedInTransaction() > 0
+                || (transactionContext.transactionId > 0 && transaction == null)) {
+            return aggregate.execute(tableSpaceManager, transactionContext, context, lockRequired, forWrite);
+        }
+        TableManager manager = (TableManager) tableManager;
+        MaterializedRecordSet results;
+        long count = countOnly && statement.getPredicate() == null ? manager.countRecordsWithoutScan(transaction) : -1;
+        if (count >= 0) {
+            Accumulator accumulator = new Accumulator();
+            Arrays.fill(accumulator.values, count);
+            results = createResults(tableSpaceManager, 1);
+            results.add(accumulator.toTuple(new Object[0]));
+        } else if (groupColumns.length == 0) {
+            Accumulator accumulator = new Accumulator();
+            long[] values = new long[numericSerialPositions.length];
+            manager.scanRecords(statement, context, transaction, record -> {
+                accumulator.accumulate(record, values);
+            });
+            results = createResults(tableSpaceManager, 1);
+            results.add(accumulator.toTuple(new Object[0]));
+        } else {
+            Map<Object, Accumulator> groups = new HashMap<>();
+            long[] values = new long[numericSerialPositions.length];
+            manager.scanRecords(statement, context, transaction, record -> {
+                DataAccessor tuple = record.getDataAccessor(table);
+                Object key;
+                if (groupColumns.length == 1) {
+                    key = tuple.get(groupColumns[0]);
+                } else {
+                    Object[] keyValues = new Object[groupColumns.length];
+                    for (int i = 0; i < groupColumns.length; i++) {
+                        keyValues[i] = tuple.get(groupColumns[i]);
+                    }
+                    key = Arrays.asList(keyValues);
+                }
+                groups.computeIfAbsent(key, k -> new Accumulator()).accumulate(record, values);
+            });
+            results = createResults(tableSpaceManager, groups.size());
+            for (Map.Entry<Object, Accumulator> group : groups.entrySet()) {
+                Object[] keyValues = groupColumns.length == 1
+                        ? new Object[]{group.getKey()}
+                        : ((List<?>) group.getKey()).toArray();
+                results.add(group.getValue().toTuple(keyValues));
+            }
+        }
+        results.writeFinished();
+        SimpleDataScanner scanner = new SimpleDataScanner(transaction, results);
+        return new ScanResult(scanner.getTransactionId(), scanner);
+    }
+
+    private MaterializedRecordSet createResults(TableSpaceManager tableSpaceManager, int size) {
+        return tableSpaceManager.getDbmanager().getRecordSetFactory()
+                .createFixedSizeRecordSet(size, fieldnames, columns);
+    }
+
+    /**
+     * Values of the aggregation functions for a group
+     */
+    private final class Accumulator {
+
+        private final long[] values = new long[functions.length];
+        private final boolean[] notNull = new boolean[functions.length];
+
+        private void accumulate(Record record, long[] numericValues) {
+            long notNullMask;
+            try {
+                notNullMask = numericSerialPositions.length == 0 ? 0
+                        : RecordSerializer.readRawNumericValues(record.value, numericSerialPositions, numericValues);
+            } catch (IOException err) {
+                throw new StatementExecutionException(err);
+            }
+            for (int i = 0; i < functions.length; i++) {
+                int function = functions[i];
+                if (function == COUNT) {
+                    values[i]++;
+                    continue;
+                }
+                long value;
+                int slot = argSlots[i];
+                if (slot >= 0) {
+                    if ((notNullMask & (1L << slot)) == 0) {
+                        continue;
+                    }
+                    value = numericValues[slot];
+                } else {
+                    Object pk = record.getDataAccessor(table).get(argColumns[i]);
+                    if (pk == null) {
+                        continue;
+                    }
+                    value = ((Number) pk).longValue();
+                }
+                if (function == SUM) {
+                    values[i] += value;
+                } else if (!notNull[i]
+                        || (function == MIN && value < values[i])
+                        || (function == MAX && value > values[i])) {
+                    values[i] = value;
+                }
+                notNull[i] = true;
+            }
+        }
+
+        private Tuple toTuple(Object[] keyValues) {
+            Object[] tuple = new Object[fieldnames.length];
+            System.arraycopy(keyValues, 0, tuple, 0, keyValues.length);
+            for (int i = 0; i < functions.length; i++) {
+                Object value;
+                if (functions[i] == COUNT || functions[i] == SUM) {
+                    value = values[i];
+                } else if (!notNull[i]) {
+                    value = null;
+                } else {
+                    int type = table.getColumn(argColumns[i]).type;
+                    if (type == ColumnTypes.INTEGER || type == ColumnTypes.NOTNULL_INTEGER) {
+                        value = (int) values[i];
+                    } else {
+                        value = values[i];
+                    }
+                }
+                tuple[keyValues.length + i] = value;
+            }
+            return new Tuple(fieldnames, tuple);
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        T unwrapped = statement.unwrap(clazz);
+        if (unwrapped != null) {
+            return unwrapped;
+        }
+        return Wrapper.unwrap(this, clazz);
+    }
+
+    @Override
+    public String toString() {
+        return "AggregatedTableScanOp{" + "fieldnames=" + Arrays.toString(fieldnames)
+                + ", columns=" + Arrays.toString(columns) + ", functions=" + Arrays.toString(functions)
+                + ", groupColumns=" + Arrays.toString(groupColumns) + ", statement=" + statement + '}';
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return columns;
+    }
+
+}
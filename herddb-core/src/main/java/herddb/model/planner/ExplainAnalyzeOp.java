@@ -0,0 +1,144 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import static herddb.model.Column.column;
+import herddb.core.MaterializedRecordSet;
+import herddb.core.SimpleDataScanner;
+import herddb.core.TableSpaceManager;
+import herddb.model.Column;
+import herddb.model.ColumnTypes;
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.TransactionContext;
+import herddb.model.Tuple;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EXPLAIN ANALYZE: executes a plan, discarding its results, and returns the
+ * work done by every node of the plan, one row per node.
+ * <p>
+ * Nodes are listed in pre-order, the name of a node is indented by its depth.
+ * Time is in microseconds and includes the time spent by the inputs of the
+ * node, the other values are related to the node only.
+ */
+public class ExplainAnalyzeOp implements PlannerOp {
+
+    private static final String[] FIELD_NAMES = {
+        "operator", "rowsin", "rowsout", "time", "rowsscanned",
+        "pageshit", "pagesloaded", "index", "locks", "lockwaits", "spilledbytes"
+    };
+
+    private static final Column[] COLUMNS = {
+        column("operator", ColumnTypes.NOTNULL_STRING),
+        column("rowsin", ColumnTypes.NOTNULL_LONG),
+        column("rowsout", ColumnTypes.NOTNULL_LONG),
+        column("time", ColumnTypes.NOTNULL_LONG),
+        column("rowsscanned", ColumnTypes.NOTNULL_LONG),
+        column("pageshit", ColumnTypes.NOTNULL_LONG),
+        column("pagesloaded", ColumnTypes.NOTNULL_LONG),
+        column("index", ColumnTypes.STRING),
+        column("locks", ColumnTypes.NOTNULL_LONG),
+        column("lockwaits", ColumnTypes.NOTNULL_LONG),
+        column("spilledbytes", ColumnTypes.NOTNULL_LONG)
+    };
+
+    private final PlannerOp plan;
+
+    public ExplainAnalyzeOp(PlannerOp plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public String getTablespace() {
+        return plan.getTablespace();
+    }
+
+    @Override
+    public StatementExecutionResult execute(
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context, boolean lockRequired, boolean forWrite
+    ) throws StatementExecutionException {
+        // every execution measures a new copy of the plan
+        InstrumentedOp root = InstrumentedOp.instrument(plan);
+        StatementExecutionResult result = root.execute(tableSpaceManager, transactionContext, context, lockRequired, forWrite);
+        if (result instanceof ScanResult) {
+            try (DataScanner scanner = ((ScanResult) result).dataScanner) {
+                while (scanner.hasNext()) {
+                    scanner.next();
+                }
+            } catch (DataScannerException err) {
+                throw new StatementExecutionException(err);
+            }
+        }
+        List<Tuple> rows = new ArrayList<>();
+        describe(root, 0, rows);
+        MaterializedRecordSet recordSet = tableSpaceManager.getDbmanager().getRecordSetFactory()
+                .createFixedSizeRecordSet(rows.size(), FIELD_NAMES, COLUMNS);
+        for (Tuple row : rows) {
+            recordSet.add(row);
+        }
+        recordSet.writeFinished();
+        return new ScanResult(result.transactionId,
+                new SimpleDataScanner(tableSpaceManager.getTransaction(result.transactionId), recordSet));
+    }
+
+    private static void describe(InstrumentedOp op, int depth, List<Tuple> rows) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            name.append("  ");
+        }
+        name.append(op.getDescription());
+        rows.add(new Tuple(FIELD_NAMES, new Object[]{
+            name.toString(),
+            op.getRowsIn(),
+            op.getRowsOut(),
+            TimeUnit.NANOSECONDS.toMicros(op.getElapsedNanos()),
+            op.getRowsScanned(),
+            op.getPagesHit(),
+            op.getPagesLoaded(),
+            op.getIndexDescription(),
+            op.getLockAcquisitions(),
+            op.getLockWaits(),
+            op.getSpilledBytes()
+        }));
+        for (InstrumentedOp input : op.getInputs()) {
+            describe(input, depth + 1, rows);
+        }
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return COLUMNS;
+    }
+
+    @Override
+    public String toString() {
+        return "ExplainAnalyzeOp{" + "plan=" + plan + '}';
+    }
+}
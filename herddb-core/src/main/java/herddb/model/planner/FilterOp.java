@@ -33,6 +33,7 @@ import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
 import herddb.utils.Wrapper;
+import java.util.function.UnaryOperator;
 
 /**
  * Generic filter
@@ -172,6 +173,11 @@ public class FilterOp implements PlannerOp {
         return String.format("FilterOp {input=[ %s ] condition=[ %s] }", input.toString(), condition.toString());
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new FilterOp(transformation.apply(input), condition);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return input.getOutputSchema();
@@ -0,0 +1,291 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import herddb.codec.RecordSerializer;
+import herddb.core.MaterializedRecordSet;
+import herddb.core.SimpleDataScanner;
+import herddb.core.TableSpaceManager;
+import herddb.index.IndexOperation;
+import herddb.index.PrimaryIndexSeek;
+import herddb.index.SecondaryIndexSeek;
+import herddb.model.Column;
+import herddb.model.ColumnsList;
+import herddb.model.ConstValueRecordFunction;
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.model.Predicate;
+import herddb.model.Projection;
+import herddb.model.Record;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.Table;
+import herddb.model.Transaction;
+import herddb.model.TransactionContext;
+import herddb.model.commands.ScanStatement;
+import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.utils.DataAccessor;
+import herddb.utils.SQLRecordPredicateFunctions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Join operation which scans the left (outer) side and for each row looks up
+ * the matching rows of the right (inner) table using its primary key or a
+ * secondary index on the join columns, instead of scanning the whole inner
+ * table.
+ * <p>
+ * Supports INNER and LEFT joins, the inner side is always a table.
+ */
+@SuppressFBWarnings(value = {"EI_EXPOSE_REP2", "EI_EXPOSE_REP"})
+public class IndexNestedLoopJoinOp implements PlannerOp {
+
+    private final String[] fieldNames;
+    private final Column[] columns;
+    private final PlannerOp left;
+    private final int[] leftKeys;
+    private final String tableSpace;
+    private final Table innerTable;
+    private final Projection innerProjection;
+    private final CompiledSQLExpression innerFilter;
+    private final String indexName;
+    private final ColumnsList keyColumnsList;
+    private final String[] keyColumnNames;
+    private final Column[] keyColumns;
+    private final boolean generateNullsOnRight;
+    private final List<CompiledSQLExpression> nonEquiConditions;
+
+    /**
+     * @param leftKeys positions of the values of the key on the left side,
+     * in the same order of keyColumnNames
+     * @param innerFilter filter on the inner table, can be null
+     * @param indexName name of the secondary index, null in order to use the
+     * primary key
+     * @param keyColumnsList the table (for the primary key) or the index
+     * @param keyColumnNames columns of the primary key or of the index, the
+     * lookup matches all of them
+     */
+    public IndexNestedLoopJoinOp(String[] fieldNames, Column[] columns,
+            PlannerOp left, int[] leftKeys,
+            String tableSpace, Table innerTable, Projection innerProjection, CompiledSQLExpression innerFilter,
+            String indexName, ColumnsList keyColumnsList, String[] keyColumnNames,
+            boolean generateNullsOnRight,
+            List<CompiledSQLExpression> nonEquiConditions) {
+        this.fieldNames = fieldNames;
+        this.columns = columns;
+        this.left = left.optimize();
+        this.leftKeys = leftKeys;
+        this.tableSpace = tableSpace;
+        this.innerTable = innerTable;
+        this.innerProjection = innerProjection;
+        this.innerFilter = innerFilter;
+        this.indexName = indexName;
+        this.keyColumnsList = keyColumnsList;
+        this.keyColumnNames = keyColumnNames;
+        this.keyColumns = new Column[keyColumnNames.length];
+        for (int i = 0; i < keyColumnNames.length; i++) {
+            this.keyColumns[i] = innerTable.getColumn(keyColumnNames[i]);
+        }
+        this.generateNullsOnRight = generateNullsOnRight;
+        this.nonEquiConditions = nonEquiConditions;
+    }
+
+    @Override
+    public String getTablespace() {
+        return left.getTablespace();
+    }
+
+    @Override
+    public StatementExecutionResult execute(TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context, boolean lockRequired, boolean forWrite) throws StatementExecutionException {
+        ScanResult resLeft = (ScanResult) left.execute(tableSpaceManager, transactionContext,
+                context, lockRequired, forWrite);
+        long transactionId = resLeft.transactionId;
+        Transaction transaction = resLeft.dataScanner.getTransaction();
+        DataAccessor nullsOnRight = DataAccessor.ALL_NULLS(innerProjection.getFieldNames());
+        MaterializedRecordSet recordSet = tableSpaceManager.getDbmanager().getRecordSetFactory()
+                .createRecordSet(fieldNames, columns);
+        try (DataScanner leftScanner = resLeft.dataScanner) {
+            while (leftScanner.hasNext()) {
+                DataAccessor outer = leftScanner.next();
+                boolean matched = false;
+                Object[] keyValues = lookupKeyValues(outer);
+                if (keyValues != null) {
+                    ScanStatement lookup = new ScanStatement(tableSpace, innerTable, innerProjection, lookupPredicate(keyValues));
+                    try (DataScanner innerScanner = tableSpaceManager.scan(lookup, context,
+                            new TransactionContext(transactionId), lockRequired, forWrite)) {
+                        transactionId = innerScanner.getTransactionId();
+                        transaction = innerScanner.getTransaction();
+                        while (innerScanner.hasNext()) {
+                            DataAccessor row = new ConcatenatedDataAccessor(fieldNames, outer, innerScanner.next());
+                            if (matchesNonEquiConditions(row, context)) {
+                                recordSet.add(row);
+                                matched = true;
+                            }
+                        }
+                    }
+                }
+                if (!matched && generateNullsOnRight) {
+                    recordSet.add(new ConcatenatedDataAccessor(fieldNames, outer, nullsOnRight));
+                }
+            }
+        } catch (DataScannerException err) {
+            recordSet.close();
+            throw new StatementExecutionException(err);
+        } catch (RuntimeException err) {
+            recordSet.close();
+            throw err;
+        }
+        recordSet.writeFinished();
+        context.recordSpilledBytes(recordSet.getSpilledBytes());
+        return new ScanResult(transactionId, new SimpleDataScanner(transaction, recordSet));
+    }
+
+    /**
+     * Values of the key to look up, converted to the types of the columns of
+     * the inner table.
+     *
+     * @return null if a value is null, nothing can match it
+     */
+    private Object[] lookupKeyValues(DataAccessor outer) throws StatementExecutionException {
+        Object[] values = new Object[leftKeys.length];
+        for (int i = 0; i < leftKeys.length; i++) {
+            Object value = outer.get(leftKeys[i]);
+            if (value == null) {
+                return null;
+            }
+            values[i] = RecordSerializer.convert(keyColumns[i].type, value);
+        }
+        return values;
+    }
+
+    private Predicate lookupPredicate(Object[] keyValues) {
+        Map<String, Object> key = new HashMap<>();
+        for (int i = 0; i < keyColumnNames.length; i++) {
+            key.put(keyColumnNames[i], keyValues[i]);
+        }
+        ConstValueRecordFunction value = new ConstValueRecordFunction(
+                RecordSerializer.serializePrimaryKeyRaw(key, keyColumnsList, keyColumnNames));
+        IndexOperation indexOperation;
+        LookupPredicate predicate;
+        if (indexName == null) {
+            indexOperation = new PrimaryIndexSeek(value);
+            predicate = new LookupPredicate(innerTable, innerFilter, null, null);
+        } else {
+            indexOperation = new SecondaryIndexSeek(indexName, keyColumnNames, value);
+            // the index could be not available, in this case the scan falls back to a full table scan
+            predicate = new LookupPredicate(innerTable, innerFilter, keyColumnNames, keyValues);
+        }
+        predicate.setIndexOperation(indexOperation);
+        return predicate;
+    }
+
+    private boolean matchesNonEquiConditions(DataAccessor row, StatementEvaluationContext context) throws StatementExecutionException {
+        for (CompiledSQLExpression exp : nonEquiConditions) {
+            if (!SQLRecordPredicateFunctions.toBoolean(exp.evaluate(row, context))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Filter on the records found by a lookup
+     */
+    private static final class LookupPredicate extends Predicate {
+
+        private final Table table;
+        private final CompiledSQLExpression filter;
+        private final String[] keyColumnNames;
+        private final Object[] keyValues;
+
+        LookupPredicate(Table table, CompiledSQLExpression filter, String[] keyColumnNames, Object[] keyValues) {
+            this.table = table;
+            this.filter = filter;
+            this.keyColumnNames = keyColumnNames;
+            this.keyValues = keyValues;
+        }
+
+        @Override
+        public boolean evaluate(Record record, StatementEvaluationContext context) throws StatementExecutionException {
+            DataAccessor bean = record.getDataAccessor(table);
+            if (keyColumnNames != null) {
+                for (int i = 0; i < keyColumnNames.length; i++) {
+                    if (!SQLRecordPredicateFunctions.objectEquals(bean.get(keyColumnNames[i]), keyValues[i])) {
+                        return false;
+                    }
+                }
+            }
+            return filter == null || SQLRecordPredicateFunctions.toBoolean(filter.evaluate(bean, context));
+        }
+
+        @Override
+        public String toString() {
+            return "LookupPredicate{" + "table=" + table.name + ", filter=" + filter + ", indexOp=" + getIndexOperation() + '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IndexNestedLoopJoinOp{fieldNames=" + Arrays.toString(fieldNames) + ", columns=" + Arrays.toString(columns) + ","
+                + "\ngenerateNullsOnRight=" + generateNullsOnRight + ","
+                + "\nleftKeys=" + Arrays.toString(leftKeys) + ", left=" + left + ","
+                + "\ntable=" + innerTable.name + ", index=" + (indexName != null ? indexName : "PRIMARY KEY")
+                + ", keyColumns=" + Arrays.toString(keyColumnNames) + ", filter=" + innerFilter + '}';
+    }
+
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new IndexNestedLoopJoinOp(fieldNames, columns, transformation.apply(left), leftKeys,
+                tableSpace, innerTable, innerProjection, innerFilter,
+                indexName, keyColumnsList, keyColumnNames,
+                generateNullsOnRight, nonEquiConditions);
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return columns;
+    }
+
+    public PlannerOp getLeft() {
+        return left;
+    }
+
+    public String getTableName() {
+        return innerTable.name;
+    }
+
+    /**
+     * @return the name of the secondary index used for the lookups, null for
+     * the primary key
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import herddb.core.TableSpaceManager;
+import herddb.index.IndexOperation;
+import herddb.model.Column;
+import herddb.model.DMLStatementExecutionResult;
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.model.Predicate;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.TransactionContext;
+import herddb.model.commands.ScanStatement;
+import herddb.utils.DataAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decorates a node of the plan in order to measure its execution, used by
+ * {@link ExplainAnalyzeOp}.
+ * <p>
+ * The execution of a node spans the call to execute and every call to the
+ * DataScanner it returns. The work done inside these calls is read from the
+ * counters of the {@link StatementEvaluationContext}. Inputs are executed and
+ * consumed inside the calls of their parent, so the values of a node include
+ * the values of its inputs: elapsed time is reported this way, the other
+ * counters are reported for the node only.
+ */
+final class InstrumentedOp implements PlannerOp {
+
+    private final PlannerOp wrapped;
+    private final List<InstrumentedOp> inputs;
+
+    private long rowsOut;
+    private long elapsedNanos;
+    private long rowsScanned;
+    private long pagesHit;
+    private long pagesLoaded;
+    private long lockAcquisitions;
+    private long lockWaits;
+    private long spilledBytes;
+
+    // values at the beginning of the current call
+    private long startNanos;
+    private long startRowsScanned;
+    private long startPagesHit;
+    private long startPagesLoaded;
+    private long startLockAcquisitions;
+    private long startLockWaits;
+    private long startSpilledBytes;
+
+    private InstrumentedOp(PlannerOp wrapped, List<InstrumentedOp> inputs) {
+        this.wrapped = wrapped;
+        this.inputs = inputs;
+    }
+
+    /**
+     * Decorates every node of a plan
+     */
+    static InstrumentedOp instrument(PlannerOp op) {
+        List<InstrumentedOp> inputs = new ArrayList<>();
+        PlannerOp copy = op.transformInputs(input -> {
+            InstrumentedOp instrumented = instrument(input);
+            inputs.add(instrumented);
+            return instrumented;
+        });
+        return new InstrumentedOp(copy, Collections.unmodifiableList(inputs));
+    }
+
+    PlannerOp getWrapped() {
+        return wrapped;
+    }
+
+    List<InstrumentedOp> getInputs() {
+        return inputs;
+    }
+
+    long getRowsIn() {
+        long result = 0;
+        for (InstrumentedOp input : inputs) {
+            result += input.rowsOut;
+        }
+        return result;
+    }
+
+    long getRowsOut() {
+        return rowsOut;
+    }
+
+    /**
+     * @return elapsed time, including the time spent by the inputs
+     */
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    long getRowsScanned() {
+        long result = rowsScanned;
+        for (InstrumentedOp input : inputs) {
+            result -= input.rowsScanned;
+        }
+        return result;
+    }
+
+    long getPagesHit() {
+        long result = pagesHit;
+        for (InstrumentedOp input : inputs) {
+            result -= input.pagesHit;
+        }
+        return result;
+    }
+
+    long getPagesLoaded() {
+        long result = pagesLoaded;
+        for (InstrumentedOp input : inputs) {
+            result -= input.pagesLoaded;
+        }
+        return result;
+    }
+
+    long getLockAcquisitions() {
+        long result = lockAcquisitions;
+        for (InstrumentedOp input : inputs) {
+            result -= input.lockAcquisitions;
+        }
+        return result;
+    }
+
+    long getLockWaits() {
+        long result = lockWaits;
+        for (InstrumentedOp input : inputs) {
+            result -= input.lockWaits;
+        }
+        return result;
+    }
+
+    long getSpilledBytes() {
+        long result = spilledBytes;
+        for (InstrumentedOp input : inputs) {
+            result -= input.spilledBytes;
+        }
+        return result;
+    }
+
+    /**
+     * @return the index chosen for accessing the table, null for a full
+     * table scan or for nodes which do not access tables directly
+     */
+    String getIndexDescription() {
+        if (!inputs.isEmpty()) {
+            return null;
+        }
+        ScanStatement scan = wrapped.unwrap(ScanStatement.class);
+        if (scan == null) {
+            return null;
+        }
+        Predicate predicate = scan.getPredicate();
+        IndexOperation indexOperation = predicate != null ? predicate.getIndexOperation() : null;
+        if (indexOperation == null) {
+            return null;
+        }
+        return indexOperation.getIndexName() + " (" + indexOperation.getClass().getSimpleName() + ")";
+    }
+
+    /**
+     * @return name of the operator, and the table for table scans
+     */
+    String getDescription() {
+        String name = wrapped.getClass().getSimpleName();
+        if (inputs.isEmpty()) {
+            ScanStatement scan = wrapped.unwrap(ScanStatement.class);
+            if (scan != null) {
+                return name + " " + scan.getTableSpace() + "." + scan.getTable();
+            }
+        }
+        return name;
+    }
+
+    private void begin(StatementEvaluationContext context) {
+        startRowsScanned = context.getRowsScanned();
+        startPagesHit = context.getPagesHit();
+        startPagesLoaded = context.getPagesLoaded();
+        startLockAcquisitions = context.getLockAcquisitions();
+        startLockWaits = context.getLockWaits();
+        startSpilledBytes = context.getSpilledBytes();
+        startNanos = System.nanoTime();
+    }
+
+    private void end(StatementEvaluationContext context) {
+        elapsedNanos += System.nanoTime() - startNanos;
+        rowsScanned += context.getRowsScanned() - startRowsScanned;
+        pagesHit += context.getPagesHit() - startPagesHit;
+        pagesLoaded += context.getPagesLoaded() - startPagesLoaded;
+        lockAcquisitions += context.getLockAcquisitions() - startLockAcquisitions;
+        lockWaits += context.getLockWaits() - startLockWaits;
+        spilledBytes += context.getSpilledBytes() - startSpilledBytes;
+    }
+
+    @Override
+    public String getTablespace() {
+        return wrapped.getTablespace();
+    }
+
+    @Override
+    public StatementExecutionResult execute(
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context, boolean lockRequired, boolean forWrite
+    ) throws StatementExecutionException {
+        StatementExecutionResult result;
+        begin(context);
+        try {
+            result = wrapped.execute(tableSpaceManager, transactionContext, context, lockRequired, forWrite);
+        } finally {
+            end(context);
+        }
+        if (result instanceof ScanResult) {
+            ScanResult scanResult = (ScanResult) result;
+            return new ScanResult(scanResult.transactionId,
+                    new InstrumentedDataScanner(scanResult.dataScanner, context));
+        }
+        if (result instanceof DMLStatementExecutionResult) {
+            rowsOut += ((DMLStatementExecutionResult) result).getUpdateCount();
+        }
+        return result;
+    }
+
+    private final class InstrumentedDataScanner extends DataScanner {
+
+        private final DataScanner wrapped;
+        private final StatementEvaluationContext context;
+
+        InstrumentedDataScanner(DataScanner wrapped, StatementEvaluationContext context) {
+            super(wrapped.getTransaction(), wrapped.getFieldNames(), wrapped.getSchema());
+            this.wrapped = wrapped;
+            this.context = context;
+        }
+
+        @Override
+        public boolean hasNext() throws DataScannerException {
+            begin(context);
+            try {
+                return wrapped.hasNext();
+            } finally {
+                end(context);
+            }
+        }
+
+        @Override
+        public DataAccessor next() throws DataScannerException {
+            begin(context);
+            try {
+                DataAccessor result = wrapped.next();
+                rowsOut++;
+                return result;
+            } finally {
+                end(context);
+            }
+        }
+
+        @Override
+        public boolean isRewindSupported() {
+            return wrapped.isRewindSupported();
+        }
+
+        @Override
+        public void rewind() throws DataScannerException {
+            begin(context);
+            try {
+                wrapped.rewind();
+            } finally {
+                end(context);
+            }
+        }
+
+        @Override
+        public void close() throws DataScannerException {
+            begin(context);
+            try {
+                wrapped.close();
+            } finally {
+                end(context);
+                super.close();
+            }
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        return wrapped.unwrap(clazz);
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return wrapped.getOutputSchema();
+    }
+
+    @Override
+    public String toString() {
+        return wrapped.toString();
+    }
+}
@@ -36,6 +36,7 @@ import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.UnaryOperator;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
 import org.apache.calcite.linq4j.function.Function2;
@@ -130,6 +131,7 @@ public class JoinOp implements PlannerOp {
                     recordSet.add(d);
                 });
                 recordSet.writeFinished();
+                context.recordSpilledBytes(recordSet.getSpilledBytes());
                 SimpleDataScanner materialized = new SimpleDataScanner(leftScanner.getTransaction(), recordSet);
                 leftScanner.close();
                 leftScanner = materialized;
@@ -146,6 +148,7 @@ public class JoinOp implements PlannerOp {
                     recordSet.add(d);
                 });
                 recordSet.writeFinished();
+                context.recordSpilledBytes(recordSet.getSpilledBytes());
                 SimpleDataScanner materialized = new SimpleDataScanner(rightScanner.getTransaction(), recordSet);
                 rightScanner.close();
                 rightScanner = materialized;
@@ -199,6 +202,12 @@ public class JoinOp implements PlannerOp {
     }
 
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new JoinOp(fieldNames, columns, leftKeys, transformation.apply(left), rightKeys, transformation.apply(right),
+                generateNullsOnLeft, generateNullsOnRight, mergeJoin, nonEquiConditions);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return columns;
@@ -35,6 +35,7 @@ import herddb.model.commands.ScanStatement;
 import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.utils.DataAccessor;
 import herddb.utils.Wrapper;
+import java.util.function.UnaryOperator;
 
 /**
  * Limit clause
@@ -58,6 +59,10 @@ public class LimitOp implements PlannerOp, ScanLimits {
         return input.getTablespace();
     }
 
+    public PlannerOp getInput() {
+        return input;
+    }
+
     @Override
     public <T> T unwrap(Class<T> clazz) {
         T unwrapped = input.unwrap(clazz);
@@ -116,6 +121,11 @@ public class LimitOp implements PlannerOp, ScanLimits {
             ScanStatement statement = op.getStatement();
             statement.setLimits(this);
             return new LimitedBindableTableScanOp(statement);
+        } else if (input instanceof SortOp && maxRows != null) {
+            // the sort cannot be pushed down to the scan, at least retain
+            // only the first rows
+            SortOp sort = (SortOp) input;
+            return new TopNOp(sort.getInput(), sort, maxRows, offset);
         }
         return this;
     }
@@ -130,6 +140,11 @@ public class LimitOp implements PlannerOp, ScanLimits {
         return String.format("LimitOp{maxRows = %s}", this.maxRows.toString());
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new LimitOp(transformation.apply(input), maxRows, offset);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return input.getOutputSchema();
@@ -37,6 +37,7 @@ import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
 import java.util.Arrays;
+import java.util.function.UnaryOperator;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
 import org.apache.calcite.linq4j.JoinType;
@@ -111,6 +112,7 @@ public class NestedLoopJoinOp implements PlannerOp {
                         recordSet.add(d);
                     });
                     recordSet.writeFinished();
+                    context.recordSpilledBytes(recordSet.getSpilledBytes());
                     SimpleDataScanner materialized = new SimpleDataScanner(rightScanner.getTransaction(), recordSet);
                     rightScanner.close();
                     rightScanner = materialized;
@@ -175,6 +177,12 @@ public class NestedLoopJoinOp implements PlannerOp {
         return right;
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new NestedLoopJoinOp(fieldNames, columns, transformation.apply(left), transformation.apply(right),
+                condition, joinRelType, false);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return columns;
@@ -31,6 +31,7 @@ import herddb.utils.Futures;
 import herddb.utils.Wrapper;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
 
 /**
  * Generic step of planned operation
@@ -90,6 +91,17 @@ public interface PlannerOp extends Wrapper {
         return this;
     }
 
+    /**
+     * Builds a copy of this node which reads from different inputs, the
+     * copy is not optimized again
+     *
+     * @param transformation maps every input of this node to the new input
+     * @return the copy, or this node if it does not have inputs
+     */
+    default PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return this;
+    }
+
     /**
      * This operation is barely a directly a wrapper for a low level Statement.
      * It is expected that unwrap(Statement.class) will return the wrapped statement
@@ -40,6 +40,7 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
 
 /**
  * Executes a projection
@@ -80,6 +81,10 @@ public class ProjectOp implements PlannerOp {
             return fieldNames;
         }
 
+        public List<CompiledSQLExpression> getFields() {
+            return fields;
+        }
+
         @Override
         public String toString() {
             return "BasicProjection{fieldNames=" + Arrays.toString(fieldNames) + ", columns=" + Arrays.toString(columns)
@@ -284,7 +289,7 @@ public class ProjectOp implements PlannerOp {
             return new RuntimeProjectedDataAccessor(tuple);
         }
 
-        int mapPosition(int field) {
+        public int mapPosition(int field) {
             return zeroCopyProjections[field];
         }
 
@@ -401,6 +406,11 @@ public class ProjectOp implements PlannerOp {
                 + "input=" + input + '}';
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new ProjectOp(projection, transformation.apply(input));
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return projection.getColumns();
@@ -34,6 +34,7 @@ import herddb.model.StatementExecutionResult;
 import herddb.model.TransactionContext;
 import herddb.utils.DataAccessor;
 import java.util.Arrays;
+import java.util.function.UnaryOperator;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.EnumerableDefaults;
 
@@ -89,6 +90,7 @@ public class SemiJoinOp implements PlannerOp {
                     recordSet.add(d);
                 });
                 recordSet.writeFinished();
+                context.recordSpilledBytes(recordSet.getSpilledBytes());
                 SimpleDataScanner materialized = new SimpleDataScanner(leftScanner.getTransaction(), recordSet);
                 leftScanner.close();
                 leftScanner = materialized;
@@ -105,6 +107,7 @@ public class SemiJoinOp implements PlannerOp {
                     recordSet.add(d);
                 });
                 recordSet.writeFinished();
+                context.recordSpilledBytes(recordSet.getSpilledBytes());
                 SimpleDataScanner materialized = new SimpleDataScanner(rightScanner.getTransaction(), recordSet);
                 rightScanner.close();
                 rightScanner = materialized;
@@ -128,6 +131,11 @@ public class SemiJoinOp implements PlannerOp {
         return "SemiJoinOp {leftKey = " + Arrays.toString(leftKeys) + " rightKey = " + Arrays.toString(rightKeys) + "\n  left = " + left + "\n  right = " + right + '}';
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new SemiJoinOp(fieldNames, columns, leftKeys, transformation.apply(left), rightKeys, transformation.apply(right));
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return columns;
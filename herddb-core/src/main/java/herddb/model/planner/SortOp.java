@@ -41,6 +41,7 @@ import herddb.utils.DataAccessor;
 import herddb.utils.SQLRecordPredicateFunctions;
 import herddb.utils.Wrapper;
 import java.util.Arrays;
+import java.util.function.UnaryOperator;
 
 /**
  * Generic Sort
@@ -88,6 +89,7 @@ public class SortOp implements PlannerOp, TupleComparator {
             }
             recordSet.writeFinished();
             recordSet.sort(this);
+            context.recordSpilledBytes(recordSet.getSpilledBytes());
             SimpleDataScanner result = new SimpleDataScanner(downstreamScanResult.dataScanner.getTransaction(), recordSet);
             return new ScanResult(downstreamScanResult.transactionId, result);
         } catch (DataScannerException ex) {
@@ -163,7 +165,10 @@ public class SortOp implements PlannerOp, TupleComparator {
             int index = fields[i];
             Object value1 = o1.get(index);
             Object value2 = o2.get(index);
-            return compareValues(i, value1, value2);
+            int result = compareValues(i, value1, value2);
+            if (result != 0) {
+                return result;
+            }
         }
         // no columns ?
         return 0;
@@ -232,6 +237,13 @@ public class SortOp implements PlannerOp, TupleComparator {
                 + "\ninput=" + input + '}';
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        SortOp copy = new SortOp(transformation.apply(input), directions, fields, nullLastDirections);
+        copy.onlyPrimaryKeyAndAscending = onlyPrimaryKeyAndAscending;
+        return copy;
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return input.getOutputSchema();
@@ -241,4 +253,12 @@ public class SortOp implements PlannerOp, TupleComparator {
         return input;
     }
 
+    public int[] getFields() {
+        return fields;
+    }
+
+    public boolean[] getDirections() {
+        return directions;
+    }
+
 }
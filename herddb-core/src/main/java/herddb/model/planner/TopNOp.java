@@ -0,0 +1,164 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.model.planner;
+
+import herddb.core.InStreamTupleSorter;
+import herddb.core.MaterializedRecordSet;
+import herddb.core.RecordSetFactory;
+import herddb.core.SimpleDataScanner;
+import herddb.core.TableSpaceManager;
+import herddb.model.Column;
+import herddb.model.DataScanner;
+import herddb.model.DataScannerException;
+import herddb.model.ScanLimits;
+import herddb.model.ScanResult;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.StatementExecutionResult;
+import herddb.model.TransactionContext;
+import herddb.model.TupleComparator;
+import herddb.sql.expressions.CompiledSQLExpression;
+import herddb.utils.DataAccessor;
+import herddb.utils.SystemProperties;
+import herddb.utils.Wrapper;
+import java.util.function.UnaryOperator;
+
+/**
+ * ORDER BY with LIMIT: only the first offset + maxRows tuples are retained
+ * while reading the input, instead of sorting the whole input.
+ * <p>
+ * Tuples are retained as they are produced by the input, projections compute
+ * their values lazily so the columns which are not needed for sorting are
+ * computed only for the selected tuples.
+ *
+ * @see InStreamTupleSorter
+ */
+public class TopNOp implements PlannerOp, ScanLimits {
+
+    /**
+     * Above this number of tuples to retain the input is sorted as by
+     * {@link SortOp}, which is able to swap to disk
+     */
+    static final int MAX_RETAINED_TUPLES = SystemProperties.getIntSystemProperty("herddb.planner.topn.maxtuples", 100_000);
+
+    private final PlannerOp input;
+    private final TupleComparator comparator;
+    private final CompiledSQLExpression maxRows;
+    private final CompiledSQLExpression offset;
+
+    public TopNOp(PlannerOp input, TupleComparator comparator, CompiledSQLExpression maxRows, CompiledSQLExpression offset) {
+        this.input = input.optimize();
+        this.comparator = comparator;
+        this.maxRows = maxRows;
+        this.offset = offset;
+    }
+
+    @Override
+    public String getTablespace() {
+        return input.getTablespace();
+    }
+
+    public PlannerOp getInput() {
+        return input;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        T unwrapped = input.unwrap(clazz);
+        if (unwrapped != null) {
+            return unwrapped;
+        }
+        return Wrapper.unwrap(this, clazz);
+    }
+
+    @Override
+    public StatementExecutionResult execute(
+            TableSpaceManager tableSpaceManager,
+            TransactionContext transactionContext,
+            StatementEvaluationContext context, boolean lockRequired, boolean forWrite
+    ) throws StatementExecutionException {
+        StatementExecutionResult input = this.input.execute(tableSpaceManager, transactionContext, context, lockRequired, forWrite);
+        ScanResult downstreamScanResult = (ScanResult) input;
+        final DataScanner inputScanner = downstreamScanResult.dataScanner;
+        int maxrows = computeMaxRows(context);
+        int offset = computeOffset(context);
+        long retained = (long) offset + maxrows;
+        RecordSetFactory recordSetFactory = tableSpaceManager.getDbmanager().getRecordSetFactory();
+
+        try (DataScanner dataScanner = inputScanner) {
+            MaterializedRecordSet recordSet;
+            if (maxrows > 0 && retained <= MAX_RETAINED_TUPLES) {
+                InStreamTupleSorter sorter = new InStreamTupleSorter((int) retained, comparator);
+                while (dataScanner.hasNext()) {
+                    sorter.collect(dataScanner.next());
+                }
+                recordSet = recordSetFactory.createFixedSizeRecordSet(sorter.getCount(),
+                        inputScanner.getFieldNames(), inputScanner.getSchema());
+                sorter.flushToRecordSet(recordSet);
+                recordSet.writeFinished();
+            } else {
+                recordSet = recordSetFactory.createRecordSet(inputScanner.getFieldNames(), inputScanner.getSchema());
+                while (dataScanner.hasNext()) {
+                    recordSet.add(dataScanner.next());
+                }
+                recordSet.writeFinished();
+                recordSet.sort(comparator);
+            }
+            recordSet.applyLimits(this, context);
+            context.recordSpilledBytes(recordSet.getSpilledBytes());
+            SimpleDataScanner result = new SimpleDataScanner(inputScanner.getTransaction(), recordSet);
+            return new ScanResult(downstreamScanResult.transactionId, result);
+        } catch (DataScannerException ex) {
+            throw new StatementExecutionException(ex);
+        }
+    }
+
+    @Override
+    public int computeMaxRows(StatementEvaluationContext context) throws StatementExecutionException {
+        return this.maxRows == null ? -1 : ((Number) this.maxRows.evaluate(DataAccessor.NULL, context)).intValue();
+    }
+
+    @Override
+    public int computeOffset(StatementEvaluationContext context) throws StatementExecutionException {
+        return this.offset == null ? 0 : ((Number) this.offset.evaluate(DataAccessor.NULL, context)).intValue();
+    }
+
+    @Override
+    public String toString() {
+        return "TopNOp{maxRows=" + maxRows + ", offset=" + offset
+                + "\ninput=" + input + '}';
+    }
+
+    @Override
+    public String toStringForScan() {
+        return "TopNOp{maxRows=" + maxRows + ", offset=" + offset + '}';
+    }
+
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        return new TopNOp(transformation.apply(input), comparator, maxRows, offset);
+    }
+
+    @Override
+    public Column[] getOutputSchema() {
+        return input.getOutputSchema();
+    }
+}
@@ -30,8 +30,10 @@ import herddb.model.StatementExecutionException;
 import herddb.model.StatementExecutionResult;
 import herddb.model.TransactionContext;
 import herddb.utils.DataAccessor;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * Union all
@@ -145,6 +147,15 @@ public class UnionAllOp implements PlannerOp {
         return sb.toString();
     }
 
+    @Override
+    public PlannerOp transformInputs(UnaryOperator<PlannerOp> transformation) {
+        List<PlannerOp> transformed = new ArrayList<>(inputs.size());
+        for (PlannerOp input : inputs) {
+            transformed.add(transformation.apply(input));
+        }
+        return new UnionAllOp(transformed);
+    }
+
     @Override
     public Column[] getOutputSchema() {
         return inputs.get(0).getOutputSchema();
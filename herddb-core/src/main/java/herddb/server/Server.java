@@ -331,7 +331,21 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
                 boolean indexodirect = configuration.getBoolean(ServerConfiguration.PROPERTY_INDEX_USE_ODIRECT, ServerConfiguration.PROPERTY_INDEX_USE_ODIRECT_DEFAULT);
                 boolean hashChecksEnabled = configuration.getBoolean(ServerConfiguration.PROPERTY_HASH_CHECKS_ENABLED, ServerConfiguration.PROPERTY_HASH_CHECKS_ENABLED_DEFAULT);
                 boolean hashWritesEnabled = configuration.getBoolean(ServerConfiguration.PROPERTY_HASH_WRITES_ENABLED, ServerConfiguration.PROPERTY_HASH_WRITES_ENABLED_DEFAULT);
-                return new FileDataStorageManager(dataDirectory, tmpDirectory, diskswapThreshold, requirefsync, pageodirect, indexodirect, hashChecksEnabled, hashWritesEnabled, statsLogger);
+                String pageStorageLayout = configuration.getString(ServerConfiguration.PROPERTY_PAGE_STORAGE_LAYOUT, ServerConfiguration.PROPERTY_PAGE_STORAGE_LAYOUT_DEFAULT);
+                boolean segmentedPages;
+                switch (pageStorageLayout) {
+                    case ServerConfiguration.PROPERTY_PAGE_STORAGE_LAYOUT_FILES:
+                        segmentedPages = false;
+                        break;
+                    case ServerConfiguration.PROPERTY_PAGE_STORAGE_LAYOUT_SEGMENTS:
+                        segmentedPages = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad value for " + ServerConfiguration.PROPERTY_PAGE_STORAGE_LAYOUT + ": " + pageStorageLayout);
+                }
+                long segmentSize = configuration.getLong(ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE, ServerConfiguration.PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT);
+                return new FileDataStorageManager(dataDirectory, tmpDirectory, diskswapThreshold, requirefsync, pageodirect, indexodirect,
+                        hashChecksEnabled, hashWritesEnabled, segmentedPages, segmentSize, statsLogger);
             }
             case ServerConfiguration.PROPERTY_MODE_DISKLESSCLUSTER: {
                 int diskswapThreshold = configuration.getInt(ServerConfiguration.PROPERTY_DISK_SWAP_MAX_RECORDS, ServerConfiguration.PROPERTY_DISK_SWAP_MAX_RECORDS_DEFAULT);
@@ -372,6 +386,8 @@ public class Server implements AutoCloseable, ServerSideConnectionAcceptor<Serve
                 bkmanager.setMaxLedgerSizeBytes(maxLedgerSizeBytes);
                 long maxIdleTime = configuration.getLong(ServerConfiguration.PROPERTY_BOOKKEEPER_MAX_IDLE_TIME, ServerConfiguration.PROPERTY_BOOKKEEPER_MAX_IDLE_TIME_DEFAULT);
                 bkmanager.setMaxIdleTime(maxIdleTime);
+                bkmanager.setMaxBatchEntries(configuration.getInt(ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_ENTRIES, ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_ENTRIES_DEFAULT));
+                bkmanager.setMaxBatchBytes(configuration.getInt(ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_SIZE, ServerConfiguration.PROPERTY_BOOKKEEPER_BATCH_MAX_SIZE_DEFAULT));
                 long checkPointperiod = configuration.getLong(ServerConfiguration.PROPERTY_CHECKPOINT_PERIOD, ServerConfiguration.PROPERTY_CHECKPOINT_PERIOD_DEFAULT);
 
                 if (checkPointperiod > 0 && ledgersRetentionPeriod > 0) {
@@ -102,6 +102,19 @@ public final class ServerConfiguration {
     public static final String PROPERTY_HASH_WRITES_ENABLED = "server.filedatastorage.writehash";
     public static final boolean PROPERTY_HASH_WRITES_ENABLED_DEFAULT = true;
 
+    /**
+     * Layout of data and index pages on disk: "files" writes every page on its
+     * own file, "segments" appends pages to large segment files. Pages written
+     * with the other layout are still read, so the layout can be switched on an
+     * existing server.
+     */
+    public static final String PROPERTY_PAGE_STORAGE_LAYOUT = "server.filedatastorage.layout";
+    public static final String PROPERTY_PAGE_STORAGE_LAYOUT_FILES = "files";
+    public static final String PROPERTY_PAGE_STORAGE_LAYOUT_SEGMENTS = "segments";
+    public static final String PROPERTY_PAGE_STORAGE_LAYOUT_DEFAULT = PROPERTY_PAGE_STORAGE_LAYOUT_FILES;
+    public static final String PROPERTY_PAGE_SEGMENT_SIZE = "server.filedatastorage.segmentsize";
+    public static final long PROPERTY_PAGE_SEGMENT_SIZE_DEFAULT = 64L * 1024L * 1024L;
+
     public static final String PROPERTY_TMPDIR = "server.tmp.dir";
     public static final String PROPERTY_TMPDIR_DEFAULT = "tmp";
     public static final String PROPERTY_METADATADIR = "server.metadata.dir";
@@ -126,6 +139,23 @@ public final class ServerConfiguration {
     public static final String PROPERTY_ASYNC_WORKER_THREADS = "server.async.thread.workers";
     public static final int PROPERTY_ASYNC_WORKER_THREADS_DEFAULT = 64;
 
+    /**
+     * Threads used by followers to apply DML to different tables in parallel,
+     * use 0 to apply every entry on the follower thread.
+     */
+    public static final String PROPERTY_FOLLOWER_APPLY_THREADS = "server.follower.apply.thread.workers";
+    public static final int PROPERTY_FOLLOWER_APPLY_THREADS_DEFAULT = 8;
+
+    public static final String PROPERTY_FOLLOWER_APPLY_MAX_PENDING_ENTRIES = "server.follower.apply.max.pending.entries";
+    public static final int PROPERTY_FOLLOWER_APPLY_MAX_PENDING_ENTRIES_DEFAULT = 10000;
+
+    /**
+     * Threads used to read the pages of a table in parallel during background
+     * scans, like table checksums and online index builds.
+     */
+    public static final String PROPERTY_TABLE_SCAN_THREADS = "server.table.scan.thread.workers";
+    public static final int PROPERTY_TABLE_SCAN_THREADS_DEFAULT = 4;
+
     public static final String PROPERTY_ZOOKEEPER_ADDRESS = "server.zookeeper.address";
     public static final String PROPERTY_ZOOKEEPER_SESSIONTIMEOUT = "server.zookeeper.session.timeout";
     public static final String PROPERTY_ZOOKEEPER_PATH = "server.zookeeper.path";
@@ -160,6 +190,18 @@ public final class ServerConfiguration {
     public static final String PROPERTY_BOOKKEEPER_MAX_IDLE_TIME = "server.bookkeeper.max.idle.time";
     public static final long PROPERTY_BOOKKEEPER_MAX_IDLE_TIME_DEFAULT = 1000L * 10;
 
+    /**
+     * Max number of log entries packed into a single BookKeeper entry. The
+     * default 1 writes ledgers in the format used by versions without
+     * batching: enable batching only after every node of the cluster has been
+     * upgraded, older followers cannot read batched ledgers.
+     */
+    public static final String PROPERTY_BOOKKEEPER_BATCH_MAX_ENTRIES = "server.bookkeeper.batch.max.entries";
+    public static final int PROPERTY_BOOKKEEPER_BATCH_MAX_ENTRIES_DEFAULT = 1;
+
+    public static final String PROPERTY_BOOKKEEPER_BATCH_MAX_SIZE = "server.bookkeeper.batch.max.size";
+    public static final int PROPERTY_BOOKKEEPER_BATCH_MAX_SIZE_DEFAULT = 1024 * 1024;
+
     public static final String PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT = "server.boot.force.download.snapshot";
     public static final boolean PROPERTY_BOOT_FORCE_DOWNLOAD_SNAPSHOT_DEFAULT = false;
 
@@ -274,6 +316,14 @@ public final class ServerConfiguration {
     public static final String PROPERTY_STATEMENTSCACHE_MAXMEMORY = "server.memory.statementscache.limit";
     public static final long PROPERTY_STATEMENTSCACHE_MAXMEMORY_DEFAULT = 50 * 1024 * 1024L;
 
+    /**
+     * Max number of distinct queries tracked by the SYSQUERYSTATS table, the
+     * executions of other queries are aggregated together. Zero disables the
+     * statistics.
+     */
+    public static final String PROPERTY_QUERYSTATS_MAXENTRIES = "server.querystats.maxentries";
+    public static final int PROPERTY_QUERYSTATS_MAXENTRIES_DEFAULT = 1000;
+
     /**
      * Maximum amount of memory used for data pages
      */
@@ -292,6 +342,16 @@ public final class ServerConfiguration {
     public static final String PROPERTY_MAX_PK_MEMORY = "server.memory.pk.limit";
     public static final long PROPERTY_MAX_PK_MEMORY_DEFAULT = 0L;
 
+    /**
+     * Memory reservations, caps and priorities of tablespaces (or tables),
+     * as fractions of the memory for every kind of page. For instance
+     * "tblspace1:reserved=0.3,priority=10;tblspace2.mytable:max=0.1,priority=-1".
+     * Pages of a group with a lower priority are unloaded first, pages of
+     * a group within its reservation are not unloaded in favour of other groups.
+     */
+    public static final String PROPERTY_MEMORY_QUOTAS = "server.memory.quotas";
+    public static final String PROPERTY_MEMORY_QUOTAS_DEFAULT = "";
+
     /**
      * Percentage of maximum memory used for data pages, will be used if {@link PROPERTY_MAX_DATA_MEMORY} is not given
      */
@@ -21,6 +21,8 @@
 package herddb.server;
 
 import static herddb.proto.PduCodec.ObjectListReader.isDontKeepReadLocks;
+import static herddb.proto.PduCodec.ObjectListReader.isStreaming;
+import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_BEGIN_SNAPSHOT_TRANSACTION;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_BEGIN_TRANSACTION;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_COMMIT_TRANSACTION;
 import static herddb.proto.PduCodec.TxCommand.TX_COMMAND_ROLLBACK_TRANSACTION;
@@ -68,6 +70,7 @@ import herddb.network.ServerSideConnection;
 import herddb.proto.Pdu;
 import herddb.proto.PduCodec;
 import herddb.security.sasl.SaslNettyServer;
+import herddb.sql.AbstractSQLPlanner;
 import herddb.sql.TranslatedQuery;
 import herddb.utils.Bytes;
 import herddb.utils.DataAccessor;
@@ -215,6 +218,14 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                     handleCloseScanner(message, channel);
                 }
                 break;
+                case Pdu.TYPE_SCANNER_CREDITS: {
+                    if (!authenticated) {
+                        sendAuthRequiredError(channel, message);
+                        break;
+                    }
+                    handleScannerCredits(message, channel);
+                }
+                break;
                 case Pdu.TYPE_REQUEST_TABLESPACE_DUMP: {
                     if (!authenticated) {
                         sendAuthRequiredError(channel, message);
@@ -422,6 +433,23 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         }
     }
 
+    /**
+     * Translates a statement, prepared statements reuse the execution plan
+     * bound to them
+     */
+    private TranslatedQuery translate(String tableSpace, long statementId, String query, List<Object> parameters,
+            boolean scan, boolean returnValues, int maxRows) throws StatementExecutionException {
+        AbstractSQLPlanner planner = server.getManager().getPlanner();
+        if (statementId > 0) {
+            TranslatedQuery translated = preparedStatements.translate(planner, tableSpace, statementId,
+                    parameters, scan, returnValues, maxRows);
+            if (translated != null) {
+                return translated;
+            }
+        }
+        return planner.translate(tableSpace, query, parameters, scan, true, returnValues, maxRows);
+    }
+
     private void handleOpenScanner(Pdu message, Channel channel) {
 
         long txId = PduCodec.OpenScanner.readTx(message);
@@ -453,17 +481,17 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         // with clients older than 0.20.0 keepReadLocks will be always true
         byte trailer = parametersReader.readTrailer();
         boolean keepReadLocks = !isDontKeepReadLocks(trailer);
+        // with clients older than 0.30.0 streaming is never requested
+        int streamingCredits = isStreaming(trailer) ? parametersReader.readStreamingCredits() : 0;
         if (LOGGER.isLoggable(Level.FINER)) {
-            LOGGER.log(Level.FINER, "openScanner txId+" + txId + ", fetchSize " + fetchSize + ", maxRows " + maxRows + ", keepReadLocks " + keepReadLocks + ", " + query + " with " + parameters);
+            LOGGER.log(Level.FINER, "openScanner txId+" + txId + ", fetchSize " + fetchSize + ", maxRows " + maxRows + ", keepReadLocks " + keepReadLocks + ", streamingCredits " + streamingCredits + ", " + query + " with " + parameters);
         }
         RunningStatementsStats runningStatements = server.getManager().getRunningStatements();
         RunningStatementInfo statementInfo = new RunningStatementInfo(query,
                 System.currentTimeMillis(), tableSpace, "", 1);
         try {
-            TranslatedQuery translatedQuery = server
-                    .getManager()
-                    .getPlanner().translate(tableSpace,
-                            query, parameters, true, true, false, maxRows);
+            TranslatedQuery translatedQuery = translate(tableSpace, statementId,
+                    query, parameters, true, false, maxRows);
             translatedQuery.context.setForceRetainReadLock(keepReadLocks);
 
             if (LOGGER.isLoggable(Level.FINEST)) {
@@ -483,6 +511,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                 List<DataAccessor> records = dataScanner.consume(fetchSize);
                 TuplesList tuplesList = new TuplesList(columns, records);
                 boolean last = dataScanner.isFinished();
+                boolean streaming = !last && streamingCredits > 0;
                 if (LOGGER.isLoggable(Level.FINEST)) {
                     LOGGER.log(Level.FINEST, "sending first {0} records to scanner {1} query {2}", new Object[]{records.size(), scannerId, query});
                 }
@@ -490,7 +519,7 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                     scanners.put(scannerId, scanner);
                 }
                 try {
-                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId());
+                    ByteBuf result = PduCodec.ResultSetChunk.write(message.messageId, tuplesList, last, dataScanner.getTransactionId(), streaming);
                     channel.sendReplyMessage(message.messageId, result);
                 } catch (HerdDBInternalException err) {
                     // do not leak an unserializable scanner
@@ -500,6 +529,11 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
                 if (last) {
                     // no need to hold the scanner anymore
                     scanner.close();
+                } else if (streaming) {
+                    // the client will not send FETCHSCANNERDATA requests, we are pushing data
+                    // as long as it grants credits
+                    scanner.startStreaming(scannerId, channel, fetchSize, streamingCredits,
+                            server.getManager().getCallbacksExecutor(), () -> scanners.remove(scannerId, scanner));
                 }
             } else {
                 ByteBuf error = PduCodec.ErrorResponse.write(message.messageId, "unsupported query type for scan " + query + ": PLAN is " + translatedQuery.plan);
@@ -574,6 +608,16 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         }
     }
 
+    private void handleScannerCredits(Pdu message, Channel channel) {
+        long scannerId = PduCodec.ScannerCredits.readScannerId(message);
+        int credits = PduCodec.ScannerCredits.readCredits(message);
+        ServerSideScannerPeer scanner = scanners.get(scannerId);
+        // this is a one-way message, the scanner may have been already fully consumed
+        if (scanner != null && scanner.isStreaming()) {
+            scanner.grantCredits(credits);
+        }
+    }
+
     private void sendAuthRequiredError(Channel channel, Pdu message) {
         ByteBuf error = PduCodec.ErrorResponse.write(message.messageId,
                 "autentication required (client " + this.channel + ")");
@@ -623,10 +667,8 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
             List<TranslatedQuery> queries = new ArrayList<>();
             for (int i = 0; i < numStatements; i++) {
                 List<Object> parameters = batch.get(i);
-                TranslatedQuery translatedQuery = server
-                        .getManager()
-                        .getPlanner().translate(tableSpace, query,
-                                parameters, false, true, returnValues, -1);
+                TranslatedQuery translatedQuery = translate(tableSpace, statementId, query,
+                        parameters, false, returnValues, -1);
                 queries.add(translatedQuery);
             }
 
@@ -857,8 +899,8 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         TransactionContext transactionContext = new TransactionContext(txId);
         TranslatedQuery translatedQuery;
         try {
-            translatedQuery = server.getManager().getPlanner().translate(tablespace,
-                    query, parameters, false, true, returnValues, -1);
+            translatedQuery = translate(tablespace, statementId,
+                    query, parameters, false, returnValues, -1);
         } catch (StatementExecutionException ex) {
             ByteBuf error = composeErrorResponse(message.messageId, ex);
             channel.sendReplyMessage(message.messageId, error);
@@ -996,8 +1038,12 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
     }
 
     public long beginTransaction(String tableSpace) throws HDBException {
+        return beginTransaction(tableSpace, false);
+    }
+
+    public long beginTransaction(String tableSpace, boolean snapshot) throws HDBException {
         try {
-            BeginTransactionStatement statement = new BeginTransactionStatement(tableSpace);
+            BeginTransactionStatement statement = new BeginTransactionStatement(tableSpace, snapshot);
             TransactionContext transactionContext = TransactionContext.NO_TRANSACTION;
             return server.getManager().executeStatement(statement, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), transactionContext).transactionId;
         } catch (HerdDBInternalException t) {
@@ -1021,6 +1067,9 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
             case TX_COMMAND_BEGIN_TRANSACTION:
                 statement = new BeginTransactionStatement(tableSpace);
                 break;
+            case TX_COMMAND_BEGIN_SNAPSHOT_TRANSACTION:
+                statement = new BeginTransactionStatement(tableSpace, true);
+                break;
             default:
                 statement = null;
 
@@ -1131,6 +1180,17 @@ public class ServerSideConnectionPeer implements ServerSideConnection, ChannelEv
         this.server.connectionClosed(this);
     }
 
+    @Override
+    public void channelWritabilityChanged(Channel channel) {
+        if (channel.isWritable()) {
+            for (ServerSideScannerPeer scanner : scanners.values()) {
+                if (scanner.isStreaming()) {
+                    scanner.resumeStreaming();
+                }
+            }
+        }
+    }
+
     private void freeResources() {
         scanners.values().forEach(ServerSideScannerPeer::close);
         scanners.clear();
@@ -25,6 +25,12 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalNotification;
 import herddb.core.HerdDBInternalException;
+import herddb.model.ExecutionPlan;
+import herddb.model.StatementExecutionException;
+import herddb.sql.AbstractSQLPlanner;
+import herddb.sql.SQLStatementEvaluationContext;
+import herddb.sql.TranslatedQuery;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,6 +53,7 @@ public final class ServerSidePreparedStatementCache {
         private final String query;
         private final String tablespace;
         private final int memory;
+        private volatile BoundPlan plan;
 
         public PreparedStatementInfo(String query, String tablespace) {
             this.query = query;
@@ -57,6 +64,38 @@ public final class ServerSidePreparedStatementCache {
 
     }
 
+    /**
+     * Execution plan bound to a prepared statement, it is valid as long as
+     * the generation of the plans cache does not change
+     */
+    private static final class BoundPlan {
+
+        private final ExecutionPlan plan;
+        private final String query;
+        private final boolean forceAcquireWriteLock;
+        private final boolean scan;
+        private final boolean returnValues;
+        private final int maxRows;
+        private final long generation;
+
+        private BoundPlan(TranslatedQuery translated, boolean scan, boolean returnValues, int maxRows, long generation) {
+            this.plan = translated.plan;
+            this.query = translated.context.query;
+            this.forceAcquireWriteLock = translated.context.isForceAcquireWriteLock();
+            this.scan = scan;
+            this.returnValues = returnValues;
+            this.maxRows = maxRows;
+            this.generation = generation;
+        }
+
+        private boolean matches(boolean scan, boolean returnValues, int maxRows, long generation) {
+            return this.generation == generation
+                    && this.scan == scan
+                    && this.returnValues == returnValues
+                    && this.maxRows == maxRows;
+        }
+    }
+
     public ServerSidePreparedStatementCache(long maxMemory) {
         this.preparedStatements = CacheBuilder
                 .newBuilder()
@@ -108,6 +147,34 @@ public final class ServerSidePreparedStatementCache {
         return info.query;
     }
 
+    /**
+     * Translates a prepared statement, reusing the execution plan bound to the
+     * statement. The plan is translated again only if the plans cache has
+     * been invalidated (for instance by a DDL) since it was bound.
+     *
+     * @return the translated query, null if the statement is unknown
+     */
+    TranslatedQuery translate(AbstractSQLPlanner planner, String tableSpace, long statementId,
+            List<Object> parameters, boolean scan, boolean returnValues, int maxRows) throws StatementExecutionException {
+        PreparedStatementInfo info = statementsInfo.get(statementId);
+        if (info == null || !tableSpace.equals(info.tablespace)) {
+            return null;
+        }
+        long generation = planner.getCacheGeneration();
+        BoundPlan bound = info.plan;
+        if (bound != null && bound.matches(scan, returnValues, maxRows, generation)) {
+            return new TranslatedQuery(bound.plan,
+                    new SQLStatementEvaluationContext(bound.query, parameters, bound.forceAcquireWriteLock, false), true);
+        }
+        // the generation is read before translating, if the cache is invalidated
+        // meanwhile the new plan will be translated again at the next execution
+        TranslatedQuery translated = planner.translate(tableSpace, info.query, parameters, scan, true, returnValues, maxRows);
+        if (translated.cachedPlan) {
+            info.plan = new BoundPlan(translated, scan, returnValues, maxRows, generation);
+        }
+        return translated;
+    }
+
     @VisibleForTesting
     public void clear() {
         preparedStatements.invalidateAll();
@@ -20,8 +20,19 @@
 
 package herddb.server;
 
+import herddb.core.HerdDBInternalException;
 import herddb.model.DataScanner;
 import herddb.model.DataScannerException;
+import herddb.network.Channel;
+import herddb.proto.PduCodec;
+import herddb.utils.DataAccessor;
+import herddb.utils.TuplesList;
+import io.netty.buffer.ByteBuf;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +45,20 @@ public class ServerSideScannerPeer implements AutoCloseable {
 
     private final DataScanner scanner;
 
+    /**
+     * Streaming mode: number of chunks we are allowed to push to the client
+     * without waiting for more credits
+     */
+    private final AtomicInteger credits = new AtomicInteger();
+    private final AtomicBoolean producing = new AtomicBoolean();
+    private long scannerId;
+    private volatile Channel channel;
+    private int fetchSize;
+    private ExecutorService executor;
+    private Runnable onStreamFinished;
+    private long sequence;
+    private boolean closed;
+
     public ServerSideScannerPeer(DataScanner scanner) {
         this.scanner = scanner;
     }
@@ -42,18 +67,132 @@ public class ServerSideScannerPeer implements AutoCloseable {
         return scanner;
     }
 
-    public void clientClose() {
+    public boolean isStreaming() {
+        return channel != null;
+    }
+
+    /**
+     * Start pushing data to the client, in background. The first chunk has
+     * already been sent as response to the OPENSCANNER request.
+     *
+     * @param scannerId id of the scanner, generated by the client
+     * @param channel
+     * @param fetchSize number of records per chunk
+     * @param initialCredits max number of chunks to be sent before receiving
+     * more credits
+     * @param executor executor for the producer task
+     * @param onStreamFinished called when the scanner has been fully consumed
+     * or failed
+     */
+    public void startStreaming(
+            long scannerId, Channel channel, int fetchSize, int initialCredits,
+            ExecutorService executor, Runnable onStreamFinished
+    ) {
+        this.scannerId = scannerId;
+        this.fetchSize = fetchSize;
+        this.executor = executor;
+        this.onStreamFinished = onStreamFinished;
+        // publish the other fields
+        this.channel = channel;
+        grantCredits(initialCredits);
+    }
+
+    public void grantCredits(int newCredits) {
+        if (newCredits <= 0) {
+            return;
+        }
+        credits.addAndGet(newCredits);
+        scheduleProducer();
+    }
+
+    /**
+     * Called when the network channel is able to accept more data
+     */
+    public void resumeStreaming() {
+        scheduleProducer();
+    }
+
+    private void scheduleProducer() {
+        if (!isStreaming() || credits.get() <= 0 || !channel.isWritable()) {
+            return;
+        }
+        if (producing.compareAndSet(false, true)) {
+            try {
+                executor.submit(this::produceChunks);
+            } catch (RejectedExecutionException stopped) {
+                producing.set(false);
+                LOG.log(Level.SEVERE, "cannot stream data for scanner " + scannerId + ": " + stopped);
+            }
+        }
+    }
+
+    private void produceChunks() {
         try {
-            scanner.close();
-        } catch (DataScannerException ex) {
-            LOG.log(Level.SEVERE, "error con closing scanner " + ex, ex);
+            while (credits.get() > 0 && channel.isWritable()) {
+                TuplesList tuplesList;
+                boolean last;
+                long chunkSequence;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    List<DataAccessor> records = scanner.consume(fetchSize);
+                    tuplesList = new TuplesList(scanner.getFieldNames(), records);
+                    last = scanner.isFinished();
+                    chunkSequence = ++sequence;
+                }
+                credits.decrementAndGet();
+                ByteBuf message = PduCodec.ScannerDataPush.write(channel.generateRequestId(), scannerId,
+                        chunkSequence, tuplesList, last);
+                channel.sendOneWayMessage(message, (Throwable error) -> {
+                    if (error != null) {
+                        LOG.log(Level.SEVERE, "cannot push data for scanner " + scannerId + ": " + error);
+                    }
+                });
+                if (last) {
+                    finishStreaming();
+                    return;
+                }
+            }
+        } catch (DataScannerException | HerdDBInternalException err) {
+            LOG.log(Level.SEVERE, "error on streaming scanner " + scannerId + ": " + err, err);
+            long errorSequence;
+            synchronized (this) {
+                errorSequence = ++sequence;
+            }
+            ByteBuf message = PduCodec.ScannerDataPush.writeError(channel.generateRequestId(), scannerId,
+                    errorSequence, err + "");
+            channel.sendOneWayMessage(message, (Throwable error) -> {
+                if (error != null) {
+                    LOG.log(Level.SEVERE, "cannot push error for scanner " + scannerId + ": " + error);
+                }
+            });
+            finishStreaming();
+            return;
+        } finally {
+            producing.set(false);
         }
+        // credits may have been granted while we were exiting the loop
+        scheduleProducer();
+    }
+
+    private void finishStreaming() {
+        onStreamFinished.run();
+        close();
+    }
+
+    public void clientClose() {
+        close();
     }
 
     private static final Logger LOG = Logger.getLogger(ServerSideScannerPeer.class.getName());
 
     @Override
-    public void close() {
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
         try {
             scanner.close();
         } catch (DataScannerException ex) {
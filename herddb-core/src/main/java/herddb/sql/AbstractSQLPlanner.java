@@ -45,6 +45,29 @@ public abstract class AbstractSQLPlanner {
 
     public abstract void clearCache();
 
+    /**
+     * Evicts the cached plans which depend on the given table, to be called
+     * when the table or one of its indexes is created, altered or dropped.
+     */
+    public abstract void invalidateTable(String tableSpace, String table);
+
+    /**
+     * Evicts the cached plans which depend on any table of the given
+     * tablespace.
+     */
+    public abstract void invalidateTableSpace(String tableSpace);
+
+    public abstract long getCacheEvictions(PlansCache.EvictionCause cause);
+
+    /**
+     * Generation of the cached plans, it changes whenever cached plans are
+     * evicted by a DDL. A plan obtained from the cache can be executed again
+     * as long as the generation does not change.
+     *
+     * @see PlansCache#getGeneration()
+     */
+    public abstract long getCacheGeneration();
+
     public abstract long getCacheHits();
 
     public abstract long getCacheMisses();
@@ -24,15 +24,20 @@ import static herddb.model.Column.column;
 import static herddb.sql.functions.ShowCreateTableCalculator.calculateShowCreateTable;
 import com.google.common.collect.ImmutableList;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import herddb.core.AbstractIndexManager;
 import herddb.core.AbstractTableManager;
 import herddb.core.DBManager;
 import herddb.core.TableSpaceManager;
+import herddb.index.VectorIndexSearch;
 import herddb.metadata.MetadataStorageManagerException;
 import herddb.model.AutoIncrementPrimaryKeyRecordFunction;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
+import herddb.model.ColumnsList;
 import herddb.model.DMLStatement;
 import herddb.model.ExecutionPlan;
+import herddb.model.FullTableScanPredicate;
+import herddb.model.Index;
 import herddb.model.Predicate;
 import herddb.model.Projection;
 import herddb.model.RecordFunction;
@@ -47,14 +52,17 @@ import herddb.model.commands.UpdateStatement;
 import herddb.model.planner.AggregateOp;
 import herddb.model.planner.BindableTableScanOp;
 import herddb.model.planner.DeleteOp;
+import herddb.model.planner.ExplainAnalyzeOp;
 import herddb.model.planner.FilterOp;
 import herddb.model.planner.FilteredTableScanOp;
+import herddb.model.planner.IndexNestedLoopJoinOp;
 import herddb.model.planner.InsertOp;
 import herddb.model.planner.JoinOp;
 import herddb.model.planner.LimitOp;
 import herddb.model.planner.NestedLoopJoinOp;
 import herddb.model.planner.PlannerOp;
 import herddb.model.planner.ProjectOp;
+import herddb.model.planner.ProjectedTableScanOp;
 import herddb.model.planner.ReplaceOp;
 import herddb.model.planner.SemiJoinOp;
 import herddb.model.planner.SimpleDeleteOp;
@@ -66,20 +74,27 @@ import herddb.model.planner.UnionAllOp;
 import herddb.model.planner.UpdateOp;
 import herddb.model.planner.ValuesOp;
 import herddb.sql.expressions.AccessCurrentRowExpression;
+import herddb.sql.expressions.CastExpression;
+import herddb.sql.expressions.CompiledFunction;
 import herddb.sql.expressions.CompiledMultiAndExpression;
 import herddb.sql.expressions.CompiledSQLExpression;
 import herddb.sql.expressions.ConstantExpression;
 import herddb.sql.expressions.JdbcParameterExpression;
 import herddb.sql.expressions.SQLExpressionCompiler;
 import herddb.sql.expressions.TypedJdbcParameterExpression;
+import herddb.sql.functions.BuiltinFunctions;
 import herddb.utils.SQLUtils;
+import herddb.utils.SystemProperties;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
 import java.util.function.BiFunction;
@@ -125,6 +140,7 @@ import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelCollationTraitDef;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelVisitor;
 import org.apache.calcite.rel.core.AggregateCall;
 import org.apache.calcite.rel.core.JoinInfo;
 import org.apache.calcite.rel.core.Sort;
@@ -192,6 +208,12 @@ public class CalcitePlanner extends AbstractSQLPlanner {
     public static final String TABLE_CONSISTENCY_COMMAND = "tableconsistencycheck";
     public static final String TABLESPACE_CONSISTENCY_COMMAND = "tablespaceconsistencycheck";
 
+    /**
+     * Maximum estimated number of rows on the outer side of a join in order
+     * to execute it with lookups on an index of the inner table
+     */
+    private static final int INDEX_NESTED_LOOP_JOIN_MAX_OUTER_ROWS = SystemProperties.getIntSystemProperty("herddb.planner.indexnestedloopjoin.maxouterrows", 1000);
+
     private static final SqlTypeFactoryImpl SQL_TYPE_FACTORY_IMPL = new SqlTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
     private static final RexBuilder REX_BUILDER  = new RexBuilder(SQL_TYPE_FACTORY_IMPL);
 
@@ -220,6 +242,16 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         return cache.getCacheMisses();
     }
 
+    @Override
+    public long getCacheEvictions(PlansCache.EvictionCause cause) {
+        return cache.getCacheEvictions(cause);
+    }
+
+    @Override
+    public long getCacheGeneration() {
+        return cache.getGeneration();
+    }
+
     @Override
     public void clearCache() {
         rootSchema = null;
@@ -227,6 +259,21 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         fallback.clearCache();
     }
 
+    @Override
+    public void invalidateTable(String tableSpace, String table) {
+        // the schema is cheap to build, plans are not
+        rootSchema = null;
+        cache.invalidateTable(tableSpace, table);
+        fallback.invalidateTable(tableSpace, table);
+    }
+
+    @Override
+    public void invalidateTableSpace(String tableSpace) {
+        rootSchema = null;
+        cache.invalidateTableSpace(tableSpace);
+        fallback.invalidateTableSpace(tableSpace);
+    }
+
     static final boolean isDDL(String query) {
         // this is quite expensive and it allocates temporary objects
         return USE_DDL_PARSER.matcher(query).matches();
@@ -259,7 +306,7 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         if (allowCache) {
             ExecutionPlan cached = cache.get(cacheKey);
             if (cached != null) {
-                return new TranslatedQuery(cached, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+                return new TranslatedQuery(cached, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false), true);
             }
         }
 
@@ -279,6 +326,19 @@ public class CalcitePlanner extends AbstractSQLPlanner {
             allowCache = false;
         }
         try {
+            if (query.startsWith("EXPLAIN ANALYZE ")) {
+                query = query.substring("EXPLAIN ANALYZE ".length());
+                PlannerResult plan = runPlanner(defaultTableSpace, query);
+                boolean upsert = detectUpsert(plan);
+                PlannerOp finalPlan = convertRelNode(plan.topNode, plan.originalRowType, returnValues, upsert)
+                        .optimize();
+                ExplainAnalyzeOp explain = new ExplainAnalyzeOp(finalPlan);
+                ExecutionPlan executionPlan = ExecutionPlan.simple(
+                        new SQLPlannedOperationStatement(explain),
+                        explain
+                );
+                return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+            }
             if (query.startsWith("EXPLAIN ")) {
                 query = query.substring("EXPLAIN ".length());
                 PlannerResult plan = runPlanner(defaultTableSpace, query);
@@ -345,9 +405,9 @@ public class CalcitePlanner extends AbstractSQLPlanner {
                             get
                     );
                     if (allowCache) {
-                        cache.put(cacheKey, executionPlan);
+                        cache.put(cacheKey, executionPlan, findUsedTables(plan.topNode));
                     }
-                    return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+                    return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false), allowCache);
                 }
             }
             if (maxRows > 0) {
@@ -364,9 +424,9 @@ public class CalcitePlanner extends AbstractSQLPlanner {
                 executionPlan = ExecutionPlan.simple(sqlPlannedOperationStatement, rootOp);
             }
             if (allowCache) {
-                cache.put(cacheKey, executionPlan);
+                cache.put(cacheKey, executionPlan, findUsedTables(plan.topNode));
             }
-            return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+            return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false), allowCache);
         } catch (CalciteContextException ex) {
             LOG.log(Level.INFO, "Error while parsing '" + ex.getOriginalStatement() + "'", ex);
             //TODO can this be done better ?
@@ -381,6 +441,29 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         }
     }
 
+    /**
+     * Tables read or written by the plan, as pairs of tablespace and table
+     * name.
+     */
+    private static List<String[]> findUsedTables(RelNode root) {
+        List<String[]> res = new ArrayList<>();
+        new RelVisitor() {
+            @Override
+            public void visit(RelNode node, int ordinal, RelNode parent) {
+                // both TableScan and TableModify
+                RelOptTable table = node.getTable();
+                if (table != null) {
+                    List<String> name = table.getQualifiedName();
+                    if (name.size() >= 2) {
+                        res.add(new String[]{name.get(name.size() - 2), name.get(name.size() - 1)});
+                    }
+                }
+                super.visit(node, ordinal, parent);
+            }
+        }.go(root);
+        return res;
+    }
+
     private static boolean detectUpsert(PlannerResult res) {
         if (res.sql instanceof SqlInsert) {
             SqlInsert si = (SqlInsert) res.sql;
@@ -866,6 +949,20 @@ public class CalcitePlanner extends AbstractSQLPlanner {
             predicate = new SQLRecordPredicate(table, null, where);
             TableSpaceManager tableSpaceManager = manager.getTableSpaceManager(tableSpace);
             IndexUtils.discoverIndexOperations(tableSpace, where, table, predicate, scan, tableSpaceManager);
+            if (predicate.getIndexOperation() != null) {
+                ImmutableBitSet.Builder usedColumns = ImmutableBitSet.builder();
+                for (RexNode filter : scan.filters) {
+                    usedColumns.addAll(RelOptUtil.InputFinder.bits(filter));
+                }
+                if (scan.projects.isEmpty()) {
+                    usedColumns.set(0, table.columns.length);
+                } else {
+                    for (int fieldpos : scan.projects) {
+                        usedColumns.set(fieldpos);
+                    }
+                }
+                IndexUtils.discoverCoveringIndexScan(table, predicate, usedColumns.build(), tableSpaceManager);
+            }
         }
         List<RexNode> projections = new ArrayList<>(scan.projects.size());
 
@@ -916,6 +1013,17 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         if (op.isSemiJoin()) {
             return new SemiJoinOp(fieldNames, columns, leftKeys, left, rightKeys, right);
         } else {
+            if (!generateNullsOnLeft) {
+                PlannerOp indexJoin = planIndexNestedLoopJoin(op, op.getLeft(), left, leftKeys, op.getRight(), rightKeys,
+                        fieldNames, columns, generateNullsOnRight, nonEquiConditions);
+                if (indexJoin == null && !generateNullsOnRight && nonEquiConditions.isEmpty()) {
+                    // inner joins are commuted by the optimizer, the table with the index may be on the left side
+                    indexJoin = planCommutedIndexNestedLoopJoin(op, fieldNames, columns, right, leftKeys, rightKeys);
+                }
+                if (indexJoin != null) {
+                    return indexJoin;
+                }
+            }
             return new JoinOp(fieldNames, columns,
                     leftKeys, left, rightKeys, right,
                     generateNullsOnLeft, generateNullsOnRight, false,
@@ -923,6 +1031,142 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         }
     }
 
+    /**
+     * An equi join with a small outer (left) side on a table with an index on
+     * the join columns is executed looking up the inner (right) table for every
+     * outer row, instead of scanning the whole inner table.
+     *
+     * @return null if the join cannot use an index
+     */
+    private PlannerOp planIndexNestedLoopJoin(EnumerableHashJoin op, RelNode outer, PlannerOp left, int[] leftKeys,
+                                              RelNode inner, int[] rightKeys,
+                                              String[] fieldNames, Column[] columns,
+                                              boolean generateNullsOnRight,
+                                              List<CompiledSQLExpression> nonEquiConditions) {
+        if (inner instanceof EnumerableInterpreter) {
+            inner = ((EnumerableInterpreter) inner).getInput();
+        }
+        final List<Integer> projects;
+        final RelOptTable relOptTable;
+        final List<RexNode> filters;
+        if (inner instanceof BindableTableScan) {
+            BindableTableScan scan = (BindableTableScan) inner;
+            projects = scan.projects;
+            relOptTable = scan.getTable();
+            filters = scan.filters;
+        } else if (inner instanceof EnumerableTableScan) {
+            projects = ImmutableList.of();
+            relOptTable = inner.getTable();
+            filters = ImmutableList.of();
+        } else {
+            return null;
+        }
+        Double outerRows = op.getCluster().getMetadataQuery().getRowCount(outer);
+        if (outerRows == null || outerRows > INDEX_NESTED_LOOP_JOIN_MAX_OUTER_ROWS) {
+            return null;
+        }
+        final String tableSpace = relOptTable.getQualifiedName().get(0);
+        final TableImpl tableImpl = (TableImpl) relOptTable.unwrap(org.apache.calcite.schema.Table.class);
+        Table table = tableImpl.tableManager.getTable();
+
+        Map<String, Integer> leftKeyByColumn = new HashMap<>();
+        for (int i = 0; i < rightKeys.length; i++) {
+            int position = projects.isEmpty() ? rightKeys[i] : projects.get(rightKeys[i]);
+            if (leftKeyByColumn.put(table.getColumn(position).name, leftKeys[i]) != null) {
+                return null;
+            }
+        }
+
+        String indexName = null;
+        ColumnsList keyColumnsList = null;
+        String[] keyColumnNames = null;
+        if (leftKeyByColumn.keySet().equals(new HashSet<>(Arrays.asList(table.primaryKey)))) {
+            keyColumnsList = table;
+            keyColumnNames = table.primaryKey;
+        } else {
+            TableSpaceManager tableSpaceManager = manager.getTableSpaceManager(tableSpace);
+            Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(table.name);
+            if (indexes != null) {
+                for (AbstractIndexManager index : indexes.values()) {
+                    if (index.isAvailable()
+                            && Index.TYPE_HASH.equals(index.getIndex().type)
+                            && leftKeyByColumn.keySet().equals(new HashSet<>(Arrays.asList(index.getColumnNames())))) {
+                        indexName = index.getIndexName();
+                        keyColumnsList = index.getIndex();
+                        keyColumnNames = index.getColumnNames();
+                        break;
+                    }
+                }
+            }
+        }
+        if (keyColumnNames == null) {
+            return null;
+        }
+        int[] outerKeys = new int[keyColumnNames.length];
+        for (int i = 0; i < keyColumnNames.length; i++) {
+            outerKeys[i] = leftKeyByColumn.get(keyColumnNames[i]);
+        }
+
+        CompiledSQLExpression innerFilter = null;
+        if (filters.size() == 1) {
+            innerFilter = SQLExpressionCompiler.compileExpression(filters.get(0));
+        } else if (!filters.isEmpty()) {
+            CompiledSQLExpression[] operands = new CompiledSQLExpression[filters.size()];
+            int i = 0;
+            for (RexNode expr : filters) {
+                operands[i++] = SQLExpressionCompiler.compileExpression(expr);
+            }
+            innerFilter = new CompiledMultiAndExpression(operands);
+        }
+        Projection innerProjection;
+        if (projects.isEmpty()) {
+            innerProjection = Projection.IDENTITY(table.columnNames, table.columns);
+        } else {
+            String[] innerFieldNames = new String[projects.size()];
+            Column[] innerColumns = new Column[projects.size()];
+            int[] zeroCopyProjections = new int[projects.size()];
+            int i = 0;
+            for (int fieldpos : projects) {
+                innerColumns[i] = table.getColumn(fieldpos);
+                innerFieldNames[i] = innerColumns[i].name;
+                zeroCopyProjections[i] = fieldpos;
+                i++;
+            }
+            innerProjection = new ProjectOp.ZeroCopyProjection(innerFieldNames, innerColumns, zeroCopyProjections);
+        }
+        return new IndexNestedLoopJoinOp(fieldNames, columns, left, outerKeys,
+                tableSpace, table, innerProjection, innerFilter,
+                indexName, keyColumnsList, keyColumnNames,
+                generateNullsOnRight, nonEquiConditions);
+    }
+
+    /**
+     * Plans an inner join looking up the left table for every row of the right
+     * side, the fields are then projected back in the order of the join
+     *
+     * @return null if the join cannot use an index
+     */
+    private PlannerOp planCommutedIndexNestedLoopJoin(EnumerableHashJoin op, String[] fieldNames, Column[] columns,
+                                                      PlannerOp right, int[] leftKeys, int[] rightKeys) {
+        int leftFields = op.getLeft().getRowType().getFieldCount();
+        int rightFields = columns.length - leftFields;
+        String[] commutedFieldNames = new String[columns.length];
+        Column[] commutedColumns = new Column[columns.length];
+        int[] zeroCopyProjections = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int commuted = i < leftFields ? rightFields + i : i - leftFields;
+            commutedFieldNames[commuted] = fieldNames[i];
+            commutedColumns[commuted] = columns[i];
+            zeroCopyProjections[i] = commuted;
+        }
+        PlannerOp indexJoin = planIndexNestedLoopJoin(op, op.getRight(), right, rightKeys, op.getLeft(), leftKeys,
+                commutedFieldNames, commutedColumns, false, Collections.emptyList());
+        if (indexJoin == null) {
+            return null;
+        }
+        return new ProjectOp(new ProjectOp.ZeroCopyProjection(fieldNames, columns, zeroCopyProjections), indexJoin);
+    }
+
     private List<CompiledSQLExpression> convertJoinNonEquiConditions(final JoinInfo analyzeCondition) throws IllegalStateException {
         List<CompiledSQLExpression> nonEquiConditions = new ArrayList<>();
         if (!analyzeCondition.isEqui()) {
@@ -1119,8 +1363,104 @@ public class CalcitePlanner extends AbstractSQLPlanner {
         PlannerOp input = convertRelNode(op.getInput(), rowType, false, false);
         CompiledSQLExpression maxRows = SQLExpressionCompiler.compileExpression(op.fetch);
         CompiledSQLExpression offset = SQLExpressionCompiler.compileExpression(op.offset);
-        return new LimitOp(input, maxRows, offset);
+        LimitOp limit = new LimitOp(input, maxRows, offset);
+        if (maxRows != null) {
+            discoverVectorIndexSearch(limit.getInput(), limit);
+        }
+        return limit;
+
+    }
 
+    /**
+     * ORDER BY cosine_similarity(column, vector) DESC LIMIT k: if the column
+     * has a vector index the scan reads only the candidates returned by the
+     * index, then the sort orders them using the exact similarity. HNSW
+     * graphs are built with the cosine distance, so the other functions are
+     * not served by the index.
+     */
+    private void discoverVectorIndexSearch(PlannerOp input, LimitOp limit) {
+        if (!(input instanceof SortOp)) {
+            return;
+        }
+        SortOp sort = (SortOp) input;
+        if (sort.getFields().length != 1) {
+            return;
+        }
+        PlannerOp scan = sort.getInput();
+        Projection projection;
+        boolean projectionOnScanResult = false;
+        if (scan instanceof ProjectOp) {
+            projection = ((ProjectOp) scan).getProjection();
+            scan = ((ProjectOp) scan).getInput();
+            if (!(scan instanceof TableScanOp) && !(scan instanceof BindableTableScanOp)) {
+                return;
+            }
+            projectionOnScanResult = true;
+        } else if (scan instanceof ProjectedTableScanOp || scan instanceof BindableTableScanOp) {
+            projection = scan.unwrap(ScanStatement.class).getProjection();
+        } else {
+            return;
+        }
+        ScanStatement statement = scan.unwrap(ScanStatement.class);
+        if (statement.getPredicate() != null || statement.getComparator() != null || statement.getLimits() != null
+                || statement.getTableDef() == null || !(projection instanceof ProjectOp.BasicProjection)) {
+            return;
+        }
+        CompiledSQLExpression sortKey = ((ProjectOp.BasicProjection) projection).getFields().get(sort.getFields()[0]);
+        if (!(sortKey instanceof CompiledFunction)) {
+            return;
+        }
+        CompiledFunction function = (CompiledFunction) sortKey;
+        boolean ascending = sort.getDirections()[0];
+        if (!BuiltinFunctions.COSINE_SIMILARITY.equals(function.getName()) || ascending) {
+            return;
+        }
+        List<CompiledSQLExpression> parameters = function.getParameters();
+        if (parameters.size() != 2) {
+            return;
+        }
+        int columnParameter = parameters.get(0) instanceof AccessCurrentRowExpression ? 0 : 1;
+        CompiledSQLExpression vector = parameters.get(1 - columnParameter);
+        if (!(parameters.get(columnParameter) instanceof AccessCurrentRowExpression) || !isConstantValue(vector)) {
+            return;
+        }
+        int position = ((AccessCurrentRowExpression) parameters.get(columnParameter)).getIndex();
+        if (projectionOnScanResult) {
+            Projection scanProjection = statement.getProjection();
+            if (scanProjection instanceof ProjectOp.ZeroCopyProjection) {
+                position = ((ProjectOp.ZeroCopyProjection) scanProjection).mapPosition(position);
+            } else if (scanProjection != null && !(scanProjection instanceof ProjectOp.IdentityProjection)) {
+                return;
+            }
+        }
+        Table table = statement.getTableDef();
+        if (position < 0 || position >= table.columns.length) {
+            return;
+        }
+        String columnName = table.columns[position].name;
+        TableSpaceManager tableSpaceManager = manager.getTableSpaceManager(statement.getTableSpace());
+        Map<String, AbstractIndexManager> indexes = tableSpaceManager == null ? null : tableSpaceManager.getIndexesOnTable(table.name);
+        if (indexes == null) {
+            return;
+        }
+        for (AbstractIndexManager index : indexes.values()) {
+            if (index.isAvailable() && Index.TYPE_HNSW.equals(index.getIndex().type)
+                    && index.getColumnNames()[0].equals(columnName)) {
+                Predicate predicate = new FullTableScanPredicate();
+                predicate.setIndexOperation(new VectorIndexSearch(index.getIndexName(), function.getName(), vector, limit));
+                statement.setPredicate(predicate);
+                return;
+            }
+        }
+    }
+
+    private static boolean isConstantValue(CompiledSQLExpression expression) {
+        if (expression instanceof CastExpression) {
+            return isConstantValue(((CastExpression) expression).getWrapped());
+        }
+        return expression instanceof ConstantExpression
+                || expression instanceof JdbcParameterExpression
+                || expression instanceof TypedJdbcParameterExpression;
     }
 
     private PlannerOp planFilter(EnumerableFilter op, RelDataType rowType, boolean returnValues) {
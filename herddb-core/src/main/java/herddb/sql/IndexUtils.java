@@ -27,6 +27,7 @@ import herddb.index.SecondaryIndexPrefixScan;
 import herddb.index.SecondaryIndexRangeScan;
 import herddb.index.SecondaryIndexSeek;
 import herddb.model.ColumnsList;
+import herddb.model.Index;
 import herddb.model.StatementExecutionException;
 import herddb.model.Table;
 import herddb.sql.expressions.BindableTableScanColumnNameResolver;
@@ -66,6 +67,38 @@ public class IndexUtils {
         predicate.setPrimaryKeyFilter(filterPk);
     }
 
+    /**
+     * Marks the predicate for a covering index scan if the secondary index
+     * chosen for the predicate stores every column used by the statement,
+     * the statement can then be executed without reading the records from the
+     * table.
+     *
+     * @param usedColumns positions of the columns of the table used by the
+     * statement, in the WHERE clause and in the projection
+     */
+    static void discoverCoveringIndexScan(Table table, SQLRecordPredicate predicate, Iterable<Integer> usedColumns,
+                                          TableSpaceManager tableSpaceManager) {
+        IndexOperation op = predicate.getIndexOperation();
+        if (!(op instanceof SecondaryIndexSeek)
+                && !(op instanceof SecondaryIndexPrefixScan)
+                && !(op instanceof SecondaryIndexRangeScan)) {
+            return;
+        }
+        Map<String, AbstractIndexManager> indexes = tableSpaceManager.getIndexesOnTable(table.name);
+        AbstractIndexManager indexManager = indexes != null ? indexes.get(op.getIndexName()) : null;
+        if (indexManager == null || !indexManager.isCoveringScanSupported()) {
+            return;
+        }
+        Index index = indexManager.getIndex();
+        for (int position : usedColumns) {
+            String columnName = table.getColumn(position).name;
+            if (!table.isPrimaryKeyColumn(columnName) && !index.isColumnStoredInIndex(columnName)) {
+                return;
+            }
+        }
+        predicate.setCoveringIndexScan(true);
+    }
+
     private static IndexOperation scanForIndexAccess(CompiledSQLExpression expressionWhere, Table table, TableSpaceManager tableSpaceManager) {
         SQLRecordKeyFunction keyFunction = findIndexAccess(expressionWhere, table.primaryKey, table,
                 "=", table);
@@ -112,7 +145,8 @@ public class IndexUtils {
             if (indexes != null) {
                 // TODO: use some kind of statistics, maybe using an index is more expensive than a full table scan
                 for (AbstractIndexManager index : indexes.values()) {
-                    if (!index.isAvailable()) {
+                    if (!index.isAvailable() || Index.TYPE_HNSW.equals(index.getIndex().type)) {
+                        // vector indexes serve only ORDER BY similarity LIMIT k
                         continue;
                     }
                     IndexOperation secondaryIndexOperation = findSecondaryIndexOperation(index, expressionWhere, table);
@@ -61,6 +61,7 @@ import herddb.model.commands.DropTableSpaceStatement;
 import herddb.model.commands.DropTableStatement;
 import herddb.model.commands.GetStatement;
 import herddb.model.commands.InsertStatement;
+import herddb.model.commands.ResetQueryStatsStatement;
 import herddb.model.commands.RollbackTransactionStatement;
 import herddb.model.commands.SQLPlannedOperationStatement;
 import herddb.model.commands.ScanStatement;
@@ -106,7 +107,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import net.sf.jsqlparser.expression.Alias;
 import net.sf.jsqlparser.expression.DoubleValue;
@@ -156,6 +160,7 @@ import net.sf.jsqlparser.statement.select.UnionOp;
 import net.sf.jsqlparser.statement.truncate.Truncate;
 import net.sf.jsqlparser.statement.update.Update;
 import net.sf.jsqlparser.statement.upsert.Upsert;
+import net.sf.jsqlparser.util.TablesNamesFinder;
 
 /**
  * Translates SQL to Internal API
@@ -167,6 +172,13 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
     public static final String TABLE_CONSISTENCY_COMMAND = "tableconsistencycheck";
     public static final String TABLESPACE_CONSISTENCY_COMMAND = "tablespaceconsistencycheck";
 
+    /**
+     * CREATE INDEX ... INCLUDE (columns), jsqlparser does not support the
+     * INCLUDE clause
+     */
+    private static final Pattern CREATE_INDEX_INCLUDE = Pattern.compile(
+            "^(CREATE\\s.*INDEX\\s.+\\))\\s*INCLUDE\\s*\\(([^()]+)\\)\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     public static String delimit(String name) {
         if (name == null) {
             return null;
@@ -194,6 +206,16 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         return cache.getCacheMisses();
     }
 
+    @Override
+    public long getCacheEvictions(PlansCache.EvictionCause cause) {
+        return cache.getCacheEvictions(cause);
+    }
+
+    @Override
+    public long getCacheGeneration() {
+        return cache.getGeneration();
+    }
+
     @Override
     public void clearCache() {
         cache.clear();
@@ -202,6 +224,22 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         }
     }
 
+    @Override
+    public void invalidateTable(String tableSpace, String table) {
+        cache.invalidateTable(tableSpace, table);
+        if (fallback != null) {
+            fallback.invalidateTable(tableSpace, table);
+        }
+    }
+
+    @Override
+    public void invalidateTableSpace(String tableSpace) {
+        cache.invalidateTableSpace(tableSpace);
+        if (fallback != null) {
+            fallback.invalidateTableSpace(tableSpace);
+        }
+    }
+
     public JSQLParserPlanner(DBManager manager, PlansCache plansCache,  AbstractSQLPlanner fallback) {
         super(manager);
         this.cache = plansCache;
@@ -369,6 +407,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
                 + ",query:" + query
                 + ",returnValues:" + returnValues
                 + ",maxRows:" + maxRows;
+        List<String[]> usedTables = null;
         try {
             boolean forceAcquireWriteLock;
             if (query.endsWith(" FOR UPDATE") // this looks very hacky
@@ -381,7 +420,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
             if (allowCache) {
                 ExecutionPlan cached = cache.get(cacheKey);
                 if (cached != null) {
-                    return new TranslatedQuery(cached, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+                    return new TranslatedQuery(cached, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false), true);
                 }
             }
             if (query.startsWith(TABLE_CONSISTENCY_COMMAND)) {
@@ -393,19 +432,36 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
                 return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, false, false));
             }
 
+            List<String> includedColumns = Collections.emptyList();
+            if (query.regionMatches(true, 0, "CREATE", 0, 6)) {
+                Matcher includeClause = CREATE_INDEX_INCLUDE.matcher(query);
+                if (includeClause.matches()) {
+                    query = includeClause.group(1);
+                    includedColumns = Arrays.asList(includeClause.group(2).trim().split("\\s*,\\s*"));
+                }
+            }
+
             net.sf.jsqlparser.statement.Statement stmt = parseStatement(query);
             if (!isCachable(stmt)) {
                 allowCache = false;
             }
-            ExecutionPlan executionPlan = plan(defaultTableSpace, stmt, scan, returnValues, maxRows);
+            if (allowCache) {
+                usedTables = findUsedTables(defaultTableSpace, stmt);
+            }
+            ExecutionPlan executionPlan;
+            if (!includedColumns.isEmpty() && stmt instanceof CreateIndex) {
+                executionPlan = ExecutionPlan.simple(buildCreateIndexStatement(defaultTableSpace, (CreateIndex) stmt, includedColumns));
+            } else {
+                executionPlan = plan(defaultTableSpace, stmt, scan, returnValues, maxRows);
+            }
             if (LOG.isLoggable(DUMP_QUERY_LEVEL)) {
                 LOG.log(DUMP_QUERY_LEVEL, "Query: {0} --HerdDB Plan\n{1}",
                         new Object[]{query, executionPlan.mainStatement});
             }
             if (allowCache) {
-                cache.put(cacheKey, executionPlan);
+                cache.put(cacheKey, executionPlan, usedTables);
             }
-            return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false));
+            return new TranslatedQuery(executionPlan, new SQLStatementEvaluationContext(query, parameters, forceAcquireWriteLock, false), allowCache);
         } catch (StatementNotSupportedException err) {
             if (fallback == null) {
                 throw new StatementExecutionException("I am sorry, I cannot plan SQL \"" + query + "\" with simple jSQLParser planner,"
@@ -414,12 +470,41 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
             TranslatedQuery res =  fallback.translate(defaultTableSpace, query, parameters, scan, allowCache, returnValues, maxRows);
             if (allowCache) {
                 // cache plan from Calcite, not need to try jSQLParser again
-                cache.put(cacheKey, res.plan);
+                cache.put(cacheKey, res.plan, usedTables);
             }
             return res;
         }
     }
 
+    /**
+     * Tables used by the statement, as pairs of tablespace and table name.
+     *
+     * @return null if they cannot be detected
+     */
+    private static List<String[]> findUsedTables(String defaultTableSpace, net.sf.jsqlparser.statement.Statement stmt) {
+        List<String> names;
+        try {
+            names = new TablesNamesFinder().getTableList(stmt);
+        } catch (RuntimeException notSupported) {
+            // TablesNamesFinder does not support every kind of statement and expression
+            LOG.log(Level.FINEST, "cannot find tables used by " + stmt, notSupported);
+            return null;
+        }
+        List<String[]> res = new ArrayList<>(names.size());
+        for (String name : names) {
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                res.add(new String[]{defaultTableSpace, fixMySqlBackTicks(name)});
+            } else {
+                String tableSpace = name.substring(0, dot);
+                // ignore the database name, if present
+                tableSpace = tableSpace.substring(tableSpace.lastIndexOf('.') + 1);
+                res.add(new String[]{fixMySqlBackTicks(tableSpace), fixMySqlBackTicks(name.substring(dot + 1))});
+            }
+        }
+        return res;
+    }
+
     private net.sf.jsqlparser.statement.Statement parseStatement(String query) throws StatementExecutionException {
         net.sf.jsqlparser.statement.Statement stmt;
 
@@ -441,7 +526,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         if (stmt instanceof CreateTable) {
             result = ExecutionPlan.simple(buildCreateTableStatement(defaultTableSpace, (CreateTable) stmt));
         } else if (stmt instanceof CreateIndex) {
-            result = ExecutionPlan.simple(buildCreateIndexStatement(defaultTableSpace, (CreateIndex) stmt));
+            result = ExecutionPlan.simple(buildCreateIndexStatement(defaultTableSpace, (CreateIndex) stmt, Collections.emptyList()));
         } else if (stmt instanceof Execute) {
             result = ExecutionPlan.simple(buildExecuteStatement(defaultTableSpace, (Execute) stmt));
         } else if (stmt instanceof Alter) {
@@ -681,7 +766,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         return columnSpecsDecoded;
     }
 
-    private Statement buildCreateIndexStatement(String defaultTableSpace, CreateIndex s) throws StatementExecutionException {
+    private Statement buildCreateIndexStatement(String defaultTableSpace, CreateIndex s, List<String> includedColumns) throws StatementExecutionException {
         try {
             String tableSpace = s.getTable().getSchemaName();
             if (tableSpace == null) {
@@ -716,6 +801,15 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
                 }
                 builder.column(column.name, column.type);
             }
+            for (String columnName : includedColumns) {
+                columnName = fixMySqlBackTicks(columnName.toLowerCase());
+                Column column = tableDefinition.getTable().getColumn(columnName);
+                if (column == null) {
+                    throw new StatementExecutionException(
+                            "no such column " + columnName + " on table " + tableName + " in tablespace " + tableSpace);
+                }
+                builder.includedColumn(column.name, column.type);
+            }
 
             CreateIndexStatement statement = new CreateIndexStatement(builder.build());
             return statement;
@@ -739,6 +833,7 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
         switch (indexType) {
             case herddb.model.Index.TYPE_HASH:
             case herddb.model.Index.TYPE_BRIN:
+            case herddb.model.Index.TYPE_HNSW:
                 break;
             default:
                 throw new StatementExecutionException("Invalid index type " + indexType);
@@ -1133,6 +1228,13 @@ public class JSQLParserPlanner extends AbstractSQLPlanner {
                     throw new StatementExecutionException(err);
                 }
             }
+            case "RESETQUERYSTATS": {
+                if (execute.getExprList() != null && !execute.getExprList().getExpressions().isEmpty()) {
+                    throw new StatementExecutionException(
+                            "RESETQUERYSTATS syntax (EXECUTE RESETQUERYSTATS)");
+                }
+                return new ResetQueryStatsStatement(defaultTableSpace);
+            }
             default:
                 throw new StatementExecutionException("Unsupported command " + execute.getName());
         }
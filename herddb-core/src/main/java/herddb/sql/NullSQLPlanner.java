@@ -39,6 +39,24 @@ public class NullSQLPlanner extends AbstractSQLPlanner {
     public void clearCache() {
     }
 
+    @Override
+    public void invalidateTable(String tableSpace, String table) {
+    }
+
+    @Override
+    public void invalidateTableSpace(String tableSpace) {
+    }
+
+    @Override
+    public long getCacheEvictions(PlansCache.EvictionCause cause) {
+        return 0;
+    }
+
+    @Override
+    public long getCacheGeneration() {
+        return 0;
+    }
+
     @Override
     public long getCacheHits() {
         return 0;
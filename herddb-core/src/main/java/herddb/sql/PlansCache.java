@@ -24,11 +24,24 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalNotification;
 import herddb.model.ExecutionPlan;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * LRU Cache of Execution plans
+ * LRU Cache of Execution plans.
+ * <p>
+ * Every plan records the tables it depends on, so that a DDL evicts only the
+ * plans which use the modified table (or tablespace). Plans with unknown
+ * dependencies are evicted by any DDL.
  *
  * @author enrico.olivelli
  */
@@ -36,17 +49,54 @@ public class PlansCache {
 
     private static final Logger LOG = Logger.getLogger(PlansCache.class.getName());
 
+    /**
+     * Reason for removing a plan from the cache
+     */
+    public enum EvictionCause {
+        /**
+         * The cache is full
+         */
+        SIZE,
+        /**
+         * DDL on a table used by the plan
+         */
+        TABLE,
+        /**
+         * DDL on a tablespace used by the plan
+         */
+        TABLESPACE,
+        /**
+         * Full clear of the cache
+         */
+        CLEAR
+    }
+
     private final Cache<String, ExecutionPlanContainer> cache;
+    private final LongAdder[] evictions = new LongAdder[EvictionCause.values().length];
+    private final AtomicLong generation = new AtomicLong();
 
     private static class ExecutionPlanContainer {
 
         private final ExecutionPlan plan;
         private final int weight;
+        // null means unknown
+        private final Set<String> tableSpaces;
+        private final Set<String> tables;
 
-        public ExecutionPlanContainer(ExecutionPlan plan) {
+        public ExecutionPlanContainer(ExecutionPlan plan, Set<String> tableSpaces, Set<String> tables) {
             this.plan = plan;
             // see ObjectSizeUtils about the limitation of this computation
             this.weight = plan.estimateObjectSizeForCache();
+            this.tableSpaces = tableSpaces;
+            this.tables = tables;
+        }
+
+        private boolean dependsOnTableSpace(String tableSpace) {
+            return tableSpaces == null || tableSpaces.contains(tableSpace);
+        }
+
+        private boolean dependsOnTable(String table) {
+            return tables == null || tables.contains(table);
         }
 
     }
@@ -54,6 +104,9 @@ public class PlansCache {
     public PlansCache(long maxBytes) {
 
         LOG.log(Level.INFO, "Max query plan cache size: {0} bytes", maxBytes + "");
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = new LongAdder();
+        }
 
         this.cache = CacheBuilder
                 .newBuilder()
@@ -63,6 +116,9 @@ public class PlansCache {
                 })
                 .maximumWeight(maxBytes)
                 .removalListener((RemovalNotification<String, ExecutionPlanContainer> notification) -> {
+                    if (notification.wasEvicted()) {
+                        evictions[EvictionCause.SIZE.ordinal()].increment();
+                    }
                     LOG.log(Level.FINE, "Removed query {0} -> {1} size {2} bytes", new Object[]{notification.getCause(),
                             notification.getKey(), notification.getValue().weight});
                 })
@@ -82,17 +138,99 @@ public class PlansCache {
         return cache.stats().missCount();
     }
 
+    public long getCacheEvictions(EvictionCause cause) {
+        return evictions[cause.ordinal()].sum();
+    }
+
+    /**
+     * The generation is incremented after plans are evicted by a DDL (or by a
+     * full clear), so that who holds a reference to a cached plan can detect
+     * that it is stale without looking it up again. Evictions due to the size
+     * of the cache do not change the generation, because the plans are still
+     * valid.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
     public ExecutionPlan get(String sql) {
         ExecutionPlanContainer res = this.cache.getIfPresent(sql);
         return res != null ? res.plan : null;
     }
 
+    /**
+     * Caches a plan whose dependencies are not known, it will be evicted by
+     * any DDL.
+     */
     public void put(String sql, ExecutionPlan statement) {
-        this.cache.put(sql, new ExecutionPlanContainer(statement));
+        this.cache.put(sql, new ExecutionPlanContainer(statement, null, null));
+    }
+
+    /**
+     * Caches a plan.
+     *
+     * @param sql
+     * @param statement
+     * @param tables the tables used by the plan, as pairs of tablespace and
+     * table name, null if they are not known
+     */
+    public void put(String sql, ExecutionPlan statement, Collection<String[]> tables) {
+        if (tables == null) {
+            put(sql, statement);
+            return;
+        }
+        Set<String> tableSpaceKeys = new HashSet<>();
+        Set<String> tableKeys = new HashSet<>();
+        for (String[] table : tables) {
+            tableSpaceKeys.add(tableSpaceKey(table[0]));
+            tableKeys.add(tableKey(table[0], table[1]));
+        }
+        this.cache.put(sql, new ExecutionPlanContainer(statement,
+                Collections.unmodifiableSet(tableSpaceKeys), Collections.unmodifiableSet(tableKeys)));
+    }
+
+    /**
+     * Evicts the plans which use the given table
+     */
+    public void invalidateTable(String tableSpace, String table) {
+        String key = tableKey(tableSpace, table);
+        invalidate(p -> p.dependsOnTable(key), EvictionCause.TABLE);
+    }
+
+    /**
+     * Evicts the plans which use any table of the given tablespace
+     */
+    public void invalidateTableSpace(String tableSpace) {
+        String key = tableSpaceKey(tableSpace);
+        invalidate(p -> p.dependsOnTableSpace(key), EvictionCause.TABLESPACE);
+    }
+
+    private void invalidate(Predicate<ExecutionPlanContainer> filter, EvictionCause cause) {
+        int count = 0;
+        // iterating over the map does not alter hit/miss stats
+        for (Map.Entry<String, ExecutionPlanContainer> entry : cache.asMap().entrySet()) {
+            if (filter.test(entry.getValue()) && cache.asMap().remove(entry.getKey(), entry.getValue())) {
+                count++;
+            }
+        }
+        evictions[cause.ordinal()].add(count);
+        // after removing the plans, a plan obtained with the new generation cannot be stale
+        generation.incrementAndGet();
+        LOG.log(Level.FINE, "Removed {0} plans, cause {1}", new Object[]{count, cause});
     }
 
     public void clear() {
+        evictions[EvictionCause.CLEAR.ordinal()].add(cache.size());
         this.cache.invalidateAll();
+        generation.incrementAndGet();
+    }
+
+    private static String tableSpaceKey(String tableSpace) {
+        return tableSpace.toLowerCase(Locale.ROOT);
+    }
+
+    private static String tableKey(String tableSpace, String table) {
+        return tableSpaceKey(tableSpace) + "." + table.toLowerCase(Locale.ROOT);
     }
 
 }
@@ -31,10 +31,20 @@ public class TranslatedQuery {
 
     public final ExecutionPlan plan;
     public final SQLStatementEvaluationContext context;
+    /**
+     * The plan is shared by the plans cache, it can be executed again with
+     * other parameters until the plans cache is invalidated
+     */
+    public final boolean cachedPlan;
 
     public TranslatedQuery(ExecutionPlan plan, SQLStatementEvaluationContext context) {
+        this(plan, context, false);
+    }
+
+    public TranslatedQuery(ExecutionPlan plan, SQLStatementEvaluationContext context, boolean cachedPlan) {
         this.plan = plan;
         this.context = context;
+        this.cachedPlan = cachedPlan;
     }
 
 }
@@ -77,6 +77,10 @@ public class CastExpression implements CompiledSQLExpression {
                 type);
     }
 
+    public CompiledSQLExpression getWrapped() {
+        return wrapped;
+    }
+
     @Override
     public String toString() {
         return "CastExpression{" + "wrapped=" + wrapped + ", type=" + ColumnTypes.typeToString(type) + '}';
@@ -230,6 +230,14 @@ public class CompiledFunction implements CompiledSQLExpression {
         return dotProduct / (norm1 * norm2);
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public List<CompiledSQLExpression> getParameters() {
+        return parameters;
+    }
+
     @Override
     public void validate(StatementEvaluationContext context) throws StatementExecutionException {
         if (parameters != null) {
@@ -22,6 +22,7 @@ package herddb.storage;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import herddb.core.PageSet.DataPageMetaData;
+import herddb.data.consistency.TableDigest;
 import herddb.log.LogSequenceNumber;
 import herddb.utils.Bytes;
 import herddb.utils.ExtendedDataInputStream;
@@ -47,16 +48,45 @@ public class TableStatus {
     public final byte[] nextPrimaryKeyValue;
     public final Map<Long, DataPageMetaData> activePages;
     public final long nextPageId;
+    /**
+     * Serialized {@link herddb.data.consistency.TableDigest}, null if not
+     * available
+     */
+    public final byte[] digest;
+    /**
+     * Pages which were loaded in memory at checkpoint, hottest first, to be
+     * loaded back at boot; null if not available
+     */
+    public final long[] hotPages;
+
+    private static final long FLAG_DIGEST = 1;
+    private static final long FLAG_HOT_PAGES = 2;
 
     public static TableStatus buildTableStatusForNewCreatedTable(String tableUuid) {
         return new TableStatus(tableUuid, LogSequenceNumber.START_OF_TIME,
-                        Bytes.longToByteArray(1), 1, Collections.emptyMap());
+                        Bytes.longToByteArray(1), 1, Collections.emptyMap(), TableDigest.empty().serialize());
     }
 
     public TableStatus(
             String tableName, LogSequenceNumber sequenceNumber, byte[] nextPrimaryKeyValue, long nextPageId,
             Map<Long, DataPageMetaData> activePages
     ) {
+        this(tableName, sequenceNumber, nextPrimaryKeyValue, nextPageId, activePages, null);
+    }
+
+    public TableStatus(
+            String tableName, LogSequenceNumber sequenceNumber, byte[] nextPrimaryKeyValue, long nextPageId,
+            Map<Long, DataPageMetaData> activePages, byte[] digest
+    ) {
+        this(tableName, sequenceNumber, nextPrimaryKeyValue, nextPageId, activePages, digest, null);
+    }
+
+    public TableStatus(
+            String tableName, LogSequenceNumber sequenceNumber, byte[] nextPrimaryKeyValue, long nextPageId,
+            Map<Long, DataPageMetaData> activePages, byte[] digest, long[] hotPages
+    ) {
+        this.digest = digest;
+        this.hotPages = hotPages;
         this.tableName = tableName;
         this.sequenceNumber = sequenceNumber;
         this.nextPrimaryKeyValue = nextPrimaryKeyValue;
@@ -66,7 +96,7 @@ public class TableStatus {
 
     public void serialize(ExtendedDataOutputStream output) throws IOException {
         output.writeVLong(1); // version
-        output.writeVLong(0); // flags for future implementations
+        output.writeVLong((digest != null ? FLAG_DIGEST : 0) | (hotPages != null ? FLAG_HOT_PAGES : 0)); // flags for future implementations
         output.writeUTF(tableName);
         output.writeLong(sequenceNumber.ledgerId);
         output.writeLong(sequenceNumber.offset);
@@ -80,12 +110,21 @@ public class TableStatus {
             /* metadata */
             active.getValue().serialize(output);
         }
+        if (digest != null) {
+            output.writeArray(digest);
+        }
+        if (hotPages != null) {
+            output.writeVInt(hotPages.length);
+            for (long pageId : hotPages) {
+                output.writeVLong(pageId);
+            }
+        }
     }
 
     public static TableStatus deserialize(ExtendedDataInputStream in) throws IOException {
         long version = in.readVLong(); // version
         long flags = in.readVLong(); // flags for future implementations
-        if (version != 1 || flags != 0) {
+        if (version != 1 || (flags & ~(FLAG_DIGEST | FLAG_HOT_PAGES)) != 0) {
             throw new DataStorageManagerException("corrupted table status");
         }
         String tableName = in.readUTF();
@@ -99,7 +138,18 @@ public class TableStatus {
         for (int i = 0; i < numActivePages; i++) {
             activePages.put(in.readVLong(), DataPageMetaData.deserialize(in));
         }
-        return new TableStatus(tableName, new LogSequenceNumber(ledgerId, offset), nextPrimaryKeyValue, nextPageId, activePages);
+        byte[] digest = null;
+        if ((flags & FLAG_DIGEST) != 0) {
+            digest = in.readArray();
+        }
+        long[] hotPages = null;
+        if ((flags & FLAG_HOT_PAGES) != 0) {
+            hotPages = new long[in.readVInt()];
+            for (int i = 0; i < hotPages.length; i++) {
+                hotPages[i] = in.readVLong();
+            }
+        }
+        return new TableStatus(tableName, new LogSequenceNumber(ledgerId, offset), nextPrimaryKeyValue, nextPageId, activePages, digest, hotPages);
     }
 
     @Override
@@ -119,6 +169,8 @@ public class TableStatus {
         hash = 23 * hash + Arrays.hashCode(this.nextPrimaryKeyValue);
         hash = 23 * hash + Objects.hashCode(this.activePages);
         hash = 23 * hash + (int) (this.nextPageId ^ (this.nextPageId >>> 32));
+        hash = 23 * hash + Arrays.hashCode(this.digest);
+        hash = 23 * hash + Arrays.hashCode(this.hotPages);
         return hash;
     }
 
@@ -146,6 +198,12 @@ public class TableStatus {
         if (!Arrays.equals(this.nextPrimaryKeyValue, other.nextPrimaryKeyValue)) {
             return false;
         }
+        if (!Arrays.equals(this.digest, other.digest)) {
+            return false;
+        }
+        if (!Arrays.equals(this.hotPages, other.hotPages)) {
+            return false;
+        }
         return Objects.equals(this.activePages, other.activePages);
     }
 
@@ -28,6 +28,7 @@ import static org.junit.Assert.assertTrue;
 import herddb.cluster.BookkeeperCommitLog;
 import herddb.cluster.BookkeeperCommitLogManager;
 import herddb.cluster.ZookeeperMetadataStorageManager;
+import herddb.log.CommitLog;
 import herddb.log.CommitLogResult;
 import herddb.log.LogEntry;
 import herddb.log.LogEntryFactory;
@@ -45,6 +46,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -349,6 +351,8 @@ public class BookKeeperCommitLogTest {
                 testEnv.getTimeout(), testEnv.getPath());
                 BookkeeperCommitLogManager logManager = new BookkeeperCommitLogManager(man, serverConfiguration, NullStatsLogger.INSTANCE)) {
             logManager.setMaxLedgerSizeBytes(maxLedgerSize);
+            // the expected number of ledgers is computed on the size of a single LogEntry
+            logManager.setMaxBatchEntries(1);
             man.start();
             logManager.start();
             try (BookkeeperCommitLog writer = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
@@ -466,4 +470,131 @@ public class BookKeeperCommitLogTest {
         }
     }
 
+    @Test
+    public void testBatchedWrites() throws Exception {
+        final String tableSpaceUUID = UUID.randomUUID().toString();
+        final String name = TableSpace.DEFAULT;
+        final String nodeid = "nodeid";
+        final int numberOfEntries = 500;
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort();
+        try (ZookeeperMetadataStorageManager man = new ZookeeperMetadataStorageManager(testEnv.getAddress(),
+                testEnv.getTimeout(), testEnv.getPath());
+                BookkeeperCommitLogManager logManager = new BookkeeperCommitLogManager(man, serverConfiguration, NullStatsLogger.INSTANCE)) {
+            logManager.setMaxBatchEntries(1000);
+            logManager.setMaxLedgerSizeBytes(1024 * 1024);
+            man.start();
+            logManager.start();
+
+            List<LogSequenceNumber> written = new ArrayList<>();
+            try (BookkeeperCommitLog writer = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                writer.setWriteLedgerHeader(false);
+                writer.startWriting(1);
+                List<CompletableFuture<LogSequenceNumber>> results = new ArrayList<>();
+                for (int i = 0; i < numberOfEntries; i++) {
+                    results.add(writer.log(LogEntryFactory.beginTransaction(i + 1), true).logSequenceNumber);
+                }
+                for (CompletableFuture<LogSequenceNumber> res : results) {
+                    written.add(FutureUtils.result(res));
+                }
+                for (int i = 1; i < numberOfEntries; i++) {
+                    assertTrue(written.get(i).after(written.get(i - 1)));
+                }
+                assertEquals(written.get(numberOfEntries - 1), writer.getLastSequenceNumber());
+                // many LogEntries must have been packed into the same BookKeeper entry
+                long bookKeeperEntries = writer.getWriter().getOut().getLastAddConfirmed() + 1;
+                assertTrue("got " + bookKeeperEntries + " entries", bookKeeperEntries < numberOfEntries);
+            }
+
+            try (BookkeeperCommitLog reader = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                List<Map.Entry<LogSequenceNumber, LogEntry>> list = new ArrayList<>();
+                reader.recovery(LogSequenceNumber.START_OF_TIME, (a, b) -> {
+                    list.add(new AbstractMap.SimpleImmutableEntry<>(a, b));
+                }, false);
+                assertEquals(numberOfEntries, list.size());
+                for (int i = 0; i < numberOfEntries; i++) {
+                    assertEquals(written.get(i), list.get(i).getKey());
+                    assertEquals(i + 1, list.get(i).getValue().transactionId);
+                }
+            }
+
+            // recovery from a position in the middle of a BookKeeper entry
+            final int snapshotIndex = numberOfEntries / 2 + 3;
+            try (BookkeeperCommitLog reader = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                List<LogSequenceNumber> list = new ArrayList<>();
+                reader.recovery(written.get(snapshotIndex), (a, b) -> {
+                    list.add(a);
+                }, false);
+                assertEquals(written.subList(snapshotIndex + 1, numberOfEntries), list);
+                assertEquals(written.get(numberOfEntries - 1), reader.getLastSequenceNumber());
+            }
+
+            // follow from a position in the middle of a BookKeeper entry
+            try (BookkeeperCommitLog follower = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                List<LogSequenceNumber> list = new ArrayList<>();
+                LogSequenceNumber[] position = {written.get(snapshotIndex)};
+                try (CommitLog.FollowerContext context = follower.startFollowing(position[0])) {
+                    for (int round = 0; round < 100 && list.size() < numberOfEntries - snapshotIndex - 1; round++) {
+                        follower.followTheLeader(position[0], (lsn, entry) -> {
+                            list.add(lsn);
+                            position[0] = lsn;
+                            return true;
+                        }, context);
+                    }
+                }
+                assertEquals(written.subList(snapshotIndex + 1, numberOfEntries), list);
+            }
+        }
+    }
+
+    @Test
+    public void testReadLegacyAndBatchedLedgers() throws Exception {
+        final String tableSpaceUUID = UUID.randomUUID().toString();
+        final String name = TableSpace.DEFAULT;
+        final String nodeid = "nodeid";
+        ServerConfiguration serverConfiguration = newServerConfigurationWithAutoPort();
+        try (ZookeeperMetadataStorageManager man = new ZookeeperMetadataStorageManager(testEnv.getAddress(),
+                testEnv.getTimeout(), testEnv.getPath());
+                BookkeeperCommitLogManager logManager = new BookkeeperCommitLogManager(man, serverConfiguration, NullStatsLogger.INSTANCE)) {
+            // one LogEntry per BookKeeper entry, like older versions
+            logManager.setMaxBatchEntries(1);
+            logManager.setMaxLedgerSizeBytes(1024 * 1024);
+            man.start();
+            logManager.start();
+
+            List<LogSequenceNumber> written = new ArrayList<>();
+            try (BookkeeperCommitLog writer = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                writer.setWriteLedgerHeader(false);
+                writer.startWriting(1);
+                for (int i = 0; i < 10; i++) {
+                    written.add(writer.log(LogEntryFactory.beginTransaction(i + 1), true).getLogSequenceNumber());
+                }
+                assertEquals(9, writer.getWriter().getOut().getLastAddConfirmed());
+                assertEquals(9, written.get(9).offset);
+
+                writer.setMaxBatchEntries(100);
+                writer.rollNewLedger();
+                List<CompletableFuture<LogSequenceNumber>> results = new ArrayList<>();
+                for (int i = 10; i < 300; i++) {
+                    results.add(writer.log(LogEntryFactory.beginTransaction(i + 1), true).logSequenceNumber);
+                }
+                for (CompletableFuture<LogSequenceNumber> res : results) {
+                    written.add(FutureUtils.result(res));
+                }
+                assertTrue(written.get(10).ledgerId > written.get(9).ledgerId);
+            }
+
+            try (BookkeeperCommitLog reader = logManager.createCommitLog(tableSpaceUUID, name, nodeid);) {
+                List<Map.Entry<LogSequenceNumber, LogEntry>> list = new ArrayList<>();
+                reader.recovery(LogSequenceNumber.START_OF_TIME, (a, b) -> {
+                    list.add(new AbstractMap.SimpleImmutableEntry<>(a, b));
+                }, false);
+                assertEquals(written.size(), list.size());
+                for (int i = 0; i < written.size(); i++) {
+                    assertEquals(written.get(i), list.get(i).getKey());
+                    assertEquals(i + 1, list.get(i).getValue().transactionId);
+                }
+            }
+        }
+    }
+
 }
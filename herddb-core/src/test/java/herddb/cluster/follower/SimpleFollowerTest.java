@@ -20,9 +20,13 @@
 package herddb.cluster.follower;
 
 import static herddb.core.TestUtils.newServerConfigurationWithAutoPort;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import herddb.codec.RecordSerializer;
+import herddb.core.AbstractIndexManager;
 import herddb.core.AbstractTableManager;
 import herddb.core.ActivatorRunRequest;
 import herddb.core.TableSpaceManager;
@@ -177,6 +181,171 @@ public class SimpleFollowerTest extends MultiServerBase {
         }
     }
 
+    @Test
+    public void testParallelApplyOnMultipleTables() throws Exception {
+        ServerConfiguration serverconfig_1 = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_NODEID, "server1");
+        serverconfig_1.set(ServerConfiguration.PROPERTY_MODE, ServerConfiguration.PROPERTY_MODE_CLUSTER);
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_ADDRESS, testEnv.getAddress());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_PATH, testEnv.getPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_SESSIONTIMEOUT, testEnv.getTimeout());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ENFORCE_LEADERSHIP, false);
+        serverconfig_1.set(ServerConfiguration.PROPERTY_BOOKKEEPER_MAX_IDLE_TIME, 0); // disabled
+        serverconfig_1.set(ServerConfiguration.PROPERTY_FOLLOWER_APPLY_THREADS, 4);
+        // force backpressure on the follower
+        serverconfig_1.set(ServerConfiguration.PROPERTY_FOLLOWER_APPLY_MAX_PENDING_ENTRIES, 10);
+
+        ServerConfiguration serverconfig_2 = serverconfig_1
+                .copy()
+                .set(ServerConfiguration.PROPERTY_NODEID, "server2")
+                .set(ServerConfiguration.PROPERTY_BASEDIR, folder.newFolder().toPath().toAbsolutePath());
+
+        try (Server server_1 = new Server(serverconfig_1);
+                Server server_2 = new Server(serverconfig_2)) {
+            server_1.start();
+            server_1.waitForStandaloneBoot();
+            server_2.start();
+
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", new HashSet<>(Arrays.asList(server_1.getNodeId(), server_2.getNodeId())), server_1.getNodeId(), 1, 0, 0);
+            server_1.getManager().executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.waitForTableSpaceBoot("tblspace1", 30000, true);
+            server_2.waitForTableSpaceBoot("tblspace1", 30000, false);
+
+            int numTables = 4;
+            Table[] tables = new Table[numTables];
+            for (int t = 0; t < numTables; t++) {
+                tables[t] = Table.builder()
+                        .name("t" + t)
+                        .column("c", ColumnTypes.INTEGER)
+                        .column("s", ColumnTypes.INTEGER)
+                        .tablespace("tblspace1")
+                        .primaryKey("c")
+                        .build();
+                server_1.getManager().executeStatement(new CreateTableStatement(tables[t]), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            }
+            // interleave writes on every table, the follower applies them in parallel
+            for (int i = 0; i < 100; i++) {
+                for (Table table : tables) {
+                    server_1.getManager().executeUpdate(new InsertStatement("tblspace1", table.name, RecordSerializer.makeRecord(table, "c", i, "s", 0)),
+                            StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                    server_1.getManager().executeUpdate(new UpdateStatement("tblspace1", table.name, RecordSerializer.makeRecord(table, "c", i, "s", i), null),
+                            StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                }
+            }
+            // two transactions which span all the tables, interleaved with writes outside of the transactions
+            long tx = herddb.core.TestUtils.beginTransaction(server_1.getManager(), "tblspace1");
+            long tx2 = herddb.core.TestUtils.beginTransaction(server_1.getManager(), "tblspace1");
+            for (Table table : tables) {
+                server_1.getManager().executeUpdate(new UpdateStatement("tblspace1", table.name, RecordSerializer.makeRecord(table, "c", 0, "s", -1), null),
+                        StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), new TransactionContext(tx));
+                server_1.getManager().executeUpdate(new UpdateStatement("tblspace1", table.name, RecordSerializer.makeRecord(table, "c", 1, "s", -2), null),
+                        StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), new TransactionContext(tx2));
+                server_1.getManager().executeUpdate(new UpdateStatement("tblspace1", table.name, RecordSerializer.makeRecord(table, "c", 2, "s", -3), null),
+                        StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            }
+            server_1.getManager().executeStatement(new CommitTransactionStatement("tblspace1", tx), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            server_1.getManager().executeStatement(new CommitTransactionStatement("tblspace1", tx2), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                    TransactionContext.NO_TRANSACTION);
+            // force BK LAC
+            server_1.getManager().executeUpdate(new InsertStatement("tblspace1", "t0", RecordSerializer.makeRecord(tables[0], "c", 1000, "s", 0)),
+                    StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.getManager().executeUpdate(new InsertStatement("tblspace1", "t0", RecordSerializer.makeRecord(tables[0], "c", 1001, "s", 0)),
+                    StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+
+            // wait for data to arrive on server_2
+            for (int i = 0; i < 100; i++) {
+                GetResult found = server_2.getManager().get(new GetStatement("tblspace1", "t0", Bytes.from_int(1000), null, false), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                        TransactionContext.NO_TRANSACTION);
+                if (found.found()) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            for (Table table : tables) {
+                for (int i = 0; i < 100; i++) {
+                    GetResult found = server_2.getManager().get(new GetStatement("tblspace1", table.name, Bytes.from_int(i), null, false),
+                            StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                    assertTrue(found.found());
+                    int expected = i <= 2 ? -1 - i : i;
+                    assertEquals(expected, found.getRecord().toBean(table).get("s"));
+                }
+            }
+            assertFalse(server_2.getManager().getTableSpaceManager("tblspace1").isFailed());
+        }
+    }
+
+    @Test
+    public void testCreateIndexOnTableWithData() throws Exception {
+        ServerConfiguration serverconfig_1 = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_NODEID, "server1");
+        serverconfig_1.set(ServerConfiguration.PROPERTY_MODE, ServerConfiguration.PROPERTY_MODE_CLUSTER);
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_ADDRESS, testEnv.getAddress());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_PATH, testEnv.getPath());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ZOOKEEPER_SESSIONTIMEOUT, testEnv.getTimeout());
+        serverconfig_1.set(ServerConfiguration.PROPERTY_ENFORCE_LEADERSHIP, false);
+        serverconfig_1.set(ServerConfiguration.PROPERTY_BOOKKEEPER_MAX_IDLE_TIME, 0); // disabled
+
+        ServerConfiguration serverconfig_2 = serverconfig_1
+                .copy()
+                .set(ServerConfiguration.PROPERTY_NODEID, "server2")
+                .set(ServerConfiguration.PROPERTY_BASEDIR, folder.newFolder().toPath().toAbsolutePath());
+
+        try (Server server_1 = new Server(serverconfig_1);
+                Server server_2 = new Server(serverconfig_2)) {
+            server_1.start();
+            server_1.waitForStandaloneBoot();
+            server_2.start();
+
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", new HashSet<>(Arrays.asList(server_1.getNodeId(), server_2.getNodeId())), server_1.getNodeId(), 1, 0, 0);
+            server_1.getManager().executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.waitForTableSpaceBoot("tblspace1", 30000, true);
+            server_2.waitForTableSpaceBoot("tblspace1", 30000, false);
+
+            Table table = Table.builder()
+                    .name("t1")
+                    .column("c", ColumnTypes.INTEGER)
+                    .column("s", ColumnTypes.INTEGER)
+                    .tablespace("tblspace1")
+                    .primaryKey("c")
+                    .build();
+            server_1.getManager().executeStatement(new CreateTableStatement(table), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            for (int i = 0; i < 100; i++) {
+                server_1.getManager().executeUpdate(new InsertStatement("tblspace1", "t1", RecordSerializer.makeRecord(table, "c", i, "s", i % 10)),
+                        StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            }
+            // the leader builds the index online, the follower must build it while applying the entry
+            Index index = Index
+                    .builder()
+                    .onTable(table)
+                    .type(Index.TYPE_HASH)
+                    .column("s", ColumnTypes.INTEGER)
+                    .build();
+            server_1.getManager().executeStatement(new CreateIndexStatement(index), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            // force BK LAC
+            server_1.getManager().executeUpdate(new InsertStatement("tblspace1", "t1", RecordSerializer.makeRecord(table, "c", 1000, "s", 0)),
+                    StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            server_1.getManager().executeUpdate(new InsertStatement("tblspace1", "t1", RecordSerializer.makeRecord(table, "c", 1001, "s", 0)),
+                    StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+
+            TestUtils.waitForCondition(() -> {
+                return server_2.getManager().get(new GetStatement("tblspace1", "t1", Bytes.from_int(1000), null, false), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(),
+                        TransactionContext.NO_TRANSACTION).found();
+            }, TestUtils.NOOP, 100);
+
+            TableSpaceManager follower = server_2.getManager().getTableSpaceManager("tblspace1");
+            AbstractIndexManager indexManager = follower.getIndexesOnTable("t1").get(index.name);
+            assertTrue(indexManager.isAvailable());
+            assertNull(indexManager.getOnlineBuild());
+
+            server_2.getManager().checkpoint();
+            LogSequenceNumber checkpoint = server_2.getManager().getDataStorageManager().getLastcheckpointSequenceNumber(follower.getTableSpaceUUID());
+            // it fails if the index has not been written at checkpoint
+            assertNotNull(server_2.getManager().getDataStorageManager().getIndexStatus(follower.getTableSpaceUUID(), index.uuid, checkpoint));
+            assertFalse(follower.isFailed());
+        }
+    }
+
     @Test
     public void testLeaderOnlineLogAvailableMultipleVersionsActivePages() throws Exception {
         ServerConfiguration serverconfig_1 = newServerConfigurationWithAutoPort(folder.newFolder().toPath());
@@ -134,6 +134,7 @@ public class CheckpointTest {
         Path tmpDir = folder.newFolder("tmpDir").toPath();
 
         String nodeId = "localhost";
+        long[] hotPages;
 
         ServerConfiguration config1 = newServerConfigurationWithAutoPort();
 
@@ -175,6 +176,9 @@ public class CheckpointTest {
             assertEquals(1, manager.getTableSpaceManager("tblspace1")
                     .getTableManager("tsql").getStats().getDirtypages());
 
+            TableSpaceManager tableSpaceManager = manager.getTableSpaceManager("tblspace1");
+            hotPages = manager.getDataStorageManager().getLatestTableStatus(tableSpaceManager.getTableSpaceUUID(),
+                    tableSpaceManager.getTableManager("tsql").getTable().uuid).hotPages;
         }
 
         try (DBManager manager = new DBManager("localhost",
@@ -186,8 +190,11 @@ public class CheckpointTest {
 
             manager.waitForTablespace("tblspace1", 10000);
 
-            assertEquals(1, manager.getTableSpaceManager("tblspace1")
-                    .getTableManager("tsql").getStats().getLoadedpages());
+            /* The dirty page is loaded at boot, the pages which were hot at checkpoint by the warm-up */
+            AbstractTableManager tableManager = manager.getTableSpaceManager("tblspace1").getTableManager("tsql");
+            herddb.utils.TestUtils.waitForCondition(() -> tableManager.getStats().getLoadedpages() == 1 + hotPages.length,
+                    herddb.utils.TestUtils.NOOP, 10);
+            assertEquals(1 + hotPages.length, tableManager.getStats().getLoadedpages());
 
             assertEquals(1, manager.getTableSpaceManager("tblspace1")
                     .getTableManager("tsql").getStats().getDirtypages());
@@ -0,0 +1,47 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Tests on the sizing of the page replacement policies
+ */
+public class MemoryManagerTest {
+
+    private static final long PAGE_SIZE = 1024 * 1024;
+
+    @Test
+    public void dedicatedIndexMemory() {
+        MemoryManager memoryManager = new MemoryManager(1000 * PAGE_SIZE, 100 * PAGE_SIZE, 10 * PAGE_SIZE, PAGE_SIZE);
+        assertEquals(1000, memoryManager.getDataPageReplacementPolicy().capacity());
+        assertEquals(100, memoryManager.getIndexPageReplacementPolicy().capacity());
+        assertEquals(10, memoryManager.getPKPageReplacementPolicy().capacity());
+    }
+
+    @Test
+    public void sharedIndexMemory() {
+        MemoryManager memoryManager = new MemoryManager(1000 * PAGE_SIZE, 0, 10 * PAGE_SIZE, PAGE_SIZE);
+        assertSame(memoryManager.getDataPageReplacementPolicy(), memoryManager.getIndexPageReplacementPolicy());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.log.LogSequenceNumber;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.storage.TableStatus;
+import herddb.utils.Bytes;
+import herddb.utils.ExtendedDataInputStream;
+import herddb.utils.ExtendedDataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests on the pages recorded as hot at checkpoint and loaded back at boot
+ */
+public class PageCacheWarmUpTest {
+
+    private static final int ROWS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DBManager startManager(Path baseDir) throws Exception {
+        DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null);
+        manager.setMaxLogicalPageSize(16 * 1024);
+        manager.start();
+        return manager;
+    }
+
+    private static TableStatus latestTableStatus(DBManager manager) throws Exception {
+        TableSpaceManager tableSpaceManager = manager.getTableSpaceManager("tblspace1");
+        AbstractTableManager tableManager = tableSpaceManager.getTableManager("t1");
+        return manager.getDataStorageManager().getLatestTableStatus(tableSpaceManager.getTableSpaceUUID(),
+                tableManager.getTable().uuid);
+    }
+
+    @Test
+    public void warmUpAfterRestart() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        long[] hotPages;
+        try (DBManager manager = startManager(baseDir)) {
+            String nodeId = manager.getNodeId();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+            execute(manager, "CREATE TABLE tblspace1.t1 (id int primary key, s1 string)", Collections.emptyList());
+            for (int i = 0; i < ROWS; i++) {
+                executeUpdate(manager, "INSERT INTO tblspace1.t1(id,s1) values(?,?)", Arrays.asList(i, "value" + i));
+            }
+            manager.checkpoint();
+            // full scans do not retain the pages they read, lookups load them in the page cache
+            for (int i = 0; i < ROWS; i++) {
+                try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.t1 WHERE id=?", Collections.singletonList(i))) {
+                    assertEquals(1, scan.consume().size());
+                }
+            }
+            manager.checkpoint();
+
+            hotPages = latestTableStatus(manager).hotPages;
+            assertTrue(hotPages.length > 1);
+        }
+
+        try (DBManager manager = startManager(baseDir)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            AbstractTableManager tableManager = manager.getTableSpaceManager("tblspace1").getTableManager("t1");
+            herddb.utils.TestUtils.waitForCondition(() -> tableManager.getStats().getLoadedPagesCount() == hotPages.length,
+                    herddb.utils.TestUtils.NOOP, 10);
+
+            // the pages are already in memory
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.t1", Collections.emptyList())) {
+                assertEquals(ROWS, scan.consume().size());
+            }
+            assertEquals(hotPages.length, tableManager.getStats().getLoadedPagesCount());
+        }
+    }
+
+    @Test
+    public void serializeTableStatus() throws Exception {
+        TableStatus withHotPages = new TableStatus("t1", new LogSequenceNumber(1, 2), Bytes.longToByteArray(3), 4,
+                Collections.emptyMap(), null, new long[]{3, 1, 2});
+        TableStatus read = roundTrip(withHotPages);
+        assertEquals(withHotPages, read);
+        assertArrayEquals(new long[]{3, 1, 2}, read.hotPages);
+        assertNull(read.digest);
+
+        TableStatus withoutHotPages = new TableStatus("t1", new LogSequenceNumber(1, 2), Bytes.longToByteArray(3), 4,
+                Collections.emptyMap());
+        read = roundTrip(withoutHotPages);
+        assertEquals(withoutHotPages, read);
+        assertNull(read.hotPages);
+    }
+
+    private static TableStatus roundTrip(TableStatus status) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ExtendedDataOutputStream out = new ExtendedDataOutputStream(buffer)) {
+            status.serialize(out);
+        }
+        try (ExtendedDataInputStream in = new ExtendedDataInputStream(new ByteArrayInputStream(buffer.toByteArray()))) {
+            return TableStatus.deserialize(in);
+        }
+    }
+}
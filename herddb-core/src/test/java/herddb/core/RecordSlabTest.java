@@ -0,0 +1,104 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests on the body of immutable data pages
+ */
+public class RecordSlabTest {
+
+    private static Record record(String key, String value) {
+        return new Record(Bytes.from_string(key), Bytes.from_string(value));
+    }
+
+    @Test
+    public void lookups() {
+        List<Record> records = new ArrayList<>();
+        Map<Bytes, Record> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Record record = record("key" + i, "value" + i);
+            records.add(record);
+            expected.put(record.key, record);
+        }
+        // an empty value and keys with the same hash code
+        records.add(record("empty", ""));
+        records.add(record("Aa", "v1"));
+        records.add(record("BB", "v2"));
+        for (Record record : records.subList(1000, records.size())) {
+            expected.put(record.key, record);
+        }
+        assertEquals(Bytes.from_string("Aa").hashCode(), Bytes.from_string("BB").hashCode());
+
+        RecordSlab slab = RecordSlab.build(records);
+        assertEquals(expected.size(), slab.size());
+        for (Record record : records) {
+            Record found = slab.get(record.key);
+            assertEquals(record, found);
+            assertTrue(found.key.isShared());
+            assertFalse(found.nonShared().key.isShared());
+            assertTrue(slab.containsKey(record.key));
+        }
+        assertEquals("", slab.get(Bytes.from_string("empty")).value.to_string());
+        assertEquals("v1", slab.get(Bytes.from_string("Aa")).value.to_string());
+        assertEquals("v2", slab.get(Bytes.from_string("BB")).value.to_string());
+        assertNull(slab.get(Bytes.from_string("missing")));
+        assertFalse(slab.containsKey(Bytes.from_string("key1000")));
+
+        // lookup with a key which is a slice of another array
+        byte[] buffer = "xxkey12xx".getBytes();
+        assertEquals("value12", slab.get(Bytes.from_array(buffer, 2, 5)).value.to_string());
+
+        assertEquals(expected, slab);
+        assertEquals(slab, expected);
+        assertEquals(expected.keySet(), slab.keySet());
+        assertEquals(new ArrayList<>(slab.values()).size(), expected.size());
+
+        // same records in another order
+        List<Record> reversed = new ArrayList<>(records);
+        Collections.reverse(reversed);
+        assertEquals(slab, RecordSlab.build(reversed));
+
+        expected.remove(Bytes.from_string("BB"));
+        assertNotEquals(expected, slab);
+    }
+
+    @Test
+    public void empty() {
+        RecordSlab slab = RecordSlab.build(Collections.emptyList());
+        assertTrue(slab.isEmpty());
+        assertNull(slab.get(Bytes.from_string("a")));
+        assertFalse(slab.entrySet().iterator().hasNext());
+    }
+}
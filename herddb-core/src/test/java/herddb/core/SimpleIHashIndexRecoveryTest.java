@@ -38,8 +38,12 @@ import herddb.model.commands.CreateTableSpaceStatement;
 import herddb.model.commands.CreateTableStatement;
 import herddb.model.commands.ScanStatement;
 import herddb.sql.TranslatedQuery;
+import herddb.storage.DataStorageManager.DataWriter;
+import herddb.storage.DataStorageManagerException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -207,4 +211,98 @@ public class SimpleIHashIndexRecoveryTest {
 
     }
 
+    @Test
+    public void incrementalCheckpoint() throws Exception {
+
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+
+        Table table = Table
+                .builder()
+                .tablespace("tblspace1")
+                .name("t1")
+                .column("id", ColumnTypes.STRING)
+                .column("name", ColumnTypes.STRING)
+                .primaryKey("id")
+                .build();
+
+        Index index = Index
+                .builder()
+                .onTable(table)
+                .type(Index.TYPE_HASH)
+                .column("name", ColumnTypes.STRING).
+                        build();
+
+        AtomicInteger indexPageWrites = new AtomicInteger();
+        FileDataStorageManager dataStorageManager = new FileDataStorageManager(dataPath) {
+            @Override
+            public void writeIndexPage(String tableSpace, String indexName, long pageId, DataWriter writer) throws DataStorageManagerException {
+                if (indexName.equals(index.uuid)) {
+                    indexPageWrites.incrementAndGet();
+                }
+                super.writeIndexPage(tableSpace, indexName, pageId, writer);
+            }
+        };
+
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(metadataPath),
+                dataStorageManager,
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            manager.executeStatement(new CreateTableStatement(table), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.executeStatement(new CreateIndexStatement(index), StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+
+            for (int i = 0; i < 1000; i++) {
+                TestUtils.executeUpdate(manager, "INSERT INTO tblspace1.t1(id,name) values(?,?)", Arrays.asList("k" + i, "n" + (i % 500)));
+            }
+
+            manager.checkpoint();
+            int fullWrites = indexPageWrites.getAndSet(0);
+            assertTrue(fullWrites > 1);
+            assertTrue(fullWrites <= 256);
+
+            /* Nothing changed, nothing written */
+            manager.checkpoint();
+            assertEquals(0, indexPageWrites.get());
+
+            /* Only the buckets of the old and of the new value are written */
+            TestUtils.executeUpdate(manager, "UPDATE tblspace1.t1 SET name='n1' WHERE id='k0'", Collections.emptyList());
+            manager.checkpoint();
+            assertTrue(indexPageWrites.get() >= 1);
+            assertTrue(indexPageWrites.get() <= 2);
+        }
+
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            assertTrue(manager.waitForTablespace("tblspace1", 10000));
+
+            TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, "SELECT * FROM tblspace1.t1 WHERE name='n1'", Collections.emptyList(), true, true, false, -1);
+            ScanStatement scan = translated.plan.mainStatement.unwrap(ScanStatement.class);
+            assertTrue(scan.getPredicate().getIndexOperation() instanceof SecondaryIndexSeek);
+            try (DataScanner scan1 = manager.scan(scan, translated.context, TransactionContext.NO_TRANSACTION)) {
+                assertEquals(3, scan1.consume().size());
+            }
+            for (int i = 2; i < 500; i++) {
+                try (DataScanner scan1 = TestUtils.scan(manager, "SELECT * FROM tblspace1.t1 WHERE name=?", Arrays.asList("n" + i))) {
+                    assertEquals(2, scan1.consume().size());
+                }
+            }
+            try (DataScanner scan1 = TestUtils.scan(manager, "SELECT * FROM tblspace1.t1 WHERE name='n0'", Collections.emptyList())) {
+                assertEquals(1, scan1.consume().size());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,272 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.StatementExecutionException;
+import herddb.model.TransactionContext;
+import herddb.model.TransactionResult;
+import herddb.model.commands.BeginTransactionStatement;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Read only transactions reading a snapshot of the data
+ */
+public class SnapshotTransactionTest {
+
+    private static final int WRITERS = 2;
+    private static final int RECORDS_PER_WRITER = 500;
+    private static final int INITIAL_VALUE = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static long beginSnapshotTransaction(DBManager manager, String tableSpace) throws Exception {
+        return ((TransactionResult) manager.executeStatement(new BeginTransactionStatement(tableSpace, true),
+                StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION)).getTransactionId();
+    }
+
+    private static List<DataAccessor> query(DBManager manager, String query, List<Object> parameters, long tx) throws Exception {
+        try (DataScanner scan = scan(manager, query, parameters, new TransactionContext(tx))) {
+            return scan.consume();
+        }
+    }
+
+    @Test
+    public void snapshotIsolation() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 string primary key,n1 int)", Collections.emptyList());
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList("a", 1));
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList("b", 2));
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList("c", 3));
+
+            long snapshot = beginSnapshotTransaction(manager, "tblspace1");
+            assertEquals(1, manager.getTableSpaceManager("tblspace1").getActiveSnapshotsCount());
+
+            // a writer holding locks does not block snapshot reads
+            long writer = TestUtils.beginTransaction(manager, "tblspace1");
+            executeUpdate(manager, "UPDATE tblspace1.tsql set n1=10 WHERE k1=?", Arrays.asList("a"), new TransactionContext(writer));
+            assertEquals(3, query(manager, "SELECT * FROM tblspace1.tsql", Collections.emptyList(), snapshot).size());
+            List<DataAccessor> a = query(manager, "SELECT n1 FROM tblspace1.tsql WHERE k1=?", Arrays.asList("a"), snapshot);
+            assertEquals(1, a.size());
+            assertEquals(1, a.get(0).get("n1"));
+
+            // changes committed after the snapshot are not visible
+            executeUpdate(manager, "DELETE FROM tblspace1.tsql WHERE k1=?", Arrays.asList("b"), new TransactionContext(writer));
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList("d", 4), new TransactionContext(writer));
+            TestUtils.commitTransaction(manager, "tblspace1", writer);
+            executeUpdate(manager, "UPDATE tblspace1.tsql set n1=30 WHERE k1=?", Arrays.asList("c"));
+
+            List<DataAccessor> all = query(manager, "SELECT k1,n1 FROM tblspace1.tsql ORDER BY k1", Collections.emptyList(), snapshot);
+            assertEquals(3, all.size());
+            assertEquals("a", all.get(0).get("k1").toString());
+            assertEquals(1, all.get(0).get("n1"));
+            assertEquals("b", all.get(1).get("k1").toString());
+            assertEquals(2, all.get(1).get("n1"));
+            assertEquals("c", all.get(2).get("k1").toString());
+            assertEquals(3, all.get(2).get("n1"));
+            assertEquals(1, query(manager, "SELECT * FROM tblspace1.tsql WHERE k1=?", Arrays.asList("b"), snapshot).size());
+            assertEquals(0, query(manager, "SELECT * FROM tblspace1.tsql WHERE k1=?", Arrays.asList("d"), snapshot).size());
+            assertEquals(1, query(manager, "SELECT * FROM tblspace1.tsql WHERE n1=2", Collections.emptyList(), snapshot).size());
+
+            // truncation does not retain previous versions
+            try {
+                execute(manager, "TRUNCATE TABLE tblspace1.tsql", Collections.emptyList());
+                fail();
+            } catch (StatementExecutionException expected) {
+                assertTrue(expected.getMessage().contains("snapshot"));
+            }
+
+            // snapshot transactions are read only
+            try {
+                executeUpdate(manager, "UPDATE tblspace1.tsql set n1=5", Collections.emptyList(), new TransactionContext(snapshot));
+                fail();
+            } catch (StatementExecutionException expected) {
+                assertTrue(expected.getMessage().contains("read only"));
+            }
+
+            TestUtils.commitTransaction(manager, "tblspace1", snapshot);
+            assertEquals(0, manager.getTableSpaceManager("tblspace1").getActiveSnapshotsCount());
+
+            // a new snapshot sees the current data
+            long snapshot2 = beginSnapshotTransaction(manager, "tblspace1");
+            List<DataAccessor> current = query(manager, "SELECT k1,n1 FROM tblspace1.tsql ORDER BY k1", Collections.emptyList(), snapshot2);
+            assertEquals(3, current.size());
+            assertEquals(10, current.get(0).get("n1"));
+            assertEquals(30, current.get(1).get("n1"));
+            assertEquals("d", current.get(2).get("k1").toString());
+            TestUtils.roolbackTransaction(manager, "tblspace1", snapshot2);
+
+            execute(manager, "TRUNCATE TABLE tblspace1.tsql", Collections.emptyList());
+            assertEquals(0, query(manager, "SELECT * FROM tblspace1.tsql", Collections.emptyList(), TransactionContext.NOTRANSACTION_ID).size());
+        }
+    }
+
+    @Test
+    public void concurrentChangesInMemory() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            concurrentChanges(manager);
+        }
+    }
+
+    @Test
+    public void concurrentChangesOnFiles() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null)) {
+            concurrentChanges(manager);
+        }
+    }
+
+    /**
+     * Writers move values between their records and replace records with new
+     * keys, in transactions which keep the number of records and the sum of
+     * the values constant, while snapshots read the table over and over
+     */
+    private void concurrentChanges(DBManager manager) throws Exception {
+        String nodeId = manager.getNodeId();
+        manager.start();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+
+        execute(manager, "CREATE TABLE tblspace1.tsql (k1 string primary key,n1 int)", Collections.emptyList());
+        List<Map<String, Integer>> records = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            Map<String, Integer> ofWriter = new HashMap<>();
+            for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+                String key = "w" + w + "-" + i;
+                executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList(key, INITIAL_VALUE));
+                ofWriter.put(key, INITIAL_VALUE);
+            }
+            records.add(ofWriter);
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                results.add(writers.submit(() -> {
+                    write(manager, writer, records.get(writer), stop);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 50; i++) {
+                long snapshot = beginSnapshotTransaction(manager, "tblspace1");
+                Map<String, Integer> first = readSnapshot(manager, snapshot);
+                if (i % 10 == 0) {
+                    manager.checkpoint();
+                }
+                assertEquals(first, readSnapshot(manager, snapshot));
+                TestUtils.commitTransaction(manager, "tblspace1", snapshot);
+            }
+            stop.set(true);
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            stop.set(true);
+            writers.shutdown();
+        }
+        assertEquals(0, manager.getTableSpaceManager("tblspace1").getActiveSnapshotsCount());
+    }
+
+    private static void write(DBManager manager, int writer, Map<String, Integer> records, AtomicBoolean stop) throws Exception {
+        Random random = new Random(writer);
+        int nextKey = RECORDS_PER_WRITER;
+        while (!stop.get()) {
+            List<String> keys = new ArrayList<>(records.keySet());
+            String from = keys.get(random.nextInt(keys.size()));
+            String to = keys.get(random.nextInt(keys.size()));
+            long tx = TestUtils.beginTransaction(manager, "tblspace1");
+            if (random.nextInt(3) == 0) {
+                // replace the record with a new key
+                String key = "w" + writer + "-" + (nextKey++);
+                int value = records.remove(from);
+                executeUpdate(manager, "DELETE FROM tblspace1.tsql WHERE k1=?", Arrays.asList(from), new TransactionContext(tx));
+                executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList(key, value), new TransactionContext(tx));
+                records.put(key, value);
+            } else {
+                executeUpdate(manager, "UPDATE tblspace1.tsql set n1=n1-1 WHERE k1=?", Arrays.asList(from), new TransactionContext(tx));
+                executeUpdate(manager, "UPDATE tblspace1.tsql set n1=n1+1 WHERE k1=?", Arrays.asList(to), new TransactionContext(tx));
+                records.put(from, records.get(from) - 1);
+                records.put(to, records.get(to) + 1);
+            }
+            TestUtils.commitTransaction(manager, "tblspace1", tx);
+        }
+    }
+
+    private static Map<String, Integer> readSnapshot(DBManager manager, long snapshot) throws Exception {
+        List<DataAccessor> all = query(manager, "SELECT k1,n1 FROM tblspace1.tsql", Collections.emptyList(), snapshot);
+        Map<String, Integer> result = new HashMap<>();
+        int sum = 0;
+        for (DataAccessor record : all) {
+            int value = (Integer) record.get("n1");
+            result.put(record.get("k1").toString(), value);
+            sum += value;
+        }
+        assertEquals(WRITERS * RECORDS_PER_WRITER, all.size());
+        assertEquals(WRITERS * RECORDS_PER_WRITER, result.size());
+        assertEquals(WRITERS * RECORDS_PER_WRITER * INITIAL_VALUE, sum);
+        return result;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.indexes;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.AbstractIndexManager;
+import herddb.core.DBManager;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.index.SecondaryIndexSeek;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.Index;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.commands.ScanStatement;
+import herddb.sql.TranslatedQuery;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests on secondary indexes with INCLUDE columns, which answer queries
+ * without reading the records of the table
+ */
+public class CoveringIndexScanTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static boolean isCoveringIndexScan(DBManager manager, String query) throws Exception {
+        TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, Collections.emptyList(), true, true, false, -1);
+        ScanStatement scan = translated.plan.mainStatement.unwrap(ScanStatement.class);
+        return scan.getPredicate() != null && scan.getPredicate().isCoveringIndexScan();
+    }
+
+    private static void createTable(DBManager manager, String indexType) throws Exception {
+        execute(manager, "CREATE TABLE tblspace1.t1 (id string primary key, n1 int, name string, other string)", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1,name,other) values('a',1,'n1','o1')", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1,name,other) values('b',1,'n2','o2')", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1,name,other) values('c',2,'n3','o3')", Collections.emptyList());
+        execute(manager, "CREATE " + indexType + " INDEX ix1 ON tblspace1.t1(n1) INCLUDE (name)", Collections.emptyList());
+    }
+
+    @Test
+    public void coveringScan() throws Exception {
+        for (String indexType : Arrays.asList(Index.TYPE_HASH, Index.TYPE_BRIN)) {
+            String nodeId = "localhost";
+            try (DBManager manager = new DBManager(nodeId, new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+                manager.start();
+                CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+                manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                manager.waitForTablespace("tblspace1", 10000);
+
+                createTable(manager, indexType);
+
+                AbstractIndexManager index = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix1");
+                assertEquals(indexType, index.getIndex().type);
+                assertArrayEquals(new String[]{"name"}, index.getIndex().includedColumnNames);
+                assertTrue(index.isCoveringScanSupported());
+
+                assertTrue(isCoveringIndexScan(manager, "SELECT id,n1,name FROM tblspace1.t1 WHERE n1=1"));
+                assertTrue(isCoveringIndexScan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=1 AND name='n2'"));
+                assertFalse(isCoveringIndexScan(manager, "SELECT * FROM tblspace1.t1 WHERE n1=1"));
+                assertFalse(isCoveringIndexScan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=1 AND other='o1'"));
+
+                try (DataScanner scan = scan(manager, "SELECT id,n1,name FROM tblspace1.t1 WHERE n1=1 ORDER BY id", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(2, records.size());
+                    assertEquals("a", records.get(0).get("id").toString());
+                    assertEquals(1, records.get(0).get("n1"));
+                    assertEquals("n1", records.get(0).get("name").toString());
+                    assertEquals("b", records.get(1).get("id").toString());
+                    assertEquals("n2", records.get(1).get("name").toString());
+                }
+                try (DataScanner scan = scan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=1 AND name='n2'", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertEquals("n2", records.get(0).get("name").toString());
+                }
+                try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.t1 WHERE n1=1", Collections.emptyList())) {
+                    assertEquals(2, scan.consume().size());
+                }
+
+                // included column changed, indexed value unchanged
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET name='n1bis' WHERE id='a'", Collections.emptyList());
+                // indexed value changed
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=2 WHERE id='b'", Collections.emptyList());
+                // neither the indexed nor the included columns changed
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET other='o3bis' WHERE id='c'", Collections.emptyList());
+                try (DataScanner scan = scan(manager, "SELECT id,name FROM tblspace1.t1 WHERE n1=1", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertEquals("a", records.get(0).get("id").toString());
+                    assertEquals("n1bis", records.get(0).get("name").toString());
+                }
+                try (DataScanner scan = scan(manager, "SELECT id,name FROM tblspace1.t1 WHERE n1=2 ORDER BY id", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(2, records.size());
+                    assertEquals("b", records.get(0).get("id").toString());
+                    assertEquals("n2", records.get(0).get("name").toString());
+                    assertEquals("c", records.get(1).get("id").toString());
+                    assertEquals("n3", records.get(1).get("name").toString());
+                }
+
+                // null values are not stored
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET name=null WHERE id='c'", Collections.emptyList());
+                try (DataScanner scan = scan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=2 AND id='c'", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertNull(records.get(0).get("name"));
+                }
+
+                executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE id='b'", Collections.emptyList());
+                try (DataScanner scan = scan(manager, "SELECT id,name FROM tblspace1.t1 WHERE n1=2", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertEquals("c", records.get(0).get("id").toString());
+                }
+
+                // transactions read their own changes from the table
+                long tx = beginTransaction(manager, "tblspace1");
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET name='n1tx' WHERE id='a'", Collections.emptyList(), new TransactionContext(tx));
+                try (DataScanner scan = scan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=1", Collections.emptyList(), new TransactionContext(tx))) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertEquals("n1tx", records.get(0).get("name").toString());
+                }
+                commitTransaction(manager, "tblspace1", tx);
+                try (DataScanner scan = scan(manager, "SELECT name FROM tblspace1.t1 WHERE n1=1", Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(1, records.size());
+                    assertEquals("n1tx", records.get(0).get("name").toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void recoveryAfterRestart() throws Exception {
+        for (String indexType : Arrays.asList(Index.TYPE_HASH, Index.TYPE_BRIN)) {
+            Path dataPath = folder.newFolder("data" + indexType).toPath();
+            Path logsPath = folder.newFolder("logs" + indexType).toPath();
+            Path metadataPath = folder.newFolder("metadata" + indexType).toPath();
+            Path tmoDir = folder.newFolder("tmoDir" + indexType).toPath();
+
+            String nodeId = "localhost";
+            try (DBManager manager = new DBManager(nodeId,
+                    new FileMetadataStorageManager(metadataPath),
+                    new FileDataStorageManager(dataPath),
+                    new FileCommitLogManager(logsPath),
+                    tmoDir, null)) {
+                manager.start();
+                CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+                manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+                manager.waitForTablespace("tblspace1", 10000);
+
+                createTable(manager, indexType);
+                manager.checkpoint();
+                // replayed from the log after restart
+                executeUpdate(manager, "UPDATE tblspace1.t1 SET name='n2bis' WHERE id='b'", Collections.emptyList());
+            }
+
+            try (DBManager manager = new DBManager(nodeId,
+                    new FileMetadataStorageManager(metadataPath),
+                    new FileDataStorageManager(dataPath),
+                    new FileCommitLogManager(logsPath),
+                    tmoDir, null)) {
+                manager.start();
+                assertTrue(manager.waitForTablespace("tblspace1", 10000));
+
+                AbstractIndexManager index = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix1");
+                assertArrayEquals(new String[]{"name"}, index.getIndex().includedColumnNames);
+
+                String query = "SELECT id,name FROM tblspace1.t1 WHERE n1=1 ORDER BY id";
+                TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, Collections.emptyList(), true, true, false, -1);
+                ScanStatement scanStatement = translated.plan.mainStatement.unwrap(ScanStatement.class);
+                assertTrue(scanStatement.getPredicate().getIndexOperation() instanceof SecondaryIndexSeek);
+                assertTrue(scanStatement.getPredicate().isCoveringIndexScan());
+                try (DataScanner scan = scan(manager, query, Collections.emptyList())) {
+                    List<DataAccessor> records = scan.consume();
+                    assertEquals(2, records.size());
+                    assertEquals("n1", records.get(0).get("name").toString());
+                    assertEquals("n2bis", records.get(1).get("name").toString());
+                }
+            }
+        }
+    }
+}
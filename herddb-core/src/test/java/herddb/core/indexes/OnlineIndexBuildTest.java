@@ -0,0 +1,241 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core.indexes;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.AbstractIndexManager;
+import herddb.core.DBManager;
+import herddb.core.TestUtils;
+import herddb.index.SecondaryIndexSeek;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.Index;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.commands.ScanStatement;
+import herddb.server.ServerConfiguration;
+import herddb.sql.TranslatedQuery;
+import herddb.utils.DataAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Tests on CREATE INDEX on tables with data, the table can be read and written
+ * while the index is being built
+ */
+public class OnlineIndexBuildTest {
+
+    private static final int ROWS = 2000;
+    private static final int VALUES = 20;
+
+    private static DBManager startManager() throws Exception {
+        String nodeId = "localhost";
+        DBManager manager = new DBManager(nodeId, new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null);
+        manager.start();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+        execute(manager, "CREATE TABLE tblspace1.t1 (id int primary key, n1 int)", Collections.emptyList());
+        for (int i = 0; i < ROWS; i++) {
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1) values(?,?)", Arrays.asList(i, i % VALUES));
+        }
+        return manager;
+    }
+
+    private static void assertIndexMatchesTable(DBManager manager) throws Exception {
+        String query = "SELECT id FROM tblspace1.t1 WHERE n1=?";
+        TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, Collections.singletonList(1), true, true, false, -1);
+        ScanStatement scanStatement = translated.plan.mainStatement.unwrap(ScanStatement.class);
+        assertTrue(scanStatement.getPredicate().getIndexOperation() instanceof SecondaryIndexSeek);
+
+        int total = 0;
+        for (int value = 0; value < VALUES * 2; value++) {
+            int expected;
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) as cc FROM tblspace1.t1 WHERE n1+0=?", Collections.singletonList(value))) {
+                expected = ((Number) scan.consume().get(0).get("cc")).intValue();
+            }
+            try (DataScanner scan = scan(manager, query, Collections.singletonList(value))) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals("value " + value, expected, records.size());
+                total += records.size();
+            }
+        }
+        try (DataScanner scan = scan(manager, "SELECT COUNT(*) as cc FROM tblspace1.t1 WHERE n1 IS NOT NULL", Collections.emptyList())) {
+            assertEquals(((Number) scan.consume().get(0).get("cc")).intValue(), total);
+        }
+    }
+
+    @Test
+    public void createIndexOnTableWithData() throws Exception {
+        for (String indexType : Arrays.asList(Index.TYPE_HASH, Index.TYPE_BRIN)) {
+            try (DBManager manager = startManager()) {
+                execute(manager, "CREATE " + indexType + " INDEX ix1 ON tblspace1.t1(n1)", Collections.emptyList());
+
+                AbstractIndexManager index = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix1");
+                assertTrue(index.isAvailable());
+                assertNull(index.getOnlineBuild());
+                assertIndexMatchesTable(manager);
+
+                try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysindexbuilds", Collections.emptyList())) {
+                    assertEquals(0, scan.consume().size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void createIndexWithConcurrentWrites() throws Exception {
+        for (String indexType : Arrays.asList(Index.TYPE_HASH, Index.TYPE_BRIN)) {
+            try (DBManager manager = startManager()) {
+                AtomicBoolean stop = new AtomicBoolean();
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                Thread writer = new Thread(() -> {
+                    try {
+                        int nextId = ROWS;
+                        while (!stop.get()) {
+                            ThreadLocalRandom random = ThreadLocalRandom.current();
+                            int id = random.nextInt(nextId);
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE id=?", Arrays.asList(random.nextInt(VALUES * 2), id));
+                                    break;
+                                case 1:
+                                    executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE id=?", Collections.singletonList(id));
+                                    break;
+                                default:
+                                    executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1) values(?,?)", Arrays.asList(nextId++, random.nextInt(VALUES * 2)));
+                                    break;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.set(t);
+                    }
+                });
+                writer.start();
+                try {
+                    execute(manager, "CREATE " + indexType + " INDEX ix1 ON tblspace1.t1(n1)", Collections.emptyList());
+                } finally {
+                    stop.set(true);
+                    writer.join();
+                }
+                assertNull(error.get());
+
+                assertTrue(manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1").get("ix1").isAvailable());
+                assertIndexMatchesTable(manager);
+            }
+        }
+    }
+
+    /**
+     * The threads of the table scans are kept busy so that the scan of the
+     * build has collected the keys but cannot read the records, meanwhile
+     * records are deleted, updated and moved to other keys
+     */
+    @Test
+    public void createIndexWithChangesRacingWithTheScan() throws Exception {
+        for (String indexType : Arrays.asList(Index.TYPE_HASH, Index.TYPE_BRIN)) {
+            try (DBManager manager = startManager()) {
+                int scanThreads = ServerConfiguration.PROPERTY_TABLE_SCAN_THREADS_DEFAULT;
+                CountDownLatch busy = new CountDownLatch(scanThreads);
+                CountDownLatch release = new CountDownLatch(1);
+                for (int i = 0; i < scanThreads; i++) {
+                    manager.getTableScanExecutor().submit(() -> {
+                        busy.countDown();
+                        release.await();
+                        return null;
+                    });
+                }
+                busy.await();
+
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                Thread creator = new Thread(() -> {
+                    try {
+                        execute(manager, "CREATE " + indexType + " INDEX ix1 ON tblspace1.t1(n1)", Collections.emptyList());
+                    } catch (Throwable t) {
+                        error.set(t);
+                    }
+                });
+                creator.start();
+                try {
+                    AbstractIndexManager index = null;
+                    while (index == null || index.getOnlineBuild() == null) {
+                        assertTrue(creator.isAlive());
+                        Thread.sleep(10);
+                        Map<String, AbstractIndexManager> indexes = manager.getTableSpaceManager("tblspace1").getIndexesOnTable("t1");
+                        index = indexes != null ? indexes.get("ix1") : null;
+                    }
+
+                    int expectedRows = ROWS;
+                    for (int id = 0; id < ROWS; id++) {
+                        switch (id % 4) {
+                            case 0:
+                                executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE id=?", Collections.singletonList(id));
+                                expectedRows--;
+                                break;
+                            case 1:
+                                executeUpdate(manager, "UPDATE tblspace1.t1 SET n1=? WHERE id=?", Arrays.asList(VALUES + id % VALUES, id));
+                                break;
+                            case 2:
+                                // the record changes its primary key and its value
+                                long tx = TestUtils.beginTransaction(manager, "tblspace1");
+                                executeUpdate(manager, "DELETE FROM tblspace1.t1 WHERE id=?", Collections.singletonList(id), new TransactionContext(tx));
+                                executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1) values(?,?)", Arrays.asList(id + ROWS, VALUES + id % VALUES), new TransactionContext(tx));
+                                TestUtils.commitTransaction(manager, "tblspace1", tx);
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                    assertTrue(index.getOnlineBuild() != null);
+
+                    release.countDown();
+                    creator.join();
+                    assertNull(error.get());
+                    assertTrue(index.isAvailable());
+
+                    try (DataScanner scan = scan(manager, "SELECT COUNT(*) as cc FROM tblspace1.t1", Collections.emptyList())) {
+                        assertEquals(expectedRows, ((Number) scan.consume().get(0).get("cc")).intValue());
+                    }
+                    assertIndexMatchesTable(manager);
+                } finally {
+                    release.countDown();
+                    creator.join();
+                }
+            }
+        }
+    }
+}
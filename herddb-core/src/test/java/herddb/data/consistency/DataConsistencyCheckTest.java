@@ -20,10 +20,16 @@
 package herddb.data.consistency;
 
 import static herddb.core.TestUtils.execute;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import herddb.core.DBManager;
+import herddb.core.TableSpaceManager;
 import herddb.core.TestUtils;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
 import herddb.mem.MemoryCommitLogManager;
 import herddb.mem.MemoryDataStorageManager;
 import herddb.mem.MemoryMetadataStorageManager;
@@ -37,9 +43,13 @@ import herddb.model.commands.CreateTableStatement;
 import herddb.model.commands.TableConsistencyCheckStatement;
 import herddb.model.commands.TableSpaceConsistencyCheckStatement;
 import herddb.utils.DataAccessor;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 
 /**
@@ -48,6 +58,9 @@ import org.junit.Test;
  */
 public class DataConsistencyCheckTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void consistencyCheckSyntax() throws Exception {
 
@@ -218,4 +231,148 @@ public class DataConsistencyCheckTest {
             assertTrue("Check table with null value ", result.getOk());
         }
     }
+
+    @Test
+    public void checksumDoesNotDependOnInsertOrder() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            assertTrue(manager.waitForBootOfLocalTablespaces(10000));
+            execute(manager, "CREATE TABLESPACE 'tblspace1'", Collections.emptyList());
+            manager.waitForTablespace("tblspace1", 10000);
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 int primary key,s1 string)", Collections.emptyList());
+            execute(manager, "CREATE TABLE tblspace1.t2 (k1 int primary key,s1 string)", Collections.emptyList());
+            execute(manager, "CREATE TABLE tblspace1.t3 (k1 int primary key,s1 string)", Collections.emptyList());
+            for (int i = 0; i < 5000; i++) {
+                execute(manager, "INSERT INTO tblspace1.t1 (k1,s1) values (?,?)", Arrays.asList(i, "a" + i));
+                execute(manager, "INSERT INTO tblspace1.t2 (k1,s1) values (?,?)", Arrays.asList(4999 - i, "a" + (4999 - i)));
+                execute(manager, "INSERT INTO tblspace1.t3 (k1,s1) values (?,?)", Arrays.asList(i, "b" + i));
+            }
+            TableSpaceManager tableSpaceManager = manager.getTableSpaceManager("tblspace1");
+            TableChecksum checksum1 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t1");
+            TableChecksum checksum2 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t2");
+            TableChecksum checksum3 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t3");
+            assertEquals(TableDataChecksum.COMMUTATIVE_HASH_TYPE, checksum1.getDigestType());
+            assertEquals(5000, checksum1.getNumRecords());
+            assertEquals(5000, checksum3.getNumRecords());
+            assertEquals(checksum1.getDigest(), checksum2.getDigest());
+            assertNotEquals(checksum1.getDigest(), checksum3.getDigest());
+        }
+    }
+
+    @Test
+    public void checksumIsMaintainedOnUpdatesAndDeletes() throws Exception {
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            assertTrue(manager.waitForBootOfLocalTablespaces(10000));
+            execute(manager, "CREATE TABLESPACE 'tblspace1'", Collections.emptyList());
+            manager.waitForTablespace("tblspace1", 10000);
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 int primary key,s1 string)", Collections.emptyList());
+            execute(manager, "CREATE TABLE tblspace1.t2 (k1 int primary key,s1 string)", Collections.emptyList());
+            for (int i = 0; i < 1000; i++) {
+                execute(manager, "INSERT INTO tblspace1.t1 (k1,s1) values (?,?)", Arrays.asList(i, "a" + i));
+            }
+            // updates and deletes on records in memory
+            execute(manager, "UPDATE tblspace1.t1 set s1='b' WHERE k1<100", Collections.emptyList());
+            execute(manager, "DELETE FROM tblspace1.t1 WHERE k1>=900", Collections.emptyList());
+            // updates and deletes on records which are not in memory
+            manager.checkpoint();
+            execute(manager, "UPDATE tblspace1.t1 set s1='c' WHERE k1>=100 and k1<200", Collections.emptyList());
+            execute(manager, "DELETE FROM tblspace1.t1 WHERE k1>=800", Collections.emptyList());
+
+            for (int i = 0; i < 800; i++) {
+                String value = i < 100 ? "b" : (i < 200 ? "c" : "a" + i);
+                execute(manager, "INSERT INTO tblspace1.t2 (k1,s1) values (?,?)", Arrays.asList(i, value));
+            }
+            TableSpaceManager tableSpaceManager = manager.getTableSpaceManager("tblspace1");
+            TableChecksum checksum1 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t1");
+            TableChecksum checksum2 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t2");
+            assertEquals(800, checksum1.getNumRecords());
+            assertEquals(checksum2.getDigest(), checksum1.getDigest());
+            assertArrayEquals(checksum2.getBucketDigests(), checksum1.getBucketDigests());
+
+            // the digest is saved with the checkpoint
+            manager.checkpoint();
+            execute(manager, "INSERT INTO tblspace1.t1 (k1,s1) values (?,?)", Arrays.asList(5000, "z"));
+            execute(manager, "DELETE FROM tblspace1.t1 WHERE k1=5000", Collections.emptyList());
+            assertEquals(checksum1.getDigest(), TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t1").getDigest());
+
+            execute(manager, "TRUNCATE TABLE tblspace1.t1", Collections.emptyList());
+            TableChecksum truncated = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t1");
+            assertEquals(0, truncated.getNumRecords());
+            assertEquals(TableDigest.empty().getDigest(), truncated.getDigest());
+        }
+    }
+
+    private static DBManager startFileManager(Path baseDir) throws Exception {
+        DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null);
+        manager.setMaxLogicalPageSize(8 * 1024);
+        manager.start();
+        manager.waitForTablespace("tblspace1", 10000);
+        return manager;
+    }
+
+    /**
+     * Digest of t1 compared with the digest of a new table with the same contents
+     */
+    private static void assertDigestOfCopy(DBManager manager, String copy) throws Exception {
+        execute(manager, "CREATE TABLE tblspace1." + copy + " (k1 int primary key,s1 string)", Collections.emptyList());
+        List<DataAccessor> rows;
+        try (DataScanner scan = TestUtils.scan(manager, "SELECT k1, s1 FROM tblspace1.t1", Collections.emptyList())) {
+            rows = scan.consume();
+        }
+        for (DataAccessor row : rows) {
+            execute(manager, "INSERT INTO tblspace1." + copy + " (k1,s1) values (?,?)", Arrays.asList(row.get("k1"), row.get("s1")));
+        }
+        TableSpaceManager tableSpaceManager = manager.getTableSpaceManager("tblspace1");
+        TableChecksum checksum1 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", "t1");
+        TableChecksum checksum2 = TableDataChecksum.createChecksum(manager, null, tableSpaceManager, "tblspace1", copy);
+        assertEquals(rows.size(), checksum1.getNumRecords());
+        assertArrayEquals(checksum2.getBucketDigests(), checksum1.getBucketDigests());
+        assertEquals(checksum2.getDigest(), checksum1.getDigest());
+    }
+
+    @Test
+    public void checksumIsMaintainedOnRecordsNotInMemory() throws Exception {
+        Path baseDir = folder.newFolder().toPath();
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                new FileDataStorageManager(baseDir.resolve("data")),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null)) {
+            manager.setMaxLogicalPageSize(8 * 1024);
+            manager.start();
+            assertTrue(manager.waitForBootOfLocalTablespaces(10000));
+            execute(manager, "CREATE TABLESPACE 'tblspace1'", Collections.emptyList());
+            manager.waitForTablespace("tblspace1", 10000);
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 int primary key,s1 string)", Collections.emptyList());
+            for (int i = 0; i < 2000; i++) {
+                execute(manager, "INSERT INTO tblspace1.t1 (k1,s1) values (?,?)", Arrays.asList(i, "a" + i));
+            }
+            manager.checkpoint();
+        }
+        // after the boot no page is in memory, the previous values are read from the pages of the checkpoint
+        try (DBManager manager = startFileManager(baseDir)) {
+            for (int i = 0; i < 2000; i += 37) {
+                execute(manager, "UPDATE tblspace1.t1 set s1=? WHERE k1=?", Arrays.asList("b" + i, i));
+                execute(manager, "DELETE FROM tblspace1.t1 WHERE k1=?", Arrays.asList(i + 1));
+            }
+            assertDigestOfCopy(manager, "t2");
+            execute(manager, "DROP TABLE tblspace1.t2", Collections.emptyList());
+            manager.checkpoint();
+        }
+        // previous values are removed from the digest before it is saved with the checkpoint
+        try (DBManager manager = startFileManager(baseDir)) {
+            for (int i = 5; i < 2000; i += 41) {
+                execute(manager, "UPDATE tblspace1.t1 set s1=? WHERE k1=?", Arrays.asList("c" + i, i));
+            }
+            manager.checkpoint();
+        }
+        try (DBManager manager = startFileManager(baseDir)) {
+            assertDigestOfCopy(manager, "t3");
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.file;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.model.DataScanner;
+import herddb.model.Record;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.server.ServerConfiguration;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests on the "segments" layout of data and index pages
+ */
+public class SegmentedPageStorageTest {
+
+    private static final int ROWS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FileDataStorageManager newStorageManager(Path dataPath, Path tmpPath, boolean segmentedPages) {
+        return new FileDataStorageManager(dataPath, tmpPath,
+                ServerConfiguration.PROPERTY_DISK_SWAP_MAX_RECORDS_DEFAULT,
+                ServerConfiguration.PROPERTY_REQUIRE_FSYNC_DEFAULT,
+                false, false, true, true,
+                segmentedPages, 1024 * 1024, new NullStatsLogger());
+    }
+
+    private DBManager startManager(Path dataPath, boolean segmentedPages) throws Exception {
+        Path baseDir = dataPath.getParent();
+        DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(baseDir.resolve("metadata")),
+                newStorageManager(dataPath, baseDir.resolve("tmp"), segmentedPages),
+                new FileCommitLogManager(baseDir.resolve("logs")),
+                baseDir.resolve("tmp"), null);
+        manager.setMaxLogicalPageSize(16 * 1024);
+        manager.start();
+        return manager;
+    }
+
+    private static void createTable(DBManager manager) throws Exception {
+        String nodeId = manager.getNodeId();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+        execute(manager, "CREATE TABLE tblspace1.t1 (id int primary key, n1 int, s1 string)", Collections.emptyList());
+        execute(manager, "CREATE HASH INDEX ix1 ON tblspace1.t1(n1)", Collections.emptyList());
+        for (int i = 0; i < ROWS; i++) {
+            executeUpdate(manager, "INSERT INTO tblspace1.t1(id,n1,s1) values(?,?,?)", Arrays.asList(i, i % 10, "value" + i));
+        }
+    }
+
+    private static void assertRows(DBManager manager, String prefix) throws Exception {
+        try (DataScanner scan = scan(manager, "SELECT id, s1 FROM tblspace1.t1", Collections.emptyList())) {
+            List<DataAccessor> rows = scan.consume();
+            assertEquals(ROWS, rows.size());
+            for (DataAccessor row : rows) {
+                assertEquals(prefix + row.get("id"), row.get("s1").toString());
+            }
+        }
+        try (DataScanner scan = scan(manager, "SELECT id FROM tblspace1.t1 WHERE n1=?", Collections.singletonList(3))) {
+            assertEquals(ROWS / 10, scan.consume().size());
+        }
+    }
+
+    private static void updateAll(DBManager manager, String prefix) throws Exception {
+        for (int i = 0; i < ROWS; i++) {
+            executeUpdate(manager, "UPDATE tblspace1.t1 SET s1=? WHERE id=?", Arrays.asList(prefix + i, i));
+        }
+    }
+
+    private static long countFiles(DBManager manager, Path dataPath, String extension) throws Exception {
+        String tableSpaceUUID = manager.getTableSpaceManager("tblspace1").getTableSpaceUUID();
+        try (Stream<Path> files = Files.walk(dataPath.resolve(tableSpaceUUID + ".tablespace"))) {
+            return files.filter(p -> p.getFileName().toString().endsWith(extension)).count();
+        }
+    }
+
+    @Test
+    public void readWritePages() throws Exception {
+        Path base = folder.newFolder().toPath();
+        List<Record> page = Arrays.asList(new Record(Bytes.from_int(1), Bytes.from_int(2)));
+        byte[] indexPage = Bytes.intToByteArray(1);
+        try (FileDataStorageManager man = newStorageManager(base.resolve("data"), base.resolve("tmp"), true)) {
+            man.start();
+            man.initTablespace("test1");
+            man.initTable("test1", "table1");
+            man.writePage("test1", "table1", 1L, page);
+            assertEquals(page, man.readPage("test1", "table1", 1L));
+            assertTrue(man.getTablePageFiles("test1", "table1").isEmpty());
+
+            man.initIndex("test1", "index1");
+            man.writeIndexPage("test1", "index1", 1L, out -> out.writeArray(indexPage));
+            assertArrayEquals(indexPage, man.readIndexPage("test1", "index1", 1L, in -> in.readArray()));
+            assertTrue(man.getIndexPageFiles("test1", "index1").isEmpty());
+        }
+    }
+
+    @Test
+    public void restart() throws Exception {
+        Path dataPath = folder.newFolder().toPath().resolve("data");
+        try (DBManager manager = startManager(dataPath, true)) {
+            createTable(manager);
+            manager.checkpoint();
+            updateAll(manager, "a");
+            manager.checkpoint();
+            manager.checkpoint();
+            assertRows(manager, "a");
+            assertEquals(0, countFiles(manager, dataPath, FileDataStorageManager.FILEEXTENSION_PAGE));
+            assertTrue(countFiles(manager, dataPath, SegmentedPageStore.FILEEXTENSION_SEGMENT) > 0);
+        }
+        try (DBManager manager = startManager(dataPath, true)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            assertRows(manager, "a");
+            updateAll(manager, "b");
+            manager.checkpoint();
+            manager.checkpoint();
+            assertRows(manager, "b");
+        }
+        try (DBManager manager = startManager(dataPath, true)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            assertRows(manager, "b");
+        }
+    }
+
+    @Test
+    public void switchLayout() throws Exception {
+        Path dataPath = folder.newFolder().toPath().resolve("data");
+        try (DBManager manager = startManager(dataPath, false)) {
+            createTable(manager);
+            manager.checkpoint();
+            assertTrue(countFiles(manager, dataPath, FileDataStorageManager.FILEEXTENSION_PAGE) > 0);
+            assertEquals(0, countFiles(manager, dataPath, SegmentedPageStore.FILEEXTENSION_SEGMENT));
+        }
+        // pages in files are still read, changed pages move to segments
+        try (DBManager manager = startManager(dataPath, true)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            assertRows(manager, "value");
+            updateAll(manager, "a");
+            manager.checkpoint();
+            manager.checkpoint();
+            assertRows(manager, "a");
+            assertTrue(countFiles(manager, dataPath, SegmentedPageStore.FILEEXTENSION_SEGMENT) > 0);
+        }
+        // and back
+        try (DBManager manager = startManager(dataPath, false)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            assertRows(manager, "a");
+            updateAll(manager, "b");
+            manager.checkpoint();
+            manager.checkpoint();
+            assertRows(manager, "b");
+        }
+        try (DBManager manager = startManager(dataPath, false)) {
+            manager.waitForTablespace("tblspace1", 10000);
+            assertRows(manager, "b");
+        }
+    }
+}
@@ -30,10 +30,13 @@ import herddb.model.StatementEvaluationContext;
 import herddb.model.StatementExecutionException;
 import herddb.model.TableContext;
 import herddb.storage.DataStorageManagerException;
+import herddb.storage.IndexStatus;
 import herddb.utils.Bytes;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
 
 /**
  * Base test suite for {@link  BLinkKeyToPageIndex}
@@ -53,6 +56,105 @@ public class BLinkKeyToPageIndexTest extends KeyToPageIndexTest {
 
     }
 
+    @Test
+    public void bloomFilter() throws Exception {
+
+        int entries = 10000;
+
+        MemoryManager mem = new MemoryManager(5 * (1L << 20), 0, 10 * (128L << 10), (128L << 10));
+        try (MemoryDataStorageManager ds = new MemoryDataStorageManager()) {
+
+            LogSequenceNumber checkpoint = new LogSequenceNumber(1, 1);
+            try (BLinkKeyToPageIndex index = new BLinkKeyToPageIndex("tblspc", "tbl", mem, ds)) {
+                index.start(LogSequenceNumber.START_OF_TIME, true);
+
+                for (int i = 0; i < entries; ++i) {
+                    index.put(Bytes.from_int(i), 1L);
+                }
+                for (int i = 0; i < entries; ++i) {
+                    Assert.assertTrue(index.mightContainKey(Bytes.from_int(i)));
+                }
+                /* No false negatives even if the filter is saturated, the filter is resized at checkpoint */
+                index.checkpoint(checkpoint, false);
+                assertFalsePositives(index, entries);
+
+                /* Removed keys still give positives but must not be returned */
+                index.remove(Bytes.from_int(0));
+                Assert.assertNull(index.get(Bytes.from_int(0)));
+
+                checkpoint = new LogSequenceNumber(1, 2);
+                index.checkpoint(checkpoint, false);
+            }
+
+            /* Filter is reloaded on restart */
+            try (BLinkKeyToPageIndex index = new BLinkKeyToPageIndex("tblspc", "tbl", mem, ds)) {
+                index.start(checkpoint, false);
+                assertFalsePositives(index, entries);
+
+                index.put(Bytes.from_int(entries), 1L);
+                Assert.assertTrue(index.mightContainKey(Bytes.from_int(entries)));
+
+                index.truncate();
+                Assert.assertFalse(index.mightContainKey(Bytes.from_int(1)));
+                Assert.assertNull(index.get(Bytes.from_int(1)));
+            }
+        }
+
+    }
+
+    @Test
+    public void bloomFilterSizedAtBoot() throws Exception {
+
+        int entries = 10000;
+
+        MemoryManager mem = new MemoryManager(5 * (1L << 20), 0, 10 * (128L << 10), (128L << 10));
+        try (MemoryDataStorageManager ds = new MemoryDataStorageManager()) {
+
+            LogSequenceNumber checkpoint = new LogSequenceNumber(1, 1);
+            try (BLinkKeyToPageIndex index = new BLinkKeyToPageIndex("tblspc", "tbl", mem, ds)) {
+                index.start(LogSequenceNumber.START_OF_TIME, true);
+                for (int i = 0; i < entries; ++i) {
+                    index.put(Bytes.from_int(i), 1L);
+                }
+                index.checkpoint(checkpoint, false);
+            }
+
+            /* Rewrite the metadata as written by versions without the filter */
+            String indexName = BLinkKeyToPageIndex.deriveIndexName("tbl");
+            IndexStatus status = ds.getIndexStatus("tblspc", indexName, checkpoint);
+            byte[] metadata = BLinkKeyToPageIndex.MetadataSerializer.INSTANCE.write(
+                    BLinkKeyToPageIndex.MetadataSerializer.INSTANCE.read(status.indexData));
+            LogSequenceNumber withoutFilter = new LogSequenceNumber(1, 2);
+            ds.indexCheckpoint("tblspc", indexName,
+                    new IndexStatus(indexName, withoutFilter, status.newPageId, status.activePages, metadata), false);
+
+            /* The filter is built at boot from the keys and accounted in the used memory */
+            try (BLinkKeyToPageIndex index = new BLinkKeyToPageIndex("tblspc", "tbl", mem, ds)) {
+                index.start(withoutFilter, false);
+                assertFalsePositives(index, entries);
+
+                long withFilter = index.getUsedMemory();
+                index.truncate();
+                Assert.assertTrue("filter memory not reported: " + withFilter + " <= " + index.getUsedMemory(),
+                        withFilter - index.getUsedMemory() >= entries * 10 / 8);
+            }
+        }
+
+    }
+
+    private static void assertFalsePositives(KeyToPageIndex index, int entries) {
+        for (int i = 1; i < entries; ++i) {
+            Assert.assertTrue(index.mightContainKey(Bytes.from_int(i)));
+        }
+        int falsePositives = 0;
+        for (int i = entries; i < entries * 2; ++i) {
+            if (index.mightContainKey(Bytes.from_int(i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("too many false positives: " + falsePositives, falsePositives < entries / 20);
+    }
+
     private final class ResourceCloseKeyToPageIndex implements KeyToPageIndex {
 
         KeyToPageIndex delegate;
@@ -155,6 +257,11 @@ public class BLinkKeyToPageIndexTest extends KeyToPageIndexTest {
             return delegate.containsKey(key);
         }
 
+        @Override
+        public boolean mightContainKey(Bytes key) {
+            return delegate.mightContainKey(key);
+        }
+
         @Override
         public Long get(Bytes key) {
             return delegate.get(key);
@@ -0,0 +1,245 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.hnsw;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.file.FileCommitLogManager;
+import herddb.file.FileDataStorageManager;
+import herddb.file.FileMetadataStorageManager;
+import herddb.index.VectorIndexSearch;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.commands.ScanStatement;
+import herddb.sql.TranslatedQuery;
+import herddb.sql.expressions.CompiledFunction;
+import herddb.utils.Bytes;
+import herddb.utils.DataAccessor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests on HNSW vector indexes
+ */
+public class HNSWIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String QUERY = "SELECT n1 FROM tblspace1.tsql"
+            + " ORDER BY cosine_similarity(v1, cast(? as FLOAT ARRAY)) DESC LIMIT 2";
+
+    @Test
+    public void testGraphRecall() throws Exception {
+        Random random = new Random(1234);
+        int dimension = 16;
+        int size = 2000;
+        int k = 10;
+        HNSWGraph graph = new HNSWGraph(16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            float[] vector = randomVector(random, dimension);
+            vectors.add(vector);
+            graph.add(Bytes.from_int(i), vector);
+        }
+        assertEquals(size, graph.size());
+
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, dimension);
+            Set<Bytes> exact = exactNearest(vectors, query, k);
+            List<Bytes> result = graph.search(query, HNSWGraph.Metric.COSINE, k);
+            assertEquals(k, result.size());
+            for (Bytes key : result) {
+                if (exact.contains(key)) {
+                    found++;
+                }
+            }
+        }
+        double recall = found / (double) (queries * k);
+        assertTrue("recall " + recall, recall >= 0.9);
+
+        // deleted vectors are never returned
+        for (int i = 0; i < size; i += 2) {
+            graph.remove(Bytes.from_int(i));
+        }
+        assertEquals(size / 2, graph.size());
+        for (int q = 0; q < queries; q++) {
+            for (Bytes key : graph.search(randomVector(random, dimension), HNSWGraph.Metric.EUCLIDEAN, k)) {
+                assertEquals(1, key.to_int() % 2);
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildOnlyOnDemand() throws Exception {
+        Random random = new Random(1234);
+        int dimension = 8;
+        int size = 3000;
+        HNSWGraph graph = new HNSWGraph(16, 100);
+        for (int i = 0; i < size; i++) {
+            graph.add(Bytes.from_int(i), randomVector(random, dimension));
+        }
+        assertFalse(graph.rebuildIfNeeded());
+
+        // deletes only mark the nodes
+        for (int i = 0; i < size; i++) {
+            if (i % 4 != 0) {
+                graph.remove(Bytes.from_int(i));
+            }
+        }
+        assertEquals(size / 4, graph.size());
+        assertEquals(size - size / 4, graph.deletedNodes());
+
+        assertTrue(graph.rebuildIfNeeded());
+        assertEquals(size / 4, graph.size());
+        assertEquals(0, graph.deletedNodes());
+        assertFalse(graph.rebuildIfNeeded());
+        for (int q = 0; q < 20; q++) {
+            List<Bytes> result = graph.search(randomVector(random, dimension), HNSWGraph.Metric.COSINE, 10);
+            assertEquals(10, result.size());
+            for (Bytes key : result) {
+                assertEquals(0, key.to_int() % 4);
+            }
+        }
+    }
+
+    @Test
+    public void testVectorSearchAndRecovery() throws Exception {
+        Path dataPath = folder.newFolder("data").toPath();
+        Path logsPath = folder.newFolder("logs").toPath();
+        Path metadataPath = folder.newFolder("metadata").toPath();
+        Path tmoDir = folder.newFolder("tmoDir").toPath();
+        float[] query = {1f, 0f, 0f};
+
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 string primary key, n1 int, v1 floata)", Collections.emptyList());
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1,v1) values(?,?,?)", Arrays.asList("a", 1, new float[]{1f, 0.1f, 0f}));
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1,v1) values(?,?,?)", Arrays.asList("b", 2, new float[]{0f, 1f, 0f}));
+            execute(manager, "CREATE HNSW INDEX ixv ON tblspace1.tsql(v1)", Collections.emptyList());
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1,v1) values(?,?,?)", Arrays.asList("c", 3, new float[]{1f, 0.2f, 0f}));
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1,v1) values(?,?,?)", Arrays.asList("d", 4, new float[]{0f, 0f, 1f}));
+
+            TranslatedQuery translated = manager.getPlanner().translate("tblspace1", QUERY,
+                    Arrays.<Object>asList(query), true, true, false, -1);
+            ScanStatement scanStatement = translated.plan.originalRoot.unwrap(ScanStatement.class);
+            assertTrue(translated.plan.originalRoot.toString(),
+                    scanStatement.getPredicate().getIndexOperation() instanceof VectorIndexSearch);
+
+            assertEquals(Arrays.asList(1, 3), search(manager, query));
+
+            execute(manager, "UPDATE tblspace1.tsql set v1=? WHERE k1=?", Arrays.asList(new float[]{1f, 0f, 0f}, "d"));
+            assertEquals(Arrays.asList(4, 1), search(manager, query));
+            execute(manager, "DELETE FROM tblspace1.tsql WHERE k1=?", Arrays.asList("a"));
+            assertEquals(Arrays.asList(4, 3), search(manager, query));
+
+            manager.checkpoint();
+        }
+
+        try (DBManager manager = new DBManager("localhost",
+                new FileMetadataStorageManager(metadataPath),
+                new FileDataStorageManager(dataPath),
+                new FileCommitLogManager(logsPath),
+                tmoDir, null)) {
+            manager.start();
+            assertTrue(manager.waitForTablespace("tblspace1", 10000));
+            assertEquals(Arrays.asList(4, 3), search(manager, query));
+
+            // other orderings are not served by the index
+            TranslatedQuery translated = manager.getPlanner().translate("tblspace1", "SELECT n1 FROM tblspace1.tsql"
+                    + " ORDER BY cosine_similarity(v1, cast(? as FLOAT ARRAY)) LIMIT 2",
+                    Arrays.<Object>asList(query), true, true, false, -1);
+            ScanStatement scanStatement = translated.plan.originalRoot.unwrap(ScanStatement.class);
+            assertFalse(scanStatement.getPredicate() != null
+                    && scanStatement.getPredicate().getIndexOperation() instanceof VectorIndexSearch);
+
+            // the graph is built with the cosine distance, other functions read the whole table
+            for (String query2 : Arrays.asList(
+                    "SELECT n1 FROM tblspace1.tsql ORDER BY dot_product(v1, cast(? as FLOAT ARRAY)) DESC LIMIT 2",
+                    "SELECT n1 FROM tblspace1.tsql ORDER BY euclidean_distance(v1, cast(? as FLOAT ARRAY)) LIMIT 2")) {
+                translated = manager.getPlanner().translate("tblspace1", query2,
+                        Arrays.<Object>asList(query), true, true, false, -1);
+                scanStatement = translated.plan.originalRoot.unwrap(ScanStatement.class);
+                assertFalse(query2, scanStatement.getPredicate() != null
+                        && scanStatement.getPredicate().getIndexOperation() instanceof VectorIndexSearch);
+            }
+        }
+    }
+
+    private static List<Integer> search(DBManager manager, float[] query) throws Exception {
+        List<Integer> result = new ArrayList<>();
+        try (DataScanner scan = scan(manager, QUERY, Arrays.<Object>asList(query))) {
+            for (DataAccessor row : scan.consume()) {
+                result.add((Integer) row.get(0));
+            }
+        }
+        return result;
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static Set<Bytes> exactNearest(List<float[]> vectors, float[] query, int k) {
+        Integer[] ids = new Integer[vectors.size()];
+        float[] similarities = new float[vectors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            similarities[i] = CompiledFunction.cosineSimilarity(query, vectors.get(i));
+        }
+        Arrays.sort(ids, (a, b) -> Float.compare(similarities[b], similarities[a]));
+        Set<Bytes> result = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            result.add(Bytes.from_int(ids[i]));
+        }
+        return result;
+    }
+}
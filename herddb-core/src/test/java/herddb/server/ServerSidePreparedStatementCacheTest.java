@@ -20,9 +20,25 @@
 
 package herddb.server;
 
+import static herddb.core.TestUtils.execute;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.sql.AbstractSQLPlanner;
+import herddb.sql.TranslatedQuery;
+import herddb.utils.RawString;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
 
@@ -64,4 +80,40 @@ public class ServerSidePreparedStatementCacheTest {
         assertTrue(oneEvicted);
     }
 
+    @Test
+    public void testBoundPlan() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 string primary key,n1 int)", Collections.emptyList());
+
+            AbstractSQLPlanner planner = manager.getPlanner();
+            ServerSidePreparedStatementCache instance = new ServerSidePreparedStatementCache(Long.MAX_VALUE);
+            long id = instance.prepare("tblspace1", "SELECT n1 FROM tsql WHERE k1=?");
+            assertNull(instance.translate(planner, "wrong_ts", id, Arrays.asList("a"), true, false, 0));
+
+            TranslatedQuery first = instance.translate(planner, "tblspace1", id, Arrays.asList("a"), true, false, 0);
+            assertTrue(first.cachedPlan);
+            TranslatedQuery second = instance.translate(planner, "tblspace1", id, Arrays.asList("b"), true, false, 0);
+            assertSame(first.plan, second.plan);
+            // string parameters are converted by the context
+            assertEquals(Arrays.asList(RawString.of("b")), second.context.jdbcParameters);
+
+            // a different kind of execution needs another plan
+            TranslatedQuery limited = instance.translate(planner, "tblspace1", id, Arrays.asList("b"), true, false, 10);
+            assertNotSame(first.plan, limited.plan);
+
+            // DDL invalidates the plans
+            long generation = planner.getCacheGeneration();
+            execute(manager, "CREATE INDEX ix1 ON tblspace1.tsql(n1)", Collections.emptyList());
+            assertTrue(planner.getCacheGeneration() > generation);
+            TranslatedQuery afterDDL = instance.translate(planner, "tblspace1", id, Arrays.asList("a"), true, false, 10);
+            assertNotSame(limited.plan, afterDDL.plan);
+            assertSame(afterDDL.plan, instance.translate(planner, "tblspace1", id, Arrays.asList("a"), true, false, 10).plan);
+        }
+    }
+
 }
@@ -34,6 +34,8 @@ import herddb.model.TableSpace;
 import herddb.utils.TestUtils;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -155,6 +157,58 @@ public class SimpleClientScanTest {
         }
     }
 
+    @Test
+    public void scanStreaming() throws Exception {
+        try (Server server = new Server(newServerConfigurationWithAutoPort(folder.newFolder().toPath()))) {
+            server.start();
+            server.waitForStandaloneBoot();
+
+            ClientConfiguration clientConfiguration = new ClientConfiguration(folder.newFolder().toPath());
+            clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS, 4);
+            try (HDBClient client = new HDBClient(clientConfiguration);
+                    HDBConnection connection = client.openConnection()) {
+                client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+
+                long resultCreateTable = connection.executeUpdate(TableSpace.DEFAULT,
+                        "CREATE TABLE mytable (id int primary key, n1 long, n2 integer)", 0, false, true,
+                        Collections.emptyList()).updateCount;
+                Assert.assertEquals(1, resultCreateTable);
+
+                for (int i = 0; i < 99; i++) {
+                    Assert.assertEquals(1, connection.executeUpdate(TableSpace.DEFAULT,
+                            "INSERT INTO mytable (id,n1,n2) values(?,?,?)", 0, false, true, Arrays.
+                                    asList(i, 1, 2)).updateCount);
+                }
+
+                // chunks are pushed by the server, they must be consumed in order
+                for (int fetchSize : new int[]{1, 7, 10, 99, 200}) {
+                    List<Map<String, Object>> result = connection.executeScan(TableSpace.DEFAULT,
+                            "SELECT * FROM mytable ORDER BY id", true, Collections.emptyList(), 0, 0, fetchSize, true).consume();
+                    assertEquals(99, result.size());
+                    for (int i = 0; i < 99; i++) {
+                        assertEquals(i, result.get(i).get("id"));
+                    }
+                }
+
+                // maxRows
+                assertEquals(17, connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true, Collections.
+                        emptyList(), 0, 17, 1, true).consume().size());
+
+                checkNoScannersOnTheServer(server);
+
+                checkCloseResultSetNotFullyScanned(connection, server, false);
+
+                checkNoScannersOnTheServer(server);
+
+                checkCloseResultSetNotFullyScanned(connection, server, true);
+
+                checkNoScannersOnTheServer(server);
+            }
+
+            checkNoScannersOnTheServer(server);
+        }
+    }
+
     private void checkNoScannersOnTheServer(final Server server) throws Exception {
         TestUtils.waitForCondition(() -> {
             for (ServerSideConnectionPeer peer : server.getConnections().values()) {
@@ -0,0 +1,157 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.scan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import herddb.core.DBManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.TransactionResult;
+import herddb.model.commands.BeginTransactionStatement;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.planner.AggregatedTableScanOp;
+import herddb.model.planner.PlannerOp;
+import herddb.utils.DataAccessor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Aggregations computed while scanning the table
+ */
+public class AggregatedTableScanTest {
+
+    @Test
+    public void testAggregations() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 int primary key, n1 int, l1 long, s1 string)", Collections.emptyList());
+
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*), MIN(n1) FROM tblspace1.tsql", Collections.emptyList())) {
+                List<DataAccessor> result = scan.consume();
+                assertEquals(1, result.size());
+                assertEquals(0L, result.get(0).get(0));
+                assertNull(result.get(0).get(1));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                execute(manager, "INSERT INTO tblspace1.tsql (k1, n1, l1, s1) values(?, ?, ?, ?)",
+                        Arrays.asList(i, i, i * 1_000_000_000_000L, "s" + (i % 3)));
+            }
+            execute(manager, "INSERT INTO tblspace1.tsql (k1, s1) values(?, ?)", Arrays.asList(10, "s0"));
+
+            PlannerOp plan = manager.getPlanner().translate("tblspace1", "SELECT COUNT(*) FROM tblspace1.tsql",
+                    Collections.emptyList(), true, true, true, -1).plan.originalRoot;
+            assertTrue(plan.toString(), plan instanceof AggregatedTableScanOp);
+
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList())) {
+                List<DataAccessor> result = scan.consume();
+                assertEquals(1, result.size());
+                assertEquals(11L, result.get(0).get(0));
+            }
+
+            try (DataScanner scan = scan(manager, "SELECT SUM(n1), MIN(n1), MAX(n1), SUM(l1), MAX(l1), MAX(k1), COUNT(*) FROM tblspace1.tsql", Collections.emptyList())) {
+                List<DataAccessor> result = scan.consume();
+                assertEquals(1, result.size());
+                DataAccessor row = result.get(0);
+                assertEquals(45L, ((Number) row.get(0)).longValue());
+                assertEquals(0, row.get(1));
+                assertEquals(9, row.get(2));
+                assertEquals(45_000_000_000_000L, ((Number) row.get(3)).longValue());
+                assertEquals(9_000_000_000_000L, row.get(4));
+                assertEquals(10, row.get(5));
+                assertEquals(11L, row.get(6));
+            }
+
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*), SUM(n1) FROM tblspace1.tsql WHERE n1 >= ?", Arrays.asList(5))) {
+                List<DataAccessor> result = scan.consume();
+                assertEquals(1, result.size());
+                assertEquals(5L, result.get(0).get(0));
+                assertEquals(35L, ((Number) result.get(0).get(1)).longValue());
+            }
+
+            try (DataScanner scan = scan(manager, "SELECT s1, COUNT(*), MAX(n1) FROM tblspace1.tsql GROUP BY s1", Collections.emptyList())) {
+                Map<String, DataAccessor> groups = new HashMap<>();
+                for (DataAccessor row : scan.consume()) {
+                    groups.put(row.get(0).toString(), row);
+                }
+                assertEquals(3, groups.size());
+                assertEquals(5L, groups.get("s0").get(1));
+                assertEquals(9, groups.get("s0").get(2));
+                assertEquals(3L, groups.get("s1").get(1));
+                assertEquals(7, groups.get("s1").get(2));
+                assertEquals(3L, groups.get("s2").get(1));
+                assertEquals(8, groups.get("s2").get(2));
+            }
+
+            // records inserted by a transaction are visible only inside the transaction
+            long tx = beginTransaction(manager, "tblspace1");
+            execute(manager, "INSERT INTO tblspace1.tsql (k1, n1) values(?, ?)", Arrays.asList(11, 100), new TransactionContext(tx));
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList())) {
+                assertEquals(11L, scan.consume().get(0).get(0));
+            }
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*), MAX(n1) FROM tblspace1.tsql", Collections.emptyList(), new TransactionContext(tx))) {
+                List<DataAccessor> result = scan.consume();
+                assertEquals(12L, result.get(0).get(0));
+                assertEquals(100, result.get(0).get(1));
+            }
+            commitTransaction(manager, "tblspace1", tx);
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList())) {
+                assertEquals(12L, scan.consume().get(0).get(0));
+            }
+
+            // a snapshot counts the records which existed when it started
+            long snapshot = ((TransactionResult) manager.executeStatement(new BeginTransactionStatement("tblspace1", true),
+                    StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION)).getTransactionId();
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList(), new TransactionContext(snapshot))) {
+                assertEquals(12L, scan.consume().get(0).get(0));
+            }
+            execute(manager, "DELETE FROM tblspace1.tsql WHERE k1=?", Arrays.asList(0));
+            execute(manager, "DELETE FROM tblspace1.tsql WHERE k1=?", Arrays.asList(1));
+            execute(manager, "INSERT INTO tblspace1.tsql (k1, n1) values(?, ?)", Arrays.asList(12, 12));
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList())) {
+                assertEquals(11L, scan.consume().get(0).get(0));
+            }
+            try (DataScanner scan = scan(manager, "SELECT COUNT(*) FROM tblspace1.tsql", Collections.emptyList(), new TransactionContext(snapshot))) {
+                assertEquals(12L, scan.consume().get(0).get(0));
+            }
+            commitTransaction(manager, "tblspace1", snapshot);
+        }
+    }
+}
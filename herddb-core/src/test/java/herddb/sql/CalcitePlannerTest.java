@@ -27,9 +27,12 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import herddb.codec.DataAccessorForFullRecord;
 import herddb.core.DBManager;
 import herddb.mem.MemoryCommitLogManager;
@@ -38,6 +41,7 @@ import herddb.mem.MemoryMetadataStorageManager;
 import herddb.model.Column;
 import herddb.model.ColumnTypes;
 import herddb.model.DataScanner;
+import herddb.model.ExecutionPlan;
 import herddb.model.Projection;
 import herddb.model.ScanResult;
 import herddb.model.StatementEvaluationContext;
@@ -87,6 +91,46 @@ import org.junit.Test;
 
 public class CalcitePlannerTest {
 
+    @Test
+    public void ddlEvictsOnlyDependentPlans() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.t1 (k1 string primary key,n1 int)", Collections.emptyList());
+            execute(manager, "CREATE TABLE tblspace1.t2 (k1 string primary key,n1 int)", Collections.emptyList());
+            AbstractSQLPlanner planner = manager.getPlanner();
+            String query1 = "SELECT * FROM tblspace1.t1 WHERE n1=?";
+            String query2 = "SELECT * FROM t2 WHERE n1=?";
+            ExecutionPlan plan1 = planner.translate("tblspace1", query1, Collections.emptyList(), true, true, false, -1).plan;
+            ExecutionPlan plan2 = planner.translate("tblspace1", query2, Collections.emptyList(), true, true, false, -1).plan;
+            assertSame(plan1, planner.translate("tblspace1", query1, Collections.emptyList(), true, true, false, -1).plan);
+
+            // a new table does not affect existing plans
+            execute(manager, "CREATE TABLE tblspace1.t3 (k1 string primary key,n1 int)", Collections.emptyList());
+            assertSame(plan1, planner.translate("tblspace1", query1, Collections.emptyList(), true, true, false, -1).plan);
+            assertSame(plan2, planner.translate("tblspace1", query2, Collections.emptyList(), true, true, false, -1).plan);
+
+            // an index on t1 evicts only the plans on t1
+            long evictedBefore = planner.getCacheEvictions(PlansCache.EvictionCause.TABLE);
+            execute(manager, "CREATE INDEX ix1 ON tblspace1.t1(n1)", Collections.emptyList());
+            assertNotSame(plan1, planner.translate("tblspace1", query1, Collections.emptyList(), true, true, false, -1).plan);
+            assertSame(plan2, planner.translate("tblspace1", query2, Collections.emptyList(), true, true, false, -1).plan);
+            assertTrue(planner.getCacheEvictions(PlansCache.EvictionCause.TABLE) > evictedBefore);
+
+            // the table of the default tablespace is tracked as well
+            execute(manager, "DROP TABLE tblspace1.t2", Collections.emptyList());
+            try {
+                planner.translate("tblspace1", query2, Collections.emptyList(), true, true, false, -1);
+                fail();
+            } catch (StatementExecutionException ok) {
+            }
+        }
+    }
+
     @Test
     public void simplePlansTests() throws Exception {
         String nodeId = "localhost";
@@ -563,6 +607,66 @@ public class CalcitePlannerTest {
         }
     }
 
+    @Test
+    public void explainAnalyzeTest() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 string primary key,"
+                    + "s1 string, n1 int)", Collections.emptyList());
+            for (int i = 0; i < 10; i++) {
+                execute(manager, "INSERT INTO tblspace1.tsql (k1, s1, n1) values(?, ?, ?)",
+                        Arrays.asList("k" + i, "s" + (i % 3), i));
+            }
+
+            try (DataScanner scan = scan(manager, "EXPLAIN ANALYZE SELECT * FROM tblspace1.tsql WHERE k1=?", Arrays.asList("k1"))) {
+                List<DataAccessor> consume = scan.consume();
+                assertEquals(1, consume.size());
+                DataAccessor op = consume.get(0);
+                assertTrue(op.get("operator").toString().contains("tblspace1.tsql"));
+                assertEquals(1L, op.get("rowsout"));
+                assertEquals(1L, op.get("rowsscanned"));
+                assertEquals("PRIMARY KEY (PrimaryIndexSeek)", op.get("index").toString());
+                assertEquals(0L, op.get("spilledbytes"));
+            }
+
+            try (DataScanner scan = scan(manager, "EXPLAIN ANALYZE SELECT s1, avg(n1) FROM tblspace1.tsql WHERE n1 >= 1 GROUP BY s1", Collections.emptyList())) {
+                List<DataAccessor> consume = scan.consume();
+                assertTrue(consume.size() > 1);
+                consume.forEach(d -> {
+                    System.out.println("op:" + d.toMap());
+                });
+                // the root of the plan returns the groups
+                assertEquals(3L, consume.get(0).get("rowsout"));
+                DataAccessor aggregate = consume.stream()
+                        .filter(d -> d.get("operator").toString().trim().startsWith("AggregateOp"))
+                        .findFirst()
+                        .get();
+                assertEquals(9L, aggregate.get("rowsin"));
+                assertEquals(3L, aggregate.get("rowsout"));
+                // the whole table is read by the leaf of the plan
+                DataAccessor leaf = consume.get(consume.size() - 1);
+                assertTrue(leaf.get("operator").toString().startsWith("  "));
+                assertEquals(10L, leaf.get("rowsscanned"));
+                assertNull(leaf.get("index"));
+                long scanned = 0;
+                for (DataAccessor d : consume) {
+                    scanned += (Long) d.get("rowsscanned");
+                }
+                assertEquals(10L, scanned);
+            }
+
+            // the plan is not altered by EXPLAIN ANALYZE
+            try (DataScanner scan = scan(manager, "SELECT s1, avg(n1) FROM tblspace1.tsql WHERE n1 >= 1 GROUP BY s1", Collections.emptyList())) {
+                assertEquals(3, scan.consume().size());
+            }
+        }
+    }
+
     @Test
     public void showCreateTableTest() throws Exception {
         String nodeId = "localhost";
@@ -0,0 +1,202 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.sql;
+
+import static herddb.core.TestUtils.beginTransaction;
+import static herddb.core.TestUtils.commitTransaction;
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeThat;
+import herddb.core.DBManager;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TableSpace;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.model.planner.IndexNestedLoopJoinOp;
+import herddb.model.planner.PlannerOp;
+import herddb.model.planner.ProjectOp;
+import herddb.model.planner.SortOp;
+import herddb.utils.DataAccessor;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests on joins executed with lookups on the primary key or on a secondary
+ * index of the inner table
+ */
+public class IndexNestedLoopJoinTest {
+
+    private static IndexNestedLoopJoinOp findIndexJoin(DBManager manager, String query) throws Exception {
+        TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query, Collections.emptyList(), true, true, false, -1);
+        PlannerOp op = translated.plan.originalRoot;
+        while (true) {
+            if (op instanceof IndexNestedLoopJoinOp) {
+                return (IndexNestedLoopJoinOp) op;
+            } else if (op instanceof ProjectOp) {
+                op = ((ProjectOp) op).getInput();
+            } else if (op instanceof SortOp) {
+                op = ((SortOp) op).getInput();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    private static DBManager startManager() throws Exception {
+        String nodeId = "localhost";
+        DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null);
+        manager.start();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+
+        execute(manager, "CREATE TABLE tblspace1.customers (cid int primary key, code string, name string)", Collections.emptyList());
+        execute(manager, "CREATE TABLE tblspace1.orders (oid int primary key, cid int, ccode string, amount int)", Collections.emptyList());
+        execute(manager, "CREATE HASH INDEX customers_code ON tblspace1.customers(code)", Collections.emptyList());
+
+        executeUpdate(manager, "INSERT INTO tblspace1.customers (cid,code,name) values(1,'c1','alice')", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.customers (cid,code,name) values(2,'c2','bob')", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.customers (cid,code,name) values(3,'c3','carol')", Collections.emptyList());
+
+        executeUpdate(manager, "INSERT INTO tblspace1.orders (oid,cid,ccode,amount) values(10,1,'c1',100)", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.orders (oid,cid,ccode,amount) values(11,1,'c1',110)", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.orders (oid,cid,ccode,amount) values(12,2,'c2',120)", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.orders (oid,cid,ccode,amount) values(13,4,'c4',130)", Collections.emptyList());
+        executeUpdate(manager, "INSERT INTO tblspace1.orders (oid,cid,ccode,amount) values(14,null,null,140)", Collections.emptyList());
+        return manager;
+    }
+
+    @Test
+    public void joinOnPrimaryKey() throws Exception {
+        try (DBManager manager = startManager()) {
+            assumeThat(manager.getPlanner(), instanceOf(CalcitePlanner.class));
+
+            String query = "SELECT o.oid, c.name FROM tblspace1.orders o"
+                    + " JOIN tblspace1.customers c ON o.cid = c.cid"
+                    + " ORDER BY o.oid";
+            IndexNestedLoopJoinOp join = findIndexJoin(manager, query);
+            assertNotNull(join);
+            assertEquals("customers", join.getTableName());
+            assertNull(join.getIndexName());
+
+            List<DataAccessor> tuples = scan(manager, query, Collections.emptyList()).consumeAndClose();
+            assertEquals(3, tuples.size());
+            assertEquals(10, tuples.get(0).get("oid"));
+            assertEquals("alice", tuples.get(0).get("name").toString());
+            assertEquals(11, tuples.get(1).get("oid"));
+            assertEquals("alice", tuples.get(1).get("name").toString());
+            assertEquals(12, tuples.get(2).get("oid"));
+            assertEquals("bob", tuples.get(2).get("name").toString());
+
+            // filter on the inner table
+            tuples = scan(manager, "SELECT o.oid, c.name FROM tblspace1.orders o"
+                    + " JOIN tblspace1.customers c ON o.cid = c.cid AND c.name <> 'alice'", Collections.emptyList()).consumeAndClose();
+            assertEquals(1, tuples.size());
+            assertEquals(12, tuples.get(0).get("oid"));
+        }
+    }
+
+    @Test
+    public void leftJoinOnPrimaryKey() throws Exception {
+        try (DBManager manager = startManager()) {
+            assumeThat(manager.getPlanner(), instanceOf(CalcitePlanner.class));
+
+            String query = "SELECT o.oid, c.name FROM tblspace1.orders o"
+                    + " LEFT JOIN tblspace1.customers c ON o.cid = c.cid"
+                    + " ORDER BY o.oid";
+            assertNotNull(findIndexJoin(manager, query));
+
+            List<DataAccessor> tuples = scan(manager, query, Collections.emptyList()).consumeAndClose();
+            assertEquals(5, tuples.size());
+            assertEquals("alice", tuples.get(0).get("name").toString());
+            assertEquals("alice", tuples.get(1).get("name").toString());
+            assertEquals("bob", tuples.get(2).get("name").toString());
+            // no such customer
+            assertEquals(13, tuples.get(3).get("oid"));
+            assertNull(tuples.get(3).get("name"));
+            // null key
+            assertEquals(14, tuples.get(4).get("oid"));
+            assertNull(tuples.get(4).get("name"));
+        }
+    }
+
+    @Test
+    public void joinOnSecondaryIndex() throws Exception {
+        try (DBManager manager = startManager()) {
+            assumeThat(manager.getPlanner(), instanceOf(CalcitePlanner.class));
+
+            String query = "SELECT o.oid, c.cid, c.name FROM tblspace1.orders o"
+                    + " JOIN tblspace1.customers c ON o.ccode = c.code"
+                    + " ORDER BY o.oid";
+            IndexNestedLoopJoinOp join = findIndexJoin(manager, query);
+            assertNotNull(join);
+            assertEquals("customers_code", join.getIndexName());
+
+            List<DataAccessor> tuples = scan(manager, query, Collections.emptyList()).consumeAndClose();
+            assertEquals(3, tuples.size());
+            assertEquals(1, tuples.get(0).get("cid"));
+            assertEquals(1, tuples.get(1).get("cid"));
+            assertEquals(2, tuples.get(2).get("cid"));
+            assertEquals("bob", tuples.get(2).get("name").toString());
+
+            // the index is updated
+            executeUpdate(manager, "UPDATE tblspace1.customers SET code='c4' WHERE cid=3", Collections.emptyList());
+            tuples = scan(manager, query, Collections.emptyList()).consumeAndClose();
+            assertEquals(4, tuples.size());
+            assertEquals(13, tuples.get(3).get("oid"));
+            assertEquals("carol", tuples.get(3).get("name").toString());
+        }
+    }
+
+    @Test
+    public void lookupsSeeChangesOfTheTransaction() throws Exception {
+        try (DBManager manager = startManager()) {
+            assumeThat(manager.getPlanner(), instanceOf(CalcitePlanner.class));
+
+            String query = "SELECT o.oid, c.name FROM tblspace1.orders o"
+                    + " JOIN tblspace1.customers c ON o.cid = c.cid"
+                    + " WHERE o.oid = 13";
+            assertNotNull(findIndexJoin(manager, query));
+            assertEquals(0, scan(manager, query, Collections.emptyList()).consumeAndClose().size());
+
+            long tx = beginTransaction(manager, "tblspace1");
+            TransactionContext transactionContext = new TransactionContext(tx);
+            executeUpdate(manager, "INSERT INTO tblspace1.customers (cid,code,name) values(4,'c4','dave')", Collections.emptyList(), transactionContext);
+            List<DataAccessor> tuples = scan(manager, query, Collections.emptyList(), transactionContext).consumeAndClose();
+            assertEquals(1, tuples.size());
+            assertEquals("dave", tuples.get(0).get("name").toString());
+
+            // not committed
+            assertEquals(0, scan(manager, query, Collections.emptyList()).consumeAndClose().size());
+            commitTransaction(manager, "tblspace1", tx);
+            assertEquals(1, scan(manager, query, Collections.emptyList()).consumeAndClose().size());
+        }
+    }
+}
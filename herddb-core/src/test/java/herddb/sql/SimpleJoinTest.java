@@ -45,6 +45,7 @@ import herddb.model.planner.NestedLoopJoinOp;
 import herddb.model.planner.ProjectOp;
 import herddb.model.planner.SimpleScanOp;
 import herddb.model.planner.SortOp;
+import herddb.model.planner.TopNOp;
 import herddb.utils.DataAccessor;
 import herddb.utils.MapUtils;
 import herddb.utils.RawString;
@@ -1286,4 +1287,55 @@ public class SimpleJoinTest {
         }
 
     }
+
+    @Test
+    public void testTopNOverJoin() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            assumeThat(manager.getPlanner(), instanceOf(CalcitePlanner.class));
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.table1 (k1 string primary key,n1 int,s1 string)", Collections.emptyList());
+            execute(manager, "CREATE TABLE tblspace1.table2 (k2 string primary key,n2 int,s2 string)", Collections.emptyList());
+            for (int i = 0; i < 20; i++) {
+                execute(manager, "INSERT INTO tblspace1.table1 (k1,n1,s1) values(?,?,?)", Arrays.asList("a" + i, i % 7, "A" + (i % 3)));
+                execute(manager, "INSERT INTO tblspace1.table2 (k2,n2,s2) values(?,?,?)", Arrays.asList("b" + i, i, "A" + (i % 5)));
+            }
+
+            String query = "SELECT t1.k1, t2.k2, t1.n1 + t2.n2 as total FROM"
+                    + " tblspace1.table1 t1"
+                    + " JOIN tblspace1.table2 t2"
+                    + " ON t1.s1 = t2.s2"
+                    + " ORDER BY total DESC, t1.k1, t2.k2";
+            TranslatedQuery translated = manager.getPlanner().translate(TableSpace.DEFAULT, query + " LIMIT 5 OFFSET 2",
+                    Collections.emptyList(), true, true, false, -1);
+            assertThat(translated.plan.originalRoot, instanceOf(TopNOp.class));
+
+            List<DataAccessor> all;
+            try (DataScanner scan = scan(manager, query, Collections.emptyList())) {
+                all = scan.consume();
+            }
+            assertTrue(all.size() > 7);
+            List<DataAccessor> limited;
+            try (DataScanner scan = scan(manager, query + " LIMIT 5 OFFSET 2", Collections.emptyList())) {
+                limited = scan.consume();
+            }
+            assertEquals(5, limited.size());
+            for (int i = 0; i < limited.size(); i++) {
+                assertEquals(all.get(i + 2).toMap(), limited.get(i).toMap());
+            }
+
+            // LIMIT with a parameter
+            try (DataScanner scan = scan(manager, query + " LIMIT ?", Arrays.asList(3))) {
+                limited = scan.consume();
+            }
+            assertEquals(3, limited.size());
+            for (int i = 0; i < limited.size(); i++) {
+                assertEquals(all.get(i).toMap(), limited.get(i).toMap());
+            }
+        }
+    }
 }
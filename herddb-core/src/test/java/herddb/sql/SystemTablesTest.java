@@ -37,6 +37,7 @@ import herddb.model.commands.CreateTableSpaceStatement;
 import herddb.utils.DataAccessor;
 import herddb.utils.RawString;
 import java.sql.DatabaseMetaData;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -97,6 +98,13 @@ public class SystemTablesTest {
                 assertTrue(records.stream().filter(t -> t.get("table_name").equals("tsql2")).findAny().isPresent());
             }
 
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.systablespacememory", Collections.emptyList())) {
+                List<DataAccessor> records = scan.consume();
+                assertEquals(1, records.size());
+                assertEquals(RawString.of("tblspace1"), records.get(0).get("tablespace"));
+                assertEquals(0, records.get(0).get("quotapriority"));
+            }
+
             try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysindexes order by index_name",
                     Collections.emptyList())) {
                 List<DataAccessor> records = scan.consume();
@@ -181,7 +189,7 @@ public class SystemTablesTest {
                         .findAny()
                         .isPresent());
                 // to be changed every time we add a new system table
-                assertEquals(28, records.size());
+                assertEquals(31, records.size());
             }
 
             try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysindexcolumns where table_name like '%tsql' order by index_name, column_name",
@@ -428,4 +436,53 @@ public class SystemTablesTest {
             }
         }
     }
+
+    @Test
+    public void testSysQueryStats() throws Exception {
+        String nodeId = "localhost";
+        try (DBManager manager = new DBManager(nodeId, new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null)) {
+            manager.start();
+            CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+            manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+            manager.waitForTablespace("tblspace1", 10000);
+
+            execute(manager, "CREATE TABLE tblspace1.tsql (k1 int primary key,n1 int)", Collections.emptyList());
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList(1, 1));
+            execute(manager, "INSERT INTO tblspace1.tsql(k1,n1) values(?,?)", Arrays.asList(2, 2));
+            // same query with different literals
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.tsql WHERE n1 >= 1", Collections.emptyList())) {
+                assertEquals(2, scan.consume().size());
+            }
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.tsql WHERE n1 >= 2", Collections.emptyList())) {
+                assertEquals(1, scan.consume().size());
+            }
+
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysquerystats ORDER BY query", Collections.emptyList())) {
+                List<DataAccessor> records = scan.consume();
+                DataAccessor insert = records.stream()
+                        .filter(t -> t.get("query").toString().startsWith("INSERT INTO tblspace1.tsql")).findAny().get();
+                assertEquals(RawString.of("tblspace1"), insert.get("tablespace"));
+                assertEquals(2L, insert.get("executions"));
+                assertEquals(1L, insert.get("plancachemisses"));
+                assertEquals(2L, insert.get("rowsreturned"));
+
+                DataAccessor select = records.stream()
+                        .filter(t -> t.get("query").toString().equals("SELECT * FROM tblspace1.tsql WHERE n1 >= ?")).findAny().get();
+                assertEquals(2L, select.get("executions"));
+                assertEquals(0L, select.get("errors"));
+                assertEquals(2L, select.get("plancachemisses"));
+                assertEquals(3L, select.get("rowsreturned"));
+                assertEquals(4L, select.get("rowsscanned"));
+                assertTrue((Long) select.get("maxtime") >= (Long) select.get("p50time"));
+            }
+
+            execute(manager, "EXECUTE RESETQUERYSTATS", Collections.emptyList());
+            try (DataScanner scan = scan(manager, "SELECT * FROM tblspace1.sysquerystats", Collections.emptyList())) {
+                // only the query reading the statistics
+                List<DataAccessor> records = scan.consume();
+                assertEquals(1, records.size());
+                assertEquals("SELECT * FROM tblspace1.sysquerystats", records.get(0).get("query").toString());
+            }
+        }
+    }
 }
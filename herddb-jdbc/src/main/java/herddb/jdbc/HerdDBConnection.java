@@ -21,6 +21,7 @@ package herddb.jdbc;
 
 import static herddb.model.TransactionContext.AUTOTRANSACTION_ID;
 import static herddb.model.TransactionContext.NOTRANSACTION_ID;
+import herddb.client.ClientConfiguration;
 import herddb.client.ClientSideMetadataProviderException;
 import herddb.client.HDBConnection;
 import herddb.client.HDBException;
@@ -61,6 +62,8 @@ public class HerdDBConnection implements java.sql.Connection {
     private final HDBConnection connection;
     private long transactionId;
     private boolean autocommit = true;
+    private boolean readOnly;
+    private final boolean readOnlySnapshot;
     private String tableSpace;
     private final BasicHerdDBDataSource datasource;
     private boolean closed;
@@ -73,6 +76,8 @@ public class HerdDBConnection implements java.sql.Connection {
         }
         this.connection = connection;
         this.datasource = datasource;
+        this.readOnlySnapshot = connection.getClient().getConfiguration().getBoolean(
+                ClientConfiguration.PROPERTY_CLIENT_READONLY_SNAPSHOT, ClientConfiguration.PROPERTY_CLIENT_READONLY_SNAPSHOT_DEFAULT);
         reset(defaultTablespace);
     }
 
@@ -81,6 +86,7 @@ public class HerdDBConnection implements java.sql.Connection {
             throw new IllegalStateException("Found open statements " + openStatements);
         }
         this.autocommit = true;
+        this.readOnly = false;
         this.tableSpace = defaultTablespace;
         this.transactionId = 0;
         this.closed = false;
@@ -88,8 +94,17 @@ public class HerdDBConnection implements java.sql.Connection {
 
     long ensureTransaction() throws SQLException {
         if (!autocommit && transactionId == NOTRANSACTION_ID) {
-            // transaction will be started at first statement execution
-            transactionId = TransactionContext.AUTOTRANSACTION_ID;
+            if (readOnly && readOnlySnapshot) {
+                // read only transactions read a snapshot of the data, without locking records
+                try {
+                    transactionId = connection.beginSnapshotTransaction(tableSpace);
+                } catch (ClientSideMetadataProviderException | HDBException err) {
+                    throw SQLExceptionUtils.wrapException(err);
+                }
+            } else {
+                // transaction will be started at first statement execution
+                transactionId = TransactionContext.AUTOTRANSACTION_ID;
+            }
         }
         return transactionId;
     }
@@ -222,11 +237,19 @@ public class HerdDBConnection implements java.sql.Connection {
 
     @Override
     public void setReadOnly(boolean readOnly) throws SQLException {
+        if (this.readOnly == readOnly) {
+            return;
+        }
+        if (transactionId != NOTRANSACTION_ID
+                && transactionId != AUTOTRANSACTION_ID) {
+            throw new SQLException("cannot change read only mode, transaction (ID " + transactionId + ") is already started");
+        }
+        this.readOnly = readOnly;
     }
 
     @Override
     public boolean isReadOnly() throws SQLException {
-        return false;
+        return readOnly;
     }
 
     @Override
@@ -450,7 +473,7 @@ public class HerdDBConnection implements java.sql.Connection {
 
     @Override
     public String toString() {
-        return "HerdDBConnection{connection=" + connection + ", transactionId=" + transactionId + ", autocommit=" + autocommit + ", tableSpace=" + tableSpace + '}';
+        return "HerdDBConnection{connection=" + connection + ", transactionId=" + transactionId + ", autocommit=" + autocommit + ", readOnly=" + readOnly + ", tableSpace=" + tableSpace + '}';
     }
 
     void discoverTableSpace(String sql) throws SQLException {
@@ -0,0 +1,106 @@
+/*
+ * Licensed to Diennea S.r.l. under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. Diennea S.r.l. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package herddb.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import herddb.client.ClientConfiguration;
+import herddb.model.TableSpace;
+import herddb.model.Transaction;
+import herddb.server.Server;
+import herddb.server.ServerConfiguration;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Read only connections read snapshots only when configured to do so
+ */
+public class ReadOnlySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readOnlyIsOnlyAHintByDefault() throws Exception {
+        try (HerdDBEmbeddedDataSource dataSource = new HerdDBEmbeddedDataSource()) {
+            dataSource.getProperties().setProperty(ServerConfiguration.PROPERTY_BASEDIR, folder.newFolder().getAbsolutePath());
+            dataSource.getProperties().setProperty(ClientConfiguration.PROPERTY_BASEDIR, folder.newFolder().getAbsolutePath());
+            try (Connection con = dataSource.getConnection();
+                    Statement statement = con.createStatement()) {
+                statement.execute("CREATE TABLE mytable (key string primary key, name string)");
+                assertEquals(1, statement.executeUpdate("INSERT INTO mytable (key,name) values('k1','name1')"));
+
+                con.setAutoCommit(false);
+                con.setReadOnly(true);
+                assertTrue(con.isReadOnly());
+                // writes are still allowed, the transaction is a regular one
+                assertEquals(1, statement.executeUpdate("UPDATE mytable set name='name2' WHERE key='k1'"));
+                long tx = ((HerdDBConnection) con).getTransactionId();
+                Transaction transaction = dataSource.getServer().getManager().getTableSpaceManager(TableSpace.DEFAULT).getTransaction(tx);
+                assertFalse(transaction.isSnapshot());
+                con.commit();
+            }
+        }
+    }
+
+    @Test
+    public void readOnlySnapshot() throws Exception {
+        try (HerdDBEmbeddedDataSource dataSource = new HerdDBEmbeddedDataSource()) {
+            dataSource.getProperties().setProperty(ServerConfiguration.PROPERTY_BASEDIR, folder.newFolder().getAbsolutePath());
+            dataSource.getProperties().setProperty(ClientConfiguration.PROPERTY_BASEDIR, folder.newFolder().getAbsolutePath());
+            dataSource.getProperties().setProperty(ClientConfiguration.PROPERTY_CLIENT_READONLY_SNAPSHOT, "true");
+            try (Connection con = dataSource.getConnection();
+                    Statement statement = con.createStatement()) {
+                statement.execute("CREATE TABLE mytable (key string primary key, name string)");
+                assertEquals(1, statement.executeUpdate("INSERT INTO mytable (key,name) values('k1','name1')"));
+            }
+            Server server = dataSource.getServer();
+            try (Connection con = dataSource.getConnection();
+                    Statement statement = con.createStatement();
+                    Connection other = dataSource.getConnection();
+                    Statement otherStatement = other.createStatement()) {
+                con.setAutoCommit(false);
+                con.setReadOnly(true);
+                assertName(statement, "name1");
+                long tx = ((HerdDBConnection) con).getTransactionId();
+                assertTrue(server.getManager().getTableSpaceManager(TableSpace.DEFAULT).getTransaction(tx).isSnapshot());
+
+                assertEquals(1, otherStatement.executeUpdate("UPDATE mytable set name='name2' WHERE key='k1'"));
+                assertName(statement, "name1");
+                con.commit();
+                assertName(statement, "name2");
+            }
+        }
+    }
+
+    private static void assertName(Statement statement, String expected) throws Exception {
+        try (ResultSet rs = statement.executeQuery("SELECT name FROM mytable WHERE key='k1'")) {
+            assertTrue(rs.next());
+            assertEquals(expected, rs.getString(1));
+            assertFalse(rs.next());
+        }
+    }
+}
@@ -108,6 +108,19 @@ public abstract class Channel implements AutoCloseable {
 
     public abstract boolean isLocalChannel();
 
+    /**
+     * Tells whether the underlying transport is able to accept more data
+     * without queuing it in memory. Producers which push data to the peer
+     * without an explicit request should stop when the channel is not
+     * writable and wait for
+     * {@link ChannelEventListener#channelWritabilityChanged(herddb.network.Channel)}
+     *
+     * @return true if it is safe to write more data
+     */
+    public boolean isWritable() {
+        return true;
+    }
+
 
     public String getName() {
         return name;
@@ -37,4 +37,8 @@ public interface ChannelEventListener {
 
     }
 
+    default void channelWritabilityChanged(Channel channel) {
+
+    }
+
 }
@@ -235,6 +235,14 @@ public abstract class AbstractChannel extends Channel {
         });
     }
 
+    final void channelWritabilityChanged() {
+        submitCallback(() -> {
+            if (this.messagesReceiver != null) {
+                this.messagesReceiver.channelWritabilityChanged(this);
+            }
+        });
+    }
+
     private void submitCallback(Runnable runnable) {
         try {
             callbackexecutor.submit(runnable);
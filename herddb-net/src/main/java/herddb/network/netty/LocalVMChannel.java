@@ -62,7 +62,7 @@ public class LocalVMChannel extends AbstractChannel implements Comparable<LocalV
         try {
             Pdu pdu = PduCodec.decodePdu(message);
             // execute server side code in this thread
-            serverSideChannel.directProcessPdu(pdu);
+            parent.deliver(() -> serverSideChannel.directProcessPdu(pdu));
 
         } catch (IOException ex) {
             ReferenceCountUtil.safeRelease(message);
@@ -138,7 +138,7 @@ public class LocalVMChannel extends AbstractChannel implements Comparable<LocalV
             }
             try {
                 Pdu pdu = PduCodec.decodePdu(message);
-                LocalVMChannel.this.directProcessPdu(pdu);
+                parent.deliver(() -> LocalVMChannel.this.directProcessPdu(pdu));
             } catch (IOException ex) {
                 ReferenceCountUtil.safeRelease(message);
                 callback.messageSent(ex);
@@ -22,16 +22,31 @@ package herddb.network.netty;
 import herddb.network.Channel;
 import herddb.network.ChannelEventListener;
 import herddb.network.ServerSideConnectionAcceptor;
+import herddb.utils.SystemProperties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Accepts in-process client connections.
  */
 public class LocalVMChannelAcceptor {
+
+    /**
+     * One-way latency (in microseconds) to add to every message, only for
+     * benchmarks about network round trips
+     */
+    public static final String PROPERTY_SIMULATED_LATENCY_MICROS = "herddb.network.localvm.simulatedlatencymicros";
+
     private ServerSideConnectionAcceptor acceptor;
     private Set<LocalVMChannel> channels = new ConcurrentSkipListSet<>();
+    private final long simulatedLatencyMicros = SystemProperties.getLongSystemProperty(PROPERTY_SIMULATED_LATENCY_MICROS, 0);
+    private final ScheduledExecutorService latencySimulator = simulatedLatencyMicros > 0
+            ? Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "localvm-simulated-latency"))
+            : null;
 
     public ServerSideConnectionAcceptor getAcceptor() {
         return acceptor;
@@ -45,6 +60,22 @@ public class LocalVMChannelAcceptor {
         for (LocalVMChannel channel : channels) {
             channel.close();
         }
+        if (latencySimulator != null) {
+            latencySimulator.shutdown();
+        }
+    }
+
+    /**
+     * Delivers a message to the other side, in order.
+     *
+     * @param delivery
+     */
+    void deliver(Runnable delivery) {
+        if (latencySimulator == null) {
+            delivery.run();
+        } else {
+            latencySimulator.schedule(delivery, simulatedLatencyMicros, TimeUnit.MICROSECONDS);
+        }
     }
 
     public Channel connect(String name, ChannelEventListener clientSidePeer, ExecutorService executorService) {
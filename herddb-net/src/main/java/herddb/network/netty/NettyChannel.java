@@ -94,6 +94,12 @@ public class NettyChannel extends AbstractChannel {
         return false;
     }
 
+    @Override
+    public boolean isWritable() {
+        io.netty.channel.Channel _socket = socket;
+        return _socket != null && _socket.isWritable();
+    }
+
     @Override
     public void doClose() {
         if (socket != null) {
@@ -58,4 +58,10 @@ public class ServerInboundMessageHandler extends ChannelInboundHandlerAdapter {
         session.pduReceived((Pdu) msg);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        session.channelWritabilityChanged();
+        super.channelWritabilityChanged(ctx);
+    }
+
 }
@@ -132,9 +132,13 @@ public class ClockAdaptiveReplacement implements PageReplacementPolicy {
         }
     }
 
+    @Override
     public Page.Metadata pop() {
         lock.lock();
         try {
+            if (t1.size() + t2.size() == 0) {
+                return null;
+            }
             return unsafeReplace();
         } finally {
             lock.unlock();
@@ -179,6 +183,30 @@ public class ClockAdaptiveReplacement implements PageReplacementPolicy {
         }
     }
 
+    /**
+     * Pages in T2 (seen at least twice) come before pages in T1, referenced
+     * pages before not referenced ones
+     */
+    @Override
+    public int hotness(Page<?> page) {
+        if (page.metadata == null) {
+            return -1;
+        }
+        final CARMetadata metadata = (CARMetadata) page.metadata;
+        lock.lock();
+        try {
+            if (t2.contains(metadata)) {
+                return 2 + (metadata.reference ? 1 : 0);
+            }
+            if (t1.contains(metadata)) {
+                return metadata.reference ? 1 : 0;
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void pageHit(Page<?> page) {
         hit(page);
@@ -429,8 +457,11 @@ public class ClockAdaptiveReplacement implements PageReplacementPolicy {
     private static <P extends Page<?>> P hit(P page) {
 
         if (page != null && page.metadata != null) {
-            /* Set the page as referenced */
-            ((CARMetadata) page.metadata).reference = true;
+            /* Set the page as referenced, avoid writing (and invalidating the cache line) if already set */
+            final CARMetadata metadata = (CARMetadata) page.metadata;
+            if (!metadata.reference) {
+                metadata.reference = true;
+            }
         }
 
         return page;
@@ -167,6 +167,42 @@ public class ClockProPolicy implements PageReplacementPolicy {
         return remove;
     }
 
+    @Override
+    public CPMetadata pop() {
+
+        final CPMetadata remove;
+
+        lock.lock();
+        try {
+
+            if (countCold > 0) {
+
+                /* Same as a page fault: run HANDcold for a free space */
+                remove = coldSweep();
+
+            } else if (countHot > 0) {
+
+                /* Every resident page is hot (the cold sweep would never stop): remove the one under HANDhot */
+                CPMetadata node = handHot;
+                while (node.warm != HOT) {
+                    node = node.next;
+                }
+                unsafeRemove(node);
+                remove = node;
+
+            } else {
+                remove = null;
+            }
+
+        } finally {
+            lock.unlock();
+        }
+
+        LOGGER.log(Level.FINER, () -> "Page selected for removal: " + remove);
+
+        return remove;
+    }
+
     @Override
     public boolean remove(Page<?> page) {
 
@@ -229,6 +265,27 @@ public class ClockProPolicy implements PageReplacementPolicy {
 
     }
 
+    /**
+     * Hot pages come before cold pages, referenced pages before not
+     * referenced ones
+     */
+    @Override
+    public int hotness(Page<?> page) {
+        if (page.metadata == null) {
+            return -1;
+        }
+        lock.lock();
+        try {
+            final CPMetadata known = space.get((CPMetadata) page.metadata);
+            if (known == null || known.warm == NON_RESIDENT_COLD) {
+                return -1;
+            }
+            return (known.warm == HOT ? 2 : 0) + (known.reference ? 1 : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void pageHit(Page<?> page) {
         hit(page);
@@ -1069,8 +1126,11 @@ public class ClockProPolicy implements PageReplacementPolicy {
     private static <P extends Page<?>> P hit(P page) {
 
         if (page != null && page.metadata != null) {
-            /* Set the page as referenced */
-            ((CPMetadata) page.metadata).reference = true;
+            /* Set the page as referenced, avoid writing (and invalidating the cache line) if already set */
+            final CPMetadata metadata = (CPMetadata) page.metadata;
+            if (!metadata.reference) {
+                metadata.reference = true;
+            }
         }
 
         return page;
@@ -83,4 +83,14 @@ public abstract class Page<O extends Page.Owner> {
         this.pageId = pageId;
     }
 
+    /**
+     * Takes over the {@link PageReplacementPolicy} knowledge of a page which is being replaced in memory by this
+     * one (same owner and page id).
+     *
+     * @param replaced page replaced by this one
+     */
+    protected void takeOverMetadata(Page<O> replaced) {
+        this.metadata = replaced.metadata;
+    }
+
 }
@@ -52,6 +52,16 @@ public interface PageReplacementPolicy {
      */
     Page.Metadata add(Page<?> page);
 
+    /**
+     * Select a page to be unloaded without adding a new one.
+     * <p>
+     * Useful to free memory for pages tracked by a different policy.
+     * </p>
+     *
+     * @return selected page to be unloaded or {@code null} if there are no pages
+     */
+    Page.Metadata pop();
+
     /**
      * Remove a {@code Page} from memory.
      *
@@ -90,4 +100,19 @@ public interface PageReplacementPolicy {
      */
     void clear();
 
+    /**
+     * Returns how much a memorized {@link Page} is worth keeping in memory.
+     * <p>
+     * Used to record the pages to be loaded back first after a restart: higher
+     * values are hotter, values are comparable only within the same policy.
+     * </p>
+     *
+     * @param page page to be checked
+     * @return hotness of the page, -1 if the page is not memorized or the
+     * policy does not track the hotness of pages
+     */
+    default int hotness(Page<?> page) {
+        return -1;
+    }
+
 }
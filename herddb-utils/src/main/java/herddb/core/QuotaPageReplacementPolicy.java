@@ -0,0 +1,280 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
+
+/**
+ * {@link PageReplacementPolicy} which splits pages in groups with memory
+ * reservations, caps and priorities.
+ * <p>
+ * Every group tracks its pages with its own policy, whose capacity is the cap
+ * of the group. When the total capacity is exhausted the page to be unloaded
+ * is chosen from the group with the lowest priority among the groups using
+ * more than their reservation, and among them the one which exceeds its
+ * reservation by the largest amount. Groups within their reservation are
+ * never chosen while another group exceeds its own.
+ * <p>
+ * Pages must be added to a {@link Group}, which is a policy on its own. Adding
+ * pages to this object adds them to the default group.
+ */
+public class QuotaPageReplacementPolicy implements PageReplacementPolicy {
+
+    /**
+     * A group of pages sharing the same quota
+     */
+    public final class Group implements PageReplacementPolicy {
+
+        private final String name;
+        private final int reservedPages;
+        private final int priority;
+        private final PageReplacementPolicy policy;
+
+        private Group(String name, int reservedPages, int maxPages, int priority) {
+            this.name = name;
+            this.reservedPages = reservedPages;
+            this.priority = priority;
+            this.policy = factory.apply(maxPages);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getReservedPages() {
+            return reservedPages;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void pageHit(Page<?> page) {
+            policy.pageHit(page);
+        }
+
+        @Override
+        public Page.Metadata add(Page<?> page) {
+            // serialize adds of the same group, so that at most one page is selected to be unloaded
+            synchronized (this) {
+                if (policy.size() >= policy.capacity()) {
+                    // the group reached its cap: it replaces one of its own pages
+                    return policy.add(page);
+                }
+                Page.Metadata unload = null;
+                if (QuotaPageReplacementPolicy.this.size() >= capacity) {
+                    Group victim = chooseVictim();
+                    if (victim != null) {
+                        unload = victim.policy.pop();
+                    }
+                }
+                Page.Metadata replaced = policy.add(page);
+                return unload != null ? unload : replaced;
+            }
+        }
+
+        @Override
+        public Page.Metadata pop() {
+            return policy.pop();
+        }
+
+        @Override
+        public int hotness(Page<?> page) {
+            return policy.hotness(page);
+        }
+
+        @Override
+        public boolean remove(Page<?> page) {
+            return policy.remove(page);
+        }
+
+        @Override
+        public <P extends Page<?>> void remove(Collection<P> pages) {
+            policy.remove(pages);
+        }
+
+        @Override
+        public int size() {
+            return policy.size();
+        }
+
+        @Override
+        public int capacity() {
+            return policy.capacity();
+        }
+
+        @Override
+        public void clear() {
+            policy.clear();
+        }
+
+        @Override
+        public String toString() {
+            return "Group{" + "name=" + name + ", reservedPages=" + reservedPages + ", maxPages=" + policy.capacity()
+                    + ", priority=" + priority + ", size=" + policy.size() + '}';
+        }
+    }
+
+    private final int capacity;
+    private final IntFunction<PageReplacementPolicy> factory;
+    private final ConcurrentMap<String, Group> groups = new ConcurrentHashMap<>();
+    private final Group defaultGroup;
+
+    /**
+     * @param capacity total capacity
+     * @param factory creates the policy of a group given its capacity
+     */
+    public QuotaPageReplacementPolicy(int capacity, IntFunction<PageReplacementPolicy> factory) {
+        this.capacity = capacity;
+        this.factory = factory;
+        this.defaultGroup = new Group("", 0, capacity, 0);
+        this.groups.put(defaultGroup.name, defaultGroup);
+    }
+
+    /**
+     * Returns the group with the given name, creating it if needed. Quotas of
+     * an existing group are not changed.
+     *
+     * @param name name of the group
+     * @param reservedPages pages which are never unloaded in favour of other
+     * groups
+     * @param maxPages maximum number of pages of the group
+     * @param priority groups with lower priority are chosen first when a page
+     * has to be unloaded
+     */
+    public Group getGroup(String name, int reservedPages, int maxPages, int priority) {
+        return groups.computeIfAbsent(name,
+                n -> new Group(n, Math.max(0, reservedPages), Math.max(1, Math.min(maxPages, capacity)), priority));
+    }
+
+    public Group getDefaultGroup() {
+        return defaultGroup;
+    }
+
+    public Collection<Group> getGroups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    private Group chooseVictim() {
+        Group best = null;
+        int bestExcess = 0;
+        for (Group group : groups.values()) {
+            int excess = group.size() - group.reservedPages;
+            if (excess <= 0) {
+                continue;
+            }
+            if (best == null
+                    || group.priority < best.priority
+                    || (group.priority == best.priority && excess > bestExcess)) {
+                best = group;
+                bestExcess = excess;
+            }
+        }
+        if (best == null) {
+            // every group is within its reservation (reservations exceed the capacity), pick the largest one
+            for (Group group : groups.values()) {
+                if (best == null || group.size() > best.size()) {
+                    best = group;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void pageHit(Page<?> page) {
+        defaultGroup.pageHit(page);
+    }
+
+    @Override
+    public Page.Metadata add(Page<?> page) {
+        return defaultGroup.add(page);
+    }
+
+    @Override
+    public Page.Metadata pop() {
+        Group victim = chooseVictim();
+        return victim != null ? victim.pop() : null;
+    }
+
+    /**
+     * Removes the page from the group which tracks it, prefer removing pages
+     * directly from their {@link Group}.
+     */
+    @Override
+    public boolean remove(Page<?> page) {
+        for (Group group : groups.values()) {
+            if (group.remove(page)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public <P extends Page<?>> void remove(Collection<P> pages) {
+        for (P page : pages) {
+            remove(page);
+        }
+    }
+
+    @Override
+    public int hotness(Page<?> page) {
+        for (Group group : groups.values()) {
+            int hotness = group.hotness(page);
+            if (hotness >= 0) {
+                return hotness;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Group group : groups.values()) {
+            size += group.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void clear() {
+        for (Group group : groups.values()) {
+            group.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QuotaPageReplacementPolicy{" + "capacity=" + capacity + ", groups=" + groups.values() + '}';
+    }
+}
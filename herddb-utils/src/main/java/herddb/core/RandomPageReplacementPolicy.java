@@ -85,20 +85,25 @@ public class RandomPageReplacementPolicy implements PageReplacementPolicy {
         }
     }
 
+    @Override
     public PlainMetadata pop() {
         lock.lock();
         try {
             int count = positions.size();
+            if (count == 0) {
+                return null;
+            }
             int position = random.nextInt(count);
 
             PlainMetadata old = pages[position];
             positions.remove(old);
 
-            if (count > 0) {
+            if (position < count - 1) {
                 PlainMetadata moving = pages[count - 1];
                 pages[position] = moving;
                 positions.put(moving, position);
             }
+            pages[count - 1] = null;
 
             return old;
         } finally {
@@ -170,6 +175,22 @@ public class RandomPageReplacementPolicy implements PageReplacementPolicy {
         /* No observation needed in a random strategy */
     }
 
+    /**
+     * Every memorized page is worth the same
+     */
+    @Override
+    public int hotness(Page<?> page) {
+        if (page.metadata == null) {
+            return -1;
+        }
+        lock.lock();
+        try {
+            return positions.containsKey((PlainMetadata) page.metadata) ? 0 : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Implementation of {@link Page.Metadata} with all data needed for {@link RandomPageReplacement}.
      *
@@ -0,0 +1,163 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * {@link PageReplacementPolicy} which partitions pages by hash among many
+ * independent policies.
+ * <p>
+ * Every shard has its own lock, so pages of different shards can be added
+ * and removed concurrently. The capacity is split among the shards, hence
+ * the total number of pages never exceeds the given capacity, but a shard
+ * can choose a page to be unloaded while other shards still have room.
+ */
+public class ShardedPageReplacementPolicy implements PageReplacementPolicy {
+
+    private final PageReplacementPolicy[] shards;
+    private final int capacity;
+
+    /**
+     * @param capacity total capacity
+     * @param shards number of shards, it is reduced in order to give at
+     * least one page to every shard
+     * @param factory creates a policy given its capacity
+     */
+    public ShardedPageReplacementPolicy(int capacity, int shards, IntFunction<PageReplacementPolicy> factory) {
+        int count = Math.max(1, Math.min(shards, capacity));
+        this.shards = new PageReplacementPolicy[count];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            // proportional capacity, the remainder goes to the first shards
+            int shardCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+            this.shards[i] = factory.apply(shardCapacity);
+            total += this.shards[i].capacity();
+        }
+        this.capacity = total;
+    }
+
+    private int shardIndex(Page<?> page) {
+        if (shards.length == 1) {
+            return 0;
+        }
+        // same fields used by metadata hashCode, spread because page ids are sequential
+        long hash = (page.owner.hashCode() * 31L + page.pageId) * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 32) % shards.length);
+    }
+
+    private PageReplacementPolicy shard(Page<?> page) {
+        return shards[shardIndex(page)];
+    }
+
+    @Override
+    public void pageHit(Page<?> page) {
+        shard(page).pageHit(page);
+    }
+
+    @Override
+    public Page.Metadata add(Page<?> page) {
+        return shard(page).add(page);
+    }
+
+    @Override
+    public int hotness(Page<?> page) {
+        return shard(page).hotness(page);
+    }
+
+    @Override
+    public Page.Metadata pop() {
+        // the largest shard is the most likely to evict soon
+        PageReplacementPolicy largest = shards[0];
+        for (int i = 1; i < shards.length; i++) {
+            if (shards[i].size() > largest.size()) {
+                largest = shards[i];
+            }
+        }
+        return largest.pop();
+    }
+
+    @Override
+    public boolean remove(Page<?> page) {
+        return shard(page).remove(page);
+    }
+
+    @Override
+    public <P extends Page<?>> void remove(Collection<P> pages) {
+        if (shards.length == 1) {
+            shards[0].remove(pages);
+            return;
+        }
+        // acquire the lock of every shard only once
+        List<List<P>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(null);
+        }
+        for (P page : pages) {
+            int index = shardIndex(page);
+            List<P> list = byShard.get(index);
+            if (list == null) {
+                list = new ArrayList<>();
+                byShard.set(index, list);
+            }
+            list.add(page);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            List<P> list = byShard.get(i);
+            if (list != null) {
+                shards[i].remove(list);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (PageReplacementPolicy shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getShards() {
+        return shards.length;
+    }
+
+    @Override
+    public void clear() {
+        for (PageReplacementPolicy shard : shards) {
+            shard.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedPageReplacementPolicy{" + "shards=" + shards.length + ", capacity=" + capacity + ", policy=" + shards[0].getClass().getSimpleName() + '}';
+    }
+}
@@ -28,33 +28,27 @@ import herddb.utils.BooleanHolder;
 import herddb.utils.Holder;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.AbstractMap.SimpleImmutableEntry;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Spliterators;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -117,6 +111,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
      */
     private static final int CRITIC_MIN_CHILDREN = 2;
 
+    /**
+     * Returned by optimistic (lock free) reads when a concurrent change was detected, or when node data needs
+     * to be loaded: the read must be retried with locks.
+     */
+    private static final Object OPTIMISTIC_READ_FAILED = new Object();
+
     /**
      * Size value for {@link #constantKeySize} {@link #constantValueSize} and {@link #constantFullSize}
      * to signal that size isn't constant.
@@ -578,10 +578,16 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 //        search := check-key(v, n); {decisive}
 //        unlock(n, readlock)
 //    end;
+    @SuppressWarnings("unchecked")
     public V search(K v) {
 
+        /* Lock free search first, fall back to lock coupling on concurrent changes or not loaded nodes */
+        final Object optimistic = optimistic_search(v);
+        if (optimistic != OPTIMISTIC_READ_FAILED) {
+            return (V) optimistic;
+        }
+
         Node<K, V> n;
-        @SuppressWarnings("unchecked")
         Deque<ResultCouple<K, V>> descent = DummyDeque.INSTANCE;
 
         try {
@@ -609,6 +615,88 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         }
     }
 
+    /**
+     * Lock free version of {@link #search(Comparable)}: node fields and data are read without locking and then
+     * validated against node lock stamps (a node can be modified, loaded or unloaded only holding one of its
+     * write locks).
+     *
+     * @return the value found (eventually {@code null}) or {@link #OPTIMISTIC_READ_FAILED} if the search must
+     *         be retried with locks
+     */
+    private Object optimistic_search(K v) {
+
+        try {
+
+            final long stamp = anchor.lock.tryOptimisticRead();
+            Node<K, V> n = anchor.fast;
+            int h = anchor.fastheight;
+            K ubleftsep = positiveInfinity;
+
+            if (!anchor.lock.validate(stamp)) {
+                return OPTIMISTIC_READ_FAILED;
+            }
+
+            @SuppressWarnings("unchecked")
+            Deque<ResultCouple<K, V>> descent = DummyDeque.INSTANCE;
+
+            for (; h > 1; --h) { // v > leftsep (n)
+                final ResultCouple<K, V> find = optimistic_move_right_find(v, n, ubleftsep, descent);
+                if (find == null) {
+                    return OPTIMISTIC_READ_FAILED;
+                }
+                n = find.node;
+                ubleftsep = find.ubleftsep;
+            }
+
+            /* Leaf move-right and check-key */
+            while (true) {
+
+                final long nodeStamp = n.lock.tryOptimisticRead();
+                final long loadStamp = n.loadLock.tryOptimisticRead();
+
+                if (nodeStamp == 0L || loadStamp == 0L) {
+                    return OPTIMISTIC_READ_FAILED;
+                }
+
+                final Node<K, V> m;
+                if (n.outlink != null) {
+                    m = n.outlink; // v > leftsep (n) = leftsep (m)
+                } else if (n.rightsep.compareTo(v) < 0) {
+                    m = n.rightlink; // v > rightsep(n) = leftsep(m)
+                } else {
+                    m = null;
+                }
+
+                if (m != null) {
+                    if (!n.lock.validate(nodeStamp)) {
+                        return OPTIMISTIC_READ_FAILED;
+                    }
+                    n = m;
+                    continue;
+                }
+
+                if (!n.loaded) {
+                    return OPTIMISTIC_READ_FAILED;
+                }
+
+                final Object search = n.map.get(v);
+
+                if (!n.loadLock.validate(loadStamp) || !n.lock.validate(nodeStamp)) {
+                    return OPTIMISTIC_READ_FAILED;
+                }
+
+                policy.pageHit(n);
+
+                return search;
+            }
+
+        } catch (RuntimeException inconsistent) {
+
+            /* Inconsistent data read from a node while it was changing */
+            return OPTIMISTIC_READ_FAILED;
+        }
+    }
+
     /**
      * Supports both from and to empty.
      *
@@ -870,15 +958,30 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          */
         K ubleftsep;
 
-        lock_anchor(READ_LOCK);
+        final long stamp = anchor.lock.tryOptimisticRead();
         n = anchor.fast;
         enterheight = anchor.fastheight;
         ubleftsep = positiveInfinity;
-        unlock_anchor(READ_LOCK);
+
+        if (!anchor.lock.validate(stamp)) {
+            lock_anchor(READ_LOCK);
+            n = anchor.fast;
+            enterheight = anchor.fastheight;
+            unlock_anchor(READ_LOCK);
+        }
 
         descent.clear();
 
         for (h = enterheight; h > 1; --h) { // v > leftsep (n)
+
+            /* Lock free attempt first, internal nodes are seldom modified */
+            final ResultCouple<K, V> optimistic = optimistic_move_right_find(v, n, ubleftsep, descent);
+            if (optimistic != null) {
+                n = optimistic.node;
+                ubleftsep = optimistic.ubleftsep;
+                continue;
+            }
+
             ResultCouple<K, V> move_right = move_right(v, n, ubleftsep, READ_LOCK); // v € coverset(n)
             n = move_right.node;
             ubleftsep = move_right.ubleftsep;
@@ -929,6 +1032,78 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 //        end;
 //    end;
 
+    /**
+     * Lock free version of move-right followed by find on an internal node: node fields and data are read
+     * without locking and then validated against node lock stamps (a node can be modified, loaded or unloaded
+     * only holding one of its write locks).
+     * <p>
+     * On success the move-right result is pushed on descent stack, as done by
+     * {@link #locate_leaf(Comparable, int, Deque)}.
+     * </p>
+     *
+     * @param v
+     * @param n
+     * @param ubleftsep
+     * @param descent
+     * @return find result or {@code null} if a concurrent change was detected or node data needs to be loaded
+     *         (move-right and find must be retried with locks starting again from n)
+     */
+    private ResultCouple<K, V> optimistic_move_right_find(K v, Node<K, V> n, K ubleftsep, Deque<ResultCouple<K, V>> descent) {
+
+        try {
+
+            // assume v > leftsep (n)
+            while (true) {
+
+                final long stamp = n.lock.tryOptimisticRead();
+                final long loadStamp = n.loadLock.tryOptimisticRead();
+
+                if (stamp == 0L || loadStamp == 0L) {
+                    return null;
+                }
+
+                final Node<K, V> m;
+                if (n.outlink != null) {
+                    m = n.outlink; // v > leftsep (n) = leftsep (m)
+                } else if (n.rightsep.compareTo(v) < 0) {
+                    m = n.rightlink; // v > rightsep(n) = leftsep(m)
+                    ubleftsep = n.rightsep;
+                } else {
+                    m = null;
+                }
+
+                if (m != null) {
+                    if (!n.lock.validate(stamp)) {
+                        return null;
+                    }
+                    n = m;
+                    continue;
+                }
+
+                if (!n.loaded) {
+                    return null;
+                }
+
+                final ResultCouple<K, V> find = n.find_unlocked(v, ubleftsep); // v > leftsep (m)
+
+                if (!n.loadLock.validate(loadStamp) || !n.lock.validate(stamp)) {
+                    return null;
+                }
+
+                policy.pageHit(n);
+
+                descent.push(new ResultCouple<>(n, ubleftsep));
+
+                return find;
+            }
+
+        } catch (RuntimeException inconsistent) {
+
+            /* Inconsistent data read from a node while it was changing */
+            return null;
+        }
+    }
+
     /**
      * move-right scans along a level starting with node n until it comes to a
      * node into whose coverset v falls (trivially, n itself). It assumes that
@@ -1519,19 +1694,19 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         unlock(n.lock, locktype);
     }
 
-    private void lock(ReadWriteLock lock, int locktype) {
+    private void lock(StampedLock lock, int locktype) {
         if (locktype == READ_LOCK) {
-            lock.readLock().lock();
+            lock.readLock();
         } else {
-            lock.writeLock().lock();
+            lock.writeLock();
         }
     }
 
-    private void unlock(ReadWriteLock lock, int locktype) {
-        if (locktype == READ_LOCK) {
-            lock.readLock().unlock();
-        } else {
-            lock.writeLock().unlock();
+    private void unlock(StampedLock lock, int locktype) {
+        /* StampedLock isn't owned by threads, just check that it was really locked */
+        final boolean unlocked = locktype == READ_LOCK ? lock.tryUnlockRead() : lock.tryUnlockWrite();
+        if (!unlocked) {
+            throw new IllegalMonitorStateException("Lock not held");
         }
     }
 
@@ -1677,11 +1852,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 //  end;
     private static class Anchor<X extends Comparable<X>, Y> {
 
-        final ReadWriteLock lock;
+        final StampedLock lock;
 
         /*
          * Next fields won't need to be volatile. They are written only during write lock AND no other thread
-         * will have an opportunity do read this field until the lock is released.
+         * will have an opportunity do read this field until the lock is released (optimistic readers validate
+         * the lock stamp before using them).
          */
         Node<X, Y> fast;
         int fastheight;
@@ -1707,7 +1883,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             this.topheight = topheight;
             this.first = first;
 
-            lock = new ReentrantReadWriteLock(false);
+            lock = new StampedLock();
         }
 
         public void reset(Node<X, Y> root) {
@@ -1747,9 +1923,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          *      57     1                                      boolean Node.empty                                N/A
          *      58     1                                      boolean Node.loaded                               N/A
          *      59     1                                      boolean Node.dirty                                N/A
-         *      60     4     java.util.concurrent.locks.ReadWriteLock Node.lock                                 N/A
-         *      64     4     java.util.concurrent.locks.ReadWriteLock Node.loadLock                             N/A
-         *      68     4   java.util.concurrent.ConcurrentSkipListMap Node.map                                  N/A
+         *      60     4       java.util.concurrent.locks.StampedLock Node.lock                                 N/A
+         *      64     4       java.util.concurrent.locks.StampedLock Node.loadLock                             N/A
+         *      68     4         herddb.index.blink.SortedArrayMap Node.map                                  N/A
          *      72     4                         java.lang.Comparable Node.rightsep                             N/A
          *      76     4             herddb.index.blink.nn.BLink.Node Node.outlink                              N/A
          *      80     4             herddb.index.blink.nn.BLink.Node Node.rightlink                            N/A
@@ -1761,24 +1937,19 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          * And still adding one of each:
          * <pre>
          * COUNT       AVG       SUM   DESCRIPTION
-         *   272        32      8704   java.util.concurrent.ConcurrentHashMap$Node
-         *   141        48      6768   java.util.concurrent.ConcurrentSkipListMap
-         *     8        16       128   java.util.concurrent.ConcurrentSkipListMap$EntrySet
-         *   209        32      6688   java.util.concurrent.ConcurrentSkipListMap$HeadIndex
-         *  3464        24     83136   java.util.concurrent.ConcurrentSkipListMap$Index
-         *     2        16        32   java.util.concurrent.locks.ReentrantLock
-         *     2        32        64   java.util.concurrent.locks.ReentrantLock$NonfairSync
-         *   283        24      6792   java.util.concurrent.locks.ReentrantReadWriteLock
-         *   283        48     13584   java.util.concurrent.locks.ReentrantReadWriteLock$NonfairSync
-         *   283        16      4528   java.util.concurrent.locks.ReentrantReadWriteLock$ReadLock
-         *   283        16      4528   java.util.concurrent.locks.ReentrantReadWriteLock$Sync$ThreadLocalHoldCounter
-         *   283        16      4528   java.util.concurrent.locks.ReentrantReadWriteLock$WriteLock
+         *     2        48        96   java.util.concurrent.locks.StampedLock
+         *     1        32        32   herddb.index.blink.SortedArrayMap
+         *     2        16        32   java.lang.Object[] (headers of keys and values arrays)
          *
-         * One of each: 320 bytes
+         * One of each: 160 bytes
          * </pre>
+         * <p>
+         * Every entry takes just a key and a value reference in {@link SortedArrayMap} arrays (8 bytes with
+         * compressed oops) plus some space left free for array growth.
+         * </p>
          */
-        static final long NODE_CONSTANT_SIZE = 408L;
-        static final long ENTRY_CONSTANT_SIZE = /* ConcurrentSkipListMap$Node */ 42L;
+        static final long NODE_CONSTANT_SIZE = 248L;
+        static final long ENTRY_CONSTANT_SIZE = /* SortedArrayMap slots and growth slack */ 10L;
 
         long storeId;
 
@@ -1792,26 +1963,27 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         final boolean leaf;
 
         /**
-         * Node access lock
+         * Node access lock, supports optimistic reads: every change to the node happens holding its write lock
          */
-        final ReadWriteLock lock;
+        final StampedLock lock;
 
         /**
-         * Node data load/unload lock ({@link #map})
+         * Node data load/unload lock ({@link #map}), supports optimistic reads: node data can be loaded or
+         * unloaded just holding its write lock
          */
-        final ReadWriteLock loadLock;
+        final StampedLock loadLock;
 
         /**
          * Inner nodes will have Long values, leaves Y values
          */
-        NavigableMap<X, Object> map;
+        SortedArrayMap<X, Object> map;
 
         /*
          * Next fields won't need to be volatile. They are written only during write lock AND no other thread
          * will have an opportunity do read this field until the lock is released.
          */
         /**
-         * Managed key set size, {@link NavigableMap} size could not be a a O(1) operation.
+         * Managed key set size, known even when node data isn't loaded.
          */
         int keys;
 
@@ -1841,8 +2013,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
             this.rightsep = rightsep;
 
-            this.lock = new ReentrantReadWriteLock(false);
-            this.loadLock = new ReentrantReadWriteLock(false);
+            this.lock = new StampedLock();
+            this.loadLock = new StampedLock();
 
             this.map = newNodeMap();
 
@@ -1854,8 +2026,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             this.dirty = true;
         }
 
-        private static <A, B> NavigableMap<A, B> newNodeMap() {
-            return new TreeMap<>();
+        private static <A extends Comparable<A>, B> SortedArrayMap<A, B> newNodeMap() {
+            return new SortedArrayMap<>();
+        }
+
+        private static <A extends Comparable<A>, B> SortedArrayMap<A, B> newNodeMap(int capacity) {
+            return new SortedArrayMap<>(capacity);
         }
 
         /**
@@ -1879,8 +2055,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
             this.rightsep = metadata.rightsep;
 
-            this.lock = new ReentrantReadWriteLock(false);
-            this.loadLock = new ReentrantReadWriteLock(false);
+            this.lock = new StampedLock();
+            this.loadLock = new StampedLock();
 
             this.map = newNodeMap();
 
@@ -1957,7 +2133,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                     rightUnloaded = rightLoadLock.unloadIfNot(this, owner);
 
                     // the sequence in r is transferred to the end of the sequence in l
-                    map.putAll(right.map);
+                    map.appendAll(right.map);
 
                     dirty = true;
 
@@ -2065,31 +2241,27 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
 
-                boolean toright = false;
-                for (Iterator<Entry<X, Object>> entryIt = map.entrySet().iterator();
-                     entryIt.hasNext(); ) {
-                    Entry<X, Object> entry = entryIt.next();
-                    if (toright) {
-                        right.map.put(entry.getKey(), entry.getValue());
-                        entryIt.remove();
+                final int entries = map.size();
+                while (count < entries && lastKey == null) {
+                    final X key = map.keyAt(count);
+                    ++count;
+                    if (leaf) {
+                        keeping += owner.constantFullSize == VARIABLE_SIZE
+                                ? owner.evaluator.evaluateAll(key, (Y) map.valueAt(count - 1)) + ENTRY_CONSTANT_SIZE
+                                : owner.constantFullSize + ENTRY_CONSTANT_SIZE;
                     } else {
-                        ++count;
-                        if (leaf) {
-                            keeping += owner.constantFullSize == VARIABLE_SIZE
-                                    ? owner.evaluator.evaluateAll(entry.getKey(), (Y) entry.getValue()) + ENTRY_CONSTANT_SIZE
-                                    : owner.constantFullSize + ENTRY_CONSTANT_SIZE;
-                        } else {
-                            keeping += owner.constantKeySize == VARIABLE_SIZE
-                                    ? owner.evaluator.evaluateKey(entry.getKey()) + ENTRY_CONSTANT_SIZE
-                                    : owner.constantKeySize + ENTRY_CONSTANT_SIZE;
-                        }
-                        if (keeping >= limit) {
-                            toright = true;
-                            lastKey = entry.getKey();
-                        }
+                        keeping += owner.constantKeySize == VARIABLE_SIZE
+                                ? owner.evaluator.evaluateKey(key) + ENTRY_CONSTANT_SIZE
+                                : owner.constantKeySize + ENTRY_CONSTANT_SIZE;
+                    }
+                    if (keeping >= limit) {
+                        lastKey = key;
                     }
                 }
 
+                /* Move the whole right half at once */
+                map.moveTailTo(count, right.map);
+
                 dirty = true;
 
             } finally {
@@ -2132,64 +2304,21 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
 
-            final Map<X, Object> sub;
             try {
 
-                /*
-                 * In reality ConcurrentSkipListMap.subMap could handle null start/end but it places some null
-                 * checks. So we have to check start/end nullity too and route to the right method that will...
-                 * route all to the same non visible procedure :( :( :(
-                 */
-                if (start == null) {
-
-                    if (startInclusive) {
-                        throw new NullPointerException("Null inclusive start");
-                    }
-
-                    if (end == null) {
-
-                        if (endInclusive) {
-                            throw new NullPointerException("Null inclusive end");
-                        }
-
-                        sub = map;
-
-                    } else {
-                        sub = map.headMap(end, endInclusive);
-                    }
-                } else {
-
-                    if (end == null) {
-
-                        if (endInclusive) {
-                            throw new NullPointerException("Null inclusive end");
-                        }
-
-                        sub = map.tailMap(start, startInclusive);
-
-                    } else {
-
-                        sub = map.subMap(start, startInclusive, end, endInclusive);
-                    }
+                if (start == null && startInclusive) {
+                    throw new NullPointerException("Null inclusive start");
                 }
 
-                final List<Entry<X, Y>> list = new ArrayList<>();
-
-                /* Cast to Y: is a leaf */
-                for (Entry<X, Y> entry : (Set<Entry<X, Y>>) (Set<?>) sub.entrySet()) {
-                    /*
-                     * Manually copy the entry set, using costructor with a collection would copy an
-                     * array of elements taken from the map entry set, such array is build iterating
-                     * all entry set elements to build an array list and then copying his internal
-                     * array! Iterating directly we avoid such multiple copy overhead.
-                     *
-                     * Create a copy of each entry because TreeMap reuse entry nodes and on tree modifications
-                     * "copied" list is affected too.
-                     */
-                    list.add(new SimpleImmutableEntry<>(entry));
+                if (end == null && endInclusive) {
+                    throw new NullPointerException("Null inclusive end");
                 }
 
-                return list;
+                /*
+                 * Entries are copied: node arrays are modified in place and the copied list must not be
+                 * affected by later tree modifications. Cast to Y: is a leaf
+                 */
+                return (List<Entry<X, Y>>) (List<?>) map.copyRange(start, startInclusive, end, endInclusive);
 
             } finally {
                 loadLock.unlock();
@@ -2388,7 +2517,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
-                return (Node<X, Y>) map.firstEntry().getValue();
+                return (Node<X, Y>) map.firstValue();
             } finally {
                 loadLock.unlock();
 
@@ -2420,30 +2549,13 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
          * The smallest si in the node such that v <= si is identified. If i > 1
          * returns (pi,si-1) otherwise (pi,ubleftsep).
          */
-        @SuppressWarnings("unchecked")
         ResultCouple<X, Y> find(X v, X ubleftsep) throws IOException {
 
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
 
-                /*
-                 * ...,(pi-1,si-1),(pi,si),(pi+1,si+1)...
-                 */
-                final Entry<X, Object> first = map.firstEntry();
-
-                /* Check if is the first */
-                if (first.getKey().compareTo(v) >= 0) {
-                    /* First: i == 1 -> return (pi,ubleftsep) */
-                    return new ResultCouple<>((Node<X, Y>) first.getValue(), ubleftsep);
-                }
-
-                final X key = map.lowerKey(v);
-
-                final Entry<X, Object> ceiling = map.ceilingEntry(v);
-
-                /* Not the first: i > 1 return (pi,si-1) */
-                return new ResultCouple<>((Node<X, Y>) ceiling.getValue(), key);
+                return find_unlocked(v, ubleftsep);
 
             } finally {
                 loadLock.unlock();
@@ -2455,6 +2567,29 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
         }
 
+        /**
+         * Implementation of {@link #find(Comparable, Comparable)} reading node data without locking it: used
+         * by optimistic readers too, they must validate the result.
+         */
+        @SuppressWarnings("unchecked")
+        ResultCouple<X, Y> find_unlocked(X v, X ubleftsep) {
+
+            /*
+             * ...,(pi-1,si-1),(pi,si),(pi+1,si+1)...
+             */
+            final SortedArrayMap<X, Object> map = this.map;
+            final int ceiling = map.ceilingIndex(v);
+
+            /* Check if is the first */
+            if (ceiling == 0) {
+                /* First: i == 1 -> return (pi,ubleftsep) */
+                return new ResultCouple<>((Node<X, Y>) map.valueAt(0), ubleftsep);
+            }
+
+            /* Not the first: i > 1 return (pi,si-1) */
+            return new ResultCouple<>((Node<X, Y>) map.valueAt(ceiling), map.keyAt(ceiling - 1));
+        }
+
         /**
          * The smallest index = i such that si >= s identified. If si = s, the
          * operation returns false. Otherwise, it changes the sequence in parent
@@ -2465,17 +2600,17 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             /* No other nodes currently loaded and can't require to unload itself */
             final LockAndUnload<X, Y> loadLock = loadAndLock(true);
             try {
-                final Entry<X, Object> ceiling = map.ceilingEntry(s);
+                final int ceiling = map.ceilingIndex(s);
 
-                if (ceiling.getKey().compareTo(s) == 0) {
+                if (map.keyAt(ceiling).compareTo(s) == 0) {
                     return false;
                 }
 
-                /* First add new */
-                map.put(s, ceiling.getValue());
+                /* First add new (shifts the old one right) */
+                map.put(s, map.valueAt(ceiling));
 
                 /* Then overwrite old */
-                map.put(ceiling.getKey(), child);
+                map.setValueAt(ceiling + 1, child);
 
                 dirty = true;
             } finally {
@@ -2517,13 +2652,14 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                  * s := si
                  * pi+1 == child?
                  */
-                @SuppressWarnings("unchecked") final Node<X, Y> pi = (Node<X, Y>) map.get(s);
-                if (pi == null) {
+                final int i = map.indexOf(s);
+                if (i < 0) {
                     return false;
                 }
 
-                final Entry<X, Object> eip1 = map.higherEntry(s);
-                if (eip1.getValue().equals(child)) {
+                @SuppressWarnings("unchecked") final Node<X, Y> pi = (Node<X, Y>) map.valueAt(i);
+
+                if (map.valueAt(i + 1).equals(child)) {
 
                     /*
                      * the two are removed...
@@ -2531,8 +2667,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                      * from: ...,(pi-1,si-1),(pi,si),(pi+1,si+1)...
                      * to: ...,(pi-1,si-1),(pi,si+1)...
                      */
-                    map.put(eip1.getKey(), pi);
-                    map.remove(s);
+                    map.setValueAt(i + 1, pi);
+                    map.removeAt(i);
 
                     dirty = true;
 
@@ -2571,13 +2707,12 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         LockAndUnload<X, Y> loadAndLock(boolean doUnload) throws IOException {
 
             Metadata unload = null;
-            final Lock read = loadLock.readLock();
 
             if (DEBUG) {
                 LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock requested " + pageId + " loadAndLock");
             }
 
-            read.lock();
+            long stamp = loadLock.readLock();
 
             if (DEBUG) {
                 LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock taken " + pageId + " loadAndLock");
@@ -2586,22 +2721,22 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             if (!loaded) {
 
                 /*
-                 * We need an upgrade from read to write, with ReentrantReadWriteLock isn't possible thus we
-                 * release current read lock and retrieve a write lock before recheck the condition.
+                 * We need an upgrade from read to write, with StampedLock is possible only if there aren't
+                 * other readers thus we release current read lock and retrieve a write lock before recheck the
+                 * condition.
                  */
-                read.unlock();
+                loadLock.unlockRead(stamp);
 
                 if (DEBUG) {
                     LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock released " + pageId + " loadAndLock");
                 }
 
-                final Lock write = loadLock.writeLock();
-
                 if (DEBUG) {
                     LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock requested " + pageId + " loadAndLock");
                 }
 
-                write.lock();
+                stamp = loadLock.writeLock();
+                boolean downgraded = false;
 
                 if (DEBUG) {
                     LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock taken " + pageId + " loadAndLock");
@@ -2626,8 +2761,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                         LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock requested " + pageId + " loadAndLock");
                     }
 
-                    /* Downgrade the lock (permitted) */
-                    read.lock();
+                    /* Downgrade the lock (always permitted from a write lock) */
+                    stamp = loadLock.tryConvertToReadLock(stamp);
+                    downgraded = true;
 
                     if (DEBUG) {
                         LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock taken " + pageId + " loadAndLock");
@@ -2638,7 +2774,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                     throw new IOException("failed to read node " + pageId, err);
 
                 } finally {
-                    write.unlock();
+                    if (!downgraded) {
+                        loadLock.unlockWrite(stamp);
+                    }
 
                     if (DEBUG) {
                         LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock released " + pageId + " loadAndLock");
@@ -2656,7 +2794,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                 owner.policy.pageHit(this);
             }
 
-            return new LockAndUnload<>(read, unload, pageId);
+            return new LockAndUnload<>(loadLock, stamp, unload, pageId);
         }
 
         boolean unload(boolean flush, boolean justTry) {
@@ -2666,11 +2804,11 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             }
 
             /* No data cannot change during checkpoint! */
-            final Lock lock = loadLock.writeLock();
+            final long stamp;
 
             if (justTry) {
-                boolean acquired = lock.tryLock();
-                if (!acquired) {
+                stamp = loadLock.tryWriteLock();
+                if (stamp == 0L) {
                     if (DEBUG) {
                         LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock taken " + pageId + " tryunload");
                         LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock released " + pageId + " tryunload");
@@ -2679,7 +2817,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                     return false;
                 }
             } else {
-                lock.lock();
+                stamp = loadLock.writeLock();
             }
 
             if (DEBUG) {
@@ -2718,7 +2856,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                 return true;
 
             } finally {
-                lock.unlock();
+                loadLock.unlockWrite(stamp);
 
                 if (DEBUG) {
                     LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock released " + pageId + " unload");
@@ -2738,7 +2876,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         void flush() throws IOException {
 
             if (DEBUG) {
-                if (!((ReentrantReadWriteLock) loadLock).isWriteLockedByCurrentThread()) {
+                if (!loadLock.isWriteLocked()) {
                     throw new AssertionError("Write lock for " + pageId + " not held during flush!");
                 }
             }
@@ -2761,8 +2899,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
             }
 
             /* No data cannot change during checkpoint! */
-            final Lock lock = loadLock.writeLock();
-            lock.lock();
+            final long stamp = loadLock.writeLock();
 
             if (DEBUG) {
                 LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock taken " + pageId + " checkpoint");
@@ -2828,7 +2965,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
                         rightsep);
 
             } finally {
-                lock.unlock();
+                loadLock.unlockWrite(stamp);
 
                 if (DEBUG) {
                     LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " write lock released " + pageId + " checkpoint");
@@ -2855,7 +2992,8 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
         @SuppressWarnings("unchecked")
         private long writeNodePage(long pageId) throws IOException {
-            final Map<X, Long> pointers = new HashMap<>(keys);
+            /* Keep key order, pages will be loaded faster appending in order */
+            final Map<X, Long> pointers = new LinkedHashMap<>(keys);
             map.forEach((x, y) -> {
                 pointers.put(x, ((Node<X, Y>) y).pageId);
             });
@@ -2888,9 +3026,9 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         }
 
         private void readNodePage(long pageId) throws IOException {
-            final Map<X, Long> data = new HashMap<>();
+            final Map<X, Long> data = new LinkedHashMap<>(keys);
             owner.storage.loadNodePage(pageId, data);
-            map = newNodeMap();
+            map = newNodeMap(keys);
 
             if (size == UNKNOWN_SIZE) {
                 size = NODE_CONSTANT_SIZE;
@@ -2922,7 +3060,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         }
 
         private void readLeafPage(long pageId) throws IOException {
-            map = newNodeMap();
+            map = newNodeMap(keys);
             owner.storage.loadLeafPage(pageId, (Map<X, Y>) map);
 
             /* Recalculate size if needed */
@@ -2982,13 +3120,15 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
 
     private static class LockAndUnload<X extends Comparable<X>, Y> {
 
-        final Lock lock;
+        final StampedLock lock;
+        final long stamp;
         final Metadata unload;
         final long pageId;
 
-        public LockAndUnload(Lock lock, Metadata unload, long pageId) {
+        public LockAndUnload(StampedLock lock, long stamp, Metadata unload, long pageId) {
             super();
             this.lock = lock;
+            this.stamp = stamp;
             this.unload = unload;
             this.pageId = pageId;
         }
@@ -3018,7 +3158,7 @@ public class BLink<K extends Comparable<K>, V> implements AutoCloseable, Page.Ow
         }
 
         public void unlock() {
-            lock.unlock();
+            lock.unlockRead(stamp);
 
             if (DEBUG) {
                 LOGGER.fine(System.nanoTime() + " " + Thread.currentThread().getId() + " read lock released " + pageId + " LockAndUnload.unlock");
@@ -0,0 +1,329 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact sorted map backing {@link BLink} nodes: keys and values are kept in two parallel arrays sorted by key,
+ * every mapping costs just two array slots instead of a whole tree entry object.
+ * <p>
+ * Modifications must be externally synchronized. Reads are safe while holding the same lock of modifications;
+ * <i>optimistic</i> readers (not holding any lock) could observe inconsistent data or get runtime exceptions: they
+ * must validate what they read after the fact and discard it if a concurrent modification happened.
+ * </p>
+ * <p>
+ * Keys are compared invoking {@link Comparable#compareTo(Object)} on the searched key, like {@link java.util.TreeMap}
+ * does: {@link BLink} positive infinity key must be able to compare itself with any other key (but not otherwise).
+ * </p>
+ *
+ * @param <K> keys type
+ * @param <V> values type
+ */
+final class SortedArrayMap<K extends Comparable<K>, V> extends AbstractMap<K, V> {
+
+    private static final Object[] EMPTY = {};
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+
+    SortedArrayMap() {
+        this.keys = EMPTY;
+        this.values = EMPTY;
+    }
+
+    /**
+     * Builds a map able to hold given number of mappings without growing
+     */
+    SortedArrayMap(int capacity) {
+        if (capacity > 0) {
+            this.keys = new Object[capacity];
+            this.values = new Object[capacity];
+        } else {
+            this.keys = EMPTY;
+            this.values = EMPTY;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Binary search of the key.
+     *
+     * @return the index of the key if found, otherwise {@code -(insertion point) - 1}
+     */
+    @SuppressWarnings("unchecked")
+    int indexOf(K key) {
+        final Object[] keys = this.keys;
+        /* Guard against optimistic reads of an array being replaced */
+        int high = Math.min(size, keys.length) - 1;
+        int low = 0;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = key.compareTo((K) keys[mid]);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the least key greater than or equal to the given key, {@link #size()} if there is no
+     * such key.
+     */
+    int ceilingIndex(K key) {
+        final int index = indexOf(key);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    /**
+     * Returns the index of the least key strictly greater than the given key, {@link #size()} if there is no such
+     * key.
+     */
+    int higherIndex(K key) {
+        final int index = indexOf(key);
+        return index < 0 ? -(index + 1) : index + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int index) {
+        return (K) keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    void setValueAt(int index, V value) {
+        values[index] = value;
+    }
+
+    V firstValue() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return valueAt(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        final int index = indexOf((K) key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf((K) key) >= 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        /* Fast path: appending in key order (pages are stored sorted) */
+        if (size == 0 || key.compareTo(keyAt(size - 1)) > 0) {
+            insertAt(size, key, value);
+            return null;
+        }
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final V old = valueAt(index);
+            values[index] = value;
+            return old;
+        }
+        insertAt(-(index + 1), key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key) {
+        final int index = indexOf((K) key);
+        if (index < 0) {
+            return null;
+        }
+        return removeAt(index);
+    }
+
+    V removeAt(int index) {
+        final V old = valueAt(index);
+        final int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+        }
+        --size;
+        keys[size] = null;
+        values[size] = null;
+        return old;
+    }
+
+    private void insertAt(int index, K key, V value) {
+        if (size == keys.length) {
+            grow(size + 1);
+        }
+        final int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(keys, index, keys, index + 1, moved);
+            System.arraycopy(values, index, values, index + 1, moved);
+        }
+        keys[index] = key;
+        values[index] = value;
+        ++size;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, keys.length + (keys.length >> 1));
+        capacity = Math.max(capacity, 8);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Appends every mapping of given map, all of its keys must be greater than any key of this map.
+     */
+    void appendAll(SortedArrayMap<K, V> other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size + other.size > keys.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.keys, 0, keys, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Moves every mapping from given index (inclusive) to the end of the map into another (empty) map.
+     */
+    void moveTailTo(int from, SortedArrayMap<K, V> other) {
+        final int moved = size - from;
+        if (moved <= 0) {
+            return;
+        }
+        other.keys = Arrays.copyOfRange(keys, from, from + moved);
+        other.values = Arrays.copyOfRange(values, from, from + moved);
+        other.size = moved;
+        Arrays.fill(keys, from, size, null);
+        Arrays.fill(values, from, size, null);
+        size = from;
+    }
+
+    /**
+     * Copies mappings in the given range, {@code null} bounds are unbounded.
+     */
+    List<Entry<K, V>> copyRange(K start, boolean startInclusive, K end, boolean endInclusive) {
+        final int from;
+        if (start == null) {
+            from = 0;
+        } else {
+            from = startInclusive ? ceilingIndex(start) : higherIndex(start);
+        }
+        final int to;
+        if (end == null) {
+            to = size;
+        } else {
+            to = endInclusive ? higherIndex(end) : ceilingIndex(end);
+        }
+        if (from >= to) {
+            return new ArrayList<>(0);
+        }
+        final List<Entry<K, V>> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; ++i) {
+            list.add(new SimpleImmutableEntry<>(keyAt(i), valueAt(i)));
+        }
+        return list;
+    }
+
+    @Override
+    public void clear() {
+        keys = EMPTY;
+        values = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        final int size = this.size;
+        for (int i = 0; i < size; ++i) {
+            action.accept(keyAt(i), valueAt(i));
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<K, V> entry = new SimpleImmutableEntry<>(keyAt(next), valueAt(next));
+                        ++next;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
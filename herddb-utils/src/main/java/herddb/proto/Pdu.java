@@ -54,6 +54,8 @@ public class Pdu implements AutoCloseable {
     public static final byte TYPE_RESTORE_FINISHED = 23;
     public static final byte TYPE_TX_COMMAND = 24;
     public static final byte TYPE_TX_COMMAND_RESULT = 25;
+    public static final byte TYPE_SCANNER_DATA_PUSH = 26;
+    public static final byte TYPE_SCANNER_CREDITS = 27;
     public static final byte TYPE_SASL_TOKEN_MESSAGE_REQUEST = 100;
     public static final byte TYPE_SASL_TOKEN_SERVER_RESPONSE = 101;
     public static final byte TYPE_SASL_TOKEN_MESSAGE_TOKEN = 102;
@@ -63,6 +65,12 @@ public class Pdu implements AutoCloseable {
     public static final byte FLAGS_ISREQUEST = 1;
     public static final byte FLAGS_ISRESPONSE = 2;
     public static final byte FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS = 4;
+    public static final byte FLAGS_OPENSCANNER_STREAMING = 8;
+    /**
+     * Set on the first {@link #TYPE_RESULTSET_CHUNK} when the server accepted
+     * to push the rest of the results with {@link #TYPE_SCANNER_DATA_PUSH}
+     */
+    public static final byte FLAGS_RESULTSET_STREAMING = 16;
 
 
     private static final Recycler<Pdu> RECYCLER = new Recycler<Pdu>() {
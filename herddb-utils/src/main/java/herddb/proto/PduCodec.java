@@ -518,6 +518,7 @@ public abstract class PduCodec {
         public static final byte TX_COMMAND_ROLLBACK_TRANSACTION = 1;
         public static final byte TX_COMMAND_COMMIT_TRANSACTION = 2;
         public static final byte TX_COMMAND_BEGIN_TRANSACTION = 3;
+        public static final byte TX_COMMAND_BEGIN_SNAPSHOT_TRANSACTION = 4;
 
         public static ByteBuf write(long messageId, byte command, long tx, String tableSpace) {
             ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
@@ -606,6 +607,23 @@ public abstract class PduCodec {
                 long scannerId, long tx, List<Object> params, long statementId, int fetchSize, int maxRows,
                 boolean keepReadLocks
         ) {
+            return write(messageId, tableSpace, query, scannerId, tx, params, statementId, fetchSize, maxRows,
+                    keepReadLocks, 0);
+        }
+
+        /**
+         * Opens a scanner.
+         *
+         * @param streamingCredits if greater than zero the client asks the
+         * server to push chunks of data without waiting for
+         * {@link Pdu#TYPE_FETCHSCANNERDATA} requests, up to this number of
+         * chunks, see {@link ScannerCredits}
+         */
+        public static ByteBuf write(
+                long messageId, String tableSpace, String query,
+                long scannerId, long tx, List<Object> params, long statementId, int fetchSize, int maxRows,
+                boolean keepReadLocks, int streamingCredits
+        ) {
 
             ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
                     .directBuffer(
@@ -620,7 +638,9 @@ public abstract class PduCodec {
                                     + ONE_LONG
                                     + 1 + tableSpace.length()
                                     + 2 + query.length()
-                                    + 1 + params.size() * 8);
+                                    + 1 + params.size() * 8
+                                    + ONE_BYTE
+                                    + ONE_INT);
 
             byteBuf.writeByte(VERSION_3);
             byteBuf.writeByte(Pdu.FLAGS_ISREQUEST);
@@ -639,8 +659,18 @@ public abstract class PduCodec {
                 writeObject(byteBuf, p);
             }
             // trailer
+            byte trailer = 0;
             if (!keepReadLocks) {
-                byteBuf.writeByte(Pdu.FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS);
+                trailer |= Pdu.FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS;
+            }
+            if (streamingCredits > 0) {
+                trailer |= Pdu.FLAGS_OPENSCANNER_STREAMING;
+            }
+            if (trailer != 0) {
+                byteBuf.writeByte(trailer);
+            }
+            if (streamingCredits > 0) {
+                byteBuf.writeInt(streamingCredits);
             }
             return byteBuf;
 
@@ -753,6 +783,10 @@ public abstract class PduCodec {
         }
 
         public static ByteBuf write(long messageId, TuplesList tuplesList, boolean last, long tx) {
+            return write(messageId, tuplesList, last, tx, false);
+        }
+
+        public static ByteBuf write(long messageId, TuplesList tuplesList, boolean last, long tx, boolean streaming) {
             int dataSize = estimateTupleListSize(tuplesList);
             ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
                     .directBuffer(
@@ -765,12 +799,17 @@ public abstract class PduCodec {
                                     + dataSize);
 
             byteBuf.writeByte(VERSION_3);
-            byteBuf.writeByte(Pdu.FLAGS_ISRESPONSE);
+            byteBuf.writeByte(streaming ? Pdu.FLAGS_ISRESPONSE | Pdu.FLAGS_RESULTSET_STREAMING : Pdu.FLAGS_ISRESPONSE);
             byteBuf.writeByte(Pdu.TYPE_RESULTSET_CHUNK);
             byteBuf.writeLong(messageId);
             byteBuf.writeLong(tx);
             byteBuf.writeByte(last ? 1 : 0);
 
+            writeTuplesList(byteBuf, tuplesList);
+            return byteBuf;
+        }
+
+        static void writeTuplesList(ByteBuf byteBuf, TuplesList tuplesList) {
             int numColumns = tuplesList.columnNames.length;
             byteBuf.writeInt(numColumns);
             for (String columnName : tuplesList.columnNames) {
@@ -801,7 +840,6 @@ public abstract class PduCodec {
                     throw new RuntimeException("unexpected number of columns " + currentColumn.value + " > " + numColumns);
                 }
             }
-            return byteBuf;
         }
 
         public static long readTx(Pdu pdu) {
@@ -822,6 +860,119 @@ public abstract class PduCodec {
             ) == 1;
         }
 
+        public static boolean readIsStreaming(Pdu pdu) {
+            return (pdu.flags & Pdu.FLAGS_RESULTSET_STREAMING) == Pdu.FLAGS_RESULTSET_STREAMING;
+        }
+
+        public static RecordsBatch startReadingData(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            buffer.readerIndex(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG
+                    + ONE_BYTE);
+            return new RecordsBatch(pdu);
+        }
+    }
+
+    /**
+     * A chunk of data pushed by the server to a streaming scanner. Chunks are
+     * numbered starting from 1 because the client may process incoming
+     * messages out of order.
+     */
+    public static class ScannerDataPush {
+
+        public static final byte STATUS_DATA = 0;
+        public static final byte STATUS_LAST = 1;
+        public static final byte STATUS_ERROR = 2;
+
+        public static ByteBuf write(long messageId, long scannerId, long sequence, TuplesList tuplesList, boolean last) {
+            int dataSize = ResultSetChunk.estimateTupleListSize(tuplesList);
+            ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
+                    .directBuffer(
+                            VERSION_SIZE
+                                    + FLAGS_SIZE
+                                    + TYPE_SIZE
+                                    + MSGID_SIZE
+                                    + ONE_LONG
+                                    + ONE_LONG
+                                    + ONE_BYTE
+                                    + dataSize);
+
+            byteBuf.writeByte(VERSION_3);
+            byteBuf.writeByte(Pdu.FLAGS_ISREQUEST);
+            byteBuf.writeByte(Pdu.TYPE_SCANNER_DATA_PUSH);
+            byteBuf.writeLong(messageId);
+            byteBuf.writeLong(scannerId);
+            byteBuf.writeLong(sequence);
+            byteBuf.writeByte(last ? STATUS_LAST : STATUS_DATA);
+            ResultSetChunk.writeTuplesList(byteBuf, tuplesList);
+            return byteBuf;
+        }
+
+        public static ByteBuf writeError(long messageId, long scannerId, long sequence, String error) {
+            ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
+                    .directBuffer(
+                            VERSION_SIZE
+                                    + FLAGS_SIZE
+                                    + TYPE_SIZE
+                                    + MSGID_SIZE
+                                    + ONE_LONG
+                                    + ONE_LONG
+                                    + ONE_BYTE
+                                    + error.length());
+
+            byteBuf.writeByte(VERSION_3);
+            byteBuf.writeByte(Pdu.FLAGS_ISREQUEST);
+            byteBuf.writeByte(Pdu.TYPE_SCANNER_DATA_PUSH);
+            byteBuf.writeLong(messageId);
+            byteBuf.writeLong(scannerId);
+            byteBuf.writeLong(sequence);
+            byteBuf.writeByte(STATUS_ERROR);
+            ByteBufUtils.writeString(byteBuf, error);
+            return byteBuf;
+        }
+
+        public static long readScannerId(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getLong(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE);
+        }
+
+        public static long readSequence(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getLong(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG);
+        }
+
+        public static byte readStatus(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getByte(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG
+                    + ONE_LONG);
+        }
+
+        public static String readError(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            buffer.readerIndex(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG
+                    + ONE_LONG
+                    + ONE_BYTE);
+            return ByteBufUtils.readString(buffer);
+        }
+
         public static RecordsBatch startReadingData(Pdu pdu) {
             ByteBuf buffer = pdu.buffer;
             buffer.readerIndex(VERSION_SIZE
@@ -829,11 +980,54 @@ public abstract class PduCodec {
                     + TYPE_SIZE
                     + MSGID_SIZE
                     + ONE_LONG
+                    + ONE_LONG
                     + ONE_BYTE);
             return new RecordsBatch(pdu);
         }
     }
 
+    /**
+     * Grants to the server the permission to push more chunks to a streaming
+     * scanner.
+     */
+    public static class ScannerCredits {
+
+        public static ByteBuf write(long messageId, long scannerId, int credits) {
+            ByteBuf byteBuf = PooledByteBufAllocator.DEFAULT
+                    .directBuffer(
+                            VERSION_SIZE
+                                    + FLAGS_SIZE
+                                    + TYPE_SIZE
+                                    + MSGID_SIZE
+                                    + ONE_LONG
+                                    + ONE_INT);
+            byteBuf.writeByte(VERSION_3);
+            byteBuf.writeByte(Pdu.FLAGS_ISREQUEST);
+            byteBuf.writeByte(Pdu.TYPE_SCANNER_CREDITS);
+            byteBuf.writeLong(messageId);
+            byteBuf.writeLong(scannerId);
+            byteBuf.writeInt(credits);
+            return byteBuf;
+        }
+
+        public static long readScannerId(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getLong(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE);
+        }
+
+        public static int readCredits(Pdu pdu) {
+            ByteBuf buffer = pdu.buffer;
+            return buffer.getInt(VERSION_SIZE
+                    + FLAGS_SIZE
+                    + TYPE_SIZE
+                    + MSGID_SIZE
+                    + ONE_LONG);
+        }
+    }
+
     public static class FetchScannerData {
 
         public static ByteBuf write(long messageId, long scannerId, int fetchSize) {
@@ -1843,6 +2037,19 @@ public abstract class PduCodec {
             return ((trailer & Pdu.FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS) == Pdu.FLAGS_OPENSCANNER_DONTKEEP_READ_LOCKS);
         }
 
+        public static boolean isStreaming(byte trailer) {
+            return ((trailer & Pdu.FLAGS_OPENSCANNER_STREAMING) == Pdu.FLAGS_OPENSCANNER_STREAMING);
+        }
+
+        public int readStreamingCredits() {
+            // assuming that the readerIndex is not altered but other direct accesses to the ByteBuf
+            if (pdu.buffer.isReadable(ONE_INT)) {
+                return pdu.buffer.readInt();
+            } else {
+                return 0;
+            }
+        }
+
     }
 
     static void writeObject(ByteBuf byteBuf, Object v) {
@@ -47,6 +47,7 @@ public final class DiskArrayList<T> implements AutoCloseable, Iterable<T> {
     private boolean compressionEnabled = false;
     private final Serializer<T> serializer;
     private boolean closed;
+    private long swappedBytes;
 
     public interface Serializer<T> {
 
@@ -103,6 +104,13 @@ public final class DiskArrayList<T> implements AutoCloseable, Iterable<T> {
         return swapped;
     }
 
+    /**
+     * @return size of the swap file, available once writes are finished
+     */
+    public long getSwappedBytes() {
+        return swappedBytes;
+    }
+
     public boolean isEmpty() {
         return size == 0;
     }
@@ -334,6 +342,10 @@ public final class DiskArrayList<T> implements AutoCloseable, Iterable<T> {
             } finally {
                 out = null;
             }
+            try {
+                swappedBytes = Files.size(tmpFile);
+            } catch (IOException ex) {
+            }
         }
 
     }
@@ -107,11 +107,15 @@ public class LocalLockManager implements ILocalLockManager {
     public LockHandle acquireWriteLockForKey(Bytes key) {
         LockInstance lock = makeLockForKey(key);
         try {
-            long tryWriteLock = lock.lock.tryWriteLock(writeLockTimeout, TimeUnit.SECONDS);
+            long tryWriteLock = lock.lock.tryWriteLock();
+            boolean waited = tryWriteLock == 0;
+            if (waited) {
+                tryWriteLock = lock.lock.tryWriteLock(writeLockTimeout, TimeUnit.SECONDS);
+            }
             if (tryWriteLock == 0) {
                 throw new LockAcquireTimeoutException("timed out acquiring lock for write");
             }
-            return new LockHandle(tryWriteLock, key, true, lock);
+            return new LockHandle(tryWriteLock, key, true, lock, waited);
         } catch (InterruptedException err) {
             Thread.currentThread().interrupt();
             throw new LockAcquireTimeoutException(err);
@@ -130,11 +134,15 @@ public class LocalLockManager implements ILocalLockManager {
     public LockHandle acquireReadLockForKey(Bytes key) {
         LockInstance lock = makeLockForKey(key);
         try {
-            long tryReadLock = lock.lock.tryReadLock(readLockTimeout, TimeUnit.SECONDS);
+            long tryReadLock = lock.lock.tryReadLock();
+            boolean waited = tryReadLock == 0;
+            if (waited) {
+                tryReadLock = lock.lock.tryReadLock(readLockTimeout, TimeUnit.SECONDS);
+            }
             if (tryReadLock == 0) {
                 throw new LockAcquireTimeoutException("timedout trying to read lock");
             }
-            return new LockHandle(tryReadLock, key, false, lock);
+            return new LockHandle(tryReadLock, key, false, lock, waited);
         } catch (InterruptedException err) {
             Thread.currentThread().interrupt();
             throw new LockAcquireTimeoutException(err);
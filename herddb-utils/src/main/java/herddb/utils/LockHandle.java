@@ -31,19 +31,25 @@ public class LockHandle {
     public final boolean write;
     public final Bytes key;
     public final Object handle;
+    /**
+     * The lock was not immediately available
+     */
+    public final boolean waited;
 
     public LockHandle(long stamp, Bytes key, boolean write) {
-        this.stamp = stamp;
-        this.key = key;
-        this.write = write;
-        this.handle = null;
+        this(stamp, key, write, null, false);
     }
 
     public LockHandle(long stamp, Bytes key, boolean write, Object handle) {
+        this(stamp, key, write, handle, false);
+    }
+
+    public LockHandle(long stamp, Bytes key, boolean write, Object handle, boolean waited) {
         this.stamp = stamp;
         this.key = key;
         this.write = write;
         this.handle = handle;
+        this.waited = waited;
     }
 
 }
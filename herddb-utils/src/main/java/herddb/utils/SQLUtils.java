@@ -182,4 +182,116 @@ public class SQLUtils {
         return -1;
     }
 
+    /**
+     * Normalizes a query in order to group executions of the same statement
+     * with different literal values: string and numeric literals are replaced
+     * by a '?', lists of parameters in an IN clause by a single '?', comments
+     * are dropped and consecutive whitespaces are replaced by a single space.
+     * Quoted identifiers are kept as they are.
+     *
+     * @param query
+     * @return the normalized query
+     */
+    public static String fingerprint(String query) {
+        final int max = query.length();
+        StringBuilder result = new StringBuilder(max);
+        int idx = 0;
+        while (idx < max) {
+            char ch = query.charAt(idx);
+            if (ch == '\'' || ch == '"' || ch == '`') {
+                int end = idx + 1;
+                while (end < max) {
+                    if (query.charAt(end) == ch) {
+                        if (end + 1 < max && query.charAt(end + 1) == ch) {
+                            // escaped quote
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, max);
+                if (ch == '\'') {
+                    result.append('?');
+                } else {
+                    result.append(query, idx, end);
+                }
+                idx = end;
+            } else if (ch == '-' && idx + 1 < max && query.charAt(idx + 1) == '-') {
+                int end = query.indexOf('\n', idx);
+                idx = end < 0 ? max : end;
+            } else if (ch == '/' && idx + 1 < max && query.charAt(idx + 1) == '*') {
+                int end = query.indexOf("*/", idx + 2);
+                idx = end < 0 ? max : end + 2;
+                appendSpace(result);
+            } else if (Character.isWhitespace(ch)) {
+                appendSpace(result);
+                idx++;
+            } else if (Character.isDigit(ch)
+                    && (result.length() == 0 || !Character.isJavaIdentifierPart(result.charAt(result.length() - 1)))) {
+                int end = idx + 1;
+                while (end < max && (Character.isLetterOrDigit(query.charAt(end)) || query.charAt(end) == '.')) {
+                    end++;
+                }
+                result.append('?');
+                idx = end;
+            } else if (ch == ')' && collapseInList(result)) {
+                idx++;
+            } else {
+                result.append(ch);
+                idx++;
+            }
+        }
+        int len = result.length();
+        if (len > 0 && result.charAt(len - 1) == ' ') {
+            result.setLength(len - 1);
+        }
+        return result.toString();
+    }
+
+    private static void appendSpace(StringBuilder result) {
+        int len = result.length();
+        if (len > 0 && result.charAt(len - 1) != ' ') {
+            result.append(' ');
+        }
+    }
+
+    /**
+     * Replaces "IN (?, ?, ?" at the end of the buffer with "IN (?)"
+     *
+     * @return true if the closing parenthesis has been appended
+     */
+    private static boolean collapseInList(StringBuilder result) {
+        int pos = result.length() - 1;
+        int params = 0;
+        while (pos >= 0) {
+            char c = result.charAt(pos);
+            if (c == '?') {
+                params++;
+            } else if (c == '(') {
+                break;
+            } else if (c != ',' && c != ' ') {
+                return false;
+            }
+            pos--;
+        }
+        if (pos < 0 || params == 0) {
+            return false;
+        }
+        int keyword = pos - 1;
+        if (keyword >= 0 && result.charAt(keyword) == ' ') {
+            keyword--;
+        }
+        if (keyword < 1
+                || Character.toUpperCase(result.charAt(keyword)) != 'N'
+                || Character.toUpperCase(result.charAt(keyword - 1)) != 'I'
+                || (keyword >= 2 && Character.isJavaIdentifierPart(result.charAt(keyword - 2)))) {
+            return false;
+        }
+        result.setLength(pos + 1);
+        result.append("?)");
+        return true;
+    }
+
 }
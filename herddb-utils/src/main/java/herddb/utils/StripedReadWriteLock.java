@@ -0,0 +1,195 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A read/write lock biased towards readers.
+ * <p>
+ * While there is no writer readers only increment a counter chosen by the
+ * current thread among many counters on different cache lines, so that
+ * readers on different cores do not contend on the same memory location as
+ * it happens with {@link StampedLock}. A writer disables the fast path, then
+ * it waits for the counters to drain: writers are expected to be rare
+ * (checkpoints, DDLs).
+ * <p>
+ * While a writer is pending or active readers fall back to a
+ * {@link StampedLock}. The API follows {@link StampedLock}: every lock
+ * operation returns a non zero stamp which must be used to release the lock,
+ * also from a thread different from the one which acquired it.
+ */
+public final class StripedReadWriteLock {
+
+    private static final int MAX_STRIPES = 64;
+    // 16 longs = 128 bytes, two cache lines, because of adjacent line prefetch
+    private static final int PADDING = 16;
+    // stamps of fast path readers are negative, StampedLock stamps are positive
+    private static final long FAST_READ_STAMP = Long.MIN_VALUE;
+
+    private final StampedLock fallback = new StampedLock();
+    private final AtomicLongArray readers;
+    private final int stripesMask;
+    private volatile boolean readerBias = true;
+
+    public StripedReadWriteLock() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedReadWriteLock(int stripes) {
+        int size = 1;
+        while (size < stripes && size < MAX_STRIPES) {
+            size <<= 1;
+        }
+        this.stripesMask = size - 1;
+        this.readers = new AtomicLongArray(size * PADDING);
+    }
+
+    private int currentStripe() {
+        long id = Thread.currentThread().getId();
+        // thread ids are sequential, spread them
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & stripesMask;
+    }
+
+    public long readLock() {
+        long stamp = tryFastReadLock();
+        if (stamp != 0) {
+            return stamp;
+        }
+        return fallback.readLock();
+    }
+
+    /**
+     * @return the stamp, or zero if the lock is not available within the
+     * given time
+     */
+    public long tryReadLock(long time, TimeUnit unit) throws InterruptedException {
+        long stamp = tryFastReadLock();
+        if (stamp != 0) {
+            return stamp;
+        }
+        return fallback.tryReadLock(time, unit);
+    }
+
+    private long tryFastReadLock() {
+        if (!readerBias) {
+            return 0;
+        }
+        int stripe = currentStripe();
+        readers.incrementAndGet(stripe * PADDING);
+        if (readerBias) {
+            return FAST_READ_STAMP | stripe;
+        }
+        // a writer is arriving, it will wait for this counter to go back
+        readers.decrementAndGet(stripe * PADDING);
+        return 0;
+    }
+
+    public void unlockRead(long stamp) {
+        if (stamp < 0) {
+            int stripe = (int) (stamp & ~FAST_READ_STAMP);
+            readers.decrementAndGet(stripe * PADDING);
+        } else {
+            fallback.unlockRead(stamp);
+        }
+    }
+
+    public long writeLock() {
+        long stamp = fallback.writeLock();
+        readerBias = false;
+        while (!drained()) {
+            waitForReaders();
+        }
+        return stamp;
+    }
+
+    /**
+     * @return the stamp, or zero if the lock is not available within the
+     * given time
+     */
+    public long tryWriteLock(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        long stamp = fallback.tryWriteLock(time, unit);
+        if (stamp == 0) {
+            return 0;
+        }
+        readerBias = false;
+        while (!drained()) {
+            boolean interrupted = Thread.interrupted();
+            if (interrupted || System.nanoTime() - deadline >= 0) {
+                readerBias = true;
+                fallback.unlockWrite(stamp);
+                if (interrupted) {
+                    throw new InterruptedException();
+                }
+                return 0;
+            }
+            waitForReaders();
+        }
+        return stamp;
+    }
+
+    public void unlockWrite(long stamp) {
+        readerBias = true;
+        fallback.unlockWrite(stamp);
+    }
+
+    /**
+     * Downgrades a write lock to a read lock.
+     *
+     * @return the stamp of the read lock, zero if the given stamp is not valid
+     */
+    public long tryConvertToReadLock(long stamp) {
+        long readStamp = fallback.tryConvertToReadLock(stamp);
+        if (readStamp != 0) {
+            // other writers are still blocked by the read lock on the fallback lock
+            readerBias = true;
+        }
+        return readStamp;
+    }
+
+    public boolean isWriteLocked() {
+        return fallback.isWriteLocked();
+    }
+
+    private boolean drained() {
+        for (int i = 0; i <= stripesMask; i++) {
+            if (readers.get(i * PADDING) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void waitForReaders() {
+        // readers do not signal the writer, usually they hold the lock only for a short time
+        Thread.yield();
+        LockSupport.parkNanos(10_000);
+    }
+
+    @Override
+    public String toString() {
+        return "StripedReadWriteLock{" + "readerBias=" + readerBias + ", " + fallback + '}';
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+*/
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class QuotaPageReplacementPolicyTest {
+
+    private static final class MyOwner implements Page.Owner {
+
+        @Override
+        public void unload(long pageId) {
+            throw new RuntimeException();
+        }
+    }
+
+    private static final class MyPage extends Page<MyOwner> {
+
+        MyPage(MyOwner owner, long pageId) {
+            super(owner, pageId);
+        }
+    }
+
+    /**
+     * Loads pages in the group, unloading the pages selected by the policy
+     */
+    private static void load(QuotaPageReplacementPolicy.Group group, MyOwner owner, int count) {
+        for (int i = 0; i < count; i++) {
+            Page.Metadata unload = group.add(new MyPage(owner, i));
+            if (unload != null) {
+                assertTrue(unload.owner instanceof MyOwner);
+            }
+        }
+    }
+
+    @Test
+    public void reservationIsPreserved() {
+        QuotaPageReplacementPolicy policy = new QuotaPageReplacementPolicy(100, ClockProPolicy::new);
+        QuotaPageReplacementPolicy.Group latency = policy.getGroup("latency", 40, 100, 0);
+        QuotaPageReplacementPolicy.Group batch = policy.getGroup("batch", 0, 100, 0);
+
+        load(latency, new MyOwner(), 40);
+        assertEquals(40, latency.size());
+
+        // a big scan on the other group does not unload the reserved pages
+        load(batch, new MyOwner(), 1000);
+        assertEquals(40, latency.size());
+        assertEquals(60, batch.size());
+        assertEquals(100, policy.size());
+    }
+
+    @Test
+    public void capIsEnforced() {
+        QuotaPageReplacementPolicy policy = new QuotaPageReplacementPolicy(100, ClockAdaptiveReplacement::new);
+        QuotaPageReplacementPolicy.Group batch = policy.getGroup("batch", 0, 20, 0);
+
+        MyOwner owner = new MyOwner();
+        load(batch, owner, 1000);
+        assertEquals(20, batch.size());
+
+        // other groups use the remaining memory
+        load(policy.getDefaultGroup(), new MyOwner(), 80);
+        assertEquals(20, batch.size());
+        assertEquals(100, policy.size());
+    }
+
+    @Test
+    public void lowerPriorityIsUnloadedFirst() {
+        QuotaPageReplacementPolicy policy = new QuotaPageReplacementPolicy(100, RandomPageReplacementPolicy::new);
+        QuotaPageReplacementPolicy.Group important = policy.getGroup("important", 0, 100, 10);
+        QuotaPageReplacementPolicy.Group other = policy.getGroup("other", 0, 100, -10);
+
+        MyOwner otherOwner = new MyOwner();
+        load(other, otherOwner, 50);
+        load(important, new MyOwner(), 50);
+        assertEquals(100, policy.size());
+
+        // memory is full, pages of the group with lower priority are unloaded
+        MyOwner importantOwner = new MyOwner();
+        for (int i = 0; i < 50; i++) {
+            Page.Metadata unload = important.add(new MyPage(importantOwner, i));
+            assertSame(otherOwner, unload.owner);
+        }
+        assertEquals(0, other.size());
+        assertEquals(100, important.size());
+
+        // now the group has to unload its own pages
+        Page.Metadata unload = important.add(new MyPage(importantOwner, 1000));
+        assertTrue(unload.owner != otherOwner);
+    }
+
+    @Test
+    public void groupsAreCreatedOnce() {
+        QuotaPageReplacementPolicy policy = new QuotaPageReplacementPolicy(100, ClockProPolicy::new);
+        QuotaPageReplacementPolicy.Group group = policy.getGroup("g", 10, 50, 1);
+        assertSame(group, policy.getGroup("g", 20, 60, 2));
+        assertEquals(10, group.getReservedPages());
+        assertEquals(50, group.capacity());
+
+        assertNull(policy.pop());
+        assertEquals(2, policy.getGroups().size());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+*/
+
+package herddb.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class ShardedPageReplacementPolicyTest {
+
+    private static final class MyOwner implements Page.Owner {
+
+        @Override
+        public void unload(long pageId) {
+            throw new RuntimeException();
+        }
+    }
+
+    private static final class MyPage extends Page<MyOwner> {
+
+        MyPage(MyOwner owner, long pageId) {
+            super(owner, pageId);
+        }
+    }
+
+    @Test
+    public void capacityIsSplitAmongShards() {
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(1003, 4, ClockProPolicy::new);
+        assertEquals(4, policy.getShards());
+        assertEquals(1003, policy.capacity());
+
+        // never more shards than pages
+        ShardedPageReplacementPolicy small = new ShardedPageReplacementPolicy(3, 8, ClockProPolicy::new);
+        assertEquals(3, small.getShards());
+        assertEquals(3, small.capacity());
+    }
+
+    @Test
+    public void neverExceedsCapacity() {
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(300, 8, ClockAdaptiveReplacement::new);
+        MyOwner owner = new MyOwner();
+        Map<Long, MyPage> loaded = new HashMap<>();
+        for (long i = 0; i < 5000; i++) {
+            MyPage page = new MyPage(owner, i);
+            Page.Metadata unloaded = policy.add(page);
+            loaded.put(i, page);
+            if (unloaded != null) {
+                assertNotNull(loaded.remove(unloaded.pageId));
+            }
+            if (i % 3 == 0) {
+                // hit an already loaded page
+                policy.pageHit(loaded.values().iterator().next());
+            }
+            assertEquals(loaded.size(), policy.size());
+            assertTrue(policy.size() <= policy.capacity());
+        }
+
+        List<MyPage> toRemove = new ArrayList<>(loaded.values());
+        policy.remove(toRemove);
+        assertEquals(0, policy.size());
+        assertFalse(policy.remove(toRemove.get(0)));
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        ShardedPageReplacementPolicy policy = new ShardedPageReplacementPolicy(1000, 8, ClockProPolicy::new);
+        Map<Page.Metadata, Boolean> unloaded = new ConcurrentHashMap<>();
+        int threads = 8;
+        int pagesPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                MyOwner owner = new MyOwner();
+                futures.add(executor.submit(() -> {
+                    for (long i = 0; i < pagesPerThread; i++) {
+                        MyPage page = new MyPage(owner, i);
+                        Page.Metadata res = policy.add(page);
+                        policy.pageHit(page);
+                        if (res != null) {
+                            assertTrue(unloaded.put(res, Boolean.TRUE) == null);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(policy.capacity(), policy.size());
+        assertEquals(threads * pagesPerThread - policy.capacity(), unloaded.size());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index.blink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests on {@link SortedArrayMap}, checked against a {@link TreeMap}
+ */
+public class SortedArrayMapTest {
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(1234);
+        SortedArrayMap<Long, Long> map = new SortedArrayMap<>();
+        TreeMap<Long, Long> expected = new TreeMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertEquals(expected, map);
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+
+        for (long key = -1; key <= 1000; key++) {
+            Long ceiling = expected.ceilingKey(key);
+            int index = map.ceilingIndex(key);
+            if (ceiling == null) {
+                assertEquals(map.size(), index);
+            } else {
+                assertEquals(ceiling, map.keyAt(index));
+            }
+        }
+    }
+
+    @Test
+    public void copyRange() {
+        SortedArrayMap<Long, Long> map = new SortedArrayMap<>();
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        for (long key = 0; key < 100; key += 2) {
+            map.put(key, key);
+            expected.put(key, key);
+        }
+
+        assertEquals(new ArrayList<>(expected.entrySet()), map.copyRange(null, false, null, false));
+        assertEquals(new ArrayList<>(expected.headMap(50L, false).entrySet()), map.copyRange(null, false, 50L, false));
+        assertEquals(new ArrayList<>(expected.headMap(50L, true).entrySet()), map.copyRange(null, false, 50L, true));
+        assertEquals(new ArrayList<>(expected.tailMap(51L, true).entrySet()), map.copyRange(51L, true, null, false));
+        assertEquals(new ArrayList<>(expected.tailMap(50L, false).entrySet()), map.copyRange(50L, false, null, false));
+        assertEquals(new ArrayList<>(expected.subMap(10L, true, 20L, true).entrySet()), map.copyRange(10L, true, 20L, true));
+        assertEquals(new ArrayList<>(expected.subMap(10L, false, 20L, false).entrySet()), map.copyRange(10L, false, 20L, false));
+        assertTrue(map.copyRange(30L, false, 30L, false).isEmpty());
+        assertTrue(map.copyRange(200L, true, null, false).isEmpty());
+    }
+
+    @Test
+    public void splitAndMerge() {
+        SortedArrayMap<Long, Long> left = new SortedArrayMap<>(10);
+        for (long key = 0; key < 100; key++) {
+            left.put(key, key);
+        }
+
+        SortedArrayMap<Long, Long> right = new SortedArrayMap<>();
+        left.moveTailTo(60, right);
+        assertEquals(60, left.size());
+        assertEquals(40, right.size());
+        assertEquals(59L, (long) left.keyAt(59));
+        assertEquals(60L, (long) right.keyAt(0));
+        assertNull(left.get(60L));
+
+        /* Still usable after split */
+        left.put(60L, -1L);
+        assertEquals(-1L, (long) left.get(60L));
+        left.remove(60L);
+
+        left.appendAll(right);
+        assertEquals(100, left.size());
+        List<Long> keys = new ArrayList<>();
+        for (Entry<Long, Long> entry : left.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue());
+            keys.add(entry.getKey());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) keys.get(i));
+        }
+    }
+}
@@ -20,15 +20,23 @@
 package herddb.proto;
 
 import static herddb.proto.PduCodec.ObjectListReader.isDontKeepReadLocks;
+import static herddb.proto.PduCodec.ObjectListReader.isStreaming;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import herddb.utils.DataAccessor;
+import herddb.utils.MapDataAccessor;
 import herddb.utils.RawString;
+import herddb.utils.RecordsBatch;
+import herddb.utils.TuplesList;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 
 /**
@@ -92,6 +100,67 @@ public class PduCodecTest {
 
     }
 
+    @Test
+    public void readStreamingTrailer() throws Exception {
+        List<Object> params = Arrays.asList("1");
+        ByteBuf write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 4, 5, 6, true, 16);
+        try (Pdu pdu = PduCodec.decodePdu(write);) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            assertEquals(RawString.of("1"), paramsReader.nextObject());
+            byte trailer = paramsReader.readTrailer();
+            assertFalse(isDontKeepReadLocks(trailer));
+            assertTrue(isStreaming(trailer));
+            assertEquals(16, paramsReader.readStreamingCredits());
+        }
+
+        write = PduCodec.OpenScanner.write(1, "ts", "q", 2, 3, params, 4, 5, 6, false, 0);
+        try (Pdu pdu = PduCodec.decodePdu(write);) {
+            PduCodec.ObjectListReader paramsReader = PduCodec.OpenScanner.startReadParameters(pdu);
+            assertEquals(RawString.of("1"), paramsReader.nextObject());
+            byte trailer = paramsReader.readTrailer();
+            assertTrue(isDontKeepReadLocks(trailer));
+            assertFalse(isStreaming(trailer));
+            assertEquals(0, paramsReader.readStreamingCredits());
+        }
+    }
+
+    @Test
+    public void scannerDataPush() throws Exception {
+        Map<String, Object> record = new HashMap<>();
+        record.put("k", "a");
+        record.put("n", 1);
+        TuplesList tuples = new TuplesList(new String[]{"k", "n"},
+                Collections.<DataAccessor>singletonList(new MapDataAccessor(record, new String[]{"k", "n"})));
+        ByteBuf write = PduCodec.ScannerDataPush.write(10, 20, 3, tuples, true);
+        try (Pdu pdu = PduCodec.decodePdu(write);) {
+            assertEquals(Pdu.TYPE_SCANNER_DATA_PUSH, pdu.type);
+            assertTrue(pdu.isRequest());
+            assertEquals(20, PduCodec.ScannerDataPush.readScannerId(pdu));
+            assertEquals(3, PduCodec.ScannerDataPush.readSequence(pdu));
+            assertEquals(PduCodec.ScannerDataPush.STATUS_LAST, PduCodec.ScannerDataPush.readStatus(pdu));
+            RecordsBatch batch = PduCodec.ScannerDataPush.startReadingData(pdu);
+            assertTrue(batch.hasNext());
+            DataAccessor next = batch.next();
+            assertEquals(RawString.of("a"), next.get("k"));
+            assertEquals(1, next.get("n"));
+            assertFalse(batch.hasNext());
+        }
+
+        write = PduCodec.ScannerDataPush.writeError(11, 20, 4, "boom");
+        try (Pdu pdu = PduCodec.decodePdu(write);) {
+            assertEquals(4, PduCodec.ScannerDataPush.readSequence(pdu));
+            assertEquals(PduCodec.ScannerDataPush.STATUS_ERROR, PduCodec.ScannerDataPush.readStatus(pdu));
+            assertEquals("boom", PduCodec.ScannerDataPush.readError(pdu));
+        }
+
+        write = PduCodec.ScannerCredits.write(12, 20, 7);
+        try (Pdu pdu = PduCodec.decodePdu(write);) {
+            assertEquals(Pdu.TYPE_SCANNER_CREDITS, pdu.type);
+            assertEquals(20, PduCodec.ScannerCredits.readScannerId(pdu));
+            assertEquals(7, PduCodec.ScannerCredits.readCredits(pdu));
+        }
+    }
+
     @Test
     public void testNormalizeParametersListWriteReadObject() {
         long now = System.currentTimeMillis();
@@ -41,6 +41,7 @@ public class DiskArrayListTest {
             }
             list.finish();
             assertFalse(list.isSwapped());
+            assertEquals(0, list.getSwappedBytes());
             {
                 int read = 0;
                 for (String s : list) {
@@ -88,6 +89,7 @@ public class DiskArrayListTest {
             list.finish();
 
             assertTrue(list.isSwapped());
+            assertTrue(list.getSwappedBytes() > 0);
             int read = 0;
             for (String s : list) {
                 read++;
@@ -0,0 +1,61 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests on LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            previous = bucket;
+        }
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(last));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500 && median < 500 + 500 / LatencyHistogram.SUB_BUCKETS);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests on SQLUtils
+ */
+public class SQLUtilsTest {
+
+    @Test
+    public void fingerprint() {
+        assertEquals("SELECT * FROM t WHERE a=? AND b=?",
+                SQLUtils.fingerprint("SELECT *\n  FROM t WHERE a=12 AND b='it''s'"));
+        assertEquals("SELECT * FROM t WHERE a=? AND b=?",
+                SQLUtils.fingerprint("  /* comment */ SELECT * FROM t WHERE a=? AND b=? -- trailing"));
+        assertEquals("SELECT c1 FROM t2 WHERE c2 in (?) AND \"col 3\"=?",
+                SQLUtils.fingerprint("SELECT c1 FROM t2 WHERE c2 in (1, 2,3) AND \"col 3\"=1.5"));
+        assertEquals("SELECT c1 FROM t2 WHERE c2 IN (?)",
+                SQLUtils.fingerprint("SELECT c1 FROM t2 WHERE c2 IN (?,?)"));
+        // not an IN list
+        assertEquals("INSERT INTO t(a,b) values(?,?)",
+                SQLUtils.fingerprint("INSERT INTO t(a,b) values(1,'b')"));
+        assertEquals("SELECT max(c1) FROM t WHERE c2 LIMIT ?",
+                SQLUtils.fingerprint("SELECT max(c1) FROM t WHERE c2 LIMIT 10"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * Tests on StripedReadWriteLock
+ */
+public class StripedReadWriteLockTest {
+
+    @Rule
+    public Timeout timeout = new Timeout(30000);
+
+    @Test
+    public void writerWaitsForReaders() throws Exception {
+        StripedReadWriteLock lock = new StripedReadWriteLock(8);
+        long readStamp = lock.readLock();
+        assertNotEquals(0, readStamp);
+
+        // a reader does not block other readers
+        long readStamp2 = lock.readLock();
+        lock.unlockRead(readStamp2);
+
+        assertEquals(0, lock.tryWriteLock(100, TimeUnit.MILLISECONDS));
+        // after the failed attempt readers can use the fast path again
+        long readStamp3 = lock.readLock();
+        lock.unlockRead(readStamp3);
+
+        // the read lock is released by another thread, as it happens with async statements
+        CompletableFuture.runAsync(() -> lock.unlockRead(readStamp)).get();
+
+        long writeStamp = lock.tryWriteLock(1, TimeUnit.SECONDS);
+        assertNotEquals(0, writeStamp);
+        assertTrue(lock.isWriteLocked());
+        assertEquals(0, lock.tryReadLock(100, TimeUnit.MILLISECONDS));
+        lock.unlockWrite(writeStamp);
+        assertFalse(lock.isWriteLocked());
+    }
+
+    @Test
+    public void downgradeWriteLock() throws Exception {
+        StripedReadWriteLock lock = new StripedReadWriteLock(8);
+        long writeStamp = lock.writeLock();
+        long readStamp = lock.tryConvertToReadLock(writeStamp);
+        assertNotEquals(0, readStamp);
+        assertFalse(lock.isWriteLocked());
+
+        long readStamp2 = lock.readLock();
+        lock.unlockRead(readStamp2);
+        // the downgraded lock still excludes writers
+        assertEquals(0, lock.tryWriteLock(100, TimeUnit.MILLISECONDS));
+        lock.unlockRead(readStamp);
+        lock.unlockWrite(lock.writeLock());
+    }
+
+    @Test
+    public void mutualExclusion() throws Exception {
+        StripedReadWriteLock lock = new StripedReadWriteLock();
+        AtomicInteger activeReaders = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch stop = new CountDownLatch(1);
+        try {
+            Future<?>[] readers = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                readers[i] = executor.submit(() -> {
+                    while (stop.getCount() > 0) {
+                        long stamp = lock.readLock();
+                        activeReaders.incrementAndGet();
+                        activeReaders.decrementAndGet();
+                        lock.unlockRead(stamp);
+                    }
+                });
+            }
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    long stamp = lock.writeLock();
+                    if (activeReaders.get() != 0) {
+                        errors.incrementAndGet();
+                    }
+                    lock.unlockWrite(stamp);
+                }
+                stop.countDown();
+            });
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            stop.countDown();
+            executor.shutdown();
+        }
+        assertEquals(0, errors.get());
+    }
+}
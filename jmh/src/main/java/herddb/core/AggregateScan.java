@@ -0,0 +1,122 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * COUNT and SUM over a whole table, computed during the scan of the table
+ * and, as a baseline, by the generic aggregation (SUM of an expression).
+ * <p>
+ * The table is kept in memory, 50M rows need a large heap: use for instance
+ * -jvmArgsAppend -Xmx32g, or -p rows=1000000 for a quick run.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class AggregateScan {
+
+    @Param({"50000000"})
+    public int rows;
+
+    DBManager manager;
+
+    @Setup
+    public void setup() throws Exception {
+        String nodeId = "localhost";
+        manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null);
+        manager.start();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+
+        execute(manager, "CREATE TABLE tblspace1.tsql (k1 long primary key, n1 int, n2 long, s1 string)", Collections.emptyList());
+        for (int i = 0; i < rows; i++) {
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,n1,n2,s1) values(?,?,?,?)",
+                    Arrays.asList(Long.valueOf(i), Integer.valueOf(i % 1000), Long.valueOf(i), "s" + (i % 10)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public void count(Blackhole bh) throws Exception {
+        consume("SELECT COUNT(*) FROM tblspace1.tsql", bh);
+    }
+
+    @Benchmark
+    public void countWithPredicate(Blackhole bh) throws Exception {
+        consume("SELECT COUNT(*) FROM tblspace1.tsql WHERE n1 >= 0", bh);
+    }
+
+    @Benchmark
+    public void sum(Blackhole bh) throws Exception {
+        consume("SELECT SUM(n1), SUM(n2) FROM tblspace1.tsql", bh);
+    }
+
+    @Benchmark
+    public void sumGroupBy(Blackhole bh) throws Exception {
+        consume("SELECT s1, SUM(n2) FROM tblspace1.tsql GROUP BY s1", bh);
+    }
+
+    @Benchmark
+    public void sumOfExpression(Blackhole bh) throws Exception {
+        // the argument is not a column of the table, the aggregation is not pushed down
+        consume("SELECT SUM(n1 + 0), SUM(n2 + 0) FROM tblspace1.tsql", bh);
+    }
+
+    private void consume(String query, Blackhole bh) throws Exception {
+        try (DataScanner scan = scan(manager, query, Collections.emptyList())) {
+            bh.consume(scan.consume());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import herddb.model.Record;
+import herddb.utils.Bytes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lookups on immutable pages kept as a map of {@link Record} objects and as a
+ * {@link RecordSlab}, with the cost of the garbage collection of the records
+ * created by the slab on every access.
+ * <p>
+ * Run the main method in order to print the heap retained by the pages (rows
+ * per GB) too.
+ */
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ImmutablePageFootprint {
+
+    private static final int PAGES = 1000;
+    private static final int ROWS_PER_PAGE = 1000;
+
+    @Param({"map", "slab"})
+    public String layout;
+
+    @Param({"16", "100"})
+    public int valueSize;
+
+    private List<Map<Bytes, Record>> pages;
+
+    private static List<Record> pageRecords(int page, int valueSize) {
+        List<Record> records = new ArrayList<>(ROWS_PER_PAGE);
+        for (int i = 0; i < ROWS_PER_PAGE; i++) {
+            byte[] value = new byte[valueSize];
+            ThreadLocalRandom.current().nextBytes(value);
+            records.add(new Record(Bytes.from_long((long) page * ROWS_PER_PAGE + i), Bytes.from_array(value)));
+        }
+        return records;
+    }
+
+    private static List<Map<Bytes, Record>> buildPages(String layout, int valueSize) {
+        List<Map<Bytes, Record>> pages = new ArrayList<>(PAGES);
+        for (int page = 0; page < PAGES; page++) {
+            List<Record> records = pageRecords(page, valueSize);
+            if ("slab".equals(layout)) {
+                pages.add(RecordSlab.build(records));
+            } else {
+                Map<Bytes, Record> map = new HashMap<>(records.size());
+                for (Record r : records) {
+                    map.put(r.key, r);
+                }
+                pages.add(map);
+            }
+        }
+        return pages;
+    }
+
+    @Setup
+    public void setup() {
+        pages = buildPages(layout, valueSize);
+    }
+
+    @Benchmark
+    public Record lookup() {
+        long id = ThreadLocalRandom.current().nextLong((long) PAGES * ROWS_PER_PAGE);
+        return pages.get((int) (id / ROWS_PER_PAGE)).get(Bytes.from_long(id));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String... args) throws Exception {
+        for (int valueSize : new int[]{16, 100}) {
+            for (String layout : new String[]{"map", "slab"}) {
+                long before = usedHeap();
+                List<Map<Bytes, Record>> pages = buildPages(layout, valueSize);
+                long retained = usedHeap() - before;
+                long rows = (long) PAGES * ROWS_PER_PAGE;
+                System.out.printf("layout %s, value size %d: %d bytes per row, %d rows per GB%n",
+                        layout, valueSize, retained / rows, rows * (1L << 30) / retained);
+                pages.clear();
+            }
+        }
+        Options options = new OptionsBuilder()
+                .include(ImmutablePageFootprint.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of loading pages (and so unloading other pages) on a full
+ * {@link ClockProPolicy}, with a single global policy and with a
+ * {@link ShardedPageReplacementPolicy}.
+ * <p>
+ * Run the main method in order to measure with 1 to 64 threads.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PageReplacementThroughput {
+
+    private static final int CAPACITY = 16 * 1024;
+
+    private final PageReplacementPolicy single = new ClockProPolicy(CAPACITY);
+    private final PageReplacementPolicy sharded = new ShardedPageReplacementPolicy(CAPACITY,
+            Runtime.getRuntime().availableProcessors(), ClockProPolicy::new);
+
+    private static final class MyOwner implements Page.Owner {
+
+        @Override
+        public void unload(long pageId) {
+        }
+    }
+
+    private static final class MyPage extends Page<MyOwner> {
+
+        MyPage(MyOwner owner, long pageId) {
+            super(owner, pageId);
+        }
+    }
+
+    /**
+     * Every thread loads its own pages, like scans on different tables
+     */
+    @State(Scope.Thread)
+    public static class Loader {
+
+        private final MyOwner owner = new MyOwner();
+        private long nextPageId;
+        private MyPage last;
+
+        MyPage next() {
+            MyPage page = new MyPage(owner, nextPageId++);
+            last = page;
+            return page;
+        }
+    }
+
+    @Benchmark
+    public void single(Loader loader, Blackhole bh) {
+        load(single, loader, bh);
+    }
+
+    @Benchmark
+    public void sharded(Loader loader, Blackhole bh) {
+        load(sharded, loader, bh);
+    }
+
+    private static void load(PageReplacementPolicy policy, Loader loader, Blackhole bh) {
+        MyPage previous = loader.last;
+        bh.consume(policy.add(loader.next()));
+        if (previous != null) {
+            // a few hits for every load
+            policy.pageHit(previous);
+            policy.pageHit(previous);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(PageReplacementThroughput.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
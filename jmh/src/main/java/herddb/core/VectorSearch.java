@@ -0,0 +1,155 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.core;
+
+import static herddb.core.TestUtils.execute;
+import static herddb.core.TestUtils.executeUpdate;
+import static herddb.core.TestUtils.scan;
+import herddb.mem.MemoryCommitLogManager;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.mem.MemoryMetadataStorageManager;
+import herddb.model.DataScanner;
+import herddb.model.StatementEvaluationContext;
+import herddb.model.TransactionContext;
+import herddb.model.commands.CreateTableSpaceStatement;
+import herddb.sql.expressions.CompiledFunction;
+import herddb.utils.DataAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * k-NN queries (ORDER BY COSINE_SIMILARITY DESC LIMIT k) over random vectors,
+ * with and without an HNSW index on the vector column.
+ * <p>
+ * The recall of the index, compared to the exact nearest neighbours, is
+ * printed at the end of the setup.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class VectorSearch {
+
+    private static final String QUERY = "SELECT k1 FROM tblspace1.tsql"
+            + " ORDER BY cosine_similarity(v1, cast(? as FLOAT ARRAY)) DESC LIMIT 10";
+    private static final int K = 10;
+    private static final int RECALL_QUERIES = 100;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"128"})
+    public int dimension;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    DBManager manager;
+    List<float[]> vectors;
+    Random random = new Random(1234);
+
+    @Setup
+    public void setup() throws Exception {
+        String nodeId = "localhost";
+        manager = new DBManager("localhost", new MemoryMetadataStorageManager(), new MemoryDataStorageManager(), new MemoryCommitLogManager(), null, null);
+        manager.start();
+        CreateTableSpaceStatement st1 = new CreateTableSpaceStatement("tblspace1", Collections.singleton(nodeId), nodeId, 1, 0, 0);
+        manager.executeStatement(st1, StatementEvaluationContext.DEFAULT_EVALUATION_CONTEXT(), TransactionContext.NO_TRANSACTION);
+        manager.waitForTablespace("tblspace1", 10000);
+
+        execute(manager, "CREATE TABLE tblspace1.tsql (k1 int primary key, v1 floata)", Collections.emptyList());
+        if (indexed) {
+            execute(manager, "CREATE HNSW INDEX ixv ON tblspace1.tsql(v1)", Collections.emptyList());
+        }
+        vectors = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            float[] vector = randomVector();
+            vectors.add(vector);
+            executeUpdate(manager, "INSERT INTO tblspace1.tsql(k1,v1) values(?,?)", Arrays.asList(Integer.valueOf(i), vector));
+        }
+
+        int found = 0;
+        for (int q = 0; q < RECALL_QUERIES; q++) {
+            float[] query = randomVector();
+            Set<Integer> exact = exactNearest(query);
+            try (DataScanner scan = scan(manager, QUERY, Arrays.<Object>asList(query))) {
+                for (DataAccessor row : scan.consume()) {
+                    if (exact.contains((Integer) row.get(0))) {
+                        found++;
+                    }
+                }
+            }
+        }
+        System.out.println("recall@" + K + " (indexed=" + indexed + "): " + found / (double) (RECALL_QUERIES * K));
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) throws Exception {
+        try (DataScanner scan = scan(manager, QUERY, Arrays.<Object>asList(randomVector()))) {
+            bh.consume(scan.consume());
+        }
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private Set<Integer> exactNearest(float[] query) {
+        Integer[] ids = new Integer[vectors.size()];
+        float[] similarities = new float[vectors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            similarities[i] = CompiledFunction.cosineSimilarity(query, vectors.get(i));
+        }
+        Arrays.sort(ids, (a, b) -> Float.compare(similarities[b], similarities[a]));
+        return new HashSet<>(Arrays.asList(ids).subList(0, K));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index;
+
+import herddb.core.MemoryManager;
+import herddb.index.blink.BLinkKeyToPageIndex;
+import herddb.log.LogSequenceNumber;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.utils.Bytes;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of concurrent primary key lookups on a {@link BLinkKeyToPageIndex}, alone and while another
+ * thread keeps inserting and removing keys (splitting and merging tree nodes).
+ * <p>
+ * Run the main method in order to measure the lookups with 1 to 64 threads.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ConcurrentKeyLookup {
+
+    @Param({"1000000"})
+    public int rows;
+
+    MemoryDataStorageManager dataStorageManager;
+    BLinkKeyToPageIndex index;
+
+    @Setup
+    public void setup() {
+        long pkMemory = 1L << 30;
+        MemoryManager memoryManager = new MemoryManager(pkMemory * 2, 0, pkMemory, 128L << 10);
+        dataStorageManager = new MemoryDataStorageManager();
+        index = new BLinkKeyToPageIndex("tblspace1", "tsql", memoryManager, dataStorageManager);
+        index.start(LogSequenceNumber.START_OF_TIME, true);
+        for (int i = 0; i < rows; i++) {
+            index.put(Bytes.from_long(i * 2L), 1L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        index.close();
+        dataStorageManager.close();
+    }
+
+    private Bytes existingKey() {
+        return Bytes.from_long(ThreadLocalRandom.current().nextInt(rows) * 2L);
+    }
+
+    @Benchmark
+    public Long lookup() {
+        return index.get(existingKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Long mixedLookup() {
+        return index.get(existingKey());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Long mixedInsertAndRemove() {
+        Bytes key = Bytes.from_long(ThreadLocalRandom.current().nextInt(rows) * 2L + 1);
+        index.put(key, 2L);
+        return index.remove(key);
+    }
+
+    public static void main(String... args) throws Exception {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(ConcurrentKeyLookup.class.getSimpleName() + ".lookup")
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.index;
+
+import herddb.core.MemoryManager;
+import herddb.index.blink.BLinkKeyToPageIndex;
+import herddb.log.LogSequenceNumber;
+import herddb.mem.MemoryDataStorageManager;
+import herddb.utils.Bytes;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of primary keys on a {@link BLinkKeyToPageIndex}, like the duplicate
+ * key check done on every INSERT: missing keys are discarded by the bloom
+ * filter of the index, the baseline searches the tree.
+ * <p>
+ * With a small {@code memory} the tree does not fit in memory and searches
+ * need to load index pages.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class MissingKeyLookup {
+
+    @Param({"1000000"})
+    public int rows;
+
+    /**
+     * Memory for the primary key pages, in MB
+     */
+    @Param({"1024", "16"})
+    public int memory;
+
+    MemoryDataStorageManager dataStorageManager;
+    BLinkKeyToPageIndex index;
+
+    @Setup
+    public void setup() {
+        long pkMemory = memory * (1L << 20);
+        MemoryManager memoryManager = new MemoryManager(pkMemory * 2, 0, pkMemory, 128L << 10);
+        dataStorageManager = new MemoryDataStorageManager();
+        index = new BLinkKeyToPageIndex("tblspace1", "tsql", memoryManager, dataStorageManager);
+        index.start(LogSequenceNumber.START_OF_TIME, true);
+        for (int i = 0; i < rows; i++) {
+            index.put(Bytes.from_long(i * 2L), 1L);
+        }
+        /* sizes the bloom filter for the actual number of keys */
+        index.checkpoint(new LogSequenceNumber(1, 1), false);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        index.close();
+        dataStorageManager.close();
+    }
+
+    private Bytes missingKey() {
+        return Bytes.from_long(ThreadLocalRandom.current().nextInt(rows) * 2L + 1);
+    }
+
+    private Bytes existingKey() {
+        return Bytes.from_long(ThreadLocalRandom.current().nextInt(rows) * 2L);
+    }
+
+    @Benchmark
+    public boolean missingKey() {
+        Bytes key = missingKey();
+        return index.mightContainKey(key) && index.containsKey(key);
+    }
+
+    @Benchmark
+    public boolean missingKeyWithoutFilter() {
+        return index.containsKey(missingKey());
+    }
+
+    @Benchmark
+    public boolean existingKey() {
+        Bytes key = existingKey();
+        return index.mightContainKey(key) && index.containsKey(key);
+    }
+
+    @Benchmark
+    public boolean existingKeyWithoutFilter() {
+        return index.containsKey(existingKey());
+    }
+}
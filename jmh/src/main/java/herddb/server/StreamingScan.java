@@ -0,0 +1,136 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.server;
+
+import herddb.client.ClientConfiguration;
+import herddb.client.HDBClient;
+import herddb.client.HDBConnection;
+import herddb.client.ScanResultSet;
+import herddb.model.TableSpace;
+import herddb.network.netty.LocalVMChannelAcceptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full scan from a client, pull mode (one round trip per chunk) vs streaming
+ * mode (the server pushes chunks). Network latency is simulated on the
+ * in-process LocalVMChannel. Use the score (seconds per scan) in order to
+ * compute rows/sec.
+ */
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class StreamingScan {
+
+    /**
+     * Round trip time, in microseconds
+     */
+    @Param({"100", "5000"})
+    public int rttMicros;
+
+    @Param({"0", "16"})
+    public int streamingCredits;
+
+    @Param({"10000000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int fetchSize;
+
+    Path baseDir;
+    Server server;
+    HDBClient client;
+    HDBConnection connection;
+
+    @Setup
+    public void setup() throws Exception {
+        // this must be set before booting the server
+        System.setProperty(LocalVMChannelAcceptor.PROPERTY_SIMULATED_LATENCY_MICROS, (rttMicros / 2) + "");
+        baseDir = Files.createTempDirectory("streamingscan");
+        ServerConfiguration serverConfiguration = new ServerConfiguration(baseDir)
+                .set(ServerConfiguration.PROPERTY_PORT, ServerConfiguration.PROPERTY_PORT_AUTODISCOVERY);
+        server = new Server(serverConfiguration);
+        server.start();
+        server.waitForStandaloneBoot();
+
+        ClientConfiguration clientConfiguration = new ClientConfiguration(baseDir.resolve("client"));
+        clientConfiguration.set(ClientConfiguration.PROPERTY_CLIENT_SCANNER_STREAMING_CREDITS, streamingCredits);
+        client = new HDBClient(clientConfiguration);
+        client.setClientSideMetadataProvider(new StaticClientSideMetadataProvider(server));
+        connection = client.openConnection();
+
+        connection.executeUpdate(TableSpace.DEFAULT, "CREATE TABLE mytable (id int primary key, n1 long, s1 string)",
+                0, false, true, Collections.emptyList());
+        List<List<Object>> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            batch.add(Arrays.asList(i, (long) i, "value" + i));
+            if (batch.size() == 10000) {
+                connection.executeUpdates(TableSpace.DEFAULT, "INSERT INTO mytable (id,n1,s1) values(?,?,?)",
+                        0, false, true, batch);
+                batch.clear();
+            }
+        }
+        connection.executeUpdates(TableSpace.DEFAULT, "INSERT INTO mytable (id,n1,s1) values(?,?,?)",
+                0, false, true, batch);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        client.close();
+        server.close();
+        System.clearProperty(LocalVMChannelAcceptor.PROPERTY_SIMULATED_LATENCY_MICROS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int fullScan() throws Exception {
+        int count = 0;
+        try (ScanResultSet scan = connection.executeScan(TableSpace.DEFAULT, "SELECT * FROM mytable", true,
+                Collections.emptyList(), 0, 0, fetchSize, true)) {
+            while (scan.hasNext()) {
+                scan.next();
+                count++;
+            }
+        }
+        if (count != rows) {
+            throw new IllegalStateException("found " + count + " rows instead of " + rows);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ Licensed to Diennea S.r.l. under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. Diennea S.r.l. licenses this file
+ to you under the Apache License, Version 2.0 (the
+ "License"); you may not use this file except in compliance
+ with the License.  You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+
+ */
+
+package herddb.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of acquiring and releasing a read lock, like every statement
+ * does on the tablespace lock, with {@link StampedLock} and with
+ * {@link StripedReadWriteLock}.
+ * <p>
+ * Run the main method in order to measure with 1 to 64 threads.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ReadLockThroughput {
+
+    private final StampedLock stampedLock = new StampedLock();
+    private final StripedReadWriteLock stripedLock = new StripedReadWriteLock();
+
+    @Benchmark
+    public void stampedLock(Blackhole bh) {
+        long stamp = stampedLock.readLock();
+        try {
+            // a tiny critical section, like a lookup on a table
+            Blackhole.consumeCPU(10);
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+        bh.consume(stamp);
+    }
+
+    @Benchmark
+    public void stripedLock(Blackhole bh) {
+        long stamp = stripedLock.readLock();
+        try {
+            Blackhole.consumeCPU(10);
+        } finally {
+            stripedLock.unlockRead(stamp);
+        }
+        bh.consume(stamp);
+    }
+
+    public static void main(String... args) throws Exception {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(ReadLockThroughput.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}